@@ -0,0 +1,77 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * A class which protects the whole Server from overload by shedding the least important traffic first.
+ * Every handler records how long it took to dispatch each request and the controller keeps an exponentially weighted
+ * moving average of that latency. Typing indicators and read receipts are the first to go, once the average is over
+ * half the target. While the average is over the target, broadcasts are refused, and while it is over twice the target
+ * media offers are refused as well. Direct messages are never shed.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see TrafficClass
+ */
+public class AdmissionController {
+
+	// static variables
+	// each new sample moves the average 1/8th of the way towards it.
+	private final static int SMOOTHING_SHIFT = 3;
+	// an average which has not been updated for this long is stale, since nothing slow has been dispatched.
+	private final static long IDLE_RESET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// instance variables
+	private final long targetNanos;
+	private final AtomicLong averageNanos;
+	private volatile long lastSampleAt;
+
+	/***
+	 * The Constructor of the AdmissionController Class.
+	 * @param targetMillis The average dispatch latency in milliseconds above which traffic is shed.
+	 */
+	public AdmissionController(long targetMillis) {
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+		this.averageNanos = new AtomicLong(0);
+		this.lastSampleAt = System.nanoTime();
+		}
+
+	/***
+	 * A method used to record how long one request took to dispatch.
+	 * @param nanos The dispatch latency in nanoseconds.
+	 */
+	public void recordDispatch(long nanos) {
+		long current;
+		do {
+			current = this.averageNanos.get();
+			}
+		while(!this.averageNanos.compareAndSet(current, current + ((nanos - current) >> SMOOTHING_SHIFT)));
+		this.lastSampleAt = System.nanoTime();
+		}
+
+	/***
+	 * A method used to retrieve the average dispatch latency.
+	 * @return The average dispatch latency in nanoseconds, or 0 if nothing was dispatched recently.
+	 */
+	public long getAverageDispatchNanos() {
+		if(System.nanoTime() - this.lastSampleAt > IDLE_RESET_NANOS)
+			return 0;
+		return this.averageNanos.get();
+		}
+
+	/***
+	 * A method used to decide whether a request of the given class of traffic should be processed.
+	 * @param trafficClass The class of traffic of the request.
+	 * @return A boolean which is false if the request should be shed.
+	 */
+	public boolean admit(TrafficClass trafficClass) {
+		switch(trafficClass) {
+			case SIGNAL:
+				return this.getAverageDispatchNanos() <= this.targetNanos / 2;
+			case BROADCAST:
+				return this.getAverageDispatchNanos() <= this.targetNanos;
+			case MEDIA:
+				return this.getAverageDispatchNanos() <= 2 * this.targetNanos;
+			default:
+				return true;
+			}
+		}
+	}
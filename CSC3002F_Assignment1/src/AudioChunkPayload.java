@@ -0,0 +1,77 @@
+
+/***
+ * A Payload carrying one chunk of the encoded bytes of an Audio stream.
+ * The Server forwards chunks to the receiving Client untouched and never decodes them.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see AudioPayload
+ */
+public class AudioChunkPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private String streamID;
+	private int sequenceNumber;
+	private byte[] chunkData;
+	private boolean lastChunk;
+	private boolean compressible;
+
+	/***
+	 * The Constructor of the AudioChunkPayload Class.
+	 * @param streamID The identifier of the Audio stream the chunk belongs to.
+	 * @param sequenceNumber The position of the chunk in the Audio stream, starting at 0.
+	 * @param chunkData The encoded bytes of the chunk.
+	 * @param lastChunk Whether this is the final chunk of the Audio stream.
+	 * @param compressible Whether the Audio stream is in an uncompressed format such as WAV.
+	 */
+	public AudioChunkPayload(String streamID, int sequenceNumber, byte[] chunkData, boolean lastChunk, boolean compressible) {
+		this.streamID = streamID;
+		this.sequenceNumber = sequenceNumber;
+		this.chunkData = chunkData;
+		this.lastChunk = lastChunk;
+		this.compressible = compressible;
+		}
+
+	/***
+	 * A method to retrieve the identifier of the Audio stream the chunk belongs to.
+	 * @return The identifier of the Audio stream.
+	 */
+	public String getStreamID() {
+		return this.streamID;
+		}
+
+	/***
+	 * A method to retrieve the position of the chunk in the Audio stream.
+	 * @return The position of the chunk in the Audio stream, starting at 0.
+	 */
+	public int getSequenceNumber() {
+		return this.sequenceNumber;
+		}
+
+	/***
+	 * A method to retrieve the encoded bytes of the chunk.
+	 * @return The encoded bytes of the chunk.
+	 */
+	public byte[] getChunkData() {
+		return this.chunkData;
+		}
+
+	/***
+	 * A method to check whether this is the final chunk of the Audio stream.
+	 * @return A boolean which is true if this is the final chunk.
+	 */
+	public boolean isLastChunk() {
+		return this.lastChunk;
+		}
+
+	@Override
+	public long getSize() {
+		return this.chunkData.length;
+		}
+
+	@Override
+	public boolean isCompressible() {
+		return this.compressible;
+		}
+	}
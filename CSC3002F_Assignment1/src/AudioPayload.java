@@ -0,0 +1,82 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+
+/***
+ * A Payload describing an Audio stream (e.g. a WAV file) which is offered to a Client.
+ * The encoded bytes of the Audio are not carried by this Payload but are streamed afterwards in AudioChunkPayloads
+ * which share its stream identifier, so that the receiving Client can start playing before the whole file has arrived.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see AudioChunkPayload
+ * @see Media_Player
+ */
+public class AudioPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 2L;
+	// instance variables
+	private String streamID;
+	private String mimeType;
+	private String fileName;
+	private long streamSize;
+
+	/***
+	 * The Constructor of the AudioPayload Class.
+	 * @param streamID The identifier shared by every chunk of the Audio stream.
+	 * @param mimeType The MIME type of the encoded bytes.
+	 * @param fileName The name of the file the Audio is read from.
+	 * @param streamSize The total number of encoded bytes in the Audio stream.
+	 */
+	public AudioPayload(String streamID, String mimeType, String fileName, long streamSize) {
+		this.streamID = streamID;
+		this.mimeType = mimeType;
+		this.fileName = fileName;
+		this.streamSize = streamSize;
+		}
+
+	/***
+	 * A method used to describe an Audio file as a new stream without reading its content.
+	 * @param audioFile The file containing the Audio.
+	 * @return An AudioPayload describing the file with a new unique stream identifier.
+	 * @throws IOException If the file does not exist or cannot be read.
+	 */
+	public static AudioPayload describeFile(File audioFile) throws IOException {
+		if(!audioFile.isFile() || !audioFile.canRead())
+			throw new IOException("Cannot read Audio file: " + audioFile);
+		String mimeType = Files.probeContentType(audioFile.toPath());
+		if(mimeType == null)
+			mimeType = "audio/*";
+		return new AudioPayload(UUID.randomUUID().toString(), mimeType, audioFile.getName(), audioFile.length());
+		}
+
+	/***
+	 * A method to retrieve the identifier shared by every chunk of the Audio stream.
+	 * @return The identifier of the Audio stream.
+	 */
+	public String getStreamID() {
+		return this.streamID;
+		}
+
+	/***
+	 * A method to retrieve the MIME type of the Audio.
+	 * @return The MIME type of the Audio.
+	 */
+	public String getMimeType() {
+		return this.mimeType;
+		}
+
+	/***
+	 * A method to retrieve the name of the file the Audio is read from.
+	 * @return The name of the file the Audio is read from.
+	 */
+	public String getFileName() {
+		return this.fileName;
+		}
+
+	@Override
+	public long getSize() {
+		return this.streamSize;
+		}
+	}
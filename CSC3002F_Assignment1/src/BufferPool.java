@@ -0,0 +1,56 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * A pool of frame sized byte arrays which are reused for the frames read from spool files instead of allocating a new
+ * array for every frame. The pool keeps at most MAX_POOLED_BUFFERS arrays, any more are left to the garbage collector.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FrameSplitter
+ */
+public final class BufferPool {
+
+	// static variables
+	public final static int BUFFER_SIZE = 64 * 1024;
+	private final static int MAX_POOLED_BUFFERS = 256;
+	private final static ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+	private final static AtomicInteger pooledBuffers = new AtomicInteger(0);
+
+	static {
+		Metrics.registerGauge("buffers.pooled", () -> pooledBuffers.get());
+		}
+
+	/***
+	 * The BufferPool Class only has static methods and is never instantiated.
+	 */
+	private BufferPool() {
+		}
+
+	/***
+	 * A method used to take a buffer from the pool, allocating one if the pool is empty.
+	 * @return A byte array of BUFFER_SIZE bytes.
+	 */
+	public static byte[] acquire() {
+		byte[] buffer = buffers.poll();
+		if(buffer == null) {
+			Metrics.increment("buffers.allocated");
+			return new byte[BUFFER_SIZE];
+			}
+		pooledBuffers.decrementAndGet();
+		return buffer;
+		}
+
+	/***
+	 * A method used to return a buffer to the pool once it is no longer used.
+	 * @param buffer A byte array previously taken from the pool.
+	 */
+	public static void release(byte[] buffer) {
+		if(buffer.length != BUFFER_SIZE)
+			return;
+		if(pooledBuffers.incrementAndGet() > MAX_POOLED_BUFFERS) {
+			pooledBuffers.decrementAndGet();
+			return;
+			}
+		buffers.offer(buffer);
+		}
+	}
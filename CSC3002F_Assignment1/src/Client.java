@@ -6,12 +6,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
 /***
  * An implementation of a Client for a Client-Server Chat Application.
  * @author Pieter Janse van Rensburg(jnspie007@myuct.ac.za)
@@ -30,9 +35,12 @@ public class Client {
 	private ReentrantReadWriteLock onlineClientNamesLock;
 	private ArrayList<String> onlineClientNames;
 	private ServerInteractionHandler serverConnectionHandler;
-	private Scanner input;
-	private volatile boolean isConfirming;
-	private volatile boolean enteringInput;
+	// the text messages this client received, kept on disk so that they can be shown when it starts again.
+	private MessageStore store;
+	// shares the console between the menu and the prompts raised by Messages from the Server.
+	private ConsoleArbiter console;
+	// Audio files offered to other Clients which are streamed once the offer is accepted, keyed by stream identifier.
+	private ConcurrentHashMap<String, File> outgoingAudioStreams;
 
 	/***
 	 * The constructor of the Client Class. Initializes a new Client and establishes a Connection to the Server
@@ -40,17 +48,29 @@ public class Client {
 	 * @see ArrayList
 	 * @see Client#setupConnectToServer(String)
 	 * @see Client#inputUserCredentials()
+	 * @see MessageStore
+	 * @see ConsoleArbiter
 	 */
 	public Client() {
 		this.onlineClientNamesLock = new ReentrantReadWriteLock();
 		this.onlineClientNames = new ArrayList<String>();
-		this.isConfirming = false;
-		this.enteringInput = true;
-		System.out.println("Please enter the IP/DNS address of the Server");
-		input = new Scanner(System.in);
-		String serverIP = input.nextLine();
+		this.outgoingAudioStreams = new ConcurrentHashMap<String, File>();
+		System.out.println("Please enter the IP/DNS address of the Server, optionally followed by :port");
+		this.console = new ConsoleArbiter(System.in);
+		String serverIP = this.console.readLine();
 		this.setupConnectToServer(serverIP);
+		// without the server the client can still show the text messages it stored.
+		if(this.serverConnectionHandler == null) {
+			System.out.println("*********************************************************************\n"
+					+ "System Notice - The Server could not be reached. Please enter a Username to read your stored Text Messages:"
+					+ "\n*********************************************************************");
+			this.store = new MessageStore(this.console.readLine());
+			this.showRecentConversations();
+			this.store.close();
+			System.exit(1);
+			}
 		inputUserCredentials();
+		this.showRecentConversations();
 
 		}
 
@@ -131,13 +151,32 @@ public class Client {
 		}
 
 	/***
-	 * A method used to get the Scanner reading System.in
-	 * @return A Scanner Object used to read from System.in
-	 * @see Scanner
+	 * A method used to get the ConsoleArbiter sharing System.in between the menu and the prompts.
+	 * @return The ConsoleArbiter reading System.in
+	 * @see ConsoleArbiter
 	 * @see System#in
 	 */
-	public Scanner getInput() {
-		return this.input;
+	public ConsoleArbiter getConsole() {
+		return this.console;
+		}
+
+	/***
+	 * A method used to remember an Audio file which has been offered to another Client so it can be streamed once accepted.
+	 * @param audio The AudioPayload describing the offered Audio stream.
+	 * @param audioFile The file containing the Audio.
+	 * @see ConcurrentHashMap
+	 */
+	public void addOutgoingAudioStream(AudioPayload audio, File audioFile) {
+		this.outgoingAudioStreams.put(audio.getStreamID(), audioFile);
+		}
+
+	/***
+	 * A method used to retrieve and forget an offered Audio file once its offer has been accepted.
+	 * @param streamID The identifier of the Audio stream.
+	 * @return The file containing the Audio or null if no Audio stream with the identifier was offered.
+	 */
+	public File removeOutgoingAudioStream(String streamID) {
+		return this.outgoingAudioStreams.remove(streamID);
 		}
 
 	/***
@@ -166,21 +205,24 @@ public class Client {
 		}
 
 	/***
-	 * A method used by the Client to establish a Connections to the Server via a Socket
-	 * It catches an IOException if an error occurs.
+	 * A method used by the Client to establish a Connections to the Server via a Socket or another Transport
+	 * The address may end in :port to connect to a Server which is not on the default port, such as one node of a cluster,
+	 * or be unix:path to connect to a Server on this host through a Unix domain socket.
+	 * It catches an IOException if an error occurs, and an IllegalArgumentException if the address cannot be parsed.
 	 * @param serverIP The Internet Protocol Address / Domain Name Service Address of the Server to Connect to.
-	 * @see Socket
+	 * @see Transport#forAddress(String, int)
 	 * @see ServerInteractionHandler
 	 * @see IOException
 	 */
 	private void setupConnectToServer(String serverIP) {
 		try {
-			this.serverConnectionHandler = new ServerInteractionHandler(new Socket(serverIP, Client.INCOMING_CONNECTION_PORT));
+			Transport transport = Transport.forAddress(serverIP, Client.INCOMING_CONNECTION_PORT);
+			this.serverConnectionHandler = new ServerInteractionHandler(transport, transport.connect(0));
 			System.out.println("*********************************************************************\n"
 					+ "System Notice - Client has Succesfully connected to the Server"
 					+ "\n*********************************************************************");
 			}
-		catch (IOException e) {
+		catch (IOException | IllegalArgumentException e) {
 			System.out.println(e);
 			}
 
@@ -198,9 +240,16 @@ public class Client {
 		// ask for credentials at least 1 and then keep checking if they are correct.
 		do {
 			System.out.println("Please enter a Username:");
-			this.username = input.nextLine();
+			this.username = this.console.readLine();
 			System.out.println("Please enter a Password:");
-			this.password = input.nextLine();
+			this.password = this.console.readLine();
+			// each user name has its own store, which holds the session it can resume.
+			if(this.store == null || !this.store.getUsername().equals(this.username)) {
+				if(this.store != null)
+					this.store.close();
+				this.store = new MessageStore(this.username);
+				this.serverConnectionHandler.setMessageStore(this.store);
+				}
 			} while(!checkCredentials());
 
 		}
@@ -210,21 +259,41 @@ public class Client {
 	 * @return A boolean indicating whether the Client's Login Details were accepted.
 	 */
 	private boolean checkCredentials() {
-		// formulates message to send to server
-		Message output = new Message(MessageID.REGISTRATION_REQUEST, this.username, Client.SERVER_NAME, this.password);
+		// formulates message to send to server, resuming the stored session so that only newer messages are sent
+		String sessionToken = this.store.getSessionToken(this.password);
+		Message output = new Message(MessageID.REGISTRATION_REQUEST, this.username, Client.SERVER_NAME, sessionToken != null
+				? RegistrationPayload.resume(this.password, RegistrationPayload.SUPPORTED_CAPABILITIES, sessionToken, this.store.getHighWaterMark())
+				: RegistrationPayload.request(this.password, RegistrationPayload.SUPPORTED_CAPABILITIES));
+		serverConnectionHandler.setLastSequenceNumber(this.store.getHighWaterMark());
 		serverConnectionHandler.sendMessageToServer(output);
 		// waits for input from server
 		Message input = serverConnectionHandler.getMessageFromServer();
-		// if details were correct return true.
-		if(((boolean)input.getData()))
+		RegistrationPayload response = (RegistrationPayload)input.getData();
+		// if details were correct enable the capabilities the server agreed to and return true.
+		if(response.isAccepted()) {
+			serverConnectionHandler.enableCapabilities(response);
 			return true;
+			}
 		// else return false
 		System.out.println("*********************************************************************\n"
-				+ "System Notice - Login Failed: The Client Details entered were incorrect."
+				+ "System Notice - Login Failed: " + (response.getReason() != null ? response.getReason()
+						: "The Client Details entered were incorrect.")
 				+ "\n*********************************************************************");
 		return false;
 		}
 
+	/***
+	 * A method used to show the conversations and online clients stored when the client last ran, if any.
+	 * @see MessageStore#describeRecentConversations()
+	 */
+	private void showRecentConversations() {
+		String recent = this.store.describeRecentConversations();
+		if(recent != null)
+			System.out.println("*********************************************************************\n"
+					+ "System Notice - " + recent
+					+ "*********************************************************************");
+		}
+
 	/***
 	 * A method used to run the Client's ServerInteractionHandler in a new Thread.
 	 * @see Thread
@@ -234,42 +303,6 @@ public class Client {
 		new Thread(this.serverConnectionHandler).start();
 		}
 
-	/***
-	 * A method used to get the value of isConfirming.
-	 * @return a boolean with the value of isConfirming.
-	 */
-	public boolean getIsConfirming() {
-		return this.isConfirming;
-		}
-
-	/***
-	 * A method used to set the value of isConfirming.
-	 * @param isConfirming A boolean with the new value of isConfirming.
-	 */
-	public void setIsConfirming(boolean isConfirming) {
-		while(enteringInput);
-
-		this.isConfirming = isConfirming;
-		}
-
-	/***
-	 * A method used to get the value of enteringInput.
-	 * @return A boolean with the value of enteringInput.
-	 */
-	public boolean getEnteringInput() {
-		return this.enteringInput;
-		}
-
-	/***
-	 * A method used to set the value of enteringInput.
-	 * @param enteringInput A boolean with the new value of enteringInput.
-	 */
-	public void setEnteringInput(boolean enteringInput) {
-		while(isConfirming);
-
-		this.enteringInput = enteringInput;
-		}
-
 	/***
 	 * The main method of the Client Class.
 	 * @param args A String Array containing command-line arguments.
@@ -284,46 +317,44 @@ public class Client {
 		"System Notice - " + thisClient.getUsername() + ", you have logged in successfully."
 				+ "\n*********************************************************************");
 
-		Scanner input = thisClient.getInput();
+		ConsoleArbiter console = thisClient.getConsole();
 		String choice = "";
 		while(!choice.equals("Exit")) {
-			thisClient.setEnteringInput(true);
-			System.out.println("Please Enter a number or Exit corresponding to One of the Following Options\n" +
+			// prompts raised while the menu asked for input are shown before the options
+			choice = console.readChoice("Please Enter a number or Exit corresponding to One of the Following Options\n" +
 					   "1. Send Text Message to Another Client\n" +
 					   "2. Send Image Message to Another Client\n" +
 					   "3. Send Text Message to All Online Clients\n" +
 					   "4. Send Image Message to All Online Clients\n" +
-						 "5. Send Audio file to Another Client........."+
+						 "5. Send Audio file to Another Client\n" +
+					   "6. Create, Join, Leave or Post to a Chat Room\n" +
+					   "7. Subscribe, Unsubscribe or Publish to a Topic\n" +
+					   "8. Send Text Message to Several Online Clients\n" +
+					   "9. Search Your Text Messages\n" +
 					   "Exit. Logout");
-			choice = input.nextLine();
 			switch(choice) {
 				// sending a text message to another client
 				case "1": {
-					thisClient.setEnteringInput(false);
+					// update the online client list, waiting for the server to respond
 					thisClient.getServerInteractionHandler().updateOnlineClients();
-					while(!thisClient.getServerInteractionHandler().getUpdated());
-
-					// update the online client list
-					thisClient.getServerInteractionHandler().setUpdated(false);
-					thisClient.setEnteringInput(true);
 					System.out.println("Currently Online Clients(" + thisClient.getOnlineClientNamesSize() + ") :\n"
 							+ "-----------------------------------------\n" +
 							thisClient.getOnlineClientNamesToString() +
 		 "-----------------------------------------\nPlease Enter a Client's name to Send the Message to.");
 					// get client user name to send message to
-					String receivingClient = input.nextLine();
-					thisClient.setEnteringInput(false);
+					String receivingClient = console.readLine();
 					// check if they are online
 					if(thisClient.containsOnlineClientName(receivingClient)) {
-						thisClient.setEnteringInput(true);
+						// the receiving client is shown that this client is typing until the message is sent
+						thisClient.getServerInteractionHandler().sendSignal(receivingClient, SignalPayload.typing(true));
 						System.out.println("Please enter the Text Message to Send");
 						// get the message to send
-						String message = input.nextLine();
-						thisClient.setEnteringInput(false);
+						String message = console.readLine();
 						// send the message to the server
 						Message output = new Message(MessageID.TEXT_TRANSFER_REQUEST, thisClient.getUsername(),
-								receivingClient, message);
-						thisClient.getServerInteractionHandler().sendMessageToServer(output);
+								receivingClient, new TextPayload(message));
+						thisClient.getServerInteractionHandler().sendTrackedMessageToServer(output);
+						thisClient.getServerInteractionHandler().sendSignal(receivingClient, SignalPayload.typing(false));
 						}
 					else {
 						System.out.println("*********************************************************************\n"
@@ -334,33 +365,25 @@ public class Client {
 					}
 				// sending an image message to another client
 				case "2": {
-					thisClient.setEnteringInput(false);
+					// update the online client list, waiting for the server to respond
 					thisClient.getServerInteractionHandler().updateOnlineClients();
-					while(!thisClient.getServerInteractionHandler().getUpdated());
-
-					// update the online client list
-					thisClient.getServerInteractionHandler().setUpdated(false);
-					thisClient.setEnteringInput(true);
 					System.out.println("Currently Online Clients(" + thisClient.getOnlineClientNamesSize() + ") :\n"
 							+ "-----------------------------------------\n" +
 							thisClient.getOnlineClientNamesToString() +
 		 "-------------------------------------------\nPlease Enter a Client's name to Send the Image to.");
 					// get client user name to send message to
-					String receivingClient = input.nextLine();
-					thisClient.setEnteringInput(false);
+					String receivingClient = console.readLine();
 					// check if they are online
 					if(thisClient.containsOnlineClientName(receivingClient)) {
 						boolean loaded = false;
-						ImageIcon image = null;
+						ImagePayload image = null;
 						String displayM = "Please enter the Location of the Image File to Send";
-						// load image into ImageIcon
+						// load the encoded image bytes into an ImagePayload
 						while(!loaded) {
 							try {
-								thisClient.setEnteringInput(true);
 								System.out.println(displayM);
-								String imageURL = input.nextLine();
-								thisClient.setEnteringInput(false);
-								image = new ImageIcon(ImageIO.read(new File(imageURL)));
+								String imageURL = console.readLine();
+								image = ImagePayload.fromFile(new File(imageURL));
 								loaded = true;
 								}
 							catch (IOException e) {
@@ -368,10 +391,8 @@ public class Client {
 								displayM = "Please re-enter the Location of the Image File to Send";
 						}
 							}
-						// send message to server
-						Message output = new Message(MessageID.IMAGE_TRANSFER_REQUEST, thisClient.getUsername(),
-								receivingClient, (Object)image);
-						thisClient.getServerInteractionHandler().sendMessageToServer(output);
+						// send message to server, by reference if the server already holds the image
+						thisClient.getServerInteractionHandler().sendImage(MessageID.IMAGE_TRANSFER_REQUEST, receivingClient, image);
 						}
 					else {
 						System.out.println("*********************************************************************\n"
@@ -382,42 +403,32 @@ public class Client {
 					}
 				// send text message to all clients
 				case "3": {
-					thisClient.setEnteringInput(false);
+					// update the online client list, waiting for the server to respond
 					thisClient.getServerInteractionHandler().updateOnlineClients();
-					while(!thisClient.getServerInteractionHandler().getUpdated());
-					// update list of online clients
-					thisClient.getServerInteractionHandler().setUpdated(false);
-					thisClient.setEnteringInput(true);
 					System.out.println("Please enter the Text Message to Send to Everyone");
 					// get text message to send
-					String message = input.nextLine();
-					thisClient.setEnteringInput(false);
+					String message = console.readLine();
 					// send message to server
 					Message output = new Message(MessageID.TEXT_SEND_TO_ALL_REQUEST, thisClient.getUsername(),
-								"All", message);
+								"All", new TextPayload(message));
 					thisClient.getServerInteractionHandler().sendMessageToServer(output);
 
 					break;
 					}
 				// send image message to all client
 				case "4" : {
-					thisClient.setEnteringInput(false);
+					// update the online client list, waiting for the server to respond
 					thisClient.getServerInteractionHandler().updateOnlineClients();
-					while(!thisClient.getServerInteractionHandler().getUpdated());
-					// update list of online clients
-					thisClient.getServerInteractionHandler().setUpdated(false);
 
 					boolean loaded = false;
-					ImageIcon image = null;
+					ImagePayload image = null;
 					String displayM = "Please enter the Location of the Image File to Send to Everyone";
-					// load image into ImageIcon
+					// load the encoded image bytes into an ImagePayload
 					while(!loaded) {
 						try {
-							thisClient.setEnteringInput(true);
 							System.out.println(displayM);
-							String imageURL = input.nextLine();
-							thisClient.setEnteringInput(false);
-							image = new ImageIcon(ImageIO.read(new File(imageURL)));
+							String imageURL = console.readLine();
+							image = ImagePayload.fromFile(new File(imageURL));
 							loaded = true;
 							}
 						catch (IOException e) {
@@ -425,10 +436,8 @@ public class Client {
 							displayM = "Please re-enter the Location of the Image File to Send";
 							}
 						}
-						// send message to server
-						Message output = new Message(MessageID.IMAGE_SEND_TO_ALL_REQUEST, thisClient.getUsername(),
-								"All", (Object)image);
-						thisClient.getServerInteractionHandler().sendMessageToServer(output);
+						// send message to server, by reference if the server already holds the image
+						thisClient.getServerInteractionHandler().sendImage(MessageID.IMAGE_SEND_TO_ALL_REQUEST, "All", image);
 
 					break;
 					}
@@ -438,34 +447,26 @@ public class Client {
 					{
 						try
 						{
-							thisClient.setEnteringInput(false);
+							// update the online client list, waiting for the server to respond
 							thisClient.getServerInteractionHandler().updateOnlineClients();
-							while(!thisClient.getServerInteractionHandler().getUpdated());
-
-							// update the online client list
-							thisClient.getServerInteractionHandler().setUpdated(false);
-							thisClient.setEnteringInput(true);
 							System.out.println("Currently Online Clients(" + thisClient.getOnlineClientNamesSize() + ") :\n"
 									+ "-----------------------------------------\n" +
 									thisClient.getOnlineClientNamesToString() +
 				 "-------------------------------------------\nPlease Enter a Client's name to Send the Audio to.");
 							// get client user name to send message to
-							String receivingClient = input.nextLine();
-							thisClient.setEnteringInput(false);
+							String receivingClient = console.readLine();
 							// check if they are online
 							if(thisClient.containsOnlineClientName(receivingClient)) {
 								boolean loaded = false;
-								Media_Player audio_player = null;
+								AudioPayload audio = null;
 								String displayM = "Please enter the Location of the Audio File to Send";
-								// load audio file to the Media_Player Object
+								// describe the audio file, its bytes are only streamed once the offer is accepted
 								while(!loaded) {
 									try {
-										thisClient.setEnteringInput(true);
 										System.out.println(displayM);
-										String filePath = input.nextLine();
-										thisClient.setEnteringInput(false);
-										audio_player = new Media_Player(filePath);
-										//audio_player.play_audio();
+										String filePath = console.readLine();
+										audio = AudioPayload.describeFile(new File(filePath));
+										thisClient.addOutgoingAudioStream(audio, new File(filePath));
 										loaded = true;
 										}
 										catch (IOException e) {
@@ -475,7 +476,7 @@ public class Client {
 									}
 								// send message to server
 								Message output = new Message(MessageID.AUDIO_TRANSFER_REQUEST, thisClient.getUsername(),
-										receivingClient, (Object)audio_player);
+										receivingClient, (Object)audio);
 								thisClient.getServerInteractionHandler().sendMessageToServer(output);
 								}
 							else {
@@ -490,9 +491,91 @@ public class Client {
 						}
 						break;
 					}
+				// create, join, leave or post to a chat room
+				case "6": {
+					System.out.println("Please enter Create, Join, Leave or Post");
+					String action = console.readLine();
+					System.out.println("Please enter the name of the Chat Room");
+					String roomName = console.readLine();
+					Object data = "";
+					MessageID messageID;
+					switch(action) {
+						case "Create": messageID = MessageID.ROOM_CREATE_REQUEST; break;
+						case "Join": messageID = MessageID.ROOM_JOIN_REQUEST; break;
+						case "Leave": messageID = MessageID.ROOM_LEAVE_REQUEST; break;
+						case "Post": {
+							System.out.println("Please enter the Text Message to Post to " + roomName);
+							data = new TextPayload(console.readLine());
+							messageID = MessageID.ROOM_POST_REQUEST;
+							break;
+							}
+						default: {
+							System.out.println("Sorry the input was not understood. Going Back to Main Menu.");
+							messageID = null;
+							break;
+							}
+						}
+					// the request is addressed to the room
+					if(messageID != null)
+						thisClient.getServerInteractionHandler().sendMessageToServer(new Message(messageID, thisClient.getUsername(),
+								roomName, data));
+					break;
+					}
+				// subscribe, unsubscribe or publish to a topic
+				case "7": {
+					System.out.println("Please enter Subscribe, Unsubscribe or Publish");
+					String action = console.readLine();
+					System.out.println("Please enter the Topic, e.g. presence.* or room.sales.# to Subscribe");
+					String topic = console.readLine();
+					switch(action) {
+						case "Subscribe": {
+							thisClient.getServerInteractionHandler().subscribe(topic);
+							break;
+							}
+						case "Unsubscribe": {
+							thisClient.getServerInteractionHandler().unsubscribe(topic);
+							break;
+							}
+						case "Publish": {
+							System.out.println("Please enter the Text of the Event to Publish to " + topic);
+							thisClient.getServerInteractionHandler().sendMessageToServer(new Message(MessageID.TOPIC_PUBLISH_REQUEST,
+									thisClient.getUsername(), topic, new TextPayload(console.readLine())));
+							break;
+							}
+						default: {
+							System.out.println("Sorry the input was not understood. Going Back to Main Menu.");
+							break;
+							}
+						}
+					break;
+					}
+				// sending one text message to several clients in a single request
+				case "8": {
+					// update the online client list, waiting for the server to respond
+					thisClient.getServerInteractionHandler().updateOnlineClients();
+					System.out.println("Currently Online Clients(" + thisClient.getOnlineClientNamesSize() + ") :\n"
+							+ "-----------------------------------------\n" +
+							thisClient.getOnlineClientNamesToString() +
+		 "-----------------------------------------\nPlease Enter the Clients' names to Send the Message to, separated by commas.");
+					// the server reports which of the clients the message reached
+					String receivingClients = MulticastReportPayload.joinRecipients(
+							MulticastReportPayload.parseRecipients(console.readLine()));
+					System.out.println("Please enter the Text Message to Send");
+					String message = console.readLine();
+					thisClient.getServerInteractionHandler().sendMessageToServer(new Message(MessageID.TEXT_MULTICAST_REQUEST,
+							thisClient.getUsername(), receivingClients, new TextPayload(message)));
+					break;
+					}
+				// searching the text messages this client sent or was sent
+				case "9": {
+					System.out.println("Please enter the Words to Search for");
+					String query = console.readLine();
+					thisClient.getServerInteractionHandler().sendMessageToServer(new Message(MessageID.SEARCH_REQUEST,
+							thisClient.getUsername(), Client.SERVER_NAME, new TextPayload(query)));
+					break;
+					}
 				// exit
 				case "Exit" : {
-					thisClient.setEnteringInput(false);
 					try {
 						// tell the server that the connection is closing
 						thisClient.getServerInteractionHandler().sendMessageToServer(new Message(MessageID.CLOSE_CONNECTION,
@@ -504,7 +587,7 @@ public class Client {
 					return;
 					}
 				default : {
-					System.out.println("Sorry the input was not understood. Please enter your choice again. (1,2,3,Exit)");
+					System.out.println("Sorry the input was not understood. Please enter your choice again. (1,2,3,4,5,6,7,8,9,Exit)");
 					break;
 					}
 				}
@@ -519,20 +602,92 @@ public class Client {
 //*****************************************************************************************************************
 
 private class ServerInteractionHandler implements Runnable {
+	// reconnection attempts wait a random time of up to the backoff, which doubles after each failed attempt, so that
+	// Clients which lost the Server at the same moment do not all reconnect at the same moment.
+	private final static long RECONNECT_INITIAL_BACKOFF_MILLIS = 250;
+	private final static long RECONNECT_MAX_BACKOFF_MILLIS = 30000;
+	private final static long RECONNECT_GIVE_UP_MILLIS = 5 * 60 * 1000;
+	private final static int CONNECT_TIMEOUT_MILLIS = 5000;
+	private final static int SENT_CONTENT_CAPACITY = 512;
+	// how long the menu waits for the list of online clients before showing the one it has.
+	private final static long ONLINE_CLIENTS_TIMEOUT_MILLIS = 5000;
+
 	// instance variables
-	private Socket connectionToServer;
+	private volatile Connection connectionToServer;
 	private ObjectInputStream oInputStream;
 	private ObjectOutputStream oOutputStream;
-	private volatile boolean updated;
+	private boolean updated;
+	private ReentrantLock updatedLock;
+	private Condition updatedCondition;
+	// Audio streams currently being received and played, keyed by stream identifier.
+	private ConcurrentHashMap<String, Media_Player> incomingAudioStreams;
+	private PayloadCodec payloadCodec;
+	private FlowController flowController;
+	private volatile OutboundQueue outboundQueue;
+	private FrameAssembler frameAssembler;
+	// the Transport the Client reached the Server over, which it reconnects over.
+	private Transport serverTransport;
+	// the token which resumes the session if the connection drops, and the number of the last Message received in it.
+	private String sessionToken;
+	private volatile boolean sequenced;
+	private long lastSequenceNumber;
+	private volatile boolean closing;
+	// numbers, acknowledges and retransmits direct text messages once the Server has agreed to it.
+	private volatile DeliveryTracker deliveryTracker;
+	// the topic patterns the Client subscribed to, which are subscribed to again after a reconnect.
+	private Set<String> topicSubscriptions;
+	// coalesces the typing indicators and read receipts this client sends once the Server has agreed to them.
+	private volatile SignalCoalescer signals;
+	private volatile MessageStore store;
+	// whether Images are sent by the hash of their content once the Server has agreed to it, the hashes of the Images
+	// the Server was last seen to hold, and the Images waiting on the Server's answer keyed by their hash and destination.
+	private volatile boolean contentReferences;
+	private Map<String, Boolean> sentContent;
+	private ConcurrentHashMap<String, Message> pendingQueries;
+	private ConcurrentHashMap<String, Message> pendingReferences;
 
 	/***
 	 * The constructor of the ServerInteractionHandler class.
-	 * @param connectionToServer The Socket connection the Client to the Server
-	 * @see Socket
+	 * @param serverTransport The Transport the Client reached the Server over
+	 * @param connectionToServer The Connection of the Client to the Server
+	 * @see Transport
 	 */
-	public ServerInteractionHandler(Socket connectionToServer) {
-		this.connectionToServer = connectionToServer;
+	public ServerInteractionHandler(Transport serverTransport, Connection connectionToServer) {
+		this.serverTransport = serverTransport;
 		this.updated = false;
+		this.updatedLock = new ReentrantLock();
+		this.updatedCondition = this.updatedLock.newCondition();
+		this.incomingAudioStreams = new ConcurrentHashMap<String, Media_Player>();
+		this.topicSubscriptions = ConcurrentHashMap.newKeySet();
+		// an access ordered LinkedHashMap which forgets the hash of the Image sent least recently once full.
+		this.sentContent = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return this.size() > SENT_CONTENT_CAPACITY;
+				}
+			});
+		this.pendingQueries = new ConcurrentHashMap<String, Message>();
+		this.pendingReferences = new ConcurrentHashMap<String, Message>();
+		this.closing = false;
+		this.openConnection(connectionToServer);
+		}
+
+	/***
+	 * A method used to set up the streams, codec, flow control and OutboundQueue of a new connection to the Server.
+	 * Catches IOException if the streams could not be opened.
+	 * @param connectionToServer The Connection of the Client to the Server.
+	 */
+	private void openConnection(Connection connectionToServer) {
+		this.connectionToServer = connectionToServer;
+		this.payloadCodec = new PayloadCodec();
+		this.flowController = new FlowController();
+		this.frameAssembler = new FrameAssembler(this.payloadCodec);
+		this.sequenced = false;
+		// requests in flight on a dropped connection are never answered.
+		this.pendingQueries.clear();
+		this.pendingReferences.clear();
 		// initialize input and output streams.
 		try {
 			this.oOutputStream = new ObjectOutputStream(new BufferedOutputStream(this.connectionToServer.getOutputStream()));
@@ -541,48 +696,216 @@ private class ServerInteractionHandler implements Runnable {
 		} catch (IOException e) {
 			System.out.println(e);
 			}
+		// messages to the server are written by their own thread which waits for flow control credit.
+		this.outboundQueue = new OutboundQueue(this.oOutputStream, this.payloadCodec, this.flowController);
+		this.outboundQueue.start("Outbound Queue");
 		}
 
 	/***
-	 * A method to set the value of updated.
+	 * A method to set the value of updated, waking the menu if it is waiting for the list of online clients.
 	 * @param updated The new boolean value of updated.
 	 */
 	public void setUpdated(boolean updated) {
-		this.updated = updated;
+		this.updatedLock.lock();
+		try {
+			this.updated = updated;
+			this.updatedCondition.signalAll();
+			}
+		finally {
+			this.updatedLock.unlock();
+			}
 		}
 
 	/***
-	 * A method to get the value of updated.
-	 * @return The boolean value of updated.
+	 * A method used to enable compression of large payloads, flow control and framing of bulk messages once the Server has agreed to them.
+	 * If the Server agreed to resumable sessions its Messages are numbered from now on, counting from the last one
+	 * received if the session was resumed.
+	 * @param agreed The RegistrationPayload holding the capabilities the Server agreed to.
+	 * @see PayloadCodec
+	 * @see FlowController
 	 */
-	public boolean getUpdated() {
-		return this.updated;
+	public void enableCapabilities(RegistrationPayload agreed) {
+		this.payloadCodec.setCompressionEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_COMPRESSION));
+		this.flowController.setEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_FLOW_CONTROL));
+		this.outboundQueue.setFramingEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_MULTIPLEXING));
+		this.sequenced = agreed.hasCapability(RegistrationPayload.CAPABILITY_RESUME);
+		this.sessionToken = agreed.getSessionToken();
+		if(!agreed.isResumed())
+			this.lastSequenceNumber = 0;
+		this.outboundQueue.setSequenceNumbersEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_DELIVERY_ACKS));
+		if(agreed.hasCapability(RegistrationPayload.CAPABILITY_DELIVERY_ACKS) && this.deliveryTracker == null)
+			this.deliveryTracker = new DeliveryTracker(getUsername(), this::sendMessageToServer, message ->
+				System.out.println("*********************************************************************\n"
+						+ "System Notice : Your Text Message to " + message.getDestinationName() + " could not be delivered: "
+						+ message.getData().toString()
+						+ "\n*********************************************************************"));
+		// messages which were not acknowledged before the connection dropped are sent again.
+		else if(this.deliveryTracker != null)
+			this.deliveryTracker.retransmitAll();
+		this.contentReferences = agreed.hasCapability(RegistrationPayload.CAPABILITY_CONTENT_REFERENCES);
+		if(agreed.hasCapability(RegistrationPayload.CAPABILITY_SIGNALS) && this.signals == null)
+			this.signals = new SignalCoalescer(message -> this.outboundQueue.offer(message));
+		if(this.store != null)
+			this.store.setSession(this.sequenced ? this.sessionToken : null, password, this.lastSequenceNumber);
 		}
 
 	/***
-	 * A method used to send a message to the Server.
-	 * Catches an IOException if an error occurs.
+	 * A method used to send an Image to a client, or to everyone. If the Server agreed to content references the Image
+	 * is sent by the hash of its content, straight away if the Server was seen to hold it before and otherwise once
+	 * the Server answers a CONTENT_QUERY_REQUEST that it does, and is only uploaded if the Server does not hold it.
+	 * @param messageID IMAGE_TRANSFER_REQUEST or IMAGE_SEND_TO_ALL_REQUEST.
+	 * @param destination The name of the receiving client, or "All".
+	 * @param image The Image.
+	 * @see ContentReferencePayload
+	 */
+	public void sendImage(MessageID messageID, String destination, ImagePayload image) {
+		Message upload = new Message(messageID, getUsername(), destination, (Object)image);
+		if(!this.contentReferences) {
+			this.sendMessageToServer(upload);
+			return;
+			}
+		ContentReferencePayload reference = ContentReferencePayload.of(image);
+		String key = reference.getContentHash() + "\n" + destination;
+		if(this.sentContent.containsKey(reference.getContentHash())) {
+			this.pendingReferences.put(key, upload);
+			this.sendMessageToServer(new Message(messageID, getUsername(), destination, reference));
+			}
+		else {
+			this.pendingQueries.put(key, upload);
+			this.sendMessageToServer(new Message(MessageID.CONTENT_QUERY_REQUEST, getUsername(), destination, reference));
+			}
+		}
+
+	/***
+	 * A method used to act on the Server's answer to a CONTENT_QUERY_REQUEST or to an Image sent by reference. An Image
+	 * the Server holds is sent by reference if it was only asked about, while one it does not hold is uploaded.
+	 * @param response The CONTENT_QUERY_RESPONSE, whose source is the destination of the Image.
+	 */
+	private void answerContentQuery(Message response) {
+		ContentReferencePayload reference = (ContentReferencePayload)response.getData();
+		String key = reference.getContentHash() + "\n" + response.getSourceName();
+		if(reference.isHeld()) {
+			this.sentContent.put(reference.getContentHash(), Boolean.TRUE);
+			Message upload = this.pendingQueries.remove(key);
+			if(upload != null) {
+				this.pendingReferences.put(key, upload);
+				this.sendMessageToServer(new Message(upload.getMessageID(), getUsername(), response.getSourceName(), reference.answer(false)));
+				}
+			else
+				this.pendingReferences.remove(key);
+			return;
+			}
+		Message upload = this.pendingQueries.remove(key);
+		if(upload == null)
+			upload = this.pendingReferences.remove(key);
+		if(upload != null) {
+			// the server keeps the image it is sent, so the next one is sent by reference.
+			this.sendMessageToServer(upload);
+			this.sentContent.put(reference.getContentHash(), Boolean.TRUE);
+			}
+		else
+			this.sentContent.remove(reference.getContentHash());
+		}
+
+	/***
+	 * A method used to keep a text message this client received in its store.
+	 * @param text The text message.
+	 */
+	private void storeText(Message text) {
+		if(this.store != null)
+			this.store.storeText(text);
+		}
+
+	/***
+	 * A method used to set the store the text messages received are kept in.
+	 * @param store The MessageStore of the Client.
+	 */
+	public void setMessageStore(MessageStore store) {
+		this.store = store;
+		}
+
+	/***
+	 * A method used to set the number of the last Message received before the session is resumed, such as the last one
+	 * stored when the Client last ran.
+	 * @param lastSequenceNumber The number of the last Message received.
+	 */
+	public void setLastSequenceNumber(long lastSequenceNumber) {
+		this.lastSequenceNumber = lastSequenceNumber;
+		}
+
+	/***
+	 * A method used to send a message to the Server by adding it to the OutboundQueue.
+	 * Blocks while the OutboundQueue is full, i.e. while the Server has not granted enough credit to send more.
 	 * @param message The Message to send to the Server.
-	 * @see ObjectOutputStream
-	 * @see IOException
+	 * @see OutboundQueue#enqueue(Message)
 	 */
 	public void sendMessageToServer(Message message) {
-		try {
-			// write to stream
-			this.oOutputStream.writeUnshared(message.getMessageID());
-			this.oOutputStream.writeUTF(message.getSourceName());
-			this.oOutputStream.writeUTF(message.getDestinationName());
-			this.oOutputStream.writeUnshared(message.getData());
-			// flush data across socket for input stream
-			this.oOutputStream.flush();
-			}
-		catch (IOException e) {
-			System.out.println(e);
+		if(!this.outboundQueue.enqueue(message))
+			System.out.println("The Message could not be sent since the connection to the Server is closed.");
+		}
+
+	/***
+	 * A method used to send a direct text message which is numbered and retransmitted until its receiver acknowledges
+	 * it, if the Server agreed to delivery acknowledgements. Blocks while too many messages to the same receiver are
+	 * waiting to be acknowledged.
+	 * @param message The Message to send to the Server.
+	 * @see DeliveryTracker#track(Message)
+	 */
+	public void sendTrackedMessageToServer(Message message) {
+		if(this.deliveryTracker != null && !this.deliveryTracker.track(message)) {
+			System.out.println("The Message was not sent since too many earlier Messages have not been acknowledged.");
+			return;
 			}
+		this.sendMessageToServer(message);
+		}
+
+	/***
+	 * A method used to tell another Client that this client is typing or has read its Messages, if the Server agreed
+	 * to signals. The signal is coalesced with the others to the same Client and may be dropped.
+	 * @param receivingClient The user name of the Client the signal is for.
+	 * @param signal The typing indicator or read receipt.
+	 * @see SignalCoalescer
+	 */
+	public void sendSignal(String receivingClient, SignalPayload signal) {
+		if(this.signals != null)
+			this.signals.submit(new Message(MessageID.SIGNAL, getUsername(), receivingClient, signal));
+		}
+
+	/***
+	 * A method used to subscribe to the events published to every topic matching a pattern.
+	 * @param pattern The topic pattern, which may use * for one segment and end with # for any further segments.
+	 * @see TopicTrie
+	 */
+	public void subscribe(String pattern) {
+		this.topicSubscriptions.add(pattern);
+		this.sendMessageToServer(new Message(MessageID.TOPIC_SUBSCRIBE_REQUEST, getUsername(), pattern, ""));
+		}
+
+	/***
+	 * A method used to stop receiving the events of a topic pattern.
+	 * @param pattern The topic pattern which was subscribed to.
+	 */
+	public void unsubscribe(String pattern) {
+		this.topicSubscriptions.remove(pattern);
+		this.sendMessageToServer(new Message(MessageID.TOPIC_UNSUBSCRIBE_REQUEST, getUsername(), pattern, ""));
+		}
+
+	/***
+	 * A method used to return flow control credit to the Server once a message from it has been processed.
+	 * @param message The processed Message.
+	 * @see FlowController#consumed(long)
+	 */
+	private void returnCredit(Message message) {
+		if(OutboundQueue.isControlMessage(message.getMessageID()) || this.outboundQueue.isFramed(message.getMessageID()))
+			return;
+		CreditPayload credit = this.flowController.consumed(message.getSize());
+		if(credit != null)
+			this.sendMessageToServer(new Message(MessageID.FLOW_CONTROL_CREDIT, getUsername(), Client.SERVER_NAME, credit));
 		}
 
 	/***
 	 * A method used to receive a message from the Server.
+	 * Bulk messages which arrive as MESSAGE_FRAMEs are joined back together before they are returned.
 	 * Catches IOException and ClassNotFoundException if an error occurs.
 	 * @return The Message retrieved from the Server.
 	 * @see ObjectInputStream
@@ -592,29 +915,66 @@ private class ServerInteractionHandler implements Runnable {
 	public Message getMessageFromServer() {
 		Message message = null;
 		try {
-			// read the message variable by variable since Message isn't serializable.
-			MessageID messageID = ((MessageID)this.oInputStream.readUnshared());
-			String sourceName = this.oInputStream.readUTF();
-			String destinationName = this.oInputStream.readUTF();
-			Object data = this.oInputStream.readUnshared();
-			message = new Message(messageID, sourceName, destinationName, data);
+			// frames of a bulk message are read until its last frame completes it.
+			while(message == null) {
+				// read the message variable by variable since Message isn't serializable.
+				MessageID messageID = ((MessageID)this.oInputStream.readUnshared());
+				String sourceName = this.oInputStream.readUTF();
+				String destinationName = this.oInputStream.readUTF();
+				// every Message except control Messages is numbered once the session can be resumed.
+				if(this.sequenced && !OutboundQueue.isControlMessage(messageID)) {
+					long sequenceNumber = this.oInputStream.readLong();
+					if(sequenceNumber > this.lastSequenceNumber)
+						this.lastSequenceNumber = sequenceNumber;
+					}
+				long conversationSequenceNumber = 0;
+				long lowestUnacknowledged = 0;
+				if(this.outboundQueue.isSequenceNumbersEnabled() && !OutboundQueue.isControlMessage(messageID)) {
+					conversationSequenceNumber = this.oInputStream.readLong();
+					if(conversationSequenceNumber != 0)
+						lowestUnacknowledged = this.oInputStream.readLong();
+					}
+				Object data = this.payloadCodec.decode(this.oInputStream.readUnshared());
+				message = new Message(messageID, sourceName, destinationName, data);
+				message.setSequenceNumber(conversationSequenceNumber, lowestUnacknowledged);
+				if(messageID == MessageID.MESSAGE_FRAME) {
+					this.returnCredit(message);
+					message = this.frameAssembler.accept(message);
+					}
+				}
 
 			}
 		catch (IOException | ClassNotFoundException e) {
 			System.out.println(e);
+			message = null;
 			}
 		return message;
 		}
 
 	/***
-	 * A method used to send a request to the Server to retrieve All Online Client's user names.
+	 * A method used to send a request to the Server to retrieve All Online Client's user names, blocking until it
+	 * responds or ONLINE_CLIENTS_TIMEOUT_MILLIS pass, after which the list last received is used.
+	 * The request is sent outside the lock, since sending may wait for credit granted by the Thread which responds.
 	 * @see Message
 	 * @see ServerInteractionHandler#sendMessageToServer(Message)
 	 */
 	public void updateOnlineClients() {
+		this.setUpdated(false);
 		Message output = new Message(MessageID.ONLINE_CLIENTS_REQUEST, getUsername(), Client.SERVER_NAME,
 				"update");
 		this.sendMessageToServer(output);
+		this.updatedLock.lock();
+		try {
+			long remaining = TimeUnit.MILLISECONDS.toNanos(ONLINE_CLIENTS_TIMEOUT_MILLIS);
+			while(!this.updated && remaining > 0)
+				remaining = this.updatedCondition.awaitNanos(remaining);
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			}
+		finally {
+			this.updatedLock.unlock();
+			}
 		}
 
 	/***
@@ -622,6 +982,11 @@ private class ServerInteractionHandler implements Runnable {
 	 * Catches an IOException if an error occurs.
 	 */
 	public void closeConnectionToServer() {
+		this.closing = true;
+		if(this.signals != null)
+			this.signals.shutdown();
+		if(this.store != null)
+			this.store.close();
 		try {
 			this.connectionToServer.close();
 			}
@@ -630,106 +995,161 @@ private class ServerInteractionHandler implements Runnable {
 			}
 		}
 
+	/***
+	 * A method used to reconnect to the Server after the connection was lost and resume the Client's session, so that
+	 * the Server only writes again the Messages which were not received. Attempts are spaced by a random wait of up to
+	 * an exponentially growing backoff. If the session can no longer be resumed the Client logs in again with its password.
+	 * @return A boolean which is true if the Client is connected and logged in again.
+	 * @see RegistrationPayload#resume(String, int, String, long)
+	 */
+	private boolean reconnect() {
+		long giveUpAt = System.currentTimeMillis() + ServerInteractionHandler.RECONNECT_GIVE_UP_MILLIS;
+		long backoff = ServerInteractionHandler.RECONNECT_INITIAL_BACKOFF_MILLIS;
+		while(!this.closing && System.currentTimeMillis() < giveUpAt) {
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+				}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+				}
+			backoff = Math.min(backoff * 2, ServerInteractionHandler.RECONNECT_MAX_BACKOFF_MILLIS);
+			Connection connection;
+			try {
+				connection = this.serverTransport.connect(ServerInteractionHandler.CONNECT_TIMEOUT_MILLIS);
+				}
+			catch (IOException e) {
+				continue;
+				}
+			this.openConnection(connection);
+			this.sendMessageToServer(new Message(MessageID.REGISTRATION_REQUEST, getUsername(), Client.SERVER_NAME,
+					RegistrationPayload.resume(password, RegistrationPayload.SUPPORTED_CAPABILITIES, this.sessionToken, this.lastSequenceNumber)));
+			Message response = this.getMessageFromServer();
+			if(response != null && response.getData() instanceof RegistrationPayload
+					&& ((RegistrationPayload)response.getData()).isAccepted()) {
+				RegistrationPayload agreed = (RegistrationPayload)response.getData();
+				this.enableCapabilities(agreed);
+				// subscriptions belong to a connection, so they are made again on the new one.
+				for(String pattern: this.topicSubscriptions)
+					this.sendMessageToServer(new Message(MessageID.TOPIC_SUBSCRIBE_REQUEST, getUsername(), pattern, ""));
+				System.out.println("*********************************************************************\n"
+						+ "System Notice : Reconnected to the Server. " + (agreed.isResumed() ? "Your Session was resumed."
+								: "Your Session could not be resumed, so Messages sent while disconnected may be missing.")
+						+ "\n*********************************************************************");
+				return true;
+				}
+			this.outboundQueue.close();
+			this.flowController.close();
+			try {
+				connection.close();
+				}
+			catch (IOException e) {
+				System.out.println(e);
+				}
+			}
+		return false;
+		}
+
 	@Override
 	public void run() {
 		Message input;
 		// while the connection is open keep checking for input from the server
 		while(!this.connectionToServer.isClosed()) {
 			input = this.getMessageFromServer();
+			// the connection to the server was lost
+			if(input == null) {
+				System.out.println("*********************************************************************\n"
+						+ "System Notice : The Connection to the Server was lost."
+						+ "\n*********************************************************************");
+				this.outboundQueue.close();
+				this.flowController.close();
+				// reconnect unless the Client is closing the connection itself.
+				if(!this.closing && this.sessionToken != null) {
+					try {
+						this.connectionToServer.close();
+						}
+					catch (IOException e) {
+						System.out.println(e);
+						}
+					System.out.println("*********************************************************************\n"
+							+ "System Notice : Reconnecting to the Server..."
+							+ "\n*********************************************************************");
+					if(this.reconnect())
+						continue;
+					}
+				this.closeConnectionToServer();
+				return;
+				}
 			switch(input.getMessageID()) {
+				// the server has processed messages and grants credit to send more
+				case FLOW_CONTROL_CREDIT: {
+					this.flowController.grant((CreditPayload)input.getData());
+					break;
+					}
+				// the server refused a request since it was sent too quickly or the server is busy
+				case THROTTLE_RESPONSE: {
+					System.out.println("*********************************************************************\n"
+							+ "System Notice : " + input.getData().toString()
+							+ "\n*********************************************************************");
+					break;
+					}
+				// the receiver of this client's text messages acknowledged them, or the server could not deliver one
+				case MESSAGE_CONFIRMATION_RECEIPT: {
+					if(this.deliveryTracker != null)
+						this.deliveryTracker.acknowledged(input.getSourceName(), (DeliveryAckPayload)input.getData());
+					break;
+					}
 				// received a text message for this client
 				case TEXT_TRANSFER_RECEIPT: {
+					// a retransmitted message which was already received is only acknowledged again
+					if(input.getSequenceNumber() != 0 && this.deliveryTracker != null && !this.deliveryTracker.received(input))
+						break;
 					// print out the text message
 					System.out.println("---------------------------------------------\nText Message from " +
 							input.getSourceName() + "(To You): " + input.getData().toString() +
 							"\n---------------------------------------------");
+					this.storeText(input);
+					// the sender is told the message was read once it has been printed
+					this.sendSignal(input.getSourceName(), SignalPayload.read(input.getSequenceNumber()));
+					break;
+					}
+				// another client is typing to this client or has read its text messages
+				case SIGNAL: {
+					SignalPayload signal = (SignalPayload)input.getData();
+					if(signal.getKind() == SignalPayload.Kind.TYPING)
+						System.out.println("System Notice : " + input.getSourceName() + " is typing...");
+					else if(signal.getKind() == SignalPayload.Kind.READ)
+						System.out.println("System Notice : " + input.getSourceName() + " read your Text Messages"
+								+ (signal.getReadUpTo() != 0 ? " up to #" + DeliveryTracker.positionOf(signal.getReadUpTo()) : "") + ".");
 					break;
 					}
 				// received an image message confirmation for this client
 				case IMAGE_TRANSFER_CONFIRMATION_REQUEST: {
 					String display = input.getData().toString();
-					Scanner in = getInput();
-					String choice = "";
-					boolean retrieveImage = false;
-					// asks the user if they want to download the image
-					while(!(choice.equals("Yes") || choice.equals("No"))){
-						// inform the user we are waiting for System.in to be free
-						System.out.println("*********************************************************************\n"
-										+ "System Notice : Waiting for Previous Input to Finish on System.in"
-										+ "\n*********************************************************************");
-						setIsConfirming(true);
-						System.out.println(display);
-						choice = in.nextLine();
-						switch(choice) {
-							// they want to view the image
-							case "Yes": {
-								setIsConfirming(false);
-								retrieveImage = true;
-								break;
-								}
-							// they dont want to view the image
-							case "No": {
-								setIsConfirming(false);
-								retrieveImage = false;
-								break;
-								}
-							// ask them to enter their option again
-							default : {
-								display = "Invalid Option, Please enter Yes or No";
-								break;
-								}
+					// show the preview of the offered image so the user can decide whether to download it
+					if(input.getData() instanceof ImageOfferPayload && ((ImageOfferPayload)input.getData()).getPreview() != null) {
+						ImageOfferPayload offer = (ImageOfferPayload)input.getData();
+						System.out.println("*********************************************************************\n" +
+											"System Notice : Preview of " + input.getSourceName() + "'s Image (" +
+											(offer.getFullImageSize() / 1024) + " KB) Opening in JFrame." +
+											"\n*********************************************************************");
+						ClientImageDisplayer.display(offer.getPreview());
 						}
-					}
-
-					// sends the confirmation to the server
-					Message outMessage = new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_RESPONSE, getUsername(),
-													input.getSourceName(), retrieveImage);
-					this.sendMessageToServer(outMessage);
-
+					// asks the user if they want to download the image once the console is free, without holding up this Thread
+					String source = input.getSourceName();
+					getConsole().prompt(source + "\n" + MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST, display,
+							retrieveImage -> this.sendMessageToServer(new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_RESPONSE,
+									getUsername(), source, retrieveImage)));
 					break;
 					}
 
 					// received an image message confirmation for this client
 					case AUDIO_TRANSFER_CONFIRMATION_REQUEST: {
-						String display = input.getData().toString();
-						Scanner in = getInput();
-						String choice = "";
-						boolean retrieveAudio = false;
-						// asks the user if they want to download the image
-						while(!(choice.equals("Yes") || choice.equals("No"))){
-							// inform the user we are waiting for System.in to be free
-							System.out.println("*********************************************************************\n"
-											+ "System Notice : Waiting for Previous Input to Finish on System.in"
-											+ "\n*********************************************************************");
-							setIsConfirming(true);
-							System.out.println(display);
-							choice = in.nextLine();
-							switch(choice) {
-								// they want to get the audio file
-								case "Yes": {
-									setIsConfirming(false);
-									retrieveAudio = true;
-									break;
-									}
-								// they dont want to get the audio file
-								case "No": {
-									setIsConfirming(false);
-									retrieveAudio = false;
-									break;
-									}
-								// ask them to enter their option again
-								default : {
-									display = "Invalid Option, Please enter Yes or No";
-									break;
-									}
-							}
-						}
-
-						// sends the confirmation to the server
-						Message outMessage = new Message(MessageID.AUDIO_TRANSFER_CONFIRMATION_RESPONSE, getUsername(),
-														input.getSourceName(), retrieveAudio);
-						this.sendMessageToServer(outMessage);
-
+						// asks the user if they want to get the audio file once the console is free, without holding up this Thread
+						String source = input.getSourceName();
+						getConsole().prompt(source + "\n" + MessageID.AUDIO_TRANSFER_CONFIRMATION_REQUEST, input.getData().toString(),
+								retrieveAudio -> this.sendMessageToServer(new Message(MessageID.AUDIO_TRANSFER_CONFIRMATION_RESPONSE,
+										getUsername(), source, retrieveAudio)));
 						break;
 						}
 
@@ -739,26 +1159,61 @@ private class ServerInteractionHandler implements Runnable {
 										"System Notice : " + input.getSourceName() +
 										" sent you an Image Opening in JFrame." +
 										"\n*********************************************************************");
-					// start a new JFrame in a new Thread to display the Image
-					new Thread(new ClientImageDisplayer((ImageIcon)input.getData())).start();
+					// decode the Image and display it in a JFrame on the background pool so this Thread keeps reading
+					ClientImageDisplayer.display((ImagePayload)input.getData());
+					// the server held the image it offered, so it can be forwarded by reference.
+					if(this.contentReferences)
+						this.sentContent.put(((ImagePayload)input.getData()).getContentHash(), Boolean.TRUE);
+					break;
+					}
+				// whether the server holds an image this client asked about or sent by reference
+				case CONTENT_QUERY_RESPONSE: {
+					this.answerContentQuery(input);
 					break;
 					}
 
-					//Receive audio file from a client
+					//Receive audio stream from a client
 					case AUDIO_TRANSFER_RECEIPT : {
+						AudioPayload audio = (AudioPayload)input.getData();
 						System.out.println("*********************************************************************\n" +
 											"System Notice : " + input.getSourceName() +
 											" sent you an audio playing now." +
 											"\n*********************************************************************");
-						// Play the audio file
-						//Media_Player player = (Media_Player)input.getData();
-						try
-						{
-							//player.play_audio();
-						}catch(Exception error)
-						{
-							System.out.println("Could not play sound due to :\n"+error);
+						// play the audio stream in a new Thread as its chunks arrive
+						Media_Player player = new Media_Player(audio);
+						this.incomingAudioStreams.put(audio.getStreamID(), player);
+						new Thread(player).start();
+						break;
+						}
+
+					// received a chunk of an audio stream being played
+					case AUDIO_STREAM_CHUNK : {
+						AudioChunkPayload chunk = (AudioChunkPayload)input.getData();
+						Media_Player player = this.incomingAudioStreams.get(chunk.getStreamID());
+						if(player != null) {
+							player.addChunk(chunk);
+							if(chunk.isLastChunk())
+								this.incomingAudioStreams.remove(chunk.getStreamID());
+							}
+						break;
 						}
+
+					// an audio offer was accepted so stream the audio file to the receiving client
+					case AUDIO_STREAM_START : {
+						AudioPayload audio = (AudioPayload)input.getData();
+						File audioFile = removeOutgoingAudioStream(audio.getStreamID());
+						String receivingClient = input.getSourceName();
+						if(audioFile != null) {
+							new Thread(() -> {
+								try {
+									Media_Player.streamFile(audio, audioFile, chunk -> this.sendMessageToServer(
+											new Message(MessageID.AUDIO_STREAM_CHUNK, getUsername(), receivingClient, chunk)));
+									}
+								catch (IOException e) {
+									System.out.println("The Audio could not be streamed." + e);
+									}
+								}).start();
+							}
 						break;
 						}
 				// receive a text message send to everyone
@@ -766,12 +1221,79 @@ private class ServerInteractionHandler implements Runnable {
 					System.out.println("---------------------------------------------\nText Message from " +
 							input.getSourceName() +" (To Everyone): " + input.getData().toString() +
 							"\n---------------------------------------------");
+					this.storeText(input);
+					break;
+					}
+				// receive a text message sent to this client and others, addressed to all of them
+				case TEXT_MULTICAST_RECEIPT: {
+					System.out.println("---------------------------------------------\nText Message from " +
+							input.getSourceName() + " (To " + input.getDestinationName() + "): " + input.getData().toString() +
+							"\n---------------------------------------------");
+					this.storeText(input);
+					break;
+					}
+				// what became of a text message this client sent to several clients
+				case MULTICAST_RESPONSE: {
+					System.out.println("*********************************************************************\n"
+							+ "System Notice - Your Text Message was sent to:\n" + input.getData().toString()
+							+ "*********************************************************************");
+					break;
+					}
+				// receive a post to a chat room this client is a member of, addressed to the room
+				case ROOM_POST_RECEIPT: {
+					System.out.println("---------------------------------------------\nText Message from " +
+							input.getSourceName() + " (To " + input.getDestinationName() + " #"
+							+ ((RoomPayload)input.getData()).getPostNumber() + "): " + input.getData().toString() +
+							"\n---------------------------------------------");
+					this.storeText(input);
+					break;
+					}
+				// the outcome of a request to create, join, leave or post to a chat room
+				case ROOM_RESPONSE: {
+					System.out.println("*********************************************************************\n"
+							+ "System Notice - " + input.getData().toString()
+							+ "\n*********************************************************************");
+					break;
+					}
+				// receive an event published to a topic this client subscribed to, addressed to the topic
+				case TOPIC_EVENT: {
+					System.out.println("---------------------------------------------\nEvent from " +
+							input.getSourceName() + " (On " + input.getDestinationName() + "): " + input.getData().toString() +
+							"\n---------------------------------------------");
+					break;
+					}
+				// the text messages matching a search of this client's history
+				case SEARCH_RESPONSE: {
+					System.out.println("*********************************************************************\n"
+							+ "System Notice - " + input.getData().toString()
+							+ "*********************************************************************");
+					break;
+					}
+				// an offer was answered on another device this client is logged in on, naming the request it withdraws
+				case CONFIRMATION_WITHDRAWN: {
+					// the question is dropped if it is still waiting to be answered
+					getConsole().withdraw(input.getSourceName() + "\n" + input.getData());
+					System.out.println("*********************************************************************\n"
+							+ "System Notice - The " + (input.getData() == MessageID.AUDIO_TRANSFER_CONFIRMATION_REQUEST ? "audio file" : "file")
+							+ " offered by " + input.getSourceName() + " was answered on another of your devices."
+							+ "\n*********************************************************************");
+					break;
+					}
+				// the outcome of a request to subscribe, unsubscribe or publish to a topic
+				case TOPIC_RESPONSE: {
+					System.out.println("*********************************************************************\n"
+							+ "System Notice - " + input.getData().toString()
+							+ "\n*********************************************************************");
 					break;
 					}
 				// received a response to updating online clients' user names
 				case ONLINE_CLIENTS_RESPONSE: {
 					// update the array list
-					setOnlineClientNames((ArrayList<String>)input.getData());
+					@SuppressWarnings("unchecked")
+					ArrayList<String> onlineClients = (ArrayList<String>)input.getData();
+					setOnlineClientNames(onlineClients);
+					if(this.store != null)
+						this.store.setOnlineClients(onlineClients);
 					// indicate it has been updated
 					this.setUpdated(true);
 					break;
@@ -791,6 +1313,11 @@ private class ServerInteractionHandler implements Runnable {
 					}
 
 				}
+			// return flow control credit now that the message has been processed
+			this.returnCredit(input);
+			// the store may resume after this message once the texts before it are stored
+			if(this.store != null && this.sequenced)
+				this.store.setHighWaterMark(this.lastSequenceNumber);
 			}
 
 
@@ -1,47 +1,161 @@
 
-
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 /***
  * A class to display Image Messages sent to the Client.
+ * Images are decoded on a small background pool, subsampled while reading so that only as many pixels as fit in the
+ * display window are decoded, and the decoded Images are kept in a bounded least recently used cache.
  * @author Pieter Janse van Rensburg(jnspie007@myuct.ac.za)
- * @version 05/04/2017
+ * @version 19/10/2026
  * @since 29/03/2017
  *
  */
-public class ClientImageDisplayer extends JFrame implements Runnable{
+public class ClientImageDisplayer implements Runnable{
 
 	// static variables
-	private static final long serialVersionUID = 1L;
+	private final static int MAX_DISPLAY_DIMENSION = 500;
+	private final static int DECODE_THREADS = 2;
+	private final static int DECODE_QUEUE_CAPACITY = 16;
+	// the decoded image cache is bounded by the number of bytes its pixels occupy.
+	private final static long DECODED_CACHE_CAPACITY_BYTES = 32L * 1024 * 1024;
+	private final static ThreadPoolExecutor decodePool = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+			0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(DECODE_QUEUE_CAPACITY), runnable -> {
+				Thread thread = new Thread(runnable, "Image Decoder");
+				thread.setDaemon(true);
+				return thread;
+				});
+	// an access ordered LinkedHashMap used as a least recently used cache, guarded by its own monitor.
+	private final static LinkedHashMap<String, BufferedImage> decodedImageCache =
+			new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+	private static long decodedImageCacheBytes = 0;
 	// instance variables
-	private ImageIcon displayImage;
-	
+	private ImagePayload imagePayload;
+
+	/***
+	 * The constructor of the ClientImageDisplayer Class.
+	 * @param imagePayload The ImagePayload holding the encoded bytes of the Image to be displayed.
+	 * @see ImagePayload
+	 */
+	public ClientImageDisplayer(ImagePayload imagePayload) {
+		this.imagePayload = imagePayload;
+		}
+
+	/***
+	 * A method used to decode and display an Image on the background pool so that the calling Thread is never blocked.
+	 * If the pool is saturated the Image is dropped and the user is informed.
+	 * @param imagePayload The ImagePayload holding the encoded bytes of the Image to be displayed.
+	 * @see ThreadPoolExecutor
+	 */
+	public static void display(ImagePayload imagePayload) {
+		try {
+			decodePool.execute(new ClientImageDisplayer(imagePayload));
+			}
+		catch (RejectedExecutionException e) {
+			System.out.println("Too many Images are waiting to be displayed. " + imagePayload.getFileName() + " was skipped.");
+			}
+		}
+
+	/***
+	 * A method used to retrieve the decoded Image from the cache, or to decode it and add it to the cache.
+	 * @return The decoded Image scaled to fit the display window or null if it could not be decoded.
+	 * @throws IOException If the encoded bytes of the Image could not be decoded.
+	 * @see ImagePayload#decodeSubsampled(int)
+	 */
+	private BufferedImage getDecodedImage() throws IOException {
+		String contentHash = this.imagePayload.getContentHash();
+		synchronized(decodedImageCache) {
+			BufferedImage cached = decodedImageCache.get(contentHash);
+			if(cached != null)
+				return cached;
+			}
+		BufferedImage decoded = this.imagePayload.decodeSubsampled(MAX_DISPLAY_DIMENSION);
+		if(decoded == null)
+			return null;
+		decoded = ClientImageDisplayer.scaleToFit(decoded, MAX_DISPLAY_DIMENSION);
+		synchronized(decodedImageCache) {
+			if(decodedImageCache.put(contentHash, decoded) == null)
+				decodedImageCacheBytes += ClientImageDisplayer.sizeOf(decoded);
+			// evict the least recently used images until the cache fits in its capacity again.
+			Iterator<Map.Entry<String, BufferedImage>> eldest = decodedImageCache.entrySet().iterator();
+			while(decodedImageCacheBytes > DECODED_CACHE_CAPACITY_BYTES && eldest.hasNext()) {
+				Map.Entry<String, BufferedImage> entry = eldest.next();
+				if(entry.getKey().equals(contentHash))
+					continue;
+				decodedImageCacheBytes -= ClientImageDisplayer.sizeOf(entry.getValue());
+				eldest.remove();
+				}
+			}
+		return decoded;
+		}
+
 	/***
-	 * The constructor of the ClientImageDisplayer Class. Creates and shows the JFrame to display the Image.
-	 * @param displayImage The ImageIcon to be displayed.
+	 * A method used to scale an Image down so that neither its width nor height exceed the given dimension.
+	 * @param image The Image to scale.
+	 * @param maxDimension The largest width or height of the scaled Image.
+	 * @return The scaled Image, or the given Image if it already fits.
 	 */
-	public ClientImageDisplayer(ImageIcon displayImage) {
-		this.displayImage = displayImage;
-		JLabel imageDisplay = new JLabel(this.displayImage);
-		imageDisplay.setBounds(0, 0, 500, 500);
+	private static BufferedImage scaleToFit(BufferedImage image, int maxDimension) {
+		double scale = (double)maxDimension / Math.max(image.getWidth(), image.getHeight());
+		if(scale >= 1.0)
+			return image;
+		int width = Math.max(1, (int)Math.round(image.getWidth() * scale));
+		int height = Math.max(1, (int)Math.round(image.getHeight() * scale));
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(image, 0, 0, width, height, null);
+			}
+		finally {
+			graphics.dispose();
+			}
+		return scaled;
+		}
+
+	/***
+	 * A method used to estimate the number of bytes the pixels of an Image occupy.
+	 * @param image The Image.
+	 * @return The estimated number of bytes the pixels of the Image occupy.
+	 */
+	private static long sizeOf(BufferedImage image) {
+		return 4L * image.getWidth() * image.getHeight();
+		}
+
+	/***
+	 * A method used to Create and show the JFrame to display the Image. Must be called on the Event Dispatch Thread.
+	 * @param image The decoded Image to display.
+	 * @see JFrame
+	 */
+	private void showFrame(BufferedImage image) {
+		JFrame frame = new JFrame();
+		JLabel imageDisplay = new JLabel(new ImageIcon(image));
 		imageDisplay.setVisible(true);
-		this.add(imageDisplay);
-		
+		frame.add(imageDisplay);
+
 		// set up JFrame
-		this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-		this.setTitle("Image Message");
-		this.setSize(500, 500);
-		this.setResizable(false);
-		this.setVisible(true);
-		this.setLocationRelativeTo(null);
-		toFront();
-		pack();
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		frame.setTitle("Image Message");
+		frame.setResizable(false);
+		frame.pack();
+		frame.setLocationRelativeTo(null);
+		frame.setVisible(true);
+		frame.toFront();
 		}
-	
+
 	/***
 	 * The main method used to test if the class is working as intended.
 	 * @param args A String Array of command-line arguments.
@@ -49,7 +163,7 @@ public class ClientImageDisplayer extends JFrame implements Runnable{
 	public static void main(String args[]) {
 		
 		try {
-			new ClientImageDisplayer(new ImageIcon(ImageIO.read(new File("sun.jpg"))));
+			ClientImageDisplayer.display(ImagePayload.fromFile(new File("sun.jpg")));
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -57,8 +171,29 @@ public class ClientImageDisplayer extends JFrame implements Runnable{
 		}
 
 
+	/***
+	 * The method which is called on the background pool. Decodes the Image and shows it on the Event Dispatch Thread.
+	 * @see SwingUtilities#invokeLater(Runnable)
+	 */
 	@Override
 	public void run() {
-			
+		try {
+			BufferedImage image = this.getDecodedImage();
+			if(image == null) {
+				System.out.println("The Received Image is not in a supported format.");
+				return;
+				}
+			SwingUtilities.invokeLater(() -> {
+				try {
+					this.showFrame(image);
+					}
+				catch (RuntimeException e) {
+					System.out.println("The Received Image could not be displayed." + e);
+					}
+				});
+			}
+		catch (IOException | RuntimeException e) {
+			System.out.println("The Received Image could not be decoded." + e);
+			}
 	}
 }
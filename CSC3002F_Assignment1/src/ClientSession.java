@@ -0,0 +1,268 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/***
+ * The state of a logged in Client which outlives any one connection, so that a Client whose connection drops can
+ * resume where it left off. A Client logged in on several devices has one session for each device, so each device
+ * resumes its own connection. Every interactive Message written to the Client's connection is numbered and kept in a
+ * bounded replay buffer until the Client reconnects and reports the last number it received, after which only the
+ * Messages it missed are written again. The offers waiting for the Client's confirmation are parked with the session
+ * while it is disconnected.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SessionRegistry
+ * @see OutboundQueue#setSequencer(ToLongFunction)
+ */
+public class ClientSession {
+
+	// static variables
+	private final static int MAX_REPLAY_MESSAGES = 256;
+	private final static long MAX_REPLAY_BYTES = 1024 * 1024;
+
+	// instance variables
+	private final String username;
+	// identifies the device the session belongs to among the sessions of the Client.
+	private final String deviceID;
+	private final ReentrantLock sessionLock;
+	// the Messages written most recently with their numbers, oldest first.
+	private final ArrayDeque<Message> replayMessages;
+	private final ArrayDeque<Long> replaySequenceNumbers;
+	private long replayBytes;
+	private long nextSequenceNumber;
+	// the OutboundQueue of the connection the session is attached to, or null while the Client is disconnected.
+	private OutboundQueue attachedQueue;
+	// the connection detached last, which may still be giving up the Messages it could not write.
+	private OutboundQueue detachedQueue;
+	private long detachedAtMillis;
+	private ArrayList<Message> parkedOffers;
+	private boolean discarded;
+
+	/***
+	 * The Constructor of the ClientSession Class.
+	 * @param username The user name of the Client.
+	 * @param deviceID Identifies the device the session belongs to.
+	 * @param lastSequenceNumber The number the Client last received, so that a session recreated after a restart
+	 * carries on numbering after it.
+	 */
+	public ClientSession(String username, String deviceID, long lastSequenceNumber) {
+		this.username = username;
+		this.deviceID = deviceID;
+		this.sessionLock = new ReentrantLock();
+		this.replayMessages = new ArrayDeque<Message>();
+		this.replaySequenceNumbers = new ArrayDeque<Long>();
+		this.replayBytes = 0;
+		this.nextSequenceNumber = lastSequenceNumber + 1;
+		this.detachedAtMillis = System.currentTimeMillis();
+		this.parkedOffers = new ArrayList<Message>();
+		}
+
+	/***
+	 * A method used to retrieve the user name of the Client.
+	 * @return The user name of the Client.
+	 */
+	public String getUsername() {
+		return this.username;
+		}
+
+	/***
+	 * A method used to retrieve the identifier of the device the session belongs to.
+	 * @return The device identifier.
+	 */
+	public String getDeviceID() {
+		return this.deviceID;
+		}
+
+	/***
+	 * A method used to find when the Client disconnected from the session.
+	 * @return The time in milliseconds, or 0 if the session is attached to a connection.
+	 */
+	public long getDetachedAtMillis() {
+		this.sessionLock.lock();
+		try {
+			return this.attachedQueue == null ? this.detachedAtMillis : 0;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to attach the session to a new connection of the Client.
+	 * @param queue The OutboundQueue of the connection.
+	 * @return The sequencer for the OutboundQueue, which numbers the Messages it writes while it stays attached.
+	 */
+	public ToLongFunction<Message> attach(OutboundQueue queue) {
+		this.sessionLock.lock();
+		try {
+			this.attachedQueue = queue;
+			this.detachedQueue = null;
+			this.detachedAtMillis = 0;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		return message -> this.sequence(queue, message);
+		}
+
+	/***
+	 * A method used to detach the session from a connection which closed, unless a newer connection already resumed it.
+	 * @param queue The OutboundQueue of the closed connection.
+	 * @return A boolean which is true if the session was attached to the connection.
+	 */
+	public boolean detach(OutboundQueue queue) {
+		this.sessionLock.lock();
+		try {
+			if(this.attachedQueue != queue)
+				return false;
+			this.attachedQueue = null;
+			this.detachedQueue = queue;
+			this.detachedAtMillis = System.currentTimeMillis();
+			return true;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to check whether the Client has been disconnected for longer than the given time.
+	 * @param now The current time in milliseconds.
+	 * @param idleMillis How long a disconnected session is kept.
+	 * @return A boolean which is true if the session can be discarded.
+	 */
+	public boolean isExpired(long now, long idleMillis) {
+		this.sessionLock.lock();
+		try {
+			return this.attachedQueue == null && now - this.detachedAtMillis > idleMillis;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to number a Message as it is written and keep interactive Messages for replay.
+	 * Control Messages, bulk Messages and ephemeral signals are not replayed and are numbered 0.
+	 * @param queue The OutboundQueue writing the Message.
+	 * @param message The Message being written.
+	 * @return The number of the Message, or 0 if it is not replayed.
+	 */
+	private long sequence(OutboundQueue queue, Message message) {
+		if(Lane.of(message.getMessageID()) != Lane.INTERACTIVE || message.getMessageID() == MessageID.SIGNAL)
+			return 0;
+		this.sessionLock.lock();
+		try {
+			// a connection which has been replaced is still writing to a socket the Client no longer reads.
+			if(this.discarded || queue != (this.attachedQueue != null ? this.attachedQueue : this.detachedQueue)
+					|| message.getSize() > ClientSession.MAX_REPLAY_BYTES)
+				return 0;
+			long sequenceNumber = this.nextSequenceNumber++;
+			if(message.getPayload() != null)
+				message.getPayload().retain();
+			this.replayMessages.addLast(message);
+			this.replaySequenceNumbers.addLast(sequenceNumber);
+			this.replayBytes += message.getSize();
+			while(this.replayMessages.size() > ClientSession.MAX_REPLAY_MESSAGES || this.replayBytes > ClientSession.MAX_REPLAY_BYTES)
+				this.evictOldest();
+			return sequenceNumber;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to drop the oldest Message from the replay buffer. Must hold the session's lock.
+	 */
+	private void evictOldest() {
+		Message evicted = this.replayMessages.pollFirst();
+		this.replaySequenceNumbers.pollFirst();
+		this.replayBytes -= evicted.getSize();
+		OutboundQueue.release(evicted);
+		}
+
+	/***
+	 * A method used to take the Messages the Client missed out of the replay buffer so they can be written again.
+	 * They are numbered again as they are written, so the buffer only ever holds one copy of each.
+	 * @param lastSequenceNumber The number of the last Message the Client received.
+	 * @return The Messages numbered after it, oldest first. Each still holds the buffer's reference to its Payload.
+	 */
+	public ArrayList<Message> replayAfter(long lastSequenceNumber) {
+		ArrayList<Message> missed = new ArrayList<Message>();
+		this.sessionLock.lock();
+		try {
+			// Messages evicted before the Client reconnected are lost.
+			if(!this.replaySequenceNumbers.isEmpty() && this.replaySequenceNumbers.peekFirst() > lastSequenceNumber + 1
+					|| this.replaySequenceNumbers.isEmpty() && this.nextSequenceNumber > lastSequenceNumber + 1)
+				Metrics.increment("session.replay_gaps");
+			while(!this.replayMessages.isEmpty()) {
+				Message message = this.replayMessages.pollFirst();
+				if(this.replaySequenceNumbers.pollFirst() > lastSequenceNumber)
+					missed.add(message);
+				else
+					OutboundQueue.release(message);
+				}
+			this.replayBytes = 0;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		Metrics.add("session.replayed_messages", missed.size());
+		return missed;
+		}
+
+	/***
+	 * A method used to keep the offers waiting for the Client's confirmation while it is disconnected.
+	 * @param offers The offers, which the session now holds the references to.
+	 */
+	public void parkOffers(ArrayList<Message> offers) {
+		this.sessionLock.lock();
+		try {
+			this.parkedOffers.addAll(offers);
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to take the parked offers back once the Client has resumed.
+	 * @return The offers, whose references now belong to the caller.
+	 */
+	public ArrayList<Message> takeParkedOffers() {
+		this.sessionLock.lock();
+		try {
+			ArrayList<Message> offers = this.parkedOffers;
+			this.parkedOffers = new ArrayList<Message>();
+			return offers;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to release the Messages the session holds once it is discarded. Messages written afterwards are
+	 * no longer kept.
+	 * @return A boolean which is true if any parked offers were released.
+	 */
+	public boolean release() {
+		this.sessionLock.lock();
+		try {
+			this.discarded = true;
+			while(!this.replayMessages.isEmpty())
+				this.evictOldest();
+			this.replayBytes = 0;
+			for(Message offer: this.parkedOffers)
+				OutboundQueue.release(offer);
+			boolean hadOffers = !this.parkedOffers.isEmpty();
+			this.parkedOffers.clear();
+			return hadOffers;
+			}
+		finally {
+			this.sessionLock.unlock();
+			}
+		}
+	}
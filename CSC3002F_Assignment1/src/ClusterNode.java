@@ -0,0 +1,466 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/***
+ * The part of a Server which joins it to a cluster of Server nodes on other ports or hosts.
+ * Each node holds its own Clients. The nodes learn which node every Client is logged in to by gossip: every round a
+ * node increments its heartbeat and sends its whole presence table to a few other nodes, which keep the newest entry
+ * of each node. A node whose heartbeat stops advancing is considered dead and its Clients offline, and a node which
+ * restarts starts a new incarnation so that its entries are newer than the ones from before it restarted.
+ * Nodes only trust each other's connections once both ends have shown they hold the cluster's shared secret.
+ * Messages for a Client of another node are written to that node over a small pool of connections, each with its own
+ * OutboundQueue, and the pool connection is chosen by the recipient so Messages to one Client stay in order.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see PresencePayload
+ * @see OutboundQueue
+ * @see PeerAuthenticator
+ */
+public class ClusterNode {
+
+	// static variables
+	private final static String CLUSTER_SOURCE = "Cluster";
+	private final static long GOSSIP_INTERVAL_MILLIS = 500;
+	private final static long FAILURE_TIMEOUT_MILLIS = 3000;
+	private final static int GOSSIP_FANOUT = 3;
+	private final static int CONNECTIONS_PER_PEER = 2;
+	private final static int CONNECT_TIMEOUT_MILLIS = 1000;
+
+	// instance variables
+	private final String host;
+	private final String address;
+	private final int clusterPort;
+	private final long incarnation;
+	private final PeerAuthenticator authenticator;
+	private final ArrayList<String> seeds;
+	private final Supplier<ArrayList<String>> localUsernames;
+	private final Consumer<Message> localDelivery;
+	// the newest entry of every other node, when its heartbeat last advanced and the last entry of nodes declared dead.
+	private final HashMap<String, PresencePayload.NodePresence> members;
+	private final HashMap<String, Long> lastHeard;
+	private final HashMap<String, PresencePayload.NodePresence> failed;
+	private final ReentrantLock membershipLock;
+	// which node each remote Client is logged in to, read without locking when routing.
+	private final ConcurrentHashMap<String, String> userLocations;
+	private final ConcurrentHashMap<String, OutboundQueue[]> peerConnections;
+	private long heartbeat;
+	private long version;
+	private volatile boolean presenceChanged;
+	private ArrayList<String> selfUsernames;
+	private PresencePayload.NodePresence self;
+	private ServerSocket serverSocket;
+	private ScheduledExecutorService gossipExecutor;
+
+	/***
+	 * The Constructor of the ClusterNode Class.
+	 * @param host The host name other nodes use to reach this node, and the address its cluster port is bound to.
+	 * @param clusterPort The port on which this node accepts connections from other nodes.
+	 * @param secret The secret shared by every node of the cluster.
+	 * @param seeds The host:port addresses of nodes to gossip with until the others are learnt from them.
+	 * @param localUsernames Supplies the user names of the Clients logged in to this node.
+	 * @param localDelivery Delivers a Message from another node to a Client of this node.
+	 */
+	public ClusterNode(String host, int clusterPort, String secret, Collection<String> seeds, Supplier<ArrayList<String>> localUsernames,
+			Consumer<Message> localDelivery) {
+		this.host = host;
+		this.address = host + ":" + clusterPort;
+		this.clusterPort = clusterPort;
+		// the start time orders this run of the node after any earlier run on the same address.
+		this.incarnation = System.currentTimeMillis();
+		this.authenticator = new PeerAuthenticator(secret);
+		this.seeds = new ArrayList<String>(seeds);
+		this.seeds.remove(this.address);
+		this.localUsernames = localUsernames;
+		this.localDelivery = localDelivery;
+		this.members = new HashMap<String, PresencePayload.NodePresence>();
+		this.lastHeard = new HashMap<String, Long>();
+		this.failed = new HashMap<String, PresencePayload.NodePresence>();
+		this.membershipLock = new ReentrantLock();
+		this.userLocations = new ConcurrentHashMap<String, String>();
+		this.peerConnections = new ConcurrentHashMap<String, OutboundQueue[]>();
+		this.heartbeat = 0;
+		this.version = 0;
+		this.presenceChanged = true;
+		this.selfUsernames = new ArrayList<String>();
+		this.self = new PresencePayload.NodePresence(this.address, this.incarnation, 0, 0, this.selfUsernames);
+		}
+
+	/***
+	 * A method used to start accepting connections from other nodes and gossiping with them.
+	 * @throws IOException If the cluster port could not be opened on the node's host.
+	 */
+	public void start() throws IOException {
+		this.serverSocket = new ServerSocket(this.clusterPort, 0, InetAddress.getByName(this.host));
+		Thread acceptThread = new Thread(this::acceptPeers, "Cluster Accept " + this.address);
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		this.gossipExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Cluster Gossip " + this.address);
+			thread.setDaemon(true);
+			return thread;
+			});
+		this.gossipExecutor.scheduleWithFixedDelay(this::gossip, 0, ClusterNode.GOSSIP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		Metrics.registerGauge("cluster.nodes", () -> this.getNodeCount());
+		Metrics.registerGauge("cluster.remote_clients", () -> this.userLocations.size());
+		}
+
+	/***
+	 * A method used to retrieve the address which names this node.
+	 * @return The host:port of this node.
+	 */
+	public String getAddress() {
+		return this.address;
+		}
+
+	/***
+	 * A method used to tell the node that one of its Clients logged in or out, so its next gossip carries the change.
+	 */
+	public void presenceChanged() {
+		this.presenceChanged = true;
+		}
+
+	/***
+	 * A method used to find the node a Client of another node is logged in to.
+	 * @param username The user name of the Client.
+	 * @return The address of the Client's node, or null if no other node has the Client.
+	 */
+	public String locate(String username) {
+		return this.userLocations.get(username);
+		}
+
+	/***
+	 * A method used to retrieve the user names of the Clients logged in to the other nodes.
+	 * @return The user names of the remote Clients.
+	 */
+	public Collection<String> getRemoteUsernames() {
+		return Collections.unmodifiableSet(this.userLocations.keySet());
+		}
+
+	/***
+	 * A method used to count the nodes of the cluster which are believed to be alive, including this node.
+	 * @return The number of live nodes.
+	 */
+	public int getNodeCount() {
+		this.membershipLock.lock();
+		try {
+			return this.members.size() + 1;
+			}
+		finally {
+			this.membershipLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to send a Message to a Client logged in to another node, blocking while the connection is backed up.
+	 * @param node The address of the Client's node.
+	 * @param message The Message, addressed to the Client.
+	 * @return A boolean which is false if the node could not be reached and the Message was dropped.
+	 */
+	public boolean forward(String node, Message message) {
+		OutboundQueue connection = this.getPeerConnection(node, Math.floorMod(message.getDestinationName().hashCode(),
+				ClusterNode.CONNECTIONS_PER_PEER));
+		if(connection == null || !connection.enqueue(message)) {
+			Metrics.increment("cluster.dropped_messages");
+			return false;
+			}
+		Metrics.increment("cluster.forwarded_messages");
+		return true;
+		}
+
+	/***
+	 * A method used to send a Message to every other live node, each of which delivers it to all of its Clients.
+	 * @param messageID The ID code of the Message.
+	 * @param sourceName The user name of the sender.
+	 * @param data The Data of the Message.
+	 */
+	public void broadcast(MessageID messageID, String sourceName, Object data) {
+		for(String node: this.getLiveNodes())
+			this.forward(node, new Message(messageID, sourceName, "", data));
+		}
+
+	/***
+	 * A method used to retrieve the addresses of the other nodes which are believed to be alive.
+	 * @return The addresses of the live nodes.
+	 */
+	private ArrayList<String> getLiveNodes() {
+		this.membershipLock.lock();
+		try {
+			return new ArrayList<String>(this.members.keySet());
+			}
+		finally {
+			this.membershipLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to get one of the pooled connections to another node, connecting it if it is not open.
+	 * @param node The address of the node.
+	 * @param slot The index of the connection in the node's pool.
+	 * @return The OutboundQueue of the connection, or null if the node could not be reached or is not part of the cluster.
+	 */
+	private OutboundQueue getPeerConnection(String node, int slot) {
+		OutboundQueue[] pool = this.peerConnections.computeIfAbsent(node, key -> new OutboundQueue[ClusterNode.CONNECTIONS_PER_PEER]);
+		synchronized(pool) {
+			if(pool[slot] == null || pool[slot].isClosed()) {
+				pool[slot] = null;
+				int separator = node.lastIndexOf(':');
+				Socket socket = new Socket();
+				try {
+					socket.connect(new InetSocketAddress(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1))),
+							ClusterNode.CONNECT_TIMEOUT_MILLIS);
+					socket.setTcpNoDelay(true);
+					if(!this.authenticator.authenticate(socket, false)) {
+						Metrics.increment("cluster.rejected_peers");
+						socket.close();
+						return null;
+						}
+					ObjectOutputStream oOutputStream = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+					oOutputStream.flush();
+					pool[slot] = new OutboundQueue(oOutputStream, new PayloadCodec(), new FlowController());
+					// the conversation numbers of forwarded Messages travel with them so the receiver can acknowledge them.
+					pool[slot].setSequenceNumbersEnabled(true);
+					pool[slot].start("Cluster Link " + node + "#" + slot);
+					}
+				catch (IOException | RuntimeException e) {
+					Metrics.increment("cluster.connect_failures");
+					try {
+						socket.close();
+						}
+					catch (IOException closeException) {
+						// the connection is already unusable.
+						}
+					}
+				}
+			return pool[slot];
+			}
+		}
+
+	/***
+	 * A method used to accept connections from other nodes, each read by its own Thread.
+	 */
+	private void acceptPeers() {
+		while(!this.serverSocket.isClosed()) {
+			try {
+				Socket socket = this.serverSocket.accept();
+				Thread readThread = new Thread(() -> this.readPeer(socket), "Cluster Reader " + socket.getRemoteSocketAddress());
+				readThread.setDaemon(true);
+				readThread.start();
+				}
+			catch (IOException e) {
+				System.out.println(e);
+				}
+			}
+		}
+
+	/***
+	 * A method used to read Messages from another node until its connection closes. Gossip is merged into the
+	 * presence table and every other Message is delivered to the Client of this node it is addressed to.
+	 * Connections from anything which cannot show it holds the cluster's secret are closed unread.
+	 * @param socket The connection from the other node.
+	 */
+	private void readPeer(Socket socket) {
+		PayloadCodec payloadCodec = new PayloadCodec();
+		try {
+			if(!this.authenticator.authenticate(socket, true)) {
+				Metrics.increment("cluster.rejected_peers");
+				System.out.println("******************************************\n"
+						+ "System Notice - Rejected a cluster connection from " + socket.getRemoteSocketAddress() + " without the cluster secret."
+						+ "\n******************************************");
+				socket.close();
+				return;
+				}
+			}
+		catch (IOException e) {
+			try {
+				socket.close();
+				}
+			catch (IOException closeException) {
+				// the connection is already unusable.
+				}
+			return;
+			}
+		try (ObjectInputStream oInputStream = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			while(true) {
+				MessageID messageID = (MessageID)oInputStream.readUnshared();
+				String sourceName = oInputStream.readUTF();
+				String destinationName = oInputStream.readUTF();
+				long sequenceNumber = 0;
+				long lowestUnacknowledged = 0;
+				if(!OutboundQueue.isControlMessage(messageID)) {
+					sequenceNumber = oInputStream.readLong();
+					if(sequenceNumber != 0)
+						lowestUnacknowledged = oInputStream.readLong();
+					}
+				Object data = payloadCodec.decode(oInputStream.readUnshared());
+				if(messageID == MessageID.CLUSTER_GOSSIP)
+					this.merge((PresencePayload)data);
+				else {
+					Message message = new Message(messageID, sourceName, destinationName, data);
+					message.setSequenceNumber(sequenceNumber, lowestUnacknowledged);
+					this.localDelivery.accept(message);
+					}
+				}
+			}
+		catch (IOException | ClassNotFoundException e) {
+			// the other node closed the connection or died, it reconnects when it next has something to send.
+			}
+		}
+
+	/***
+	 * A method used to run one gossip round: refresh this node's entry, declare silent nodes dead and send the
+	 * presence table to a few other nodes.
+	 */
+	private void gossip() {
+		try {
+			ArrayList<PresencePayload.NodePresence> table = new ArrayList<PresencePayload.NodePresence>();
+			ArrayList<String> targets;
+			this.membershipLock.lock();
+			try {
+				this.heartbeat++;
+				if(this.presenceChanged) {
+					this.presenceChanged = false;
+					this.version++;
+					this.selfUsernames = this.localUsernames.get();
+					}
+				this.self = new PresencePayload.NodePresence(this.address, this.incarnation, this.heartbeat, this.version, this.selfUsernames);
+				long now = System.currentTimeMillis();
+				for(String node: new ArrayList<String>(this.members.keySet()))
+					if(now - this.lastHeard.get(node) > ClusterNode.FAILURE_TIMEOUT_MILLIS)
+						this.removeMember(node);
+				table.add(this.self);
+				table.addAll(this.members.values());
+				HashSet<String> candidates = new HashSet<String>(this.members.keySet());
+				candidates.addAll(this.seeds);
+				targets = new ArrayList<String>(candidates);
+				}
+			finally {
+				this.membershipLock.unlock();
+				}
+			Collections.shuffle(targets);
+			PresencePayload presence = new PresencePayload(table);
+			for(String node: targets.subList(0, Math.min(ClusterNode.GOSSIP_FANOUT, targets.size()))) {
+				// gossip is small and regular so it always uses the first connection of the pool and never waits for room.
+				OutboundQueue connection = this.getPeerConnection(node, 0);
+				if(connection != null)
+					connection.offer(new Message(MessageID.CLUSTER_GOSSIP, ClusterNode.CLUSTER_SOURCE, node, presence));
+				}
+			}
+		catch (RuntimeException e) {
+			// a failed round must not cancel the rounds after it.
+			System.out.println(e);
+			}
+		}
+
+	/***
+	 * A method used to merge a presence table gossiped by another node, keeping the newer entry of each node.
+	 * @param presence The gossiped presence table.
+	 */
+	private void merge(PresencePayload presence) {
+		this.membershipLock.lock();
+		try {
+			long now = System.currentTimeMillis();
+			for(PresencePayload.NodePresence node: presence.getNodes()) {
+				if(node.getAddress().equals(this.address))
+					continue;
+				PresencePayload.NodePresence current = this.members.get(node.getAddress());
+				PresencePayload.NodePresence known = current != null ? current : this.failed.get(node.getAddress());
+				if(!node.isNewerThan(known))
+					continue;
+				this.failed.remove(node.getAddress());
+				this.members.put(node.getAddress(), node);
+				this.lastHeard.put(node.getAddress(), now);
+				if(current == null || current.getIncarnation() != node.getIncarnation() || current.getVersion() != node.getVersion())
+					this.updateLocations(current, node);
+				}
+			}
+		finally {
+			this.membershipLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to point the index of remote Clients at a node's new list of Clients. Must hold the membership lock.
+	 * @param previous The node's previous entry, or null if the node is new.
+	 * @param current The node's new entry, or null if the node is dead.
+	 */
+	private void updateLocations(PresencePayload.NodePresence previous, PresencePayload.NodePresence current) {
+		if(previous != null)
+			for(String username: previous.getUsernames())
+				this.userLocations.remove(username, previous.getAddress());
+		if(current != null)
+			for(String username: current.getUsernames())
+				this.userLocations.put(username, current.getAddress());
+		}
+
+	/***
+	 * A method used to declare a node dead, forgetting its Clients and closing the connections to it. Must hold the membership lock.
+	 * @param node The address of the node.
+	 */
+	private void removeMember(String node) {
+		PresencePayload.NodePresence removed = this.members.remove(node);
+		this.lastHeard.remove(node);
+		this.failed.put(node, removed);
+		this.updateLocations(removed, null);
+		OutboundQueue[] pool = this.peerConnections.remove(node);
+		if(pool != null)
+			for(OutboundQueue connection: pool)
+				if(connection != null)
+					connection.close();
+		Metrics.increment("cluster.failed_nodes");
+		System.out.println("******************************************\n"
+				+ "System Notice - Cluster node " + node + " stopped responding and was removed."
+				+ "\n******************************************");
+		}
+
+	/***
+	 * A method used to parse a comma separated list of host:port addresses.
+	 * @param addresses The comma separated addresses, which may be null or empty.
+	 * @return The addresses.
+	 */
+	public static ArrayList<String> parseAddresses(String addresses) {
+		ArrayList<String> parsed = new ArrayList<String>();
+		if(addresses != null)
+			for(String address: addresses.split(","))
+				if(!address.trim().isEmpty())
+					parsed.add(address.trim());
+		return parsed;
+		}
+
+	/***
+	 * A method used to describe the cluster for the administrator.
+	 * @return A description of every live node and its number of Clients.
+	 */
+	@Override
+	public String toString() {
+		this.membershipLock.lock();
+		try {
+			StringBuilder description = new StringBuilder(this.address + " (this node): " + this.self.getUsernames().size() + " clients\n");
+			for(Map.Entry<String, PresencePayload.NodePresence> member: this.members.entrySet())
+				description.append(member.getKey() + ": " + member.getValue().getUsernames().size() + " clients\n");
+			return description.toString();
+			}
+		finally {
+			this.membershipLock.unlock();
+			}
+		}
+	}
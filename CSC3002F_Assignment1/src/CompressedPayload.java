@@ -0,0 +1,51 @@
+
+/***
+ * A Payload carrying another Payload which has been serialized and compressed by a PayloadCodec.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see PayloadCodec
+ */
+public class CompressedPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private byte[] compressedData;
+	private int originalLength;
+
+	/***
+	 * The Constructor of the CompressedPayload Class.
+	 * @param compressedData The compressed bytes of the serialized Payload.
+	 * @param originalLength The number of bytes of the serialized Payload before compression.
+	 */
+	public CompressedPayload(byte[] compressedData, int originalLength) {
+		this.compressedData = compressedData;
+		this.originalLength = originalLength;
+		}
+
+	/***
+	 * A method to retrieve the compressed bytes of the serialized Payload.
+	 * @return The compressed bytes of the serialized Payload.
+	 */
+	public byte[] getCompressedData() {
+		return this.compressedData;
+		}
+
+	/***
+	 * A method to retrieve the number of bytes of the serialized Payload before compression.
+	 * @return The number of bytes of the serialized Payload before compression.
+	 */
+	public int getOriginalLength() {
+		return this.originalLength;
+		}
+
+	@Override
+	public long getSize() {
+		return this.compressedData.length;
+		}
+
+	@Override
+	public boolean isCompressible() {
+		return false;
+		}
+	}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/***
+ * One open connection between a Client and the Server, whichever Transport it was made over. The streams may be read
+ * and written at the same time by different Threads, and closing the connection wakes a Thread blocked reading it.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see Transport
+ */
+public interface Connection {
+
+	/***
+	 * A method used to retrieve the stream of bytes received over the connection.
+	 * @return The InputStream of the connection.
+	 * @throws IOException If the connection is closed.
+	 */
+	InputStream getInputStream() throws IOException;
+
+	/***
+	 * A method used to retrieve the stream of bytes sent over the connection.
+	 * @return The OutputStream of the connection.
+	 * @throws IOException If the connection is closed.
+	 */
+	OutputStream getOutputStream() throws IOException;
+
+	/***
+	 * A method used to describe the other end of the connection, such as in the name of its Threads.
+	 * @return The address of the other end.
+	 */
+	String getRemoteAddress();
+
+	/***
+	 * A method used to check whether the connection was closed by this end.
+	 * @return A boolean which is true once close has been called.
+	 */
+	boolean isClosed();
+
+	/***
+	 * A method used to close the connection.
+	 * @throws IOException If the connection could not be closed.
+	 */
+	void close() throws IOException;
+	}
@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * A class sharing the console of a Client between its menu and the Yes/No prompts raised by Messages from the Server.
+ * A single Thread reads System.in and hands each line over to whoever holds the console: the prompt being shown, if
+ * any, or else the menu. Prompts are queued rather than shown while the menu is in the middle of asking for input,
+ * and are shown once it returns to choosing an option. Nothing waits by spinning, so an idle Client uses no CPU.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class ConsoleArbiter {
+
+	// instance variables
+	private ReentrantLock consoleLock;
+	private Condition changed;
+	// the lines entered for the menu which it has not read yet.
+	private ArrayDeque<String> lines;
+	// the prompts waiting to be shown, and the one whose answer the next line is.
+	private ArrayDeque<Prompt> prompts;
+	private Prompt active;
+	private long promptsShown;
+	// whether the menu is in the middle of asking for input, which prompts must not interrupt.
+	private boolean menuBusy;
+	private boolean closed;
+
+	/***
+	 * The Constructor of the ConsoleArbiter Class, which starts the Thread reading the console.
+	 * The menu starts out busy, so that prompts wait until it first offers its options.
+	 * @param in The InputStream of the console.
+	 */
+	public ConsoleArbiter(InputStream in) {
+		this.consoleLock = new ReentrantLock();
+		this.changed = this.consoleLock.newCondition();
+		this.lines = new ArrayDeque<String>();
+		this.prompts = new ArrayDeque<Prompt>();
+		this.active = null;
+		this.promptsShown = 0;
+		this.menuBusy = true;
+		this.closed = false;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		Thread thread = new Thread(() -> this.readConsole(reader), "Console Reader");
+		thread.setDaemon(true);
+		thread.start();
+		}
+
+	/***
+	 * A method run by the reading Thread, handing each line entered over until the console is closed.
+	 * @param reader The reader of the console.
+	 */
+	private void readConsole(BufferedReader reader) {
+		try {
+			String line;
+			while((line = reader.readLine()) != null)
+				this.deliver(line);
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		this.consoleLock.lock();
+		try {
+			this.closed = true;
+			this.changed.signalAll();
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to hand a line over to the prompt being shown, or else to the menu. The answer to a prompt is acted
+	 * on outside the lock, since doing so may block on sending to the Server.
+	 * @param line The line entered.
+	 */
+	private void deliver(String line) {
+		Prompt answered = null;
+		this.consoleLock.lock();
+		try {
+			if(this.active == null)
+				this.lines.add(line);
+			else if(line.equals("Yes") || line.equals("No")) {
+				answered = this.active;
+				this.active = null;
+				if(!this.menuBusy && !this.prompts.isEmpty())
+					this.showNextPrompt();
+				}
+			else
+				System.out.println("Invalid Option, Please enter Yes or No");
+			this.changed.signalAll();
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		if(answered != null)
+			answered.onAnswer.accept(line.equals("Yes"));
+		}
+
+	/***
+	 * A method used to show the next queued prompt. The console lock must be held.
+	 */
+	private void showNextPrompt() {
+		this.active = this.prompts.poll();
+		this.promptsShown++;
+		System.out.println(this.active.display);
+		this.changed.signalAll();
+		}
+
+	/***
+	 * A method used to ask the user a Yes/No question without waiting for the answer. The question is shown straight
+	 * away if the menu is waiting for an option, and otherwise once it returns to doing so.
+	 * @param key A key naming what the question is about, with which it can be withdrawn.
+	 * @param display The question.
+	 * @param onAnswer Called with true if the user answers Yes, on the Thread reading the console.
+	 * @see ConsoleArbiter#withdraw(String)
+	 */
+	public void prompt(String key, String display, Consumer<Boolean> onAnswer) {
+		this.consoleLock.lock();
+		try {
+			this.prompts.add(new Prompt(key, display, onAnswer));
+			if(!this.menuBusy && this.active == null)
+				this.showNextPrompt();
+			else
+				System.out.println("*********************************************************************\n"
+						+ "System Notice : A Question is Waiting for the Previous Input to Finish on System.in"
+						+ "\n*********************************************************************");
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to withdraw a question which no longer needs an answer, such as an offer answered on another device.
+	 * @param key The key the question was asked with.
+	 * @return A boolean which is true if a question was withdrawn.
+	 */
+	public boolean withdraw(String key) {
+		this.consoleLock.lock();
+		try {
+			if(this.active != null && this.active.key.equals(key)) {
+				this.active = null;
+				if(!this.menuBusy && !this.prompts.isEmpty())
+					this.showNextPrompt();
+				this.changed.signalAll();
+				return true;
+				}
+			for(Iterator<Prompt> it = this.prompts.iterator(); it.hasNext();)
+				if(it.next().key.equals(key)) {
+					it.remove();
+					return true;
+					}
+			return false;
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used by the menu to offer its options and read the one chosen. Any prompts that were waiting are shown
+	 * first, and the options are shown again after a prompt which is answered while the menu waits.
+	 * @param options The options of the menu.
+	 * @return The line entered.
+	 * @throws NoSuchElementException If the console was closed.
+	 */
+	public String readChoice(String options) {
+		this.consoleLock.lock();
+		try {
+			this.menuBusy = false;
+			while(true) {
+				while(this.active != null || !this.prompts.isEmpty()) {
+					if(this.active == null)
+						this.showNextPrompt();
+					this.awaitChange();
+					}
+				System.out.println(options);
+				long shown = this.promptsShown;
+				while(this.lines.isEmpty() && this.promptsShown == shown)
+					this.awaitChange();
+				if(!this.lines.isEmpty()) {
+					this.menuBusy = true;
+					return this.lines.poll();
+					}
+				}
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used by the menu to read a line while it is asking for input, which prompts do not interrupt.
+	 * @return The line entered.
+	 * @throws NoSuchElementException If the console was closed.
+	 */
+	public String readLine() {
+		this.consoleLock.lock();
+		try {
+			this.menuBusy = true;
+			while(this.lines.isEmpty())
+				this.awaitChange();
+			return this.lines.poll();
+			}
+		finally {
+			this.consoleLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to wait for a line to be entered, a prompt to be shown or answered, or the console to close.
+	 * The console lock must be held.
+	 * @throws NoSuchElementException If the console was closed, as Scanner does.
+	 */
+	private void awaitChange() {
+		if(this.closed && this.lines.isEmpty())
+			throw new NoSuchElementException("No line found");
+		this.changed.awaitUninterruptibly();
+		}
+
+	/***
+	 * A Yes/No question raised by a Message from the Server.
+	 */
+	private static class Prompt {
+		private final String key;
+		private final String display;
+		private final Consumer<Boolean> onAnswer;
+
+		private Prompt(String key, String display, Consumer<Boolean> onAnswer) {
+			this.key = key;
+			this.display = display;
+			this.onAnswer = onAnswer;
+			}
+		}
+	}
@@ -0,0 +1,109 @@
+/***
+ * A Payload naming an Image by the SHA-256 hash of its content instead of carrying its bytes. A Client asks the Server
+ * whether it holds an Image with a CONTENT_QUERY_REQUEST, sends it by reference in an IMAGE_TRANSFER_REQUEST or
+ * IMAGE_SEND_TO_ALL_REQUEST if it does, and only uploads the Image itself when the Server answers that it does not.
+ * Audio is not sent by reference: it is streamed from the sender to the receiver in AudioChunkPayloads once the
+ * receiver accepts it, so the Server never holds a whole Audio file to refer to.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ContentStore
+ * @see ImagePayload#getContentHash()
+ * @see AudioPayload
+ */
+public class ContentReferencePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+
+	// instance variables
+	private String contentHash;
+	private long contentSize;
+	private String mimeType;
+	private String fileName;
+	// in a CONTENT_QUERY_RESPONSE, whether the Server holds the Image.
+	private boolean held;
+
+	/***
+	 * The Constructor of the ContentReferencePayload Class.
+	 * @param contentHash The hexadecimal SHA-256 hash of the encoded bytes of the Image.
+	 * @param contentSize The number of encoded bytes of the Image.
+	 * @param mimeType The MIME type of the Image.
+	 * @param fileName The name of the file the Image was loaded from.
+	 * @param held Whether the Server holds the Image, always false in a request.
+	 */
+	private ContentReferencePayload(String contentHash, long contentSize, String mimeType, String fileName, boolean held) {
+		this.contentHash = contentHash;
+		this.contentSize = contentSize;
+		this.mimeType = mimeType;
+		this.fileName = fileName;
+		this.held = held;
+		}
+
+	/***
+	 * A method used to create a reference to an Image.
+	 * @param image The Image.
+	 * @return The reference, which hashes the Image if it was not hashed before.
+	 */
+	public static ContentReferencePayload of(ImagePayload image) {
+		return new ContentReferencePayload(image.getContentHash(), image.getSize(), image.getMimeType(), image.getFileName(), false);
+		}
+
+	/***
+	 * A method used to create the Payload of a CONTENT_QUERY_RESPONSE answering a request for this reference.
+	 * @param held Whether the Server holds the Image.
+	 * @return The answer.
+	 */
+	public ContentReferencePayload answer(boolean held) {
+		return new ContentReferencePayload(this.contentHash, this.contentSize, this.mimeType, this.fileName, held);
+		}
+
+	/***
+	 * A method to retrieve the hash of the Image.
+	 * @return The hexadecimal SHA-256 hash of the encoded bytes of the Image.
+	 */
+	public String getContentHash() {
+		return this.contentHash;
+		}
+
+	/***
+	 * A method to retrieve the size of the Image.
+	 * @return The number of encoded bytes of the Image.
+	 */
+	public long getContentSize() {
+		return this.contentSize;
+		}
+
+	/***
+	 * A method to retrieve the MIME type of the Image.
+	 * @return The MIME type of the Image.
+	 */
+	public String getMimeType() {
+		return this.mimeType;
+		}
+
+	/***
+	 * A method to retrieve the name of the file the Image was loaded from, which the receiver is shown.
+	 * @return The name of the file.
+	 */
+	public String getFileName() {
+		return this.fileName;
+		}
+
+	/***
+	 * A method to check whether the Server holds the Image.
+	 * @return A boolean which is true if the Server answered that it holds the Image.
+	 */
+	public boolean isHeld() {
+		return this.held;
+		}
+
+	@Override
+	public long getSize() {
+		return this.contentHash.length() + this.fileName.length() + this.mimeType.length() + 8;
+		}
+
+	@Override
+	public String toString() {
+		return "ContentReference(" + this.fileName + ", " + this.contentSize + " bytes, held=" + this.held + ")";
+		}
+	}
@@ -0,0 +1,89 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/***
+ * The Images offered through the Server most recently, indexed by the SHA-256 hash of their content, so that a Client
+ * forwarding an Image the Server already holds sends a reference to it rather than uploading it again.
+ * The hash of an Image is always computed by the Server from the bytes it received, never taken from a Client, so a
+ * reference can only ever name the content that was hashed. The least recently used Images are evicted once the
+ * store holds more than MAX_BYTES or MAX_ENTRIES. Only Images are held, since Audio is streamed through the Server
+ * chunk by chunk and never held whole.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ContentReferencePayload
+ */
+public class ContentStore {
+
+	// static variables
+	private final static long MAX_BYTES = 64L * 1024 * 1024;
+	private final static int MAX_ENTRIES = 1024;
+
+	// instance variables
+	// an access ordered LinkedHashMap, whose eldest entry is the least recently used Image.
+	private final LinkedHashMap<String, ImagePayload> images;
+	private long heldBytes;
+
+	/***
+	 * The Constructor of the ContentStore Class.
+	 */
+	public ContentStore() {
+		this.images = new LinkedHashMap<String, ImagePayload>(16, 0.75f, true);
+		this.heldBytes = 0;
+		Metrics.registerGauge("content.held_bytes", () -> this.getHeldBytes());
+		}
+
+	/***
+	 * A method used to keep an Image which was uploaded to the Server, evicting the least recently used Images if the
+	 * store is full. An Image larger than the whole store is not kept.
+	 * @param image The Image.
+	 */
+	public synchronized void put(ImagePayload image) {
+		if(image.getSize() > ContentStore.MAX_BYTES)
+			return;
+		ImagePayload previous = this.images.put(image.getContentHash(), image);
+		if(previous != null)
+			this.heldBytes -= previous.getSize();
+		this.heldBytes += image.getSize();
+		Iterator<ImagePayload> eldest = this.images.values().iterator();
+		while(this.heldBytes > ContentStore.MAX_BYTES || this.images.size() > ContentStore.MAX_ENTRIES) {
+			this.heldBytes -= eldest.next().getSize();
+			eldest.remove();
+			Metrics.increment("content.evicted");
+			}
+		}
+
+	/***
+	 * A method used to find the Image a reference names.
+	 * @param reference The reference.
+	 * @return The Image, renamed to the file name of the reference, or null if the store does not hold it.
+	 */
+	public synchronized ImagePayload get(ContentReferencePayload reference) {
+		ImagePayload image = this.images.get(reference.getContentHash());
+		if(image == null || image.getSize() != reference.getContentSize()) {
+			Metrics.increment("content.misses");
+			return null;
+			}
+		Metrics.increment("content.hits");
+		Metrics.add("content.upload_bytes_saved", image.getSize());
+		return image.withFileName(reference.getFileName());
+		}
+
+	/***
+	 * A method used to check whether the store holds the Image a reference names. The Image counts as used, since the
+	 * Client asking is about to send it by reference.
+	 * @param reference The reference.
+	 * @return A boolean which is true if the store holds the Image.
+	 */
+	public synchronized boolean contains(ContentReferencePayload reference) {
+		ImagePayload image = this.images.get(reference.getContentHash());
+		return image != null && image.getSize() == reference.getContentSize();
+		}
+
+	/***
+	 * A method used to retrieve the number of bytes of the Images held.
+	 * @return The number of bytes held.
+	 */
+	public synchronized long getHeldBytes() {
+		return this.heldBytes;
+		}
+	}
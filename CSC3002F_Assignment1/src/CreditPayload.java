@@ -0,0 +1,47 @@
+
+/***
+ * A Payload sent in a FLOW_CONTROL_CREDIT Message which grants the other side of a connection permission
+ * to send a further number of bytes and Messages.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FlowController
+ */
+public class CreditPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private long bytes;
+	private int messages;
+
+	/***
+	 * The Constructor of the CreditPayload Class.
+	 * @param bytes The number of bytes the other side may additionally send.
+	 * @param messages The number of Messages the other side may additionally send.
+	 */
+	public CreditPayload(long bytes, int messages) {
+		this.bytes = bytes;
+		this.messages = messages;
+		}
+
+	/***
+	 * A method to retrieve the number of bytes granted.
+	 * @return The number of bytes granted.
+	 */
+	public long getBytes() {
+		return this.bytes;
+		}
+
+	/***
+	 * A method to retrieve the number of Messages granted.
+	 * @return The number of Messages granted.
+	 */
+	public int getMessages() {
+		return this.messages;
+		}
+
+	@Override
+	public long getSize() {
+		return 0;
+		}
+	}
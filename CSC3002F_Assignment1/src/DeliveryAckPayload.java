@@ -0,0 +1,85 @@
+
+/***
+ * The Payload of MESSAGE_CONFIRMATION_RESPONSE and MESSAGE_CONFIRMATION_RECEIPT Messages.
+ * A receiver acknowledges cumulatively: one acknowledgement covers every Message of the conversation up to its number.
+ * The Server settles single Messages itself when it cannot deliver them, or when it delivers them to a receiver
+ * which does not acknowledge.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see DeliveryTracker
+ */
+public class DeliveryAckPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private long acknowledgedUpTo;
+	private long settledSequenceNumber;
+	private boolean delivered;
+
+	/***
+	 * The Constructor of the DeliveryAckPayload Class.
+	 * @param acknowledgedUpTo The number up to which every Message was received, or 0.
+	 * @param settledSequenceNumber The number of a single Message the Server settled, or 0.
+	 * @param delivered Whether the settled Message was delivered.
+	 */
+	private DeliveryAckPayload(long acknowledgedUpTo, long settledSequenceNumber, boolean delivered) {
+		this.acknowledgedUpTo = acknowledgedUpTo;
+		this.settledSequenceNumber = settledSequenceNumber;
+		this.delivered = delivered;
+		}
+
+	/***
+	 * A method used to create the cumulative acknowledgement a receiver sends.
+	 * @param acknowledgedUpTo The number up to which every Message of the conversation was received.
+	 * @return The Payload.
+	 */
+	public static DeliveryAckPayload cumulative(long acknowledgedUpTo) {
+		return new DeliveryAckPayload(acknowledgedUpTo, 0, true);
+		}
+
+	/***
+	 * A method used to create the notice the Server sends when it settles a single Message.
+	 * @param sequenceNumber The number of the Message.
+	 * @param delivered Whether the Message was delivered.
+	 * @return The Payload.
+	 */
+	public static DeliveryAckPayload settled(long sequenceNumber, boolean delivered) {
+		return new DeliveryAckPayload(0, sequenceNumber, delivered);
+		}
+
+	/***
+	 * A method to retrieve the number up to which every Message was received.
+	 * @return The cumulatively acknowledged number, or 0 if the Payload settles a single Message.
+	 */
+	public long getAcknowledgedUpTo() {
+		return this.acknowledgedUpTo;
+		}
+
+	/***
+	 * A method to retrieve the number of the single Message the Server settled.
+	 * @return The number of the Message, or 0 if the Payload is a cumulative acknowledgement.
+	 */
+	public long getSettledSequenceNumber() {
+		return this.settledSequenceNumber;
+		}
+
+	/***
+	 * A method to check whether the settled Message was delivered.
+	 * @return A boolean which is false if the Server could not deliver the Message.
+	 */
+	public boolean isDelivered() {
+		return this.delivered;
+		}
+
+	@Override
+	public long getSize() {
+		return 0;
+		}
+
+	@Override
+	public String toString() {
+		return this.settledSequenceNumber == 0 ? "Acknowledged(up to " + this.acknowledgedUpTo + ")"
+				: "Settled(" + this.settledSequenceNumber + ", delivered=" + this.delivered + ")";
+		}
+	}
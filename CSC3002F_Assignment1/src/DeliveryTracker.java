@@ -0,0 +1,347 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/***
+ * Tracks the delivery of a Client's direct text Messages in both directions.
+ * As a sender it numbers the Messages of each conversation, keeps up to MAX_IN_FLIGHT of them waiting for an
+ * acknowledgement at once and retransmits those which are not acknowledged in time, giving up after MAX_RETRANSMITS.
+ * As a receiver it drops Messages it has already received and acknowledges the rest cumulatively, once every
+ * ACK_EVERY Messages or ACK_DELAY_MILLIS after the first one not yet acknowledged, so that a burst of Messages
+ * costs a few acknowledgements rather than one each and no Message waits for a round-trip before the next is sent.
+ * A Client logged in on several devices has a tracker on each, so each tracker numbers its Messages within an epoch
+ * of its own, held in the high bits of the numbers. A receiver keeps the Messages of each epoch apart and a sender
+ * ignores the acknowledgements of the other epochs, which are meant for the Client's other devices.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see DeliveryAckPayload
+ * @see Message#getSequenceNumber()
+ */
+public class DeliveryTracker {
+
+	// static variables
+	private final static int MAX_IN_FLIGHT = 64;
+	private final static long RETRANSMIT_TIMEOUT_MILLIS = 2000;
+	private final static int MAX_RETRANSMITS = 5;
+	private final static int ACK_EVERY = 16;
+	private final static long ACK_DELAY_MILLIS = 100;
+	private final static long TICK_MILLIS = 50;
+	// how long a sender waits for room in a full window before giving up on sending.
+	private final static long WINDOW_WAIT_SECONDS = 30;
+	// a Message numbered further ahead than this is taken to mean the earlier ones will never arrive.
+	private final static int MAX_RECEIVED_AHEAD = 4096;
+	// the low bits of a number count the Messages of a conversation and the high bits hold the sender's epoch.
+	private final static int EPOCH_SHIFT = 32;
+
+	// instance variables
+	private final String username;
+	// the epoch this tracker numbers its Messages in.
+	private final long epoch;
+	// sends a Message to the Server, used for acknowledgements and retransmissions.
+	private final Consumer<Message> transmitter;
+	// told about each Message which was not delivered.
+	private final Consumer<Message> undeliveredHandler;
+	private final ReentrantLock trackerLock;
+	private final Condition windowOpen;
+	private final HashMap<String, OutgoingConversation> outgoing;
+	private final HashMap<String, IncomingConversation> incoming;
+	private final ScheduledExecutorService timer;
+
+	/***
+	 * The Constructor of the DeliveryTracker Class.
+	 * @param username The user name of the Client.
+	 * @param transmitter Sends a Message to the Server.
+	 * @param undeliveredHandler Told about each Message which was not delivered.
+	 */
+	public DeliveryTracker(String username, Consumer<Message> transmitter, Consumer<Message> undeliveredHandler) {
+		this.username = username;
+		this.epoch = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+		this.transmitter = transmitter;
+		this.undeliveredHandler = undeliveredHandler;
+		this.trackerLock = new ReentrantLock();
+		this.windowOpen = this.trackerLock.newCondition();
+		this.outgoing = new HashMap<String, OutgoingConversation>();
+		this.incoming = new HashMap<String, IncomingConversation>();
+		this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Delivery Tracker");
+			thread.setDaemon(true);
+			return thread;
+			});
+		this.timer.scheduleWithFixedDelay(this::tick, DeliveryTracker.TICK_MILLIS, DeliveryTracker.TICK_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+	/***
+	 * A method used to number a Message before it is sent and keep it until it is acknowledged.
+	 * Blocks while MAX_IN_FLIGHT Messages of the conversation are waiting to be acknowledged.
+	 * @param message The Message to send.
+	 * @return A boolean which is false if the window stayed full for too long, in which case the Message should not be sent.
+	 */
+	public boolean track(Message message) {
+		this.trackerLock.lock();
+		try {
+			OutgoingConversation conversation = this.outgoing.computeIfAbsent(message.getDestinationName(),
+					key -> new OutgoingConversation((this.epoch << DeliveryTracker.EPOCH_SHIFT) + 1));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DeliveryTracker.WINDOW_WAIT_SECONDS);
+			while(conversation.unacknowledged.size() >= DeliveryTracker.MAX_IN_FLIGHT) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0)
+					return false;
+				this.windowOpen.awaitNanos(remaining);
+				}
+			long sequenceNumber = conversation.nextSequenceNumber++;
+			conversation.unacknowledged.put(sequenceNumber, new PendingMessage(message));
+			message.setSequenceNumber(sequenceNumber, conversation.unacknowledged.firstKey());
+			Metrics.increment("delivery.sent");
+			return true;
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+			}
+		finally {
+			this.trackerLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to apply an acknowledgement or settlement of the Messages sent to a Client.
+	 * @param peer The user name of the Client the Messages were sent to.
+	 * @param ack The acknowledgement.
+	 */
+	public void acknowledged(String peer, DeliveryAckPayload ack) {
+		ArrayList<Message> undelivered = new ArrayList<Message>();
+		this.trackerLock.lock();
+		try {
+			OutgoingConversation conversation = this.outgoing.get(peer);
+			if(conversation == null)
+				return;
+			if(ack.getSettledSequenceNumber() == 0) {
+				// an acknowledgement of another device's Messages does not acknowledge any of this tracker's.
+				if(DeliveryTracker.epochOf(ack.getAcknowledgedUpTo()) != this.epoch)
+					return;
+				Map<Long, PendingMessage> acknowledged = conversation.unacknowledged.headMap(ack.getAcknowledgedUpTo(), true);
+				Metrics.add("delivery.acknowledged", acknowledged.size());
+				acknowledged.clear();
+				}
+			else {
+				PendingMessage settled = conversation.unacknowledged.remove(ack.getSettledSequenceNumber());
+				if(settled != null && !ack.isDelivered())
+					undelivered.add(settled.message);
+				}
+			this.windowOpen.signalAll();
+			}
+		finally {
+			this.trackerLock.unlock();
+			}
+		for(Message message: undelivered)
+			this.undeliveredHandler.accept(message);
+		}
+
+	/***
+	 * A method used to check a numbered Message on arrival and acknowledge it.
+	 * @param message The Message received.
+	 * @return A boolean which is false if the Message was received before and should be dropped.
+	 */
+	public boolean received(Message message) {
+		boolean isNew;
+		Message ack = null;
+		this.trackerLock.lock();
+		try {
+			IncomingConversation conversation = this.incoming.computeIfAbsent(message.getSourceName() + "\n"
+					+ DeliveryTracker.epochOf(message.getSequenceNumber()), key -> new IncomingConversation(message.getSourceName()));
+			isNew = conversation.accept(message.getSequenceNumber(), message.getLowestUnacknowledged());
+			if(conversation.unacknowledgedCount++ == 0)
+				conversation.firstUnacknowledgedAtMillis = System.currentTimeMillis();
+			// a retransmission means the sender missed an acknowledgement, so it is acknowledged straight away.
+			if(!isNew || conversation.unacknowledgedCount >= DeliveryTracker.ACK_EVERY)
+				ack = this.createAck(conversation);
+			}
+		finally {
+			this.trackerLock.unlock();
+			}
+		if(!isNew)
+			Metrics.increment("delivery.duplicates_dropped");
+		if(ack != null)
+			this.transmitter.accept(ack);
+		return isNew;
+		}
+
+	/***
+	 * A method used to create the cumulative acknowledgement of a conversation. Must hold the tracker's lock.
+	 * @param conversation The conversation.
+	 * @return The MESSAGE_CONFIRMATION_RESPONSE.
+	 */
+	private Message createAck(IncomingConversation conversation) {
+		conversation.unacknowledgedCount = 0;
+		return new Message(MessageID.MESSAGE_CONFIRMATION_RESPONSE, this.username, conversation.peer,
+				DeliveryAckPayload.cumulative(conversation.contiguous));
+		}
+
+	/***
+	 * A method used to find the epoch a Message was numbered in.
+	 * @param sequenceNumber The number of the Message.
+	 * @return The epoch of the sender's tracker, which is 0 for a sender which does not use epochs.
+	 */
+	private static long epochOf(long sequenceNumber) {
+		return sequenceNumber >>> DeliveryTracker.EPOCH_SHIFT;
+		}
+
+	/***
+	 * A method used to find the position of a Message in its conversation, leaving out the sender's epoch, so that it
+	 * can be shown to the user.
+	 * @param sequenceNumber The number of the Message.
+	 * @return The position of the Message, counting from 1.
+	 */
+	public static long positionOf(long sequenceNumber) {
+		return sequenceNumber & ((1L << DeliveryTracker.EPOCH_SHIFT) - 1);
+		}
+
+	/***
+	 * A method used to retransmit every Message still waiting to be acknowledged, such as after reconnecting, without
+	 * counting it against the Message's retransmissions.
+	 */
+	public void retransmitAll() {
+		this.trackerLock.lock();
+		try {
+			for(OutgoingConversation conversation: this.outgoing.values())
+				for(PendingMessage pending: conversation.unacknowledged.values())
+					pending.sentAtMillis = 0;
+			}
+		finally {
+			this.trackerLock.unlock();
+			}
+		}
+
+	/***
+	 * The method run every TICK_MILLIS which sends the acknowledgements which are due and retransmits the Messages
+	 * whose acknowledgement timed out. The timeout doubles with each retransmission of a Message.
+	 */
+	private void tick() {
+		ArrayList<Message> toSend = new ArrayList<Message>();
+		ArrayList<Message> undelivered = new ArrayList<Message>();
+		long now = System.currentTimeMillis();
+		this.trackerLock.lock();
+		try {
+			for(IncomingConversation conversation: this.incoming.values())
+				if(conversation.unacknowledgedCount > 0
+						&& now - conversation.firstUnacknowledgedAtMillis >= DeliveryTracker.ACK_DELAY_MILLIS)
+					toSend.add(this.createAck(conversation));
+			for(OutgoingConversation conversation: this.outgoing.values()) {
+				Iterator<PendingMessage> iterator = conversation.unacknowledged.values().iterator();
+				while(iterator.hasNext()) {
+					PendingMessage pending = iterator.next();
+					if(now - pending.sentAtMillis < (DeliveryTracker.RETRANSMIT_TIMEOUT_MILLIS << pending.retransmits))
+						continue;
+					if(pending.retransmits >= DeliveryTracker.MAX_RETRANSMITS) {
+						iterator.remove();
+						undelivered.add(pending.message);
+						this.windowOpen.signalAll();
+						continue;
+						}
+					if(pending.sentAtMillis != 0)
+						pending.retransmits++;
+					pending.sentAtMillis = now;
+					// the receiver learns which lower numbers it no longer needs to wait for.
+					pending.message.setSequenceNumber(pending.message.getSequenceNumber(), conversation.unacknowledged.firstKey());
+					toSend.add(pending.message);
+					Metrics.increment("delivery.retransmits");
+					}
+				}
+			}
+		finally {
+			this.trackerLock.unlock();
+			}
+		for(Message message: toSend)
+			this.transmitter.accept(message);
+		for(Message message: undelivered)
+			this.undeliveredHandler.accept(message);
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * The Messages sent to one Client which are waiting to be acknowledged, by their number.
+	 */
+	private static class OutgoingConversation {
+		private long nextSequenceNumber;
+		private final TreeMap<Long, PendingMessage> unacknowledged = new TreeMap<Long, PendingMessage>();
+
+		private OutgoingConversation(long firstSequenceNumber) {
+			this.nextSequenceNumber = firstSequenceNumber;
+			}
+		}
+
+	/***
+	 * A Message waiting to be acknowledged.
+	 */
+	private static class PendingMessage {
+		private final Message message;
+		private long sentAtMillis;
+		private int retransmits;
+
+		private PendingMessage(Message message) {
+			this.message = message;
+			this.sentAtMillis = System.currentTimeMillis();
+			this.retransmits = 0;
+			}
+		}
+
+	/***
+	 * The numbers of the Messages received from one epoch of a Client: every number up to contiguous, and the numbers
+	 * above it which arrived early, where bit i stands for contiguous + 1 + i.
+	 */
+	private static class IncomingConversation {
+		private final String peer;
+		private long contiguous = 0;
+		private BitSet receivedAhead = new BitSet();
+		private int unacknowledgedCount = 0;
+		private long firstUnacknowledgedAtMillis;
+
+		private IncomingConversation(String peer) {
+			this.peer = peer;
+			}
+
+		/***
+		 * A method used to record the arrival of a numbered Message.
+		 * @param sequenceNumber The number of the Message.
+		 * @param lowestUnacknowledged The lowest number the sender was still waiting for, below which nothing is missing.
+		 * @return A boolean which is true if the Message had not been received before.
+		 */
+		private boolean accept(long sequenceNumber, long lowestUnacknowledged) {
+			if(lowestUnacknowledged - 1 > this.contiguous)
+				this.advance(lowestUnacknowledged - 1 - this.contiguous);
+			if(sequenceNumber <= this.contiguous)
+				return false;
+			if(sequenceNumber - this.contiguous > DeliveryTracker.MAX_RECEIVED_AHEAD)
+				this.advance(sequenceNumber - 1 - this.contiguous);
+			int index = (int)(sequenceNumber - this.contiguous - 1);
+			if(this.receivedAhead.get(index))
+				return false;
+			this.receivedAhead.set(index);
+			this.advance(this.receivedAhead.nextClearBit(0));
+			return true;
+			}
+
+		/***
+		 * A method used to move contiguous up by a number of places.
+		 * @param places The number of places.
+		 */
+		private void advance(long places) {
+			if(places <= 0)
+				return;
+			this.contiguous += places;
+			this.receivedAhead = places >= this.receivedAhead.length() ? new BitSet()
+					: this.receivedAhead.get((int)places, this.receivedAhead.length());
+			}
+		}
+	}
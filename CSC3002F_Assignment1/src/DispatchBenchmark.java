@@ -0,0 +1,169 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Paths;
+
+/***
+ * A benchmark of the Server's dispatch path. It starts a Server in this JVM, connects two Clients to it over the
+ * loopback interface and routes text messages from one to the other, then reports the routing rate and the bytes
+ * the Server allocated while dispatching each message.
+ * The Clients connect over TCP, a Unix domain socket or an in-memory pipe, the last of which measures the Server
+ * apart from the network.
+ * Run from the directory holding server_data with: java DispatchBenchmark [messages] [tcp|unix|memory]
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see Metrics#currentThreadAllocatedBytes()
+ */
+public class DispatchBenchmark {
+
+	// static variables
+	private final static String SERVER_HOST = "localhost";
+	private final static int SERVER_PORT = 1337;
+	private final static String UNIX_SOCKET = Paths.get(System.getProperty("java.io.tmpdir"), "chat-benchmark.sock").toString();
+	private final static String MEMORY_NAME = "benchmark";
+	private final static int WARMUP_MESSAGES = 50000;
+
+	// instance variables
+	private String username;
+	private ObjectInputStream oInputStream;
+	private PayloadCodec payloadCodec;
+	private FlowController flowController;
+	private OutboundQueue outboundQueue;
+
+	/***
+	 * The Constructor of the DispatchBenchmark Class which connects and logs in one benchmark Client.
+	 * @param username The user name of the benchmark Client.
+	 * @param transport The Transport the Client connects to the Server over.
+	 * @throws IOException If the Client could not connect or log in.
+	 * @throws ClassNotFoundException If the Server's response could not be read.
+	 */
+	public DispatchBenchmark(String username, Transport transport) throws IOException, ClassNotFoundException {
+		this.username = username;
+		this.payloadCodec = new PayloadCodec();
+		this.flowController = new FlowController();
+		Connection connectionToServer = transport.connect(0);
+		ObjectOutputStream oOutputStream = new ObjectOutputStream(new BufferedOutputStream(connectionToServer.getOutputStream()));
+		oOutputStream.flush();
+		this.oInputStream = new ObjectInputStream(new BufferedInputStream(connectionToServer.getInputStream()));
+		this.outboundQueue = new OutboundQueue(oOutputStream, this.payloadCodec, this.flowController);
+		this.outboundQueue.start("Benchmark " + username);
+		// the benchmark Clients never reconnect or acknowledge, so their Messages are not numbered.
+		this.send(MessageID.REGISTRATION_REQUEST, "Server", RegistrationPayload.request(username, RegistrationPayload.SUPPORTED_CAPABILITIES
+				& ~(RegistrationPayload.CAPABILITY_RESUME | RegistrationPayload.CAPABILITY_DELIVERY_ACKS)));
+		RegistrationPayload agreed = (RegistrationPayload)this.receive().getData();
+		this.payloadCodec.setCompressionEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_COMPRESSION));
+		this.flowController.setEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_FLOW_CONTROL));
+		this.outboundQueue.setFramingEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_MULTIPLEXING));
+		}
+
+	/***
+	 * A method used to send a Message to the Server.
+	 * @param messageID The ID code of the Message.
+	 * @param destinationName The Receiver of the Message.
+	 * @param data The Data of the Message.
+	 */
+	private void send(MessageID messageID, String destinationName, Object data) {
+		this.outboundQueue.enqueue(new Message(messageID, this.username, destinationName, data));
+		}
+
+	/***
+	 * A method used to receive the next Message which is not a credit grant, returning credit as a Client does.
+	 * @return The Message received.
+	 * @throws IOException If the connection failed.
+	 * @throws ClassNotFoundException If the Message could not be read.
+	 */
+	private Message receive() throws IOException, ClassNotFoundException {
+		while(true) {
+			Message message = new Message((MessageID)this.oInputStream.readUnshared(), this.oInputStream.readUTF(),
+					this.oInputStream.readUTF(), this.payloadCodec.decode(this.oInputStream.readUnshared()));
+			if(message.getMessageID() == MessageID.FLOW_CONTROL_CREDIT) {
+				this.flowController.grant((CreditPayload)message.getData());
+				continue;
+				}
+			CreditPayload credit = this.flowController.consumed(message.getSize());
+			if(credit != null)
+				this.send(MessageID.FLOW_CONTROL_CREDIT, "Server", credit);
+			return message;
+			}
+		}
+
+	/***
+	 * A method used to keep reading the benchmark Client's connection on a background Thread so that it keeps
+	 * receiving the flow control credit it needs to send.
+	 */
+	private void receiveInBackground() {
+		Thread receiving = new Thread(() -> {
+			try {
+				while(true)
+					this.receive();
+				}
+			catch (IOException | ClassNotFoundException e) {
+				System.out.println(e);
+				}
+			});
+		receiving.setDaemon(true);
+		receiving.start();
+		}
+
+	/***
+	 * A method used to route a number of text messages from one benchmark Client to another.
+	 * @param sender The benchmark Client sending the messages.
+	 * @param receiver The benchmark Client receiving the messages.
+	 * @param messages The number of messages to route.
+	 * @return The number of nanoseconds it took until the last message was received.
+	 * @throws Exception If a Client's connection failed.
+	 */
+	private static long route(DispatchBenchmark sender, DispatchBenchmark receiver, int messages) throws Exception {
+		TextPayload text = new TextPayload("The quick brown fox jumps over the lazy dog");
+		long start = System.nanoTime();
+		Thread sending = new Thread(() -> {
+			for(int i = 0; i < messages; i++)
+				sender.send(MessageID.TEXT_TRANSFER_REQUEST, receiver.username, text);
+			});
+		sending.start();
+		for(int received = 0; received < messages; )
+			if(receiver.receive().getMessageID() == MessageID.TEXT_TRANSFER_RECEIPT)
+				received++;
+		return System.nanoTime() - start;
+		}
+
+	/***
+	 * The main method of the benchmark.
+	 * @param args The number of messages to measure, 200000 by default, and the Transport, tcp by default.
+	 * @throws Exception If the benchmark could not run.
+	 */
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		String address;
+		switch(args.length > 1 ? args[1] : "tcp") {
+			case "unix": address = UnixSocketTransport.SCHEME + UNIX_SOCKET; break;
+			case "memory": address = MemoryTransport.SCHEME + MEMORY_NAME; break;
+			default: address = SERVER_HOST + ":" + SERVER_PORT; break;
+			}
+		Transport transport = Transport.forAddress(address, SERVER_PORT);
+		// profile the dispatch path and lift the rate limits which would otherwise throttle the benchmark.
+		System.setProperty("chat.profileAllocations", "true");
+		System.setProperty("chat.direct.rate", "0");
+		if(!(transport instanceof TcpTransport))
+			System.setProperty("chat.listen", address);
+		Thread server = new Thread(new Server());
+		server.setDaemon(true);
+		server.start();
+		DispatchBenchmark receiver = new DispatchBenchmark("benchmark-receiver", transport);
+		DispatchBenchmark sender = new DispatchBenchmark("benchmark-sender", transport);
+		sender.receiveInBackground();
+		DispatchBenchmark.route(sender, receiver, WARMUP_MESSAGES);
+		long allocatedBefore = Metrics.get("dispatch.allocated_bytes");
+		long profiledBefore = Metrics.get("dispatch.profiled_messages");
+		long nanos = DispatchBenchmark.route(sender, receiver, messages);
+		long profiled = Metrics.get("dispatch.profiled_messages") - profiledBefore;
+		System.out.println("Routed " + messages + " messages over " + transport.getAddress() + " in " + (nanos / 1000000) + " ms ("
+				+ (long)(messages / (nanos / 1e9)) + " messages/s)");
+		System.out.println("Server dispatch allocation: "
+				+ String.format("%.1f", (double)(Metrics.get("dispatch.allocated_bytes") - allocatedBefore) / profiled)
+				+ " bytes/message over " + profiled + " messages");
+		System.exit(0);
+		}
+	}
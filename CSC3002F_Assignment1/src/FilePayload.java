@@ -0,0 +1,58 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/***
+ * A Payload carrying the bytes of an arbitrary File.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class FilePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private byte[] fileData;
+	private String fileName;
+
+	/***
+	 * The Constructor of the FilePayload Class.
+	 * @param fileData The bytes of the File.
+	 * @param fileName The name of the File.
+	 */
+	public FilePayload(byte[] fileData, String fileName) {
+		this.fileData = fileData;
+		this.fileName = fileName;
+		}
+
+	/***
+	 * A method used to load a FilePayload from a file.
+	 * @param file The file to load.
+	 * @return A FilePayload holding the unmodified bytes of the file.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static FilePayload fromFile(File file) throws IOException {
+		return new FilePayload(Files.readAllBytes(file.toPath()), file.getName());
+		}
+
+	/***
+	 * A method to retrieve the bytes of the File.
+	 * @return The bytes of the File.
+	 */
+	public byte[] getFileData() {
+		return this.fileData;
+		}
+
+	/***
+	 * A method to retrieve the name of the File.
+	 * @return The name of the File.
+	 */
+	public String getFileName() {
+		return this.fileName;
+		}
+
+	@Override
+	public long getSize() {
+		return this.fileData.length;
+		}
+	}
@@ -0,0 +1,165 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * A class implementing credit-based flow control for one connection.
+ * Each side starts with the same window of credit in bytes and Messages. Sending a Message spends credit, and once the
+ * credit runs out the Message waits until the other side grants more. The receiving side grants the credit back in a
+ * FLOW_CONTROL_CREDIT Message only once it has processed the Messages, so a slow receiver slows its sender down instead
+ * of letting Messages pile up in memory.
+ * The sender never blocks inside this class: it tries to spend credit and is called back when credit is granted, so
+ * the Thread waiting can still write the credit grants the other side is waiting for in turn.
+ * Flow control starts disabled and is only enabled once both sides agreed on it in the REGISTRATION_REQUEST handshake.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RegistrationPayload#CAPABILITY_FLOW_CONTROL
+ * @see CreditPayload
+ */
+public class FlowController {
+
+	// static variables
+	public final static long WINDOW_BYTES = 1024L * 1024;
+	public final static int WINDOW_MESSAGES = 64;
+
+	// instance variables
+	private ReentrantLock creditLock;
+	private volatile boolean enabled;
+	private boolean closed;
+	// called whenever credit is granted or the connection closes, outside the credit lock.
+	private volatile Runnable creditListener;
+	private long sendBytes;
+	private int sendMessages;
+	private long consumedBytes;
+	private int consumedMessages;
+
+	/***
+	 * The Constructor of the FlowController Class. Flow control starts disabled.
+	 * @see ReentrantLock
+	 */
+	public FlowController() {
+		this.creditLock = new ReentrantLock();
+		this.enabled = false;
+		this.closed = false;
+		this.sendBytes = WINDOW_BYTES;
+		this.sendMessages = WINDOW_MESSAGES;
+		this.consumedBytes = 0;
+		this.consumedMessages = 0;
+		}
+
+	/***
+	 * A method used to enable or disable flow control once the handshake has agreed upon it.
+	 * @param enabled Whether flow control should be enforced.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		}
+
+	/***
+	 * A method used to set what is called whenever credit is granted or the connection closes, so that a sender which
+	 * ran out of credit can wait on its own lock.
+	 * @param creditListener Called without the credit lock held.
+	 */
+	public void setCreditListener(Runnable creditListener) {
+		this.creditListener = creditListener;
+		}
+
+	/***
+	 * A method used to spend credit before sending a Message only if enough credit is available right now.
+	 * A Message larger than half the window is sent once half the window is free. The receiver only returns credit once
+	 * half the window has been processed, so waiting for more than that could wait forever.
+	 * @param bytes The size of the Message in bytes.
+	 * @return A boolean which is true if the credit was spent.
+	 */
+	public boolean tryAcquire(long bytes) {
+		if(!this.enabled)
+			return true;
+		this.creditLock.lock();
+		try {
+			if(this.closed || this.sendMessages < 1 || this.sendBytes < Math.min(bytes, WINDOW_BYTES / 2))
+				return false;
+			this.sendMessages--;
+			this.sendBytes -= bytes;
+			return true;
+			}
+		finally {
+			this.creditLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to add the credit granted by the other side and wake up any waiting senders.
+	 * @param credit The credit granted by the other side.
+	 */
+	public void grant(CreditPayload credit) {
+		this.creditLock.lock();
+		try {
+			this.sendBytes += credit.getBytes();
+			this.sendMessages += credit.getMessages();
+			}
+		finally {
+			this.creditLock.unlock();
+			}
+		this.notifyCreditListener();
+		}
+
+	/***
+	 * A method used to check whether the connection has closed, after which no more credit will be granted.
+	 * @return A boolean which is true once the FlowController has been closed.
+	 */
+	public boolean isClosed() {
+		this.creditLock.lock();
+		try {
+			return this.closed;
+			}
+		finally {
+			this.creditLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to call the credit listener, if one is set.
+	 */
+	private void notifyCreditListener() {
+		Runnable creditListener = this.creditListener;
+		if(creditListener != null)
+			creditListener.run();
+		}
+
+	/***
+	 * A method used to record that a received Message has been processed. Once half of the window has been processed
+	 * the credit is returned to the other side.
+	 * @param bytes The size of the processed Message in bytes.
+	 * @return The credit to grant to the other side, or null if none should be granted yet.
+	 */
+	public CreditPayload consumed(long bytes) {
+		if(!this.enabled)
+			return null;
+		this.creditLock.lock();
+		try {
+			this.consumedBytes += bytes;
+			this.consumedMessages++;
+			if(this.consumedBytes < WINDOW_BYTES / 2 && this.consumedMessages < WINDOW_MESSAGES / 2)
+				return null;
+			CreditPayload credit = new CreditPayload(this.consumedBytes, this.consumedMessages);
+			this.consumedBytes = 0;
+			this.consumedMessages = 0;
+			return credit;
+			}
+		finally {
+			this.creditLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to wake up and release any waiting senders once the connection has closed.
+	 */
+	public void close() {
+		this.creditLock.lock();
+		try {
+			this.closed = true;
+			}
+		finally {
+			this.creditLock.unlock();
+			}
+		this.notifyCreditListener();
+		}
+	}
@@ -0,0 +1,72 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+
+/***
+ * A class which joins the MESSAGE_FRAMEs read from one connection back into the bulk Messages they were split from.
+ * It is only used by the Thread reading the connection so it needs no locking.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FrameSplitter
+ * @see FramePayload
+ */
+public class FrameAssembler {
+
+	// static variables
+	// a bulk Message which grows past this is discarded so that a peer cannot exhaust memory with endless frames.
+	private final static int MAX_MESSAGE_BYTES = 128 * 1024 * 1024;
+
+	// instance variables
+	private HashMap<Integer, ByteArrayOutputStream> partialMessages;
+	private PayloadCodec payloadCodec;
+
+	/***
+	 * The Constructor of the FrameAssembler Class.
+	 * @param payloadCodec The PayloadCodec of the connection, used to decompress the joined Data.
+	 */
+	public FrameAssembler(PayloadCodec payloadCodec) {
+		this.partialMessages = new HashMap<Integer, ByteArrayOutputStream>();
+		this.payloadCodec = payloadCodec;
+		}
+
+	/***
+	 * A method used to check whether some frames of a bulk Message have already been added.
+	 * @param frameStreamID The number identifying the bulk Message on the connection.
+	 * @return A boolean which is true if the bulk Message is partly assembled.
+	 */
+	public boolean isAssembling(int frameStreamID) {
+		return this.partialMessages.containsKey(frameStreamID);
+		}
+
+	/***
+	 * A method used to add a MESSAGE_FRAME to the bulk Message it belongs to.
+	 * @param frameMessage The MESSAGE_FRAME read from the connection.
+	 * @return The bulk Message once its last frame has arrived, otherwise null.
+	 * @throws IOException If the joined Data could not be deserialized.
+	 */
+	public Message accept(Message frameMessage) throws IOException {
+		FramePayload frame = (FramePayload)frameMessage.getData();
+		ByteArrayOutputStream partial = this.partialMessages.get(frame.getFrameStreamID());
+		if(partial == null) {
+			partial = new ByteArrayOutputStream(frame.isLastFrame() ? frame.getFrameLength() : FrameSplitter.FRAME_SIZE * 4);
+			this.partialMessages.put(frame.getFrameStreamID(), partial);
+			}
+		if(partial.size() + frame.getFrameLength() > MAX_MESSAGE_BYTES) {
+			this.partialMessages.remove(frame.getFrameStreamID());
+			throw new IOException("Framed Message exceeds " + MAX_MESSAGE_BYTES + " bytes");
+			}
+		partial.write(frame.getFrameData(), frame.getFrameOffset(), frame.getFrameLength());
+		if(!frame.isLastFrame())
+			return null;
+		this.partialMessages.remove(frame.getFrameStreamID());
+		try(ObjectInputStream deserializer = new ObjectInputStream(new ByteArrayInputStream(partial.toByteArray()))) {
+			Object data = this.payloadCodec.decode(deserializer.readUnshared());
+			return new Message(frame.getMessageID(), frameMessage.getSourceName(), frameMessage.getDestinationName(), data);
+			}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+			}
+		}
+	}
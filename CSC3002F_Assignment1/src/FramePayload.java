@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/***
+ * A Payload sent in a MESSAGE_FRAME Message carrying one slice of a bulk Message.
+ * The Data of the bulk Message is serialized once and split into frames which the OutboundQueue interleaves with
+ * other traffic. The receiving side joins the frames back together with a FrameAssembler.
+ * A frame refers to its slice of a larger array rather than copying it, and only the slice is written to the stream.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FrameSplitter
+ * @see FrameAssembler
+ */
+public class FramePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private int frameStreamID;
+	private MessageID messageID;
+	private boolean lastFrame;
+	private transient byte[] frameData;
+	private transient int frameOffset;
+	private transient int frameLength;
+	// whether frameData was taken from the BufferPool and must be returned to it once the frame is written.
+	private transient boolean pooled;
+
+	/***
+	 * The Constructor of the FramePayload Class.
+	 * @param frameStreamID The number identifying the bulk Message on its connection.
+	 * @param messageID The ID code of the bulk Message.
+	 * @param lastFrame Whether this is the last frame of the bulk Message.
+	 * @param frameData The array holding this slice of the serialized Data.
+	 * @param frameOffset The position of the slice in the array.
+	 * @param frameLength The number of bytes in the slice.
+	 * @param pooled Whether the array was taken from the BufferPool.
+	 */
+	public FramePayload(int frameStreamID, MessageID messageID, boolean lastFrame, byte[] frameData, int frameOffset,
+			int frameLength, boolean pooled) {
+		this.frameStreamID = frameStreamID;
+		this.messageID = messageID;
+		this.lastFrame = lastFrame;
+		this.frameData = frameData;
+		this.frameOffset = frameOffset;
+		this.frameLength = frameLength;
+		this.pooled = pooled;
+		}
+
+	/***
+	 * A method used to create a copy of the frame for another connection, sharing the same bytes.
+	 * @param frameStreamID The number identifying the bulk Message on the other connection.
+	 * @return The copy of the frame.
+	 */
+	public FramePayload forStream(int frameStreamID) {
+		return new FramePayload(frameStreamID, this.messageID, this.lastFrame, this.frameData, this.frameOffset,
+				this.frameLength, false);
+		}
+
+	/***
+	 * A method to retrieve the number identifying the bulk Message on its connection.
+	 * @return The number identifying the bulk Message.
+	 */
+	public int getFrameStreamID() {
+		return this.frameStreamID;
+		}
+
+	/***
+	 * A method to retrieve the ID code of the bulk Message.
+	 * @return The ID code of the bulk Message.
+	 */
+	public MessageID getMessageID() {
+		return this.messageID;
+		}
+
+	/***
+	 * A method to check whether this is the last frame of the bulk Message.
+	 * @return A boolean which is true for the last frame.
+	 */
+	public boolean isLastFrame() {
+		return this.lastFrame;
+		}
+
+	/***
+	 * A method to retrieve the array holding this slice of the serialized Data.
+	 * @return The array holding the frame.
+	 */
+	public byte[] getFrameData() {
+		return this.frameData;
+		}
+
+	/***
+	 * A method to retrieve the position of the slice in the array.
+	 * @return The position of the slice.
+	 */
+	public int getFrameOffset() {
+		return this.frameOffset;
+		}
+
+	/***
+	 * A method to retrieve the number of bytes in the slice.
+	 * @return The number of bytes in the slice.
+	 */
+	public int getFrameLength() {
+		return this.frameLength;
+		}
+
+	/***
+	 * A method called by serialization to write only the slice of the array.
+	 * @param out The stream the frame is written to.
+	 * @throws IOException If the stream could not be written to.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.frameLength);
+		out.write(this.frameData, this.frameOffset, this.frameLength);
+		}
+
+	/***
+	 * A method called by deserialization to read the slice into an array of its own.
+	 * @param in The stream the frame is read from.
+	 * @throws IOException If the stream could not be read.
+	 * @throws ClassNotFoundException If a class of the frame could not be found.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.frameLength = in.readInt();
+		this.frameOffset = 0;
+		this.frameData = new byte[this.frameLength];
+		in.readFully(this.frameData);
+		}
+
+	@Override
+	public void release() {
+		if(this.pooled) {
+			this.pooled = false;
+			BufferPool.release(this.frameData);
+			}
+		}
+
+	@Override
+	public long getSize() {
+		return this.frameLength;
+		}
+
+	@Override
+	public boolean isCompressible() {
+		// the Data was already compressed, if worthwhile, before it was split.
+		return false;
+		}
+	}
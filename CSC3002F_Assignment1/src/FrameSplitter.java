@@ -0,0 +1,98 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/***
+ * A class which splits one bulk Message into MESSAGE_FRAMEs. The Data is compressed by the connection's PayloadCodec,
+ * if worthwhile, and serialized once, after which each call to nextFrame returns the next slice without copying it.
+ * The Data of a SpooledPayload is already serialized, so its frames are read straight from the spool into pooled buffers.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FramePayload
+ * @see SpooledPayload
+ * @see OutboundQueue
+ */
+public class FrameSplitter {
+
+	// static variables
+	public final static int FRAME_SIZE = BufferPool.BUFFER_SIZE;
+
+	// instance variables
+	private Message message;
+	private int frameStreamID;
+	private SpooledPayload spooled;
+	private byte[] serialized;
+	private long length;
+	private long offset;
+
+	/***
+	 * The Constructor of the FrameSplitter Class.
+	 * @param message The bulk Message to split.
+	 * @param frameStreamID The number identifying the bulk Message on its connection.
+	 * @param payloadCodec The PayloadCodec of the connection.
+	 * @throws IOException If the Data of the Message could not be serialized.
+	 */
+	public FrameSplitter(Message message, int frameStreamID, PayloadCodec payloadCodec) throws IOException {
+		this.message = message;
+		this.frameStreamID = frameStreamID;
+		if(message.getData() instanceof SpooledPayload) {
+			this.spooled = (SpooledPayload)message.getData();
+			this.length = this.spooled.getSize();
+			}
+		else {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(FRAME_SIZE);
+			try(ObjectOutputStream serializer = new ObjectOutputStream(buffer)) {
+				serializer.writeUnshared(payloadCodec.encode(message.getData()));
+				}
+			this.serialized = buffer.toByteArray();
+			this.length = this.serialized.length;
+			}
+		this.offset = 0;
+		}
+
+	/***
+	 * A method used to check whether there are frames left to write.
+	 * @return A boolean which is true if there are frames left.
+	 */
+	public boolean hasNextFrame() {
+		return this.message != null;
+		}
+
+	/***
+	 * A method used to create the next MESSAGE_FRAME of the bulk Message. Once the last frame has been created the
+	 * Payload of the bulk Message is released.
+	 * @return The next MESSAGE_FRAME.
+	 * @throws IOException If the spool could not be read.
+	 */
+	public Message nextFrame() throws IOException {
+		int frameLength = (int)Math.min(FRAME_SIZE, this.length - this.offset);
+		boolean lastFrame = this.offset + frameLength == this.length;
+		FramePayload frame;
+		if(this.spooled != null) {
+			byte[] buffer = BufferPool.acquire();
+			this.spooled.read(this.offset, buffer, 0, frameLength);
+			frame = new FramePayload(this.frameStreamID, this.message.getMessageID(), lastFrame, buffer, 0, frameLength, true);
+			}
+		else
+			frame = new FramePayload(this.frameStreamID, this.message.getMessageID(), lastFrame, this.serialized,
+					(int)this.offset, frameLength, false);
+		this.offset += frameLength;
+		Message frameMessage = new Message(MessageID.MESSAGE_FRAME, this.message.getSourceName(),
+				this.message.getDestinationName(), frame);
+		if(lastFrame)
+			this.release();
+		return frameMessage;
+		}
+
+	/***
+	 * A method used to release the Payload of the bulk Message once its last frame has been created,
+	 * or once the connection closed before it could be.
+	 */
+	public void release() {
+		if(this.message == null)
+			return;
+		if(this.message.getPayload() != null)
+			this.message.getPayload().release();
+		this.message = null;
+		}
+	}
@@ -0,0 +1,69 @@
+
+/***
+ * A Payload sent with an IMAGE_TRANSFER_CONFIRMATION_REQUEST which describes an Image the Client is offered.
+ * It carries a small downscaled preview of the Image so that the Client can decide whether to download the full Image.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ThumbnailGenerator
+ */
+public class ImageOfferPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private String confirmationText;
+	private ImagePayload preview;
+	private long fullImageSize;
+
+	/***
+	 * The Constructor of the ImageOfferPayload Class.
+	 * @param confirmationText The text asking the Client whether they would like to download the Image.
+	 * @param preview A downscaled preview of the Image or null if no preview could be generated.
+	 * @param fullImageSize The number of bytes of the full Image.
+	 */
+	public ImageOfferPayload(String confirmationText, ImagePayload preview, long fullImageSize) {
+		this.confirmationText = confirmationText;
+		this.preview = preview;
+		this.fullImageSize = fullImageSize;
+		}
+
+	/***
+	 * A method to retrieve the text asking the Client whether they would like to download the Image.
+	 * @return The text asking the Client whether they would like to download the Image.
+	 */
+	public String getConfirmationText() {
+		return this.confirmationText;
+		}
+
+	/***
+	 * A method to retrieve the downscaled preview of the Image.
+	 * @return The downscaled preview of the Image or null if there is no preview.
+	 */
+	public ImagePayload getPreview() {
+		return this.preview;
+		}
+
+	/***
+	 * A method to retrieve the number of bytes of the full Image.
+	 * @return The number of bytes of the full Image.
+	 */
+	public long getFullImageSize() {
+		return this.fullImageSize;
+		}
+
+	@Override
+	public long getSize() {
+		return this.confirmationText.length() + (this.preview == null ? 0 : this.preview.getSize());
+		}
+
+	@Override
+	public boolean isCompressible() {
+		// the preview is a JPEG which is already compressed.
+		return this.preview == null;
+		}
+
+	@Override
+	public String toString() {
+		return this.confirmationText;
+		}
+	}
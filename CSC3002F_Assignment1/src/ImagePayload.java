@@ -0,0 +1,156 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/***
+ * A Payload carrying the encoded bytes of an Image (e.g. JPEG or PNG) together with its MIME type.
+ * The bytes are only decoded by the receiving Client.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ClientImageDisplayer
+ */
+public class ImagePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private byte[] imageData;
+	private String mimeType;
+	private String fileName;
+	private transient String contentHash;
+
+	/***
+	 * The Constructor of the ImagePayload Class.
+	 * @param imageData The encoded bytes of the Image.
+	 * @param mimeType The MIME type of the encoded bytes.
+	 * @param fileName The name of the file the Image was loaded from.
+	 */
+	public ImagePayload(byte[] imageData, String mimeType, String fileName) {
+		this.imageData = imageData;
+		this.mimeType = mimeType;
+		this.fileName = fileName;
+		}
+
+	/***
+	 * A method used to load an ImagePayload from a file without decoding its pixels.
+	 * Only the header of the file is inspected to determine that it is a readable Image and what its MIME type is.
+	 * @param imageFile The file containing the Image.
+	 * @return An ImagePayload holding the unmodified bytes of the file.
+	 * @throws IOException If the file cannot be read or is not a supported Image format.
+	 * @see ImageIO#getImageReaders(Object)
+	 */
+	public static ImagePayload fromFile(File imageFile) throws IOException {
+		byte[] imageData = Files.readAllBytes(imageFile.toPath());
+		String mimeType = null;
+		ImageInputStream iis = ImageIO.createImageInputStream(imageFile);
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if(readers.hasNext()) {
+				String[] mimeTypes = readers.next().getOriginatingProvider().getMIMETypes();
+				mimeType = (mimeTypes != null && mimeTypes.length > 0) ? mimeTypes[0] : "image/*";
+				}
+			}
+		finally {
+			if(iis != null)
+				iis.close();
+			}
+		if(mimeType == null)
+			throw new IOException("Unsupported Image format: " + imageFile);
+		return new ImagePayload(imageData, mimeType, imageFile.getName());
+		}
+
+	/***
+	 * A method to retrieve the encoded bytes of the Image.
+	 * @return The encoded bytes of the Image.
+	 */
+	public byte[] getImageData() {
+		return this.imageData;
+		}
+
+	/***
+	 * A method to retrieve the MIME type of the Image.
+	 * @return The MIME type of the Image.
+	 */
+	public String getMimeType() {
+		return this.mimeType;
+		}
+
+	/***
+	 * A method to retrieve the name of the file the Image was loaded from.
+	 * @return The name of the file the Image was loaded from.
+	 */
+	public String getFileName() {
+		return this.fileName;
+		}
+
+	/***
+	 * A method to retrieve the SHA-256 hash of the encoded bytes of the Image. The hash is computed once and remembered.
+	 * @return The hexadecimal SHA-256 hash of the encoded bytes of the Image.
+	 * @see Payload#hashContent(byte[])
+	 */
+	public String getContentHash() {
+		if(this.contentHash == null)
+			this.contentHash = Payload.hashContent(this.imageData);
+		return this.contentHash;
+		}
+
+	/***
+	 * A method used to create an ImagePayload sharing the encoded bytes of this Image under another file name.
+	 * @param fileName The name of the file.
+	 * @return The renamed Image, which keeps the hash if it was already computed.
+	 */
+	public ImagePayload withFileName(String fileName) {
+		ImagePayload renamed = new ImagePayload(this.imageData, this.mimeType, fileName);
+		renamed.contentHash = this.contentHash;
+		return renamed;
+		}
+
+	/***
+	 * A method used to decode the Image, subsampling rows and columns while reading so that the decoded Image is no
+	 * smaller than the given target dimension. This means the full resolution pixels of large Images are never held in memory.
+	 * @param targetDimension The smallest width or height the decoded Image should be subsampled to.
+	 * @return The decoded Image or null if no ImageReader supports the encoded bytes.
+	 * @throws IOException If the bytes could not be decoded.
+	 * @see ImageReadParam#setSourceSubsampling(int, int, int, int)
+	 */
+	public BufferedImage decodeSubsampled(int targetDimension) throws IOException {
+		ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(this.imageData));
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if(!readers.hasNext())
+				return null;
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis, true, true);
+				int largestDimension = Math.max(reader.getWidth(0), reader.getHeight(0));
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, largestDimension / targetDimension);
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+				}
+			finally {
+				reader.dispose();
+				}
+			}
+		finally {
+			iis.close();
+			}
+		}
+
+	@Override
+	public long getSize() {
+		return this.imageData.length;
+		}
+
+	@Override
+	public boolean isCompressible() {
+		return !Payload.isCompressedMimeType(this.mimeType);
+		}
+	}
@@ -0,0 +1,37 @@
+
+
+/***
+ * An enumeration of the logical lanes multiplexed over one connection. The OutboundQueue always writes the control
+ * lane first and interleaves interactive Messages with the frames of bulk Messages, so a large Image being written
+ * never holds up chat text or a CLOSE_CONNECTION behind it.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see OutboundQueue
+ */
+public enum Lane {
+	CONTROL, INTERACTIVE, BULK;
+
+	/***
+	 * A method used to find the lane a Message is written on.
+	 * @param messageID The ID code of the Message.
+	 * @return The lane of the Message.
+	 */
+	public static Lane of(MessageID messageID) {
+		switch(messageID) {
+			case REGISTRATION_REQUEST:
+			case REGISTRATION_RESPONSE:
+			case FLOW_CONTROL_CREDIT:
+			case CLOSE_CONNECTION:
+			case CLUSTER_GOSSIP:
+				return CONTROL;
+			case IMAGE_TRANSFER_REQUEST:
+			case IMAGE_SEND_TO_ALL_REQUEST:
+			case IMAGE_TRANSFER_RECEIPT:
+			case AUDIO_STREAM_CHUNK:
+			case MESSAGE_FRAME:
+				return BULK;
+			default:
+				return INTERACTIVE;
+			}
+		}
+}
@@ -1,49 +1,260 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
 
-/**
- *
- * @author user
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/***
+ * A class used by a receiving Client to play an Audio stream while its chunks are still arriving.
+ * Chunks are collected in a small jitter buffer and playback through a javax.sound.sampled SourceDataLine starts
+ * as soon as the jitter buffer is full or the last chunk has arrived.
+ * @author Pieter Janse van Rensburg (jnspie007@myuct.ac.za)
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see AudioPayload
+ * @see AudioChunkPayload
  */
+public class Media_Player implements Runnable
+{
+    // static variables
+    private final static int JITTER_BUFFER_CHUNKS = 4;
+    private final static int CHUNK_SIZE = 16 * 1024;
+    // how long playback waits for the next chunk before treating the stream as ended.
+    private final static long CHUNK_TIMEOUT_SECONDS = 10;
+    private final static byte[] END_OF_STREAM = new byte[0];
+    // instance variables
+    private AudioPayload audio;
+    private LinkedBlockingQueue<byte[]> receivedChunks;
+    private CountDownLatch jitterBufferFilled;
+    private int nextSequenceNumber;
+    // set once playback has ended or failed, after which the rest of the stream is no longer buffered.
+    private volatile boolean finished;
 
-import java.io.*;
-import sun.audio.*;
-//import java.util.Scanner;
+   /***
+    * The Constructor of the Media_Player Class.
+    * @param audio The AudioPayload describing the Audio stream to play.
+    */
+   public Media_Player(AudioPayload audio)
+   {
+     this.audio = audio;
+     this.receivedChunks = new LinkedBlockingQueue<byte[]>();
+     this.jitterBufferFilled = new CountDownLatch(JITTER_BUFFER_CHUNKS);
+     this.nextSequenceNumber = 0;
+     this.finished = false;
+   }
 
-@SuppressWarnings("restriction")
-public class Media_Player implements Serializable
-{
-    private String filePath;
-    //private InputStream get_input_file;
-    //private Scanner input_scanner;
+   /***
+    * A method used to retrieve the AudioPayload describing the Audio stream being played.
+    * @return The AudioPayload describing the Audio stream.
+    */
+   public AudioPayload getAudio()
+   {
+     return this.audio;
+   }
 
-   public Media_Player(String filePath) throws IOException
+   /***
+    * A method used to add a received chunk of the Audio stream to the jitter buffer.
+    * Chunks which arrive out of order are dropped since the connection to the Server preserves ordering, and chunks
+    * which arrive once playback has ended or failed are dropped since nothing would read them.
+    * @param chunk The received chunk.
+    */
+   public void addChunk(AudioChunkPayload chunk)
    {
-     //get_input_file= new FileInputStream(filePath);
-     this.filePath = filePath;
+     if(this.finished)
+       return;
+     if(chunk.getSequenceNumber() != this.nextSequenceNumber)
+     {
+       System.out.println("Dropped out of order Audio chunk " + chunk.getSequenceNumber());
+       return;
+     }
+     this.nextSequenceNumber++;
+     if(chunk.getChunkData().length > 0)
+     {
+       this.receivedChunks.add(chunk.getChunkData());
+       this.jitterBufferFilled.countDown();
+     }
+     if(chunk.isLastChunk())
+     {
+       this.receivedChunks.add(END_OF_STREAM);
+       // a short stream may never fill the jitter buffer.
+       while(this.jitterBufferFilled.getCount() > 0)
+         this.jitterBufferFilled.countDown();
+     }
    }
 
-   public void play_audio() throws IOException
+   /***
+    * A method used to play the Audio stream. Blocks until the jitter buffer is filled and then until playback ends.
+    * Once playback ends, whether or not it succeeded, the chunks still buffered are discarded.
+    * Encoded formats such as u-law are converted to signed PCM so that they can be written to a SourceDataLine.
+    * @see AudioSystem#getAudioInputStream(InputStream)
+    * @see SourceDataLine
+    */
+   public void play_audio()
    {
      try
      {
-       AudioPlayer.player.start(new AudioStream( new FileInputStream(filePath)));
+       this.jitterBufferFilled.await();
+       // AudioSystem needs mark/reset support to detect the file format from the stream's header.
+       AudioInputStream stream = AudioSystem.getAudioInputStream(new BufferedInputStream(new ChunkInputStream()));
+       AudioFormat format = stream.getFormat();
+       if(format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED)
+       {
+         format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, format.getChannels(),
+             format.getChannels() * 2, format.getSampleRate(), false);
+         stream = AudioSystem.getAudioInputStream(format, stream);
+       }
+       SourceDataLine line = (SourceDataLine)AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+       try
+       {
+         line.open(format);
+         line.start();
+         byte[] buffer = new byte[CHUNK_SIZE];
+         int read;
+         while((read = stream.read(buffer, 0, buffer.length)) != -1)
+           line.write(buffer, 0, read);
+         line.drain();
+       }finally
+       {
+         line.close();
+         stream.close();
+       }
+     }catch (IOException | UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException e)
+     {
+       System.out.println("Could not play audio " + this.audio.getFileName() + ": " + e);
+     }catch (InterruptedException e)
+     {
+       Thread.currentThread().interrupt();
+     }finally
+     {
+       this.finished = true;
+       this.receivedChunks.clear();
+     }
+   }
 
-      }catch (IOException e)
-      {
-          System.out.println(e);
-      }
+   /***
+    * The method which is called when a Media_Player is parsed into a Thread and start is called.
+    */
+   @Override
+   public void run()
+   {
+     this.play_audio();
    }
 
+   /***
+    * A method used by a sending Client to read an Audio file and pass it to the given consumer in chunks.
+    * @param audio The AudioPayload describing the Audio stream.
+    * @param audioFile The file containing the Audio.
+    * @param consumer The consumer which sends each chunk.
+    * @throws IOException If the file cannot be read.
+    */
+   public static void streamFile(AudioPayload audio, File audioFile, Consumer<AudioChunkPayload> consumer) throws IOException
+   {
+     try(InputStream in = new FileInputStream(audioFile))
+     {
+       int sequenceNumber = 0;
+       boolean compressible = !Payload.isCompressedMimeType(audio.getMimeType());
+       byte[] buffer = new byte[CHUNK_SIZE];
+       int read = in.readNBytes(buffer, 0, buffer.length);
+       while(read > 0)
+       {
+         byte[] chunk = Arrays.copyOf(buffer, read);
+         read = in.readNBytes(buffer, 0, buffer.length);
+         consumer.accept(new AudioChunkPayload(audio.getStreamID(), sequenceNumber++, chunk, read <= 0, compressible));
+       }
+       if(sequenceNumber == 0)
+         consumer.accept(new AudioChunkPayload(audio.getStreamID(), 0, new byte[0], true, false));
+     }
+   }
+
+   /***
+    * The main method used to test if the class is working as intended by streaming a local file through a Media_Player.
+    * @param args A String Array of command-line arguments.
+    */
    public static void main(String[] args) {
      try
      {
-       Media_Player m = new Media_Player("");
-       m.play_audio();
-     }catch(IOException e){}
+       File audioFile = new File("carlin_boring.wav");
+       Media_Player m = new Media_Player(AudioPayload.describeFile(audioFile));
+       Thread playback = new Thread(m);
+       playback.start();
+       Media_Player.streamFile(m.getAudio(), audioFile, m::addChunk);
+       playback.join();
+     }catch(IOException | InterruptedException e)
+     {
+       System.out.println(e);
+     }
 
        }
-    }
+
+   /***
+    * An InputStream over the chunks in the jitter buffer which blocks until the next chunk arrives.
+    */
+   private class ChunkInputStream extends InputStream
+   {
+     private byte[] currentChunk = new byte[0];
+     private int position = 0;
+     private boolean ended = false;
+
+     /***
+      * A method used to move to the next chunk once the current chunk has been read.
+      * @return A boolean which is false if the stream has ended.
+      * @throws IOException If the thread is interrupted while waiting.
+      */
+     private boolean nextChunk() throws IOException
+     {
+       while(!this.ended && this.position >= this.currentChunk.length)
+       {
+         try
+         {
+           byte[] chunk = receivedChunks.poll(CHUNK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+           if(chunk == null || chunk == END_OF_STREAM)
+             this.ended = true;
+           else
+           {
+             this.currentChunk = chunk;
+             this.position = 0;
+           }
+         }catch (InterruptedException e)
+         {
+           Thread.currentThread().interrupt();
+           throw new IOException(e);
+         }
+       }
+       return !this.ended;
+     }
+
+     @Override
+     public int read() throws IOException
+     {
+       if(!this.nextChunk())
+         return -1;
+       return this.currentChunk[this.position++] & 0xFF;
+     }
+
+     @Override
+     public int read(byte[] b, int off, int len) throws IOException
+     {
+       if(len == 0)
+         return 0;
+       if(!this.nextChunk())
+         return -1;
+       int count = Math.min(len, this.currentChunk.length - this.position);
+       System.arraycopy(this.currentChunk, this.position, b, off, count);
+       this.position += count;
+       return count;
+     }
+   }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * The Transport reaching a Server in the same JVM through a pair of in-memory pipes, for tests and benchmarks which
+ * measure the Server without the network. Servers listen under a name, and connecting to it hands the Server one end
+ * of the pipes and the Client the other.
+ * Each pipe is a bounded ring of bytes, so a writer which gets ahead of its reader blocks as it would on a socket.
+ * Closing a Listener wakes every Thread waiting in accept, as closing a ServerSocket does.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class MemoryTransport implements Transport {
+
+	// static variables
+	public final static String SCHEME = "memory:";
+	private final static int PIPE_CAPACITY = 64 * 1024;
+	// the Connections waiting to be accepted by each listening name.
+	private final static ConcurrentHashMap<String, LinkedBlockingQueue<Connection>> listeners
+			= new ConcurrentHashMap<String, LinkedBlockingQueue<Connection>>();
+	// queued by a Listener which was closed, after the Connections still waiting to be accepted.
+	private final static Connection LISTENER_CLOSED = new PipeConnection(new Pipe(), new Pipe(), "closed");
+
+	// instance variables
+	private String name;
+
+	/***
+	 * The Constructor of the MemoryTransport Class.
+	 * @param name The name the Server listens under.
+	 */
+	public MemoryTransport(String name) {
+		this.name = name;
+		}
+
+	/***
+	 * {@inheritDoc} The Connection is made at once, so the timeout is not used.
+	 */
+	@Override
+	public Connection connect(int timeoutMillis) throws IOException {
+		LinkedBlockingQueue<Connection> pending = MemoryTransport.listeners.get(this.name);
+		if(pending == null)
+			throw new ConnectException("Nothing is listening on " + this.getAddress());
+		Pipe toServer = new Pipe();
+		Pipe toClient = new Pipe();
+		pending.add(new PipeConnection(toServer, toClient, this.getAddress()));
+		return new PipeConnection(toClient, toServer, this.getAddress());
+		}
+
+	@Override
+	public Transport.Listener listen() throws IOException {
+		LinkedBlockingQueue<Connection> pending = new LinkedBlockingQueue<Connection>();
+		if(MemoryTransport.listeners.putIfAbsent(this.name, pending) != null)
+			throw new IOException(this.getAddress() + " is already being listened on");
+		return new Transport.Listener() {
+			@Override
+			public Connection accept() throws IOException {
+				try {
+					Connection connection = pending.take();
+					if(connection == MemoryTransport.LISTENER_CLOSED) {
+						// left for any other Thread waiting to accept.
+						pending.add(connection);
+						throw new IOException(getAddress() + " is no longer being listened on");
+						}
+					return connection;
+					}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+					}
+				}
+
+			@Override
+			public void close() {
+				if(MemoryTransport.listeners.remove(name, pending))
+					pending.add(MemoryTransport.LISTENER_CLOSED);
+				}
+			};
+		}
+
+	@Override
+	public String getAddress() {
+		return MemoryTransport.SCHEME + this.name;
+		}
+
+	/***
+	 * A bounded ring of bytes written by one Thread and read by another, which blocks the reader while it is empty
+	 * and the writer while it is full. Once closed it can no longer be written, and is read until it is empty.
+	 */
+	private static class Pipe {
+		private final ReentrantLock pipeLock;
+		private final Condition notEmpty;
+		private final Condition notFull;
+		private final byte[] buffer;
+		private int head;
+		private int count;
+		private boolean closed;
+
+		private Pipe() {
+			this.pipeLock = new ReentrantLock();
+			this.notEmpty = this.pipeLock.newCondition();
+			this.notFull = this.pipeLock.newCondition();
+			this.buffer = new byte[PIPE_CAPACITY];
+			this.head = 0;
+			this.count = 0;
+			this.closed = false;
+			}
+
+		private int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0)
+				return 0;
+			this.pipeLock.lock();
+			try {
+				while(this.count == 0 && !this.closed)
+					this.notEmpty.await();
+				if(this.count == 0)
+					return -1;
+				int read = Math.min(len, Math.min(this.count, this.buffer.length - this.head));
+				System.arraycopy(this.buffer, this.head, b, off, read);
+				this.head = (this.head + read) % this.buffer.length;
+				this.count -= read;
+				this.notFull.signal();
+				return read;
+				}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+				}
+			finally {
+				this.pipeLock.unlock();
+				}
+			}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			this.pipeLock.lock();
+			try {
+				while(len > 0) {
+					while(this.count == this.buffer.length && !this.closed)
+						this.notFull.await();
+					if(this.closed)
+						throw new IOException("Pipe closed");
+					int tail = (this.head + this.count) % this.buffer.length;
+					int written = Math.min(len, Math.min(this.buffer.length - this.count, this.buffer.length - tail));
+					System.arraycopy(b, off, this.buffer, tail, written);
+					this.count += written;
+					off += written;
+					len -= written;
+					this.notEmpty.signal();
+					}
+				}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+				}
+			finally {
+				this.pipeLock.unlock();
+				}
+			}
+
+		private void close() {
+			this.pipeLock.lock();
+			try {
+				this.closed = true;
+				this.notEmpty.signalAll();
+				this.notFull.signalAll();
+				}
+			finally {
+				this.pipeLock.unlock();
+				}
+			}
+		}
+
+	/***
+	 * A Connection reading one Pipe and writing the other. Closing it closes both, so the other end reads the end of
+	 * its stream.
+	 */
+	private static class PipeConnection implements Connection {
+		private final Pipe in;
+		private final Pipe out;
+		private final String address;
+		private volatile boolean closed;
+
+		private PipeConnection(Pipe in, Pipe out, String address) {
+			this.in = in;
+			this.out = out;
+			this.address = address;
+			this.closed = false;
+			}
+
+		@Override
+		public InputStream getInputStream() {
+			return new InputStream() {
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+					}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					return in.read(b, off, len);
+					}
+
+				@Override
+				public void close() {
+					PipeConnection.this.close();
+					}
+				};
+			}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					this.write(new byte[] {(byte)b}, 0, 1);
+					}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					}
+
+				@Override
+				public void close() {
+					PipeConnection.this.close();
+					}
+				};
+			}
+
+		@Override
+		public String getRemoteAddress() {
+			return this.address;
+			}
+
+		@Override
+		public boolean isClosed() {
+			return this.closed;
+			}
+
+		@Override
+		public void close() {
+			this.closed = true;
+			this.in.close();
+			this.out.close();
+			}
+		}
+	}
@@ -13,6 +13,10 @@ public class Message {
 	private String sourceName;
 	private String destinationName;
 	private Object data;
+	// the number of the Message in the conversation between its sender and receiver, or 0 if it is not numbered,
+	// and the lowest number the sender is still waiting to have acknowledged when it sent the Message.
+	private long sequenceNumber;
+	private long lowestUnacknowledged;
 	
 	/***
 	 * The Constructor of the Message Class.
@@ -36,6 +40,15 @@ public class Message {
 		return this.messageID;
 	}
 	
+	/***
+	 * A method to set the ID code of a Message. Used by the Server to route a request by rewriting its ID code
+	 * in place instead of copying it into a new Message.
+	 * @param messageID The new ID code of the Message.
+	 */
+	public void setMessageID(MessageID messageID) {
+		this.messageID = messageID;
+	}
+	
 	/***
 	 * A method to retrieve the Name of the Sender/Source of a Message.
 	 * @return The Name of the Sender/Source of a Message.
@@ -84,5 +97,60 @@ public class Message {
 		this.data = data;
 	}
 	
+	/***
+	 * A method to retrieve the number of the Message in its conversation.
+	 * @return The sequence number of the Message, or 0 if it is not numbered.
+	 * @see DeliveryTracker
+	 */
+	public long getSequenceNumber() {
+		return this.sequenceNumber;
+	}
+	
+	/***
+	 * A method to retrieve the lowest number in the conversation the sender was still waiting to have acknowledged.
+	 * Every lower number has been acknowledged or given up on, so the receiver need not wait for it.
+	 * @return The lowest unacknowledged sequence number when the Message was sent.
+	 */
+	public long getLowestUnacknowledged() {
+		return this.lowestUnacknowledged;
+	}
+	
+	/***
+	 * A method to number the Message in its conversation.
+	 * @param sequenceNumber The sequence number of the Message.
+	 * @param lowestUnacknowledged The lowest number the sender is still waiting to have acknowledged.
+	 */
+	public void setSequenceNumber(long sequenceNumber, long lowestUnacknowledged) {
+		this.sequenceNumber = sequenceNumber;
+		this.lowestUnacknowledged = lowestUnacknowledged;
+	}
+	
+	/***
+	 * A method to estimate the number of bytes a Message occupies, used for flow control and queue limits.
+	 * @return The estimated number of bytes of the Message.
+	 * @see Payload#getSize()
+	 */
+	public long getSize() {
+		long size = 16 + this.sourceName.length() + this.destinationName.length();
+		if(this.data instanceof Payload)
+			size += ((Payload)this.data).getSize();
+		else if(this.data instanceof String)
+			size += ((String)this.data).length();
+		else if(this.data != null)
+			size += 64;
+		return size;
+	}
+	
+	/***
+	 * A method to retrieve the Data of a Message as a typed Payload.
+	 * @return The Payload of a Message or null if the Data of the Message is not a Payload.
+	 * @see Payload
+	 */
+	public Payload getPayload() {
+		if(this.data instanceof Payload)
+			return (Payload)this.data;
+		return null;
+	}
+	
 	
 }
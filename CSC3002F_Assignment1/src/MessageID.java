@@ -17,19 +17,48 @@ public enum MessageID {
 	 * IMAGE_TRANSFER_CONFIRMATION_REQUEST = 5 (From Server to Client Only)
 	 * IMAGE_TRANSFER_CONFIRMATION_RESPONSE = 6 (From Client to Server Only)
 	 * IMAGE_TRANSFER_RECEIPT = 7 (From Server to Client Only)
-	 * MESSAGE_CONFIRMATION_RESPONSE = 8 (From Client to Server Only) - To check if the message was delivered
-	 * MESSAGE_CONFIRMATION_RECEIPT = 9 (From Server to Client Only) - To check if the message was delivered
+	 * MESSAGE_CONFIRMATION_RESPONSE = 8 (From Client to Server Only) - Acknowledges every numbered message received from a sender up to a number
+	 * MESSAGE_CONFIRMATION_RECEIPT = 9 (From Server to Client Only) - Tells the sender which of its numbered messages were delivered, see DeliveryTracker
 	 * ONLINE_CLIENTS_REQUEST = 10 (From Client to Server only) - To ask for online client's details
 	 * ONLINE_CLIENTS_RESPONSE = 11 (From Server to Client only) - To give the client the online client's details
 	 * AUDIO_TRANSFER_REQUEST = 12 (From Client to Server Only)
 	 * AUDIO_TRANSFER_CONFIRMATION_REQUEST = 13 (From Server to Client Only)
 	 * AUDIO_TRANSFER_CONFIRMATION_RESPONSE = 14 (From Client to Server Only)
 	 * AUDIO_TRANSFER_RECEIPT = 15 (From Server to Client)
+	 * AUDIO_STREAM_START = 19 (From Server to Client Only) - Tells the sender of an accepted Audio offer to start streaming it
+	 * AUDIO_STREAM_CHUNK = 20 (From Client to Server and Server to Client) - One chunk of an Audio stream, forwarded untouched
+	 * FLOW_CONTROL_CREDIT = 21 (From Client to Server and Server to Client) - Grants the other side credit to send more
+	 * THROTTLE_RESPONSE = 22 (From Server to Client Only) - The request was over the Client's rate limit or shed under load
+	 * MESSAGE_FRAME = 23 (From Client to Server and Server to Client) - One slice of a bulk Message, see Lane and FramePayload
+	 * CLUSTER_GOSSIP = 24 (From Server to Server Only) - A node's view of which Clients are logged in to which node, see ClusterNode
+	 * ROOM_CREATE_REQUEST, ROOM_JOIN_REQUEST, ROOM_LEAVE_REQUEST (From Client to Server Only) - Addressed to the room, see RoomDirectory
+	 * ROOM_POST_REQUEST (From Client to Server Only) - A post to a room the Client is a member of
+	 * ROOM_POST_RECEIPT (From Server to Client Only) - A post from the room it is addressed to, sent as one Message to every online member
+	 * ROOM_RESPONSE (From Server to Client Only) - The outcome of creating, joining, leaving or posting to a room
+	 * TOPIC_SUBSCRIBE_REQUEST, TOPIC_UNSUBSCRIBE_REQUEST (From Client to Server Only) - Addressed to a topic pattern, see TopicTrie
+	 * TOPIC_PUBLISH_REQUEST (From Client to Server Only) - An event for the subscribers of the topic it is addressed to
+	 * TOPIC_EVENT (From Server to Client Only) - An event published to a topic the Client subscribed to, addressed to the topic
+	 * TOPIC_RESPONSE (From Server to Client Only) - The outcome of subscribing, unsubscribing or publishing to a topic
+	 * TEXT_MULTICAST_REQUEST (From Client to Server Only) - A text to every Client listed in its destination, see MulticastReportPayload
+	 * TEXT_MULTICAST_RECEIPT (From Server to Client Only) - A text sent to several Clients, still listing all of them
+	 * MULTICAST_RESPONSE (From Server to Client Only) - What became of a multicast text for each of its recipients
+	 * SIGNAL (From Client to Server and Server to Client) - An ephemeral typing indicator or read receipt, see SignalCoalescer
+	 * SEARCH_REQUEST (From Client to Server Only) - Words to search the Client's text message history for, see SearchIndex
+	 * SEARCH_RESPONSE (From Server to Client Only) - The text messages matching a search, see SearchResultPayload
+	 * CONFIRMATION_WITHDRAWN (From Server to Client Only) - An offer was answered on another device of the Client, so its confirmation request no longer needs an answer
+	 * CONTENT_QUERY_REQUEST (From Client to Server Only) - Asks whether the Server holds an Image by the hash of its content, see ContentReferencePayload
+	 * CONTENT_QUERY_RESPONSE (From Server to Client Only) - Whether the Server holds an Image it was asked about or sent a reference to, see ContentStore
 	 * More Details on Message Code Schematic on Google Drive
 	 */
 
 	REGISTRATION_REQUEST, REGISTRATION_RESPONSE, TEXT_TRANSFER_REQUEST, TEXT_TRANSFER_RECEIPT, TEXT_SEND_TO_ALL_REQUEST,
 	TEXT_SEND_TO_ALL_RECEIPT, IMAGE_TRANSFER_REQUEST, IMAGE_TRANSFER_CONFIRMATION_REQUEST, IMAGE_TRANSFER_CONFIRMATION_RESPONSE,
 	IMAGE_TRANSFER_RECEIPT, IMAGE_SEND_TO_ALL_REQUEST, ONLINE_CLIENTS_REQUEST, ONLINE_CLIENTS_RESPONSE, CLOSE_CONNECTION,AUDIO_TRANSFER_REQUEST,
-	AUDIO_TRANSFER_CONFIRMATION_REQUEST, AUDIO_TRANSFER_CONFIRMATION_RESPONSE,AUDIO_TRANSFER_RECEIPT, AUDIO_CONFIRMATION_REQUEST_TEXT;
+	AUDIO_TRANSFER_CONFIRMATION_REQUEST, AUDIO_TRANSFER_CONFIRMATION_RESPONSE,AUDIO_TRANSFER_RECEIPT, AUDIO_CONFIRMATION_REQUEST_TEXT,
+	AUDIO_STREAM_START, AUDIO_STREAM_CHUNK, FLOW_CONTROL_CREDIT, THROTTLE_RESPONSE, MESSAGE_FRAME, CLUSTER_GOSSIP,
+	MESSAGE_CONFIRMATION_RESPONSE, MESSAGE_CONFIRMATION_RECEIPT, ROOM_CREATE_REQUEST, ROOM_JOIN_REQUEST, ROOM_LEAVE_REQUEST,
+	ROOM_POST_REQUEST, ROOM_POST_RECEIPT, ROOM_RESPONSE, TOPIC_SUBSCRIBE_REQUEST, TOPIC_UNSUBSCRIBE_REQUEST,
+	TOPIC_PUBLISH_REQUEST, TOPIC_EVENT, TOPIC_RESPONSE, TEXT_MULTICAST_REQUEST, TEXT_MULTICAST_RECEIPT, MULTICAST_RESPONSE,
+	SIGNAL, SEARCH_REQUEST, SEARCH_RESPONSE, CONFIRMATION_WITHDRAWN,
+	CONTENT_QUERY_REQUEST, CONTENT_QUERY_RESPONSE;
 }
@@ -0,0 +1,508 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/***
+ * A Client's local store of the text messages it received, the last list of online Clients it was sent and the
+ * session it can resume, kept in its own folder under client_data so that a Client which starts again can show its
+ * recent conversations at once, even when the Server cannot be reached, and resume its session from the last Message it
+ * stored, so that the Server only writes the Messages which are newer.
+ * The ServerInteractionHandler hands everything to the store without waiting: the store's own thread appends the texts
+ * to a log and rewrites the state file at most every STATE_INTERVAL_MILLIS. The number of the last Message received is
+ * written only after the texts before it, so the store never claims to hold a Message it lost.
+ * The log and the state file can only be read by the user, and the password is only kept as a slow salted hash.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class MessageStore {
+
+	// static variables
+	private final static String STORE_DIRECTORY = "client_data";
+	private final static String LOG_FILE = "messages.log";
+	private final static String STATE_FILE = "state.properties";
+	// once the log is larger than this it is rewritten holding only its latest KEPT_RECORDS texts.
+	private final static long MAX_LOG_BYTES = 4L * 1024 * 1024;
+	private final static int KEPT_RECORDS = 10000;
+	private final static int RECENT_CONVERSATIONS = 10;
+	private final static int RECENT_PER_CONVERSATION = 3;
+	private final static long STATE_INTERVAL_MILLIS = 500;
+	private final static int SALT_BYTES = 16;
+	private final static String HASH_ALGORITHM = "PBKDF2WithHmacSHA256";
+	private final static int HASH_ITERATIONS = 210000;
+	private final static int HASH_BITS = 256;
+	// how a text sent to all is shown among the recent conversations.
+	private final static String EVERYONE = "Everyone";
+
+	// instance variables
+	private final String username;
+	private final File directory;
+	// the texts read from the log when the store was opened, oldest first.
+	private final ArrayList<Record> loaded;
+	private final Properties state;
+	// the writes waiting for the store's thread, which is the only thread to touch the log and the state file.
+	private final LinkedBlockingQueue<Runnable> pending;
+	private final Thread writer;
+	private DataOutputStream log;
+	private boolean stateChanged;
+	private volatile boolean closed;
+	// the number of the last Message handed to the store, only used by the thread handing Messages over.
+	private long queuedHighWaterMark;
+
+	/***
+	 * The Constructor of the MessageStore Class, which opens or creates the store of a Client and starts its thread.
+	 * Catches IOException if the store could not be opened, in which case nothing is stored.
+	 * @param username The user name of the Client.
+	 */
+	public MessageStore(String username) {
+		this.username = username;
+		this.directory = new File(MessageStore.STORE_DIRECTORY, username.replaceAll("[^A-Za-z0-9._-]", "_"));
+		this.loaded = new ArrayList<Record>();
+		this.state = new Properties();
+		this.pending = new LinkedBlockingQueue<Runnable>();
+		try {
+			this.directory.mkdirs();
+			File stateFile = new File(this.directory, MessageStore.STATE_FILE);
+			if(stateFile.exists())
+				try (FileInputStream in = new FileInputStream(stateFile)) {
+					this.state.load(in);
+					}
+			this.openLog();
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			this.log = null;
+			}
+		this.queuedHighWaterMark = this.getHighWaterMark();
+		this.writer = new Thread(this::writeEntries, "Message Store Writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+		}
+
+	/***
+	 * A method used to read the texts in the log and open it for appending. A text cut short by the Client stopping
+	 * while it was written is cut off, and a log which has grown too large is rewritten with only its latest texts.
+	 * @throws IOException If the log could not be read or opened.
+	 */
+	private void openLog() throws IOException {
+		File logFile = new File(this.directory, MessageStore.LOG_FILE);
+		long validBytes = 0;
+		if(logFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+				while(true) {
+					Record record = Record.read(in);
+					this.loaded.add(record);
+					validBytes += record.getStoredSize();
+					}
+				}
+			catch (EOFException e) {
+				}
+			if(validBytes < logFile.length())
+				try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+					file.setLength(validBytes);
+					}
+			}
+		if(validBytes > MessageStore.MAX_LOG_BYTES && this.loaded.size() > MessageStore.KEPT_RECORDS) {
+			List<Record> kept = this.loaded.subList(this.loaded.size() - MessageStore.KEPT_RECORDS, this.loaded.size());
+			File compacted = new File(this.directory, MessageStore.LOG_FILE + ".tmp");
+			compacted.delete();
+			compacted.createNewFile();
+			MessageStore.restrictToOwner(compacted);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+				for(Record record: kept)
+					record.write(out);
+				}
+			Files.move(compacted.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.loaded.subList(0, this.loaded.size() - MessageStore.KEPT_RECORDS).clear();
+			}
+		// the log holds the Client's conversations, so only the user may read it.
+		logFile.createNewFile();
+		MessageStore.restrictToOwner(logFile);
+		this.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+		}
+
+	/***
+	 * A method used to retrieve the user name of the Client the store belongs to.
+	 * @return The user name.
+	 */
+	public String getUsername() {
+		return this.username;
+		}
+
+	/***
+	 * A method used to retrieve the number of the last Message the store holds, which a resumed session continues after.
+	 * @return The number of the last Message stored, or 0.
+	 */
+	public long getHighWaterMark() {
+		return Long.parseLong(this.state.getProperty("high_water_mark", "0"));
+		}
+
+	/***
+	 * A method used to retrieve the session the Client can resume, if the password it logs in with is the one the
+	 * session was opened with. The token lets the Server accept the Client without checking its password, so it is not
+	 * used for a Client which entered a different password.
+	 * @param password The password the Client entered.
+	 * @return The session token, or null if there is no session to resume.
+	 */
+	public String getSessionToken(String password) {
+		String token = this.state.getProperty("session_token");
+		String salt = this.state.getProperty("password_salt");
+		String passwordHash = this.state.getProperty("password_hash");
+		if(token == null || salt == null || passwordHash == null || !MessageDigest.isEqual(MessageStore.hash(salt, password)
+				.getBytes(StandardCharsets.UTF_8), passwordHash.getBytes(StandardCharsets.UTF_8)))
+			return null;
+		return token;
+		}
+
+	/***
+	 * A method used to describe the Client's recent conversations and the Clients last known to be online, most recent
+	 * conversation first.
+	 * @return The description, or null if nothing is stored.
+	 */
+	public String describeRecentConversations() {
+		if(this.loaded.isEmpty() && this.state.getProperty("online_clients") == null)
+			return null;
+		// the conversations are found walking back from the latest text.
+		LinkedHashMap<String, ArrayList<Record>> conversations = new LinkedHashMap<String, ArrayList<Record>>();
+		for(int i = this.loaded.size() - 1; i >= 0 && conversations.size() <= MessageStore.RECENT_CONVERSATIONS; i--) {
+			Record record = this.loaded.get(i);
+			ArrayList<Record> texts = conversations.computeIfAbsent(record.getConversation(), key -> new ArrayList<Record>());
+			if(texts.size() < MessageStore.RECENT_PER_CONVERSATION)
+				texts.add(0, record);
+			}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		StringBuilder description = new StringBuilder("Recent Conversations:\n");
+		int shown = 0;
+		for(Map.Entry<String, ArrayList<Record>> conversation: conversations.entrySet()) {
+			if(shown++ == MessageStore.RECENT_CONVERSATIONS)
+				break;
+			description.append("-----------------------------------------\n").append(conversation.getKey()).append("\n");
+			for(Record record: conversation.getValue())
+				description.append("[").append(format.format(new Date(record.timestamp))).append("] ")
+					.append(record.source).append(": ").append(record.text).append("\n");
+			}
+		String onlineClients = this.state.getProperty("online_clients");
+		if(onlineClients != null)
+			description.append("-----------------------------------------\nOnline Clients as of ")
+				.append(format.format(new Date(Long.parseLong(this.state.getProperty("online_clients_at", "0")))))
+				.append(": ").append(onlineClients.isEmpty() ? "none" : onlineClients).append("\n");
+		return description.toString();
+		}
+
+	/***
+	 * A method used to store a text message the Client received.
+	 * @param message The TEXT_TRANSFER_RECEIPT, TEXT_SEND_TO_ALL_RECEIPT, TEXT_MULTICAST_RECEIPT or ROOM_POST_RECEIPT.
+	 */
+	public void storeText(Message message) {
+		String conversation;
+		switch(message.getMessageID()) {
+			case TEXT_TRANSFER_RECEIPT:
+				conversation = message.getSourceName();
+				break;
+			case TEXT_SEND_TO_ALL_RECEIPT:
+				conversation = MessageStore.EVERYONE;
+				break;
+			default:
+				conversation = message.getDestinationName();
+			}
+		Record record = new Record(conversation, message.getSourceName(), message.getData().toString(), System.currentTimeMillis());
+		this.submit(() -> this.append(record));
+		}
+
+	/***
+	 * A method used to note the number of the last Message the Client received, once the texts before it were handed
+	 * to the store.
+	 * @param highWaterMark The number of the last Message received.
+	 */
+	public void setHighWaterMark(long highWaterMark) {
+		if(highWaterMark == this.queuedHighWaterMark)
+			return;
+		this.queuedHighWaterMark = highWaterMark;
+		this.submit(() -> this.setState("high_water_mark", Long.toString(highWaterMark)));
+		}
+
+	/***
+	 * A method used to store the session the Client can resume, together with a salted hash of the password it logged
+	 * in with.
+	 * @param sessionToken The session token, or null if the Server does not resume sessions.
+	 * @param password The password the Client logged in with.
+	 * @param highWaterMark The number of the last Message received in the session.
+	 */
+	public void setSession(String sessionToken, String password, long highWaterMark) {
+		this.queuedHighWaterMark = highWaterMark;
+		this.submit(() -> {
+			if(sessionToken == null) {
+				this.state.remove("session_token");
+				this.stateChanged = true;
+				return;
+				}
+			byte[] salt = new byte[MessageStore.SALT_BYTES];
+			new SecureRandom().nextBytes(salt);
+			String encodedSalt = Base64.getEncoder().encodeToString(salt);
+			this.setState("password_salt", encodedSalt);
+			this.setState("password_hash", MessageStore.hash(encodedSalt, password));
+			this.setState("session_token", sessionToken);
+			this.setState("high_water_mark", Long.toString(highWaterMark));
+			});
+		}
+
+	/***
+	 * A method used to store the last list of online Clients the Client was sent.
+	 * @param onlineClients The user names of the online Clients.
+	 */
+	public void setOnlineClients(List<String> onlineClients) {
+		String names = String.join(", ", onlineClients);
+		long now = System.currentTimeMillis();
+		this.submit(() -> {
+			this.setState("online_clients", names);
+			this.setState("online_clients_at", Long.toString(now));
+			});
+		}
+
+	/***
+	 * A method used to hand a write to the store's thread.
+	 * @param write The write.
+	 */
+	private void submit(Runnable write) {
+		if(!this.closed)
+			this.pending.add(write);
+		}
+
+	/***
+	 * A method used to write everything handed to the store so far and stop its thread.
+	 * Waits up to a second for the writes to finish.
+	 */
+	public void close() {
+		this.pending.add(() -> this.closed = true);
+		try {
+			this.writer.join(1000);
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			}
+		}
+
+	/***
+	 * The method run by the store's thread, which makes each write handed to it and then flushes the log and rewrites
+	 * the state file once nothing more is waiting, but at most every STATE_INTERVAL_MILLIS.
+	 * Catches IOException if the store could not be written, in which case nothing more is stored.
+	 */
+	private void writeEntries() {
+		long lastSavedMillis = 0;
+		while(!this.closed) {
+			try {
+				long waitMillis = this.stateChanged ? Math.max(1, lastSavedMillis + MessageStore.STATE_INTERVAL_MILLIS - System.currentTimeMillis()) : Long.MAX_VALUE;
+				Runnable write = this.pending.poll(waitMillis, TimeUnit.MILLISECONDS);
+				if(write != null) {
+					write.run();
+					if(!this.pending.isEmpty() && !this.closed)
+						continue;
+					}
+				if(this.log != null)
+					this.log.flush();
+				if(this.stateChanged && (this.closed || System.currentTimeMillis() - lastSavedMillis >= MessageStore.STATE_INTERVAL_MILLIS)) {
+					this.saveState();
+					lastSavedMillis = System.currentTimeMillis();
+					}
+				}
+			catch (InterruptedException e) {
+				return;
+				}
+			catch (IOException e) {
+				System.out.println(e);
+				this.closed = true;
+				}
+			}
+		try {
+			if(this.log != null)
+				this.log.close();
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		}
+
+	/***
+	 * A method used to append a text to the log. Only called by the store's thread.
+	 * Catches IOException if it could not be written.
+	 * @param record The text.
+	 */
+	private void append(Record record) {
+		if(this.log == null)
+			return;
+		try {
+			record.write(this.log);
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		}
+
+	/***
+	 * A method used to change a value of the state. Only called by the store's thread.
+	 * @param key The name of the value.
+	 * @param value The new value.
+	 */
+	private void setState(String key, String value) {
+		this.state.setProperty(key, value);
+		this.stateChanged = true;
+		}
+
+	/***
+	 * A method used to write the state file, by writing a new file and moving it over the old one so that a Client
+	 * which stops while the state is written never finds it half written. The log is flushed first so that the state
+	 * never names a Message the log does not hold.
+	 * @throws IOException If the state file could not be written.
+	 */
+	private void saveState() throws IOException {
+		if(this.log != null)
+			this.log.flush();
+		File stateFile = new File(this.directory, MessageStore.STATE_FILE);
+		File written = new File(this.directory, MessageStore.STATE_FILE + ".tmp");
+		// the state holds the session token, so only the user may read it.
+		written.delete();
+		written.createNewFile();
+		MessageStore.restrictToOwner(written);
+		try (FileOutputStream out = new FileOutputStream(written)) {
+			this.state.store(out, "Client Message Store");
+			}
+		Files.move(written.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.stateChanged = false;
+		}
+
+	/***
+	 * A method used to let only the user read and write a file, before anything is written to it.
+	 * @param file The file, which must exist.
+	 */
+	static void restrictToOwner(File file) {
+		file.setReadable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(false, false);
+		file.setWritable(true, true);
+		}
+
+	/***
+	 * A method used to hash a password with a salt, with enough iterations of PBKDF2 that a stolen hash is slow to guess.
+	 * A hash stored before the iterations were raised no longer matches, and the Client then logs in with its password.
+	 * @param salt The salt, in Base64.
+	 * @param password The password.
+	 * @return The hash, in Base64.
+	 */
+	private static String hash(String salt, String password) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Base64.getDecoder().decode(salt), MessageStore.HASH_ITERATIONS,
+				MessageStore.HASH_BITS);
+		try {
+			return Base64.getEncoder().encodeToString(SecretKeyFactory.getInstance(MessageStore.HASH_ALGORITHM).generateSecret(spec).getEncoded());
+			}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+			}
+		finally {
+			spec.clearPassword();
+			}
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A text message in the log: the conversation it belongs to, its sender, its text and when it was received.
+	 */
+	private final static class Record {
+
+		// instance variables
+		private final String conversation;
+		private final String source;
+		private final String text;
+		private final long timestamp;
+
+		/***
+		 * The Constructor of the Record Class.
+		 * @param conversation The conversation of the text.
+		 * @param source The user name of the sender.
+		 * @param text The text.
+		 * @param timestamp When the text was received.
+		 */
+		private Record(String conversation, String source, String text, long timestamp) {
+			this.conversation = conversation;
+			this.source = source;
+			this.text = text;
+			this.timestamp = timestamp;
+			}
+
+		/***
+		 * A method used to retrieve the conversation of the text.
+		 * @return The other Client of a direct text, the recipients of a multicast, the room of a post or Everyone.
+		 */
+		private String getConversation() {
+			return this.conversation;
+			}
+
+		/***
+		 * A method used to retrieve the number of bytes the record takes in the log.
+		 * @return The number of bytes.
+		 */
+		private long getStoredSize() {
+			return 8 + 12 + this.conversation.getBytes(StandardCharsets.UTF_8).length + this.source.getBytes(StandardCharsets.UTF_8).length
+					+ this.text.getBytes(StandardCharsets.UTF_8).length;
+			}
+
+		/***
+		 * A method used to write the record, each String as its length and its UTF-8 bytes.
+		 * @param out The stream to write to.
+		 * @throws IOException If the record could not be written.
+		 */
+		private void write(DataOutputStream out) throws IOException {
+			out.writeLong(this.timestamp);
+			for(String value: Arrays.asList(this.conversation, this.source, this.text)) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				}
+			}
+
+		/***
+		 * A method used to read a record written by write.
+		 * @param in The stream to read from.
+		 * @return The record.
+		 * @throws IOException If the record could not be read, EOFException if the stream ended before the end of it.
+		 */
+		private static Record read(DataInputStream in) throws IOException {
+			long timestamp = in.readLong();
+			String[] values = new String[3];
+			for(int i = 0; i < values.length; i++) {
+				int length = in.readInt();
+				if(length < 0 || length > MessageStore.MAX_LOG_BYTES)
+					throw new EOFException();
+				byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				values[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			return new Record(values[0], values[1], values[2], timestamp);
+			}
+		}
+	}
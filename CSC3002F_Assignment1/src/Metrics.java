@@ -0,0 +1,90 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/***
+ * A registry of named counters and gauges used to report how the Server or Client is performing.
+ * Counters are LongAdders so that they can be updated from many Threads without contention.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see LongAdder
+ */
+public final class Metrics {
+
+	// static variables
+	private final static ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final static ConcurrentHashMap<String, Supplier<Object>> gauges = new ConcurrentHashMap<String, Supplier<Object>>();
+	private final static java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	/***
+	 * The Metrics Class only has static methods and is never instantiated.
+	 */
+	private Metrics() {
+		}
+
+	/***
+	 * A method used to add to a named counter, creating it if it does not exist.
+	 * @param name The name of the counter.
+	 * @param delta The amount to add to the counter.
+	 */
+	public static void add(String name, long delta) {
+		counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+		}
+
+	/***
+	 * A method used to add one to a named counter, creating it if it does not exist.
+	 * @param name The name of the counter.
+	 */
+	public static void increment(String name) {
+		Metrics.add(name, 1);
+		}
+
+	/***
+	 * A method used to retrieve the value of a named counter.
+	 * @param name The name of the counter.
+	 * @return The value of the counter or 0 if it does not exist.
+	 */
+	public static long get(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+		}
+
+	/***
+	 * A method used to retrieve the number of bytes the current Thread has allocated so far, used to profile hot paths.
+	 * @return The number of bytes allocated by the current Thread, or -1 if the JVM cannot measure it.
+	 * @see com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+		}
+
+	/***
+	 * A method used to register a gauge whose value is computed each time the Metrics are reported.
+	 * @param name The name of the gauge.
+	 * @param gauge A Supplier which computes the value of the gauge.
+	 */
+	public static void registerGauge(String name, Supplier<Object> gauge) {
+		gauges.put(name, gauge);
+		}
+
+	/***
+	 * A method used to report every counter and gauge sorted by name.
+	 * @return A String with one name and value per line.
+	 */
+	public static String report() {
+		TreeMap<String, Object> values = new TreeMap<String, Object>();
+		for(Map.Entry<String, LongAdder> counter: counters.entrySet())
+			values.put(counter.getKey(), counter.getValue().sum());
+		for(Map.Entry<String, Supplier<Object>> gauge: gauges.entrySet())
+			values.put(gauge.getKey(), gauge.getValue().get());
+		StringBuilder report = new StringBuilder();
+		for(Map.Entry<String, Object> value: values.entrySet())
+			report.append(value.getKey()).append(" = ").append(value.getValue()).append("\n");
+		return report.toString();
+		}
+	}
@@ -0,0 +1,98 @@
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/***
+ * The Payload of a MULTICAST_RESPONSE, telling the sender of a TEXT_MULTICAST_REQUEST what became of its text for
+ * each of the recipients listed in the request's destination, in the order they were listed.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class MulticastReportPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// the recipients of a multicast are listed in its destination separated by commas.
+	public final static String RECIPIENT_SEPARATOR = ",";
+
+	/***
+	 * What became of a multicast text for one recipient.
+	 */
+	public enum Status {
+		// handed to the recipient's connection on this Server.
+		DELIVERED,
+		// handed to the node of the cluster the recipient is logged in to.
+		FORWARDED,
+		// the recipient is known but not logged in.
+		OFFLINE,
+		// there is no Client with the user name.
+		UNKNOWN,
+		// the recipient's connection could not take the text.
+		DROPPED,
+		// the request listed more recipients than the Server accepts.
+		OVER_LIMIT
+		}
+
+	// instance variables
+	private LinkedHashMap<String, Status> statuses;
+
+	/***
+	 * The Constructor of the MulticastReportPayload Class, which starts with no recipients.
+	 */
+	public MulticastReportPayload() {
+		this.statuses = new LinkedHashMap<String, Status>();
+		}
+
+	/***
+	 * A method used to record what became of the text for a recipient.
+	 * @param recipient The user name of the recipient.
+	 * @param status What became of the text.
+	 */
+	public void setStatus(String recipient, Status status) {
+		this.statuses.put(recipient, status);
+		}
+
+	/***
+	 * A method to retrieve what became of the text for each recipient.
+	 * @return The statuses by recipient, in the order the recipients were listed.
+	 */
+	public Map<String, Status> getStatuses() {
+		return this.statuses;
+		}
+
+	/***
+	 * A method used to list the recipients of a multicast in the destination of its request.
+	 * @param recipients The user names of the recipients.
+	 * @return The destination naming every recipient.
+	 */
+	public static String joinRecipients(Collection<String> recipients) {
+		return String.join(MulticastReportPayload.RECIPIENT_SEPARATOR, recipients);
+		}
+
+	/***
+	 * A method used to read the recipients listed in the destination of a multicast, ignoring blank and repeated names.
+	 * @param destinationName The destination of the TEXT_MULTICAST_REQUEST.
+	 * @return The user names of the recipients, in the order they were listed.
+	 */
+	public static LinkedHashSet<String> parseRecipients(String destinationName) {
+		LinkedHashSet<String> recipients = new LinkedHashSet<String>();
+		for(String recipient: destinationName.split(MulticastReportPayload.RECIPIENT_SEPARATOR))
+			if(!recipient.trim().isEmpty())
+				recipients.add(recipient.trim());
+		return recipients;
+		}
+
+	@Override
+	public long getSize() {
+		return this.statuses.size() * 16;
+		}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		for(Map.Entry<String, Status> entry: this.statuses.entrySet())
+			report.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		return report.toString();
+		}
+	}
@@ -0,0 +1,550 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/***
+ * A bounded queue of Messages waiting to be written to one connection, together with the Thread that writes them.
+ * Threads which enqueue Messages block while the queue is full, which is how a slow receiver pushes back on the
+ * Threads feeding it. The writing Thread spends flow control credit before each Message and only flushes the stream
+ * once the queue is empty so that bursts of Messages share one flush.
+ * Control Messages such as credit grants bypass both the capacity of the queue and the flow control credit. A Message
+ * which runs out of credit is parked while control Messages are still written, since two sides which both ran out of
+ * credit each wait for a grant only the other's writing Thread can send.
+ * Messages are queued on one Lane each. The control lane is always written first, and once framing has been agreed
+ * bulk Messages are split into MESSAGE_FRAMEs with up to INTERACTIVE_WEIGHT interactive Messages written between
+ * frames, so text waits behind at most one frame rather than a whole Image. A MESSAGE_FRAME relayed from another
+ * connection is queued on the bulk lane and written as it is.
+ * The Payload of every Message is released once the Message has been written or dropped.
+ * Once a sequencer is set, every Message except control Messages is written with the number the sequencer gives it,
+ * which the receiver reports back to resume after the connection drops. Once sequence numbers are enabled every
+ * Message except control Messages is also written with its number in its conversation, followed by the lowest number
+ * its sender is waiting to have acknowledged if it is numbered.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FlowController
+ * @see PayloadCodec
+ * @see Lane
+ * @see FrameSplitter
+ * @see ClientSession
+ */
+public class OutboundQueue implements Runnable {
+
+	// static variables
+	private final static long MAX_QUEUED_BYTES = 4L * 1024 * 1024;
+	private final static int MAX_QUEUED_MESSAGES = 256;
+	// how long a sender waits for room before the Message is dropped, so a receiver which stopped reading cannot stall senders forever.
+	private final static long ENQUEUE_TIMEOUT_SECONDS = 30;
+	// the number of interactive Messages written for every frame of a bulk Message while both are waiting.
+	private final static int INTERACTIVE_WEIGHT = 4;
+	// the stream remembers every object written to it until it is reset, so it is reset at least this often.
+	private final static int RESET_INTERVAL = 1024;
+
+	// instance variables
+	private ObjectOutputStream oOutputStream;
+	private PayloadCodec payloadCodec;
+	private FlowController flowController;
+	private ReentrantLock queueLock;
+	private Condition notEmpty;
+	private Condition notFull;
+	// one queue per Lane indexed by the ordinal of the Lane.
+	private ArrayDeque<Message>[] laneQueues;
+	private int queuedMessages;
+	private long queuedBytes;
+	private boolean closed;
+	private volatile boolean framingEnabled;
+	// the bulk Message currently being written frame by frame, only used by the writing Thread.
+	private FrameSplitter currentFrames;
+	// the Message or frame waiting for flow control credit, which is written before any other Message but control Messages.
+	private Message parked;
+	private AtomicInteger nextFrameStreamID;
+	private int interactiveSinceFrame;
+	private int writtenSinceReset;
+	private Thread writerThread;
+	// numbers the Messages written, or null if they are written without numbers.
+	private volatile ToLongFunction<Message> sequencer;
+	private volatile boolean sequenceNumbersEnabled;
+
+	/***
+	 * The Constructor of the OutboundQueue Class.
+	 * @param oOutputStream The stream of the connection the Messages are written to.
+	 * @param payloadCodec The PayloadCodec of the connection.
+	 * @param flowController The FlowController of the connection.
+	 */
+	@SuppressWarnings("unchecked")
+	public OutboundQueue(ObjectOutputStream oOutputStream, PayloadCodec payloadCodec, FlowController flowController) {
+		this.oOutputStream = oOutputStream;
+		this.payloadCodec = payloadCodec;
+		this.flowController = flowController;
+		this.queueLock = new ReentrantLock();
+		this.notEmpty = this.queueLock.newCondition();
+		this.notFull = this.queueLock.newCondition();
+		this.flowController.setCreditListener(this::signalWriter);
+		this.laneQueues = (ArrayDeque<Message>[])new ArrayDeque<?>[Lane.values().length];
+		for(Lane lane: Lane.values())
+			this.laneQueues[lane.ordinal()] = new ArrayDeque<Message>();
+		this.queuedMessages = 0;
+		this.queuedBytes = 0;
+		this.closed = false;
+		this.framingEnabled = false;
+		this.nextFrameStreamID = new AtomicInteger(0);
+		this.interactiveSinceFrame = 0;
+		this.writtenSinceReset = 0;
+		}
+
+	/***
+	 * A method used to enable splitting bulk Messages into frames once both sides agreed on it in the handshake.
+	 * @param framingEnabled Whether bulk Messages should be framed.
+	 */
+	public void setFramingEnabled(boolean framingEnabled) {
+		this.framingEnabled = framingEnabled;
+		}
+
+	/***
+	 * A method used to number every Message written from now on, other than control Messages. Must be set before
+	 * any Message other than a control Message is queued, since the receiver expects every one of them to be numbered.
+	 * Messages left unwritten when the queue stops are also given to the sequencer, so they can be written again later.
+	 * @param sequencer Returns the number of each Message as it is written.
+	 * @see ClientSession#attach(OutboundQueue)
+	 */
+	public void setSequencer(ToLongFunction<Message> sequencer) {
+		this.sequencer = sequencer;
+		}
+
+	/***
+	 * A method used to write the conversation sequence numbers of Messages once both sides agreed on it in the handshake.
+	 * @param sequenceNumbersEnabled Whether sequence numbers should be written.
+	 * @see Message#getSequenceNumber()
+	 */
+	public void setSequenceNumbersEnabled(boolean sequenceNumbersEnabled) {
+		this.sequenceNumbersEnabled = sequenceNumbersEnabled;
+		}
+
+	/***
+	 * A method used to check whether conversation sequence numbers are written on this connection.
+	 * @return A boolean which is true if sequence numbers are written.
+	 */
+	public boolean isSequenceNumbersEnabled() {
+		return this.sequenceNumbersEnabled;
+		}
+
+	/***
+	 * A method used to check whether bulk Messages are framed on this connection.
+	 * @return A boolean which is true if bulk Messages are framed.
+	 */
+	public boolean isFramingEnabled() {
+		return this.framingEnabled;
+		}
+
+	/***
+	 * A method used to allocate the number identifying a new framed bulk Message on this connection.
+	 * @return A number which no other framed bulk Message on this connection uses.
+	 */
+	public int allocateFrameStreamID() {
+		return this.nextFrameStreamID.getAndIncrement();
+		}
+
+	/***
+	 * A method used to check whether a received Message arrived as frames, in which case the flow control credit for
+	 * it was already returned frame by frame.
+	 * @param messageID The ID code of the received Message.
+	 * @return A boolean which is true if Messages with the ID code are framed.
+	 */
+	public boolean isFramed(MessageID messageID) {
+		return this.framingEnabled && messageID != MessageID.MESSAGE_FRAME && Lane.of(messageID) == Lane.BULK;
+		}
+
+	/***
+	 * A method used to start the Thread which writes the queued Messages.
+	 * @param name The name of the writing Thread.
+	 */
+	public void start(String name) {
+		this.writerThread = new Thread(this, name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+		}
+
+	/***
+	 * A method used to check whether a Message is a control Message which bypasses the queue's capacity and flow control.
+	 * @param messageID The ID code of the Message.
+	 * @return A boolean which is true for control Messages.
+	 */
+	public static boolean isControlMessage(MessageID messageID) {
+		return Lane.of(messageID) == Lane.CONTROL;
+		}
+
+	/***
+	 * A method used to add a Message to the queue, blocking while the queue is full.
+	 * A Message larger than the whole queue is accepted once the queue is empty so that it can never block forever.
+	 * @param message The Message to write.
+	 * @return A boolean which is false if the queue was closed or stayed full for too long and the Message was dropped.
+	 */
+	public boolean enqueue(Message message) {
+		return this.add(message, true);
+		}
+
+	/***
+	 * A method used to add a Message to the queue only if it is not full.
+	 * @param message The Message to write.
+	 * @return A boolean which is false if the queue was full or closed and the Message was dropped.
+	 */
+	public boolean offer(Message message) {
+		return this.add(message, false);
+		}
+
+	/***
+	 * A method used to add a Message to the queue only if it is not full, leaving the Message to the caller otherwise
+	 * so that it can be retried later without being released.
+	 * @param message The Message to write.
+	 * @return A boolean which is false if the queue was full or closed and the Message was not added.
+	 * @see OutboundQueue#isClosed()
+	 */
+	public boolean tryOffer(Message message) {
+		return this.addToLane(message, false);
+		}
+
+	/***
+	 * A method used to add a Message to the queue.
+	 * @param message The Message to write.
+	 * @param block Whether to wait while the queue is full.
+	 * @return A boolean which is false if the Message was dropped.
+	 */
+	private boolean add(Message message, boolean block) {
+		if(this.addToLane(message, block))
+			return true;
+		OutboundQueue.release(message);
+		return false;
+		}
+
+	/***
+	 * A method used to add a Message to the queue of its Lane.
+	 * @param message The Message to write.
+	 * @param block Whether to wait while the queue is full.
+	 * @return A boolean which is false if the Message was dropped.
+	 */
+	private boolean addToLane(Message message, boolean block) {
+		long size = message.getSize();
+		boolean control = OutboundQueue.isControlMessage(message.getMessageID());
+		this.queueLock.lock();
+		try {
+			if(!control && this.isFull(size)) {
+				if(!block)
+					return false;
+				Metrics.increment("flow.blocked_enqueues");
+				long remaining = TimeUnit.SECONDS.toNanos(ENQUEUE_TIMEOUT_SECONDS);
+				while(!this.closed && this.isFull(size)) {
+					if(remaining <= 0) {
+						Metrics.increment("flow.enqueue_timeouts");
+						return false;
+						}
+					try {
+						remaining = this.notFull.awaitNanos(remaining);
+						}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+						}
+					}
+				}
+			if(this.closed)
+				return false;
+			this.laneQueues[Lane.of(message.getMessageID()).ordinal()].addLast(message);
+			this.queuedMessages++;
+			this.queuedBytes += size;
+			this.notEmpty.signal();
+			return true;
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to release the Payload of a Message once it has been written or dropped.
+	 * @param message The Message which has been written or dropped.
+	 * @see Payload#release()
+	 */
+	public static void release(Message message) {
+		if(message.getPayload() != null)
+			message.getPayload().release();
+		}
+
+	/***
+	 * A method used to check whether a Message of the given size would overfill the queue. Must hold the queue's lock.
+	 * @param size The size of the Message in bytes.
+	 * @return A boolean which is true if the Message must wait.
+	 */
+	private boolean isFull(long size) {
+		if(this.queuedMessages == 0)
+			return false;
+		return this.queuedMessages >= MAX_QUEUED_MESSAGES || this.queuedBytes + size > MAX_QUEUED_BYTES;
+		}
+
+	/***
+	 * A method used to retrieve the number of Messages waiting to be written.
+	 * @return The number of Messages waiting to be written.
+	 */
+	public int getQueuedMessages() {
+		this.queueLock.lock();
+		try {
+			return this.queuedMessages;
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to check whether the queue has stopped accepting Messages.
+	 * @return A boolean which is true once the queue has been closed.
+	 */
+	public boolean isClosed() {
+		this.queueLock.lock();
+		try {
+			return this.closed;
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to stop accepting Messages. The Messages already queued are still written.
+	 */
+	public void close() {
+		this.queueLock.lock();
+		try {
+			this.closed = true;
+			this.notEmpty.signalAll();
+			this.notFull.signalAll();
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to wake the writing Thread, such as when credit was granted for a parked Message.
+	 */
+	private void signalWriter() {
+		this.queueLock.lock();
+		try {
+			this.notEmpty.signalAll();
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to wait for the queued Messages to be written once the queue has been closed.
+	 * @param millis The longest time to wait in milliseconds.
+	 */
+	public void awaitTermination(long millis) {
+		try {
+			if(this.writerThread != null)
+				this.writerThread.join(millis);
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			}
+		}
+
+	/***
+	 * A method used to write one Message to the stream variable by variable since Message isn't serializable.
+	 * @param message The Message to write.
+	 * @throws IOException If the stream could not be written to.
+	 * @see ObjectOutputStream
+	 */
+	private void writeMessage(Message message) throws IOException {
+		this.oOutputStream.writeUnshared(message.getMessageID());
+		this.oOutputStream.writeUTF(message.getSourceName());
+		this.oOutputStream.writeUTF(message.getDestinationName());
+		ToLongFunction<Message> sequencer = this.sequencer;
+		if(sequencer != null && !OutboundQueue.isControlMessage(message.getMessageID()))
+			this.oOutputStream.writeLong(sequencer.applyAsLong(message));
+		if(this.sequenceNumbersEnabled && !OutboundQueue.isControlMessage(message.getMessageID())) {
+			this.oOutputStream.writeLong(message.getSequenceNumber());
+			if(message.getSequenceNumber() != 0)
+				this.oOutputStream.writeLong(message.getLowestUnacknowledged());
+			}
+		this.oOutputStream.writeUnshared(this.payloadCodec.encode(message.getData()));
+		}
+
+	/***
+	 * A method used to pick the next Message to write: control Messages first, then interactive Messages and frames
+	 * of the current bulk Message in the ratio INTERACTIVE_WEIGHT to one. Must hold the queue's lock.
+	 * @return The next queued Message, or null if the next frame of the current bulk Message should be written.
+	 */
+	private Message pollNextMessage() {
+		ArrayDeque<Message> control = this.laneQueues[Lane.CONTROL.ordinal()];
+		ArrayDeque<Message> interactive = this.laneQueues[Lane.INTERACTIVE.ordinal()];
+		ArrayDeque<Message> bulk = this.laneQueues[Lane.BULK.ordinal()];
+		Message message;
+		boolean bulkWaiting = this.currentFrames != null || !bulk.isEmpty();
+		if(!control.isEmpty())
+			message = control.pollFirst();
+		else if(!interactive.isEmpty() && (!bulkWaiting || this.interactiveSinceFrame < INTERACTIVE_WEIGHT)) {
+			message = interactive.pollFirst();
+			this.interactiveSinceFrame++;
+			}
+		else if(this.currentFrames != null) {
+			this.interactiveSinceFrame = 0;
+			return null;
+			}
+		else {
+			message = bulk.pollFirst();
+			this.interactiveSinceFrame = 0;
+			}
+		this.queuedMessages--;
+		this.queuedBytes -= message.getSize();
+		this.notFull.signalAll();
+		return message;
+		}
+
+	/***
+	 * A method used to check whether only bulk Messages, if anything, are left to write. Must hold the queue's lock.
+	 * @return A boolean which is true if no control or interactive Message is waiting.
+	 */
+	private boolean onlyBulkQueued() {
+		return this.laneQueues[Lane.CONTROL.ordinal()].isEmpty() && this.laneQueues[Lane.INTERACTIVE.ordinal()].isEmpty();
+		}
+
+	/***
+	 * The method which is called when the OutboundQueue is parsed into a Thread and start is called.
+	 * Writes queued Messages until the queue is closed and empty or the stream fails.
+	 */
+	@Override
+	public void run() {
+		try {
+			while(true) {
+				Message message = null;
+				boolean credited = false;
+				boolean finished = false;
+				boolean flushAfter;
+				this.queueLock.lock();
+				try {
+					// while a Message is parked for want of credit only control Messages are taken from the queue.
+					while(true) {
+						if(!this.laneQueues[Lane.CONTROL.ordinal()].isEmpty()) {
+							message = this.pollNextMessage();
+							break;
+							}
+						if(this.parked != null) {
+							// no more credit is granted once the connection has closed, so the parked Message is never written.
+							if(this.flowController.isClosed()) {
+								finished = true;
+								break;
+								}
+							if(this.flowController.tryAcquire(this.parked.getSize())) {
+								message = this.parked;
+								this.parked = null;
+								credited = true;
+								break;
+								}
+							}
+						else if(this.queuedMessages > 0 || this.currentFrames != null) {
+							message = this.pollNextMessage();
+							break;
+							}
+						else if(this.closed) {
+							finished = true;
+							break;
+							}
+						this.notEmpty.await(1, TimeUnit.SECONDS);
+						}
+					}
+				finally {
+					this.queueLock.unlock();
+					}
+				if(finished)
+					break;
+				// start splitting a bulk Message into frames, or write the next frame of the current one.
+				if(message == null || (!credited && this.framingEnabled && message.getMessageID() != MessageID.MESSAGE_FRAME
+						&& Lane.of(message.getMessageID()) == Lane.BULK)) {
+					if(message != null)
+						this.currentFrames = new FrameSplitter(message, this.allocateFrameStreamID(), this.payloadCodec);
+					message = this.currentFrames.nextFrame();
+					if(!this.currentFrames.hasNextFrame())
+						this.currentFrames = null;
+					}
+				// spend flow control credit. When out of credit the Message is parked, and the stream flushed so the
+				// receiver sees everything it has to grant credit for.
+				if(!credited && !OutboundQueue.isControlMessage(message.getMessageID()) && !this.flowController.tryAcquire(message.getSize())) {
+					Metrics.increment("flow.credit_waits");
+					this.queueLock.lock();
+					try {
+						this.parked = message;
+						}
+					finally {
+						this.queueLock.unlock();
+						}
+					this.oOutputStream.flush();
+					continue;
+					}
+				this.writeMessage(message);
+				OutboundQueue.release(message);
+				// forget the objects written so far, otherwise the stream holds on to the Data of every Message it wrote.
+				if(Lane.of(message.getMessageID()) == Lane.BULK || ++this.writtenSinceReset >= RESET_INTERVAL) {
+					this.oOutputStream.reset();
+					this.writtenSinceReset = 0;
+					}
+				// flush once no more urgent Messages are waiting, so text is never left behind a frame in the buffer. While a
+				// Message is parked nothing else but control Messages is written, so they are flushed straight away.
+				this.queueLock.lock();
+				try {
+					flushAfter = this.parked != null || (this.onlyBulkQueued() && (message.getMessageID() != MessageID.MESSAGE_FRAME
+							|| (this.currentFrames == null && this.queuedMessages == 0)));
+					}
+				finally {
+					this.queueLock.unlock();
+					}
+				if(flushAfter)
+					this.oOutputStream.flush();
+				}
+			this.oOutputStream.flush();
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			}
+		finally {
+			this.close();
+			this.flowController.close();
+			this.releaseQueuedMessages();
+			if(this.parked != null)
+				OutboundQueue.release(this.parked);
+			if(this.currentFrames != null)
+				this.currentFrames.release();
+			}
+		}
+
+	/***
+	 * A method used to release the Payloads of the Messages left in the queue once the writing Thread has stopped.
+	 * The sequencer, if any, sees them first so that it can keep them to be written again.
+	 */
+	private void releaseQueuedMessages() {
+		ToLongFunction<Message> sequencer = this.sequencer;
+		this.queueLock.lock();
+		try {
+			for(ArrayDeque<Message> laneQueue: this.laneQueues)
+				while(!laneQueue.isEmpty()) {
+					Message message = laneQueue.pollFirst();
+					if(sequencer != null && !OutboundQueue.isControlMessage(message.getMessageID()))
+						sequencer.applyAsLong(message);
+					OutboundQueue.release(message);
+					}
+			this.queuedMessages = 0;
+			this.queuedBytes = 0;
+			}
+		finally {
+			this.queueLock.unlock();
+			}
+		}
+	}
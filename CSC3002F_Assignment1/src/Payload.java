@@ -0,0 +1,92 @@
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/***
+ * The base class of the typed Data carried by a Message between a Server and its Clients.
+ * Payloads hold the original encoded bytes of their content so that the Server can forward them untouched.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public abstract class Payload implements Serializable {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+
+	/***
+	 * A method used to retrieve the number of bytes of content carried by the Payload.
+	 * @return The number of bytes of content carried by the Payload.
+	 */
+	public abstract long getSize();
+
+	/***
+	 * A method used to check whether compressing the Payload could make it smaller.
+	 * Payloads holding content which is already compressed, such as JPEG Images, should return false.
+	 * @return A boolean which is true if the Payload is worth compressing.
+	 * @see PayloadCodec
+	 */
+	public boolean isCompressible() {
+		return true;
+		}
+
+	/***
+	 * A method used to add a reference for one more Message which will deliver a shared Payload. Does nothing by default.
+	 * @see SpooledPayload
+	 */
+	public void retain() {
+		}
+
+	/***
+	 * A method used to release any resources held by the Payload, such as a pooled buffer or a spool file,
+	 * once the Message carrying it has been written or dropped. Does nothing by default.
+	 * @see OutboundQueue
+	 */
+	public void release() {
+		}
+
+	/***
+	 * A method used to check whether content of the given MIME type is already compressed.
+	 * @param mimeType The MIME type of the content.
+	 * @return A boolean which is true if the content is stored in a compressed format.
+	 */
+	public static boolean isCompressedMimeType(String mimeType) {
+		if(mimeType == null)
+			return false;
+		switch(mimeType.toLowerCase()) {
+			case "image/jpeg":
+			case "image/png":
+			case "image/gif":
+			case "image/webp":
+			case "audio/mpeg":
+			case "audio/mp3":
+			case "audio/mp4":
+			case "audio/aac":
+			case "audio/ogg":
+			case "application/zip":
+			case "application/gzip":
+				return true;
+			default:
+				return false;
+			}
+		}
+
+	/***
+	 * A method used to compute a hash which uniquely identifies the given content.
+	 * @param content The bytes to hash.
+	 * @return The hexadecimal SHA-256 hash of the bytes.
+	 * @see MessageDigest
+	 */
+	public static String hashContent(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for(byte b: digest)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+			}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256.
+			throw new IllegalStateException(e);
+			}
+		}
+	}
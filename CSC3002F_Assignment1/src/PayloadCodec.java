@@ -0,0 +1,164 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/***
+ * A class used by one connection to compress large Payloads before they are written and decompress them once read.
+ * Compression is only enabled once both sides have agreed on it in the REGISTRATION_REQUEST handshake.
+ * Each connection owns one Deflater and one Inflater which are reset and reused for every Payload.
+ * Payloads which are small or already compressed (e.g. JPEG or MP3) are written as they are.
+ * Not thread-safe: encoding must happen on one writing Thread at a time and decoding on the reading Thread.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RegistrationPayload#CAPABILITY_COMPRESSION
+ * @see CompressedPayload
+ */
+public class PayloadCodec {
+
+	// static variables
+	private final static int COMPRESSION_THRESHOLD = 1024;
+	// compressed output must save at least a tenth of the bytes to be worth sending.
+	private final static double MINIMUM_SAVING = 0.1;
+	private final static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	static {
+		Metrics.registerGauge("compression.ratio", () -> {
+			long compressed = Metrics.get("compression.bytes_out");
+			return compressed == 0 ? "n/a" : String.format("%.2f", (double)Metrics.get("compression.bytes_in") / compressed);
+			});
+		}
+
+	// instance variables
+	private volatile boolean compressionEnabled;
+	private Deflater deflater;
+	private Inflater inflater;
+	private ByteArrayOutputStream serializationBuffer;
+	private byte[] compressionBuffer;
+
+	/***
+	 * The Constructor of the PayloadCodec Class. Compression starts disabled.
+	 * @see Deflater#BEST_SPEED
+	 */
+	public PayloadCodec() {
+		this.compressionEnabled = false;
+		this.deflater = new Deflater(Deflater.BEST_SPEED);
+		this.inflater = new Inflater();
+		this.serializationBuffer = new ByteArrayOutputStream(COMPRESSION_THRESHOLD * 4);
+		this.compressionBuffer = new byte[COMPRESSION_THRESHOLD * 4];
+		}
+
+	/***
+	 * A method used to enable or disable compression once the handshake has agreed upon it.
+	 * @param compressionEnabled Whether large Payloads should be compressed.
+	 */
+	public void setCompressionEnabled(boolean compressionEnabled) {
+		this.compressionEnabled = compressionEnabled;
+		}
+
+	/***
+	 * A method used to check whether compression is enabled.
+	 * @return A boolean which is true if large Payloads are compressed.
+	 */
+	public boolean isCompressionEnabled() {
+		return this.compressionEnabled;
+		}
+
+	/***
+	 * A method used to prepare the Data of a Message to be written, compressing it if it is worthwhile.
+	 * @param data The Data of a Message.
+	 * @return A CompressedPayload or the unmodified Data.
+	 * @throws IOException If the Data could not be serialized.
+	 */
+	public Object encode(Object data) throws IOException {
+		if(!this.compressionEnabled || !(data instanceof Payload))
+			return data;
+		Payload payload = (Payload)data;
+		if(payload.getSize() < COMPRESSION_THRESHOLD || !payload.isCompressible()) {
+			Metrics.increment("compression.skipped");
+			return data;
+			}
+		long cpuStart = PayloadCodec.currentCpuTime();
+		this.serializationBuffer.reset();
+		ObjectOutputStream serializer = new ObjectOutputStream(this.serializationBuffer);
+		serializer.writeObject(payload);
+		serializer.close();
+		byte[] serialized = this.serializationBuffer.toByteArray();
+		this.deflater.reset();
+		this.deflater.setInput(serialized);
+		this.deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(serialized.length / 2);
+		while(!this.deflater.finished()) {
+			int length = this.deflater.deflate(this.compressionBuffer);
+			compressed.write(this.compressionBuffer, 0, length);
+			// stop early once the compressed output is not going to save enough.
+			if(compressed.size() > serialized.length * (1 - MINIMUM_SAVING))
+				break;
+			}
+		Metrics.add("compression.cpu_nanos", PayloadCodec.currentCpuTime() - cpuStart);
+		if(!this.deflater.finished()) {
+			Metrics.increment("compression.incompressible");
+			return data;
+			}
+		Metrics.increment("compression.payloads");
+		Metrics.add("compression.bytes_in", serialized.length);
+		Metrics.add("compression.bytes_out", compressed.size());
+		return new CompressedPayload(compressed.toByteArray(), serialized.length);
+		}
+
+	/***
+	 * A method used to restore the Data of a Message once it has been read, decompressing it if it is a CompressedPayload.
+	 * @param data The Data read from the stream.
+	 * @return The original Data.
+	 * @throws IOException If the Data could not be decompressed or deserialized.
+	 */
+	public Object decode(Object data) throws IOException {
+		if(!(data instanceof CompressedPayload))
+			return data;
+		CompressedPayload compressed = (CompressedPayload)data;
+		long cpuStart = PayloadCodec.currentCpuTime();
+		byte[] serialized = new byte[compressed.getOriginalLength()];
+		try {
+			this.inflater.reset();
+			this.inflater.setInput(compressed.getCompressedData());
+			int offset = 0;
+			while(offset < serialized.length && !this.inflater.finished()) {
+				int length = this.inflater.inflate(serialized, offset, serialized.length - offset);
+				if(length == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary()))
+					break;
+				offset += length;
+				}
+			if(offset != serialized.length)
+				throw new IOException("Truncated compressed Payload");
+			}
+		catch (DataFormatException e) {
+			throw new IOException(e);
+			}
+		try(ObjectInputStream deserializer = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return deserializer.readObject();
+			}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+			}
+		finally {
+			Metrics.add("decompression.cpu_nanos", PayloadCodec.currentCpuTime() - cpuStart);
+			Metrics.increment("decompression.payloads");
+			}
+		}
+
+	/***
+	 * A method used to measure the CPU time of the current Thread, falling back to wall clock time if it is unsupported.
+	 * @return The CPU time of the current Thread in nanoseconds.
+	 */
+	private static long currentCpuTime() {
+		if(threadMXBean.isCurrentThreadCpuTimeSupported())
+			return threadMXBean.getCurrentThreadCpuTime();
+		return System.nanoTime();
+		}
+	}
@@ -0,0 +1,93 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/***
+ * The check two Servers make of each other before trusting a connection between them, such as between the nodes of a
+ * cluster. Both ends share a secret which never crosses the connection: each end sends a random challenge and the
+ * other answers with the challenge signed by the secret, so neither an end without the secret nor one replaying an
+ * earlier answer is let in.
+ * The handshake is written directly to the socket before any other stream is opened on it.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ClusterNode
+ */
+public class PeerAuthenticator {
+
+	// static variables
+	private final static String MAC_ALGORITHM = "HmacSHA256";
+	private final static int CHALLENGE_BYTES = 32;
+	private final static int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+	// signed with the challenge so that an answer from the accepting end cannot be sent back as the connecting end's.
+	private final static byte ACCEPTING_END = 'A';
+	private final static byte CONNECTING_END = 'C';
+
+	// instance variables
+	private final SecretKeySpec key;
+	private final SecureRandom random;
+
+	/***
+	 * The Constructor of the PeerAuthenticator Class.
+	 * @param secret The secret shared by every Server allowed to connect.
+	 */
+	public PeerAuthenticator(String secret) {
+		this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), PeerAuthenticator.MAC_ALGORITHM);
+		this.random = new SecureRandom();
+		}
+
+	/***
+	 * A method used to check that the other end of a new connection holds the secret, and prove to it that this end does.
+	 * @param socket The connection, on which nothing has been read or written yet.
+	 * @param accepting A boolean which is true on the end which accepted the connection.
+	 * @return A boolean which is false if the other end does not hold the secret.
+	 * @throws IOException If the connection failed or the other end did not answer in time.
+	 */
+	public boolean authenticate(Socket socket, boolean accepting) throws IOException {
+		int timeout = socket.getSoTimeout();
+		socket.setSoTimeout(PeerAuthenticator.HANDSHAKE_TIMEOUT_MILLIS);
+		try {
+			DataOutputStream dOutputStream = new DataOutputStream(socket.getOutputStream());
+			DataInputStream dInputStream = new DataInputStream(socket.getInputStream());
+			byte[] challenge = new byte[PeerAuthenticator.CHALLENGE_BYTES];
+			this.random.nextBytes(challenge);
+			dOutputStream.write(challenge);
+			dOutputStream.flush();
+			byte[] peerChallenge = new byte[PeerAuthenticator.CHALLENGE_BYTES];
+			dInputStream.readFully(peerChallenge);
+			dOutputStream.write(this.sign(accepting ? PeerAuthenticator.ACCEPTING_END : PeerAuthenticator.CONNECTING_END, peerChallenge));
+			dOutputStream.flush();
+			byte[] expected = this.sign(accepting ? PeerAuthenticator.CONNECTING_END : PeerAuthenticator.ACCEPTING_END, challenge);
+			byte[] answer = new byte[expected.length];
+			dInputStream.readFully(answer);
+			return MessageDigest.isEqual(expected, answer);
+			}
+		finally {
+			socket.setSoTimeout(timeout);
+			}
+		}
+
+	/***
+	 * A method used to sign a challenge with the secret.
+	 * @param end Which end the answer is from.
+	 * @param challenge The challenge.
+	 * @return The signature.
+	 */
+	private byte[] sign(byte end, byte[] challenge) {
+		try {
+			Mac mac = Mac.getInstance(PeerAuthenticator.MAC_ALGORITHM);
+			mac.init(this.key);
+			mac.update(end);
+			return mac.doFinal(challenge);
+			}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+			}
+		}
+	}
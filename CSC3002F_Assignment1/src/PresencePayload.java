@@ -0,0 +1,133 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * The Payload of a CLUSTER_GOSSIP Message, carrying a Server node's view of which Clients are logged in to which node.
+ * Each node's entry is versioned by the incarnation of the node, which is new each time it starts, and a heartbeat
+ * which only that node increments, so a receiver keeps whichever copy of an entry is newer no matter how many nodes
+ * the entry passed through, even after the node restarted and its heartbeat began again from zero.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ClusterNode
+ */
+public class PresencePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private ArrayList<NodePresence> nodes;
+
+	/***
+	 * The Constructor of the PresencePayload Class.
+	 * @param nodes The entries of every node known to the sender, including the sender itself.
+	 */
+	public PresencePayload(ArrayList<NodePresence> nodes) {
+		this.nodes = nodes;
+		}
+
+	/***
+	 * A method used to retrieve the entries of every node known to the sender.
+	 * @return The entries of the nodes.
+	 */
+	public List<NodePresence> getNodes() {
+		return this.nodes;
+		}
+
+	@Override
+	public long getSize() {
+		long size = 0;
+		for(NodePresence node: this.nodes)
+			for(String username: node.getUsernames())
+				size += username.length();
+		return size;
+		}
+
+	@Override
+	public String toString() {
+		return "Presence(" + this.nodes.size() + " nodes)";
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * One node's entry in the cluster's presence table. Entries are never changed once created.
+	 */
+	public static class NodePresence implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+		private final String address;
+		private final long incarnation;
+		private final long heartbeat;
+		private final long version;
+		private final ArrayList<String> usernames;
+
+		/***
+		 * The Constructor of the NodePresence Class.
+		 * @param address The host:port on which the node accepts connections from other nodes, which names the node.
+		 * @param incarnation A number which is higher each time the node starts.
+		 * @param heartbeat A number the node increments every gossip round to show it is alive.
+		 * @param version A number the node increments whenever its Clients log in or out.
+		 * @param usernames The user names of the Clients logged in to the node.
+		 */
+		public NodePresence(String address, long incarnation, long heartbeat, long version, ArrayList<String> usernames) {
+			this.address = address;
+			this.incarnation = incarnation;
+			this.heartbeat = heartbeat;
+			this.version = version;
+			this.usernames = usernames;
+			}
+
+		/***
+		 * A method used to retrieve the address which names the node.
+		 * @return The host:port of the node.
+		 */
+		public String getAddress() {
+			return this.address;
+			}
+
+		/***
+		 * A method used to retrieve the incarnation of the node.
+		 * @return The incarnation of the node.
+		 */
+		public long getIncarnation() {
+			return this.incarnation;
+			}
+
+		/***
+		 * A method used to retrieve the node's heartbeat.
+		 * @return The heartbeat of the node.
+		 */
+		public long getHeartbeat() {
+			return this.heartbeat;
+			}
+
+		/***
+		 * A method used to retrieve the version of the node's list of Clients.
+		 * @return The version of the list of Clients.
+		 */
+		public long getVersion() {
+			return this.version;
+			}
+
+		/***
+		 * A method used to retrieve the user names of the Clients logged in to the node.
+		 * @return The user names of the node's Clients.
+		 */
+		public List<String> getUsernames() {
+			return this.usernames;
+			}
+
+		/***
+		 * A method used to check whether this entry is newer than another entry of the same node: from a later
+		 * incarnation, or from the same incarnation with a higher heartbeat.
+		 * @param other The other entry, or null if the node is not known.
+		 * @return A boolean which is true if this entry should replace the other.
+		 */
+		public boolean isNewerThan(NodePresence other) {
+			if(other == null || this.incarnation != other.incarnation)
+				return other == null || this.incarnation > other.incarnation;
+			return this.heartbeat > other.heartbeat;
+			}
+		}
+	}
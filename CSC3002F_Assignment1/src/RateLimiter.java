@@ -0,0 +1,116 @@
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * A class which limits how quickly each user may send each class of traffic using one TokenBucket per user and class.
+ * The limits are read from Properties with keys such as "broadcast.rate" (requests per second) and "broadcast.burst",
+ * and can be overridden for a single user with keys such as "user.alice.broadcast.rate".
+ * A rate of 0 or less means the class is not limited.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see TokenBucket
+ * @see TrafficClass
+ */
+public class RateLimiter {
+
+	// static variables
+	private final static double DEFAULT_DIRECT_RATE = 20;
+	private final static int DEFAULT_DIRECT_BURST = 40;
+	private final static double DEFAULT_BROADCAST_RATE = 1;
+	private final static int DEFAULT_BROADCAST_BURST = 5;
+	private final static double DEFAULT_MEDIA_RATE = 2;
+	private final static int DEFAULT_MEDIA_BURST = 5;
+	private final static double DEFAULT_SIGNAL_RATE = 10;
+	private final static int DEFAULT_SIGNAL_BURST = 20;
+
+	// instance variables
+	private Properties limits;
+	// the buckets of each user indexed by the ordinal of the TrafficClass, null where the class is not limited.
+	private ConcurrentHashMap<String, TokenBucket[]> userBuckets;
+
+	/***
+	 * The Constructor of the RateLimiter Class.
+	 * @param limits The configured limits. Limits which are not configured use the defaults.
+	 */
+	public RateLimiter(Properties limits) {
+		this.limits = limits;
+		this.userBuckets = new ConcurrentHashMap<String, TokenBucket[]>();
+		}
+
+	/***
+	 * A method used to take a token for one request from the user's bucket for the given class of traffic.
+	 * @param username The user name of the Client sending the request.
+	 * @param trafficClass The class of traffic of the request.
+	 * @return 0 if the request may be processed, otherwise the number of nanoseconds until it would be allowed.
+	 */
+	public long tryAcquire(String username, TrafficClass trafficClass) {
+		TokenBucket bucket = this.userBuckets.computeIfAbsent(username, this::createBuckets)[trafficClass.ordinal()];
+		if(bucket == null)
+			return 0;
+		return bucket.tryAcquireAt(System.nanoTime());
+		}
+
+	/***
+	 * A method used to create the buckets of a user from the configured limits.
+	 * @param username The user name of the Client.
+	 * @return The user's buckets indexed by the ordinal of the TrafficClass.
+	 */
+	private TokenBucket[] createBuckets(String username) {
+		TokenBucket[] buckets = new TokenBucket[TrafficClass.values().length];
+		for(TrafficClass trafficClass: TrafficClass.values()) {
+			String name = trafficClass.name().toLowerCase();
+			double rate = Double.parseDouble(this.getLimit(username, name + ".rate", Double.toString(this.getDefaultRate(trafficClass))));
+			int burst = Integer.parseInt(this.getLimit(username, name + ".burst", Integer.toString(this.getDefaultBurst(trafficClass))));
+			if(rate > 0)
+				buckets[trafficClass.ordinal()] = new TokenBucket(rate, burst);
+			}
+		return buckets;
+		}
+
+	/***
+	 * A method used to look up a limit, preferring the user's own limit over the limit for every user.
+	 * @param username The user name of the Client.
+	 * @param key The key of the limit such as "media.rate".
+	 * @param defaultValue The value used if the limit is not configured.
+	 * @return The configured value of the limit.
+	 */
+	private String getLimit(String username, String key, String defaultValue) {
+		return this.limits.getProperty("user." + username + "." + key, this.limits.getProperty(key, defaultValue).trim()).trim();
+		}
+
+	/***
+	 * A method used to get the default number of requests per second of a class of traffic.
+	 * @param trafficClass The class of traffic.
+	 * @return The default rate.
+	 */
+	private double getDefaultRate(TrafficClass trafficClass) {
+		switch(trafficClass) {
+			case BROADCAST:
+				return DEFAULT_BROADCAST_RATE;
+			case MEDIA:
+				return DEFAULT_MEDIA_RATE;
+			case SIGNAL:
+				return DEFAULT_SIGNAL_RATE;
+			default:
+				return DEFAULT_DIRECT_RATE;
+			}
+		}
+
+	/***
+	 * A method used to get the default burst of a class of traffic.
+	 * @param trafficClass The class of traffic.
+	 * @return The default burst.
+	 */
+	private int getDefaultBurst(TrafficClass trafficClass) {
+		switch(trafficClass) {
+			case BROADCAST:
+				return DEFAULT_BROADCAST_BURST;
+			case MEDIA:
+				return DEFAULT_MEDIA_BURST;
+			case SIGNAL:
+				return DEFAULT_SIGNAL_BURST;
+			default:
+				return DEFAULT_DIRECT_BURST;
+			}
+		}
+	}
@@ -0,0 +1,192 @@
+
+/***
+ * A Payload used in the REGISTRATION_REQUEST and REGISTRATION_RESPONSE handshake.
+ * Besides the Client's password and whether the login was accepted, it carries the protocol capabilities
+ * each side supports so that optional features such as compression are only used when both sides agree on them.
+ * A Client reconnecting after its connection dropped also sends its session token and the number of the last Message
+ * it received, and is told whether its session was resumed.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class RegistrationPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	/*** Capability flag indicating that large Payloads may be compressed. */
+	public final static int CAPABILITY_COMPRESSION = 1;
+	/*** Capability flag indicating that credit-based flow control is used. */
+	public final static int CAPABILITY_FLOW_CONTROL = 2;
+	/*** Capability flag indicating that bulk Messages are split into MESSAGE_FRAMEs interleaved with other traffic. */
+	public final static int CAPABILITY_MULTIPLEXING = 4;
+	/*** Capability flag indicating that the Server numbers the Messages it writes so a dropped session can be resumed. */
+	public final static int CAPABILITY_RESUME = 8;
+	/*** Capability flag indicating that direct text Messages are numbered per conversation and acknowledged by their receiver. */
+	public final static int CAPABILITY_DELIVERY_ACKS = 16;
+	/*** Capability flag indicating that typing indicators and read receipts are exchanged as SIGNALs. */
+	public final static int CAPABILITY_SIGNALS = 32;
+	/*** Capability flag indicating that Images the Server already holds are sent by the hash of their content. */
+	public final static int CAPABILITY_CONTENT_REFERENCES = 64;
+	/*** The capabilities supported by this version of the Client and Server. */
+	public final static int SUPPORTED_CAPABILITIES = CAPABILITY_COMPRESSION | CAPABILITY_FLOW_CONTROL | CAPABILITY_MULTIPLEXING
+			| CAPABILITY_RESUME | CAPABILITY_DELIVERY_ACKS | CAPABILITY_SIGNALS | CAPABILITY_CONTENT_REFERENCES;
+	// instance variables
+	private String password;
+	private boolean accepted;
+	private int capabilities;
+	private String sessionToken;
+	private long lastSequenceNumber;
+	private boolean resumed;
+	// why correct login details were refused, or null if they were accepted or incorrect.
+	private String reason;
+
+	/***
+	 * The Constructor of the RegistrationPayload Class.
+	 * @param password The password of the Client, or null in a response.
+	 * @param accepted Whether the Client's login details were accepted, always false in a request.
+	 * @param capabilities The capability flags offered in a request or agreed upon in a response.
+	 */
+	private RegistrationPayload(String password, boolean accepted, int capabilities) {
+		this.password = password;
+		this.accepted = accepted;
+		this.capabilities = capabilities;
+		}
+
+	/***
+	 * A method used to create the Payload of a REGISTRATION_REQUEST.
+	 * @param password The password of the Client.
+	 * @param capabilities The capability flags the Client supports.
+	 * @return The Payload of a REGISTRATION_REQUEST.
+	 */
+	public static RegistrationPayload request(String password, int capabilities) {
+		return new RegistrationPayload(password, false, capabilities);
+		}
+
+	/***
+	 * A method used to create the Payload of a REGISTRATION_RESPONSE.
+	 * @param accepted Whether the Client's login details were accepted.
+	 * @param capabilities The capability flags both the Client and Server support.
+	 * @return The Payload of a REGISTRATION_RESPONSE.
+	 */
+	public static RegistrationPayload response(boolean accepted, int capabilities) {
+		return new RegistrationPayload(null, accepted, capabilities);
+		}
+
+	/***
+	 * A method used to create the Payload of a REGISTRATION_RESPONSE refusing a Client whose login details were
+	 * correct, for instance because it is already logged in on too many devices.
+	 * @param capabilities The capability flags both the Client and Server support.
+	 * @param reason Why the Client was refused.
+	 * @return The Payload of a REGISTRATION_RESPONSE.
+	 */
+	public static RegistrationPayload refused(int capabilities, String reason) {
+		RegistrationPayload response = new RegistrationPayload(null, false, capabilities);
+		response.reason = reason;
+		return response;
+		}
+
+	/***
+	 * A method used to create the Payload of a REGISTRATION_REQUEST which resumes a dropped session.
+	 * The password is only checked if the session token is no longer valid.
+	 * @param password The password of the Client.
+	 * @param capabilities The capability flags the Client supports.
+	 * @param sessionToken The token the Server issued when the Client logged in.
+	 * @param lastSequenceNumber The number of the last Message the Client received.
+	 * @return The Payload of a REGISTRATION_REQUEST.
+	 */
+	public static RegistrationPayload resume(String password, int capabilities, String sessionToken, long lastSequenceNumber) {
+		RegistrationPayload request = new RegistrationPayload(password, false, capabilities);
+		request.sessionToken = sessionToken;
+		request.lastSequenceNumber = lastSequenceNumber;
+		return request;
+		}
+
+	/***
+	 * A method used to create the Payload of a REGISTRATION_RESPONSE accepting a Client which agreed to resumable sessions.
+	 * @param capabilities The capability flags both the Client and Server support.
+	 * @param sessionToken The token the Client presents to resume its session.
+	 * @param resumed Whether the Client's earlier session was resumed rather than a new one started.
+	 * @return The Payload of a REGISTRATION_RESPONSE.
+	 */
+	public static RegistrationPayload sessionResponse(int capabilities, String sessionToken, boolean resumed) {
+		RegistrationPayload response = new RegistrationPayload(null, true, capabilities);
+		response.sessionToken = sessionToken;
+		response.resumed = resumed;
+		return response;
+		}
+
+	/***
+	 * A method to retrieve the password of the Client.
+	 * @return The password of the Client.
+	 */
+	public String getPassword() {
+		return this.password;
+		}
+
+	/***
+	 * A method to check whether the Client's login details were accepted.
+	 * @return A boolean which is true if the login details were accepted.
+	 */
+	public boolean isAccepted() {
+		return this.accepted;
+		}
+
+	/***
+	 * A method to check whether a capability is offered or agreed upon.
+	 * @param capability The capability flag to check.
+	 * @return A boolean which is true if the capability is set.
+	 */
+	public boolean hasCapability(int capability) {
+		return (this.capabilities & capability) != 0;
+		}
+
+	/***
+	 * A method to retrieve the capability flags.
+	 * @return The capability flags.
+	 */
+	public int getCapabilities() {
+		return this.capabilities;
+		}
+
+	/***
+	 * A method to retrieve the session token.
+	 * @return The session token, or null if there is none.
+	 */
+	public String getSessionToken() {
+		return this.sessionToken;
+		}
+
+	/***
+	 * A method to retrieve the number of the last Message a resuming Client received.
+	 * @return The number of the last Message received.
+	 */
+	public long getLastSequenceNumber() {
+		return this.lastSequenceNumber;
+		}
+
+	/***
+	 * A method to check whether the Client's earlier session was resumed.
+	 * @return A boolean which is true if the session was resumed.
+	 */
+	public boolean isResumed() {
+		return this.resumed;
+		}
+
+	/***
+	 * A method to retrieve why correct login details were refused.
+	 * @return The reason, or null if the login details were accepted or incorrect.
+	 */
+	public String getReason() {
+		return this.reason;
+		}
+
+	@Override
+	public long getSize() {
+		return this.password == null ? 0 : this.password.length();
+		}
+
+	@Override
+	public String toString() {
+		// the password is never printed in logs
+		return "Registration(accepted=" + this.accepted + ", capabilities=" + this.capabilities + ", resumed=" + this.resumed + ")";
+		}
+	}
@@ -0,0 +1,401 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * The primary side of hot-standby replication. Every change to the Server's durable state is appended as a numbered
+ * ReplicationRecord and streamed to the standby connected on the replication port.
+ * Records are written in batches of whatever has been appended since the last write, and the next batch is written
+ * without waiting for the previous one to be acknowledged. The standby acknowledges the last record of each batch it
+ * applied, and the records written but not yet acknowledged are what the standby lags behind by.
+ * The primary keeps a copy of the offers still waiting for confirmation so that a standby which connects, or
+ * reconnects after falling too far behind, is first sent a snapshot of the whole state.
+ * Since a snapshot holds every Client's login details and the session signing key, the replication port only listens
+ * on the loopback address unless told otherwise, and a standby must show it holds the replication secret before it
+ * replaces the current one or is sent anything.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ReplicationRecord
+ * @see ReplicationStandby
+ * @see PeerAuthenticator
+ */
+public class ReplicationPrimary {
+
+	// static variables
+	private final static int MAX_BATCH_RECORDS = 512;
+	// a standby this far behind is disconnected and sent a fresh snapshot when it reconnects.
+	private final static int MAX_PENDING_RECORDS = 65536;
+
+	// instance variables
+	private final String replicationHost;
+	private final int replicationPort;
+	private final PeerAuthenticator authenticator;
+	private final Map<String, String> credentials;
+	private final byte[] sessionKey;
+	private final ReentrantLock replicationLock;
+	private final Condition notEmpty;
+	// the offers waiting for confirmation by Client, in the order they were stored.
+	private final HashMap<String, ArrayList<ReplicationRecord>> offers;
+	// records appended but not yet written, and records written but not yet acknowledged.
+	private final ArrayDeque<ReplicationRecord> pending;
+	private final ArrayDeque<ReplicationRecord> inFlight;
+	private long nextSequenceNumber;
+	private long acknowledgedSequenceNumber;
+	private Socket standbySocket;
+	private ServerSocket serverSocket;
+
+	/***
+	 * The Constructor of the ReplicationPrimary Class.
+	 * @param replicationHost The address the replication port listens on, or null for the loopback address.
+	 * @param replicationPort The port the standby connects to.
+	 * @param secret The secret shared with the standby.
+	 * @param credentials The login details of every known Client, included in each snapshot.
+	 * @param sessionKey The key session tokens are signed with, included in each snapshot.
+	 */
+	public ReplicationPrimary(String replicationHost, int replicationPort, String secret, Map<String, String> credentials, byte[] sessionKey) {
+		this.replicationHost = replicationHost;
+		this.replicationPort = replicationPort;
+		this.authenticator = new PeerAuthenticator(secret);
+		this.credentials = credentials;
+		this.sessionKey = sessionKey;
+		this.replicationLock = new ReentrantLock();
+		this.notEmpty = this.replicationLock.newCondition();
+		this.offers = new HashMap<String, ArrayList<ReplicationRecord>>();
+		this.pending = new ArrayDeque<ReplicationRecord>();
+		this.inFlight = new ArrayDeque<ReplicationRecord>();
+		this.nextSequenceNumber = 1;
+		this.acknowledgedSequenceNumber = 0;
+		}
+
+	/***
+	 * A method used to start accepting a standby and writing records to it.
+	 * @throws IOException If the replication port could not be opened.
+	 */
+	public void start() throws IOException {
+		this.serverSocket = new ServerSocket(this.replicationPort, 0, this.replicationHost == null ? InetAddress.getLoopbackAddress()
+				: InetAddress.getByName(this.replicationHost));
+		Thread acceptThread = new Thread(this::acceptStandbys, "Replication Accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		Metrics.registerGauge("replication.lag_records", () -> this.getLagRecords());
+		Metrics.registerGauge("replication.lag_millis", () -> this.getLagMillis());
+		}
+
+	/***
+	 * A method used to append a change to the stream. Offers are also added to or removed from the copy kept for snapshots.
+	 * @param record The change.
+	 */
+	public void append(ReplicationRecord record) {
+		this.replicationLock.lock();
+		try {
+			this.applyToOffers(record);
+			this.enqueue(record);
+			}
+		finally {
+			this.replicationLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to number a record and queue it to be written to the standby, if one is connected. Must hold the replication lock.
+	 * @param record The record to write.
+	 */
+	private void enqueue(ReplicationRecord record) {
+		if(this.standbySocket == null)
+			return;
+		if(this.pending.size() + this.inFlight.size() >= ReplicationPrimary.MAX_PENDING_RECORDS) {
+			System.out.println("******************************************\n"
+					+ "System Notice - The standby fell too far behind and will be sent a new snapshot."
+					+ "\n******************************************");
+			Metrics.increment("replication.resyncs");
+			this.disconnectStandby();
+			return;
+			}
+		record.setSequenceNumber(this.nextSequenceNumber++, System.currentTimeMillis());
+		record.retain();
+		this.pending.addLast(record);
+		this.notEmpty.signal();
+		}
+
+	/***
+	 * A method used to update the copy of the offers waiting for confirmation. Must hold the replication lock.
+	 * The first matching offer is removed, which is also the one the Server's connection removes.
+	 * @param record The change.
+	 */
+	private void applyToOffers(ReplicationRecord record) {
+		switch(record.getType()) {
+			case OFFER_STORED: {
+				record.retain();
+				this.offers.computeIfAbsent(record.getUsername(), key -> new ArrayList<ReplicationRecord>()).add(record);
+				break;
+				}
+			case OFFER_REMOVED: {
+				ArrayList<ReplicationRecord> userOffers = this.offers.get(record.getUsername());
+				if(userOffers == null)
+					break;
+				Iterator<ReplicationRecord> iterator = userOffers.iterator();
+				while(iterator.hasNext()) {
+					ReplicationRecord offer = iterator.next();
+					if(offer.isOffer(record.getMessageID(), record.getSourceName())) {
+						iterator.remove();
+						offer.release();
+						break;
+						}
+					}
+				if(userOffers.isEmpty())
+					this.offers.remove(record.getUsername());
+				break;
+				}
+			case OFFERS_CLEARED: {
+				ArrayList<ReplicationRecord> userOffers = this.offers.remove(record.getUsername());
+				if(userOffers != null)
+					for(ReplicationRecord offer: userOffers)
+						offer.release();
+				break;
+				}
+			default:
+				break;
+			}
+		}
+
+	/***
+	 * A method used to accept standbys, each checked on a Thread of its own so that one which never answers does not
+	 * hold up the others.
+	 */
+	private void acceptStandbys() {
+		while(!this.serverSocket.isClosed()) {
+			try {
+				Socket socket = this.serverSocket.accept();
+				Thread handshakeThread = new Thread(() -> this.admitStandby(socket), "Replication Handshake");
+				handshakeThread.setDaemon(true);
+				handshakeThread.start();
+				}
+			catch (IOException e) {
+				System.out.println(e);
+				}
+			}
+		}
+
+	/***
+	 * A method used to check that a new connection holds the replication secret and, if it does, make it the current
+	 * standby in place of the previous one. Connections without the secret are closed and leave the current standby be.
+	 * @param socket The connection from the standby.
+	 */
+	private void admitStandby(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			if(!this.authenticator.authenticate(socket, true)) {
+				Metrics.increment("replication.rejected_standbys");
+				System.out.println("******************************************\n"
+						+ "System Notice - Rejected a standby from " + socket.getRemoteSocketAddress() + " without the replication secret."
+						+ "\n******************************************");
+				socket.close();
+				return;
+				}
+			ObjectOutputStream oOutputStream = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			oOutputStream.flush();
+			this.connectStandby(socket);
+			Thread writeThread = new Thread(() -> this.writeRecords(socket, oOutputStream), "Replication Writer");
+			writeThread.setDaemon(true);
+			writeThread.start();
+			Thread ackThread = new Thread(() -> this.readAcknowledgements(socket), "Replication Acknowledgements");
+			ackThread.setDaemon(true);
+			ackThread.start();
+			System.out.println("******************************************\n"
+					+ "System Notice - Standby connected from " + socket.getRemoteSocketAddress() + "."
+					+ "\n******************************************");
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			try {
+				socket.close();
+				}
+			catch (IOException closeException) {
+				// the connection is already unusable.
+				}
+			}
+		}
+
+	/***
+	 * A method used to make a socket the current standby and queue a snapshot of the whole state for it.
+	 * @param socket The connection to the standby.
+	 */
+	private void connectStandby(Socket socket) {
+		this.replicationLock.lock();
+		try {
+			this.disconnectStandby();
+			this.standbySocket = socket;
+			this.acknowledgedSequenceNumber = this.nextSequenceNumber - 1;
+			this.enqueue(ReplicationRecord.snapshotStart());
+			this.enqueue(ReplicationRecord.sessionKey(this.sessionKey));
+			for(Map.Entry<String, String> credential: this.credentials.entrySet())
+				this.enqueue(ReplicationRecord.credential(credential.getKey(), credential.getValue()));
+			for(ArrayList<ReplicationRecord> userOffers: this.offers.values())
+				for(ReplicationRecord offer: userOffers)
+					this.enqueue(offer.copy());
+			}
+		finally {
+			this.replicationLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to drop the current standby and the records queued for it. Must hold the replication lock.
+	 */
+	private void disconnectStandby() {
+		if(this.standbySocket == null)
+			return;
+		try {
+			this.standbySocket.close();
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		this.standbySocket = null;
+		for(ReplicationRecord record: this.pending)
+			record.release();
+		this.pending.clear();
+		this.inFlight.clear();
+		this.acknowledgedSequenceNumber = this.nextSequenceNumber - 1;
+		this.notEmpty.signalAll();
+		}
+
+	/***
+	 * A method used to write batches of records to a standby until it is disconnected.
+	 * @param socket The connection to the standby.
+	 * @param oOutputStream The stream of the connection.
+	 */
+	private void writeRecords(Socket socket, ObjectOutputStream oOutputStream) {
+		ArrayList<ReplicationRecord> batch = new ArrayList<ReplicationRecord>();
+		try {
+			while(true) {
+				this.replicationLock.lock();
+				try {
+					while(this.pending.isEmpty() && this.standbySocket == socket)
+						this.notEmpty.await(1, TimeUnit.SECONDS);
+					if(this.standbySocket != socket)
+						return;
+					while(!this.pending.isEmpty() && batch.size() < ReplicationPrimary.MAX_BATCH_RECORDS) {
+						ReplicationRecord record = this.pending.pollFirst();
+						this.inFlight.addLast(record);
+						batch.add(record);
+						}
+					}
+				finally {
+					this.replicationLock.unlock();
+					}
+				try {
+					oOutputStream.writeUnshared(batch);
+					oOutputStream.reset();
+					oOutputStream.flush();
+					Metrics.increment("replication.batches");
+					Metrics.add("replication.records", batch.size());
+					}
+				finally {
+					for(ReplicationRecord record: batch)
+						record.release();
+					batch.clear();
+					}
+				}
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			}
+		finally {
+			this.dropStandby(socket);
+			}
+		}
+
+	/***
+	 * A method used to read the standby's acknowledgements until it is disconnected.
+	 * @param socket The connection to the standby.
+	 */
+	private void readAcknowledgements(Socket socket) {
+		try (ObjectInputStream oInputStream = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			while(true) {
+				long acknowledged = oInputStream.readLong();
+				this.replicationLock.lock();
+				try {
+					if(this.standbySocket != socket)
+						return;
+					this.acknowledgedSequenceNumber = Math.max(this.acknowledgedSequenceNumber, acknowledged);
+					while(!this.inFlight.isEmpty() && this.inFlight.peekFirst().getSequenceNumber() <= acknowledged)
+						this.inFlight.pollFirst();
+					}
+				finally {
+					this.replicationLock.unlock();
+					}
+				}
+			}
+		catch (IOException e) {
+			// the standby disconnected.
+			}
+		finally {
+			this.dropStandby(socket);
+			}
+		}
+
+	/***
+	 * A method used to drop a standby whose connection failed, unless it has already been replaced.
+	 * @param socket The connection to the standby.
+	 */
+	private void dropStandby(Socket socket) {
+		this.replicationLock.lock();
+		try {
+			if(this.standbySocket == socket) {
+				this.disconnectStandby();
+				System.out.println("******************************************\n"
+						+ "System Notice - Standby disconnected."
+						+ "\n******************************************");
+				}
+			}
+		finally {
+			this.replicationLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to retrieve the number of records the standby has not acknowledged yet.
+	 * @return The number of records the standby lags behind by.
+	 */
+	public long getLagRecords() {
+		this.replicationLock.lock();
+		try {
+			return this.nextSequenceNumber - 1 - this.acknowledgedSequenceNumber;
+			}
+		finally {
+			this.replicationLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to retrieve how long ago the oldest record the standby has not acknowledged was appended.
+	 * @return The number of milliseconds the standby lags behind by, or 0 if it is up to date.
+	 */
+	public long getLagMillis() {
+		this.replicationLock.lock();
+		try {
+			ReplicationRecord oldest = !this.inFlight.isEmpty() ? this.inFlight.peekFirst() : this.pending.peekFirst();
+			return oldest == null ? 0 : System.currentTimeMillis() - oldest.getAppendedAtMillis();
+			}
+		finally {
+			this.replicationLock.unlock();
+			}
+		}
+	}
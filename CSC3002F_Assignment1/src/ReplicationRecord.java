@@ -0,0 +1,235 @@
+import java.io.Serializable;
+
+/***
+ * One change to the state of a primary Server which is streamed to its standby: a newly registered Client, or an offer
+ * stored for or removed from a Client who has not yet accepted or declined it. Records are numbered in the order
+ * the primary made the changes, which is also the order the standby applies them in. Each snapshot also carries the
+ * key session tokens are signed with, so Clients can resume their sessions on the standby once it takes over.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ReplicationPrimary
+ * @see ReplicationStandby
+ */
+public class ReplicationRecord implements Serializable {
+
+	/***
+	 * The kinds of change a ReplicationRecord describes.
+	 */
+	public enum Type {
+		// the standby must forget the offers it holds, since the records after this one describe all of them again.
+		SNAPSHOT_START,
+		SESSION_KEY,
+		CREDENTIAL,
+		OFFER_STORED,
+		OFFER_REMOVED,
+		OFFERS_CLEARED
+		}
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private final Type type;
+	private long sequenceNumber;
+	// the Client the credential or offer belongs to.
+	private final String username;
+	private final String password;
+	private final MessageID messageID;
+	private final String sourceName;
+	private final Object data;
+	// when the primary made the change, used to measure how far the standby lags behind.
+	private transient long appendedAtMillis;
+
+	/***
+	 * The Constructor of the ReplicationRecord Class.
+	 * @param type The kind of change.
+	 * @param username The Client the change belongs to.
+	 * @param password The password of a new Client, otherwise null.
+	 * @param messageID The ID code of an offered Message, otherwise null.
+	 * @param sourceName The sender of an offered Message, otherwise null.
+	 * @param data The Data of a stored offer or the session key, otherwise null.
+	 */
+	private ReplicationRecord(Type type, String username, String password, MessageID messageID, String sourceName, Object data) {
+		this.type = type;
+		this.username = username;
+		this.password = password;
+		this.messageID = messageID;
+		this.sourceName = sourceName;
+		this.data = data;
+		}
+
+	/***
+	 * A method used to create the record which starts a snapshot of the primary's state.
+	 * @return The record.
+	 */
+	public static ReplicationRecord snapshotStart() {
+		return new ReplicationRecord(Type.SNAPSHOT_START, "", null, null, null, null);
+		}
+
+	/***
+	 * A method used to create the record of the key the primary signs session tokens with.
+	 * @param key The bytes of the key.
+	 * @return The record.
+	 */
+	public static ReplicationRecord sessionKey(byte[] key) {
+		return new ReplicationRecord(Type.SESSION_KEY, "", null, null, null, key);
+		}
+
+	/***
+	 * A method used to create the record of a newly registered Client.
+	 * @param username The user name of the Client.
+	 * @param password The password of the Client.
+	 * @return The record.
+	 */
+	public static ReplicationRecord credential(String username, String password) {
+		return new ReplicationRecord(Type.CREDENTIAL, username, password, null, null, null);
+		}
+
+	/***
+	 * A method used to create the record of an offer stored for a Client.
+	 * @param offer The Message which is delivered once the Client accepts the offer.
+	 * @return The record.
+	 */
+	public static ReplicationRecord offerStored(Message offer) {
+		return new ReplicationRecord(Type.OFFER_STORED, offer.getDestinationName(), null, offer.getMessageID(),
+				offer.getSourceName(), offer.getData());
+		}
+
+	/***
+	 * A method used to create the record of an offer which a Client accepted or declined.
+	 * @param messageID The ID code of the offered Message.
+	 * @param sourceName The sender of the offered Message.
+	 * @param destinationName The Client the offer was made to.
+	 * @return The record.
+	 */
+	public static ReplicationRecord offerRemoved(MessageID messageID, String sourceName, String destinationName) {
+		return new ReplicationRecord(Type.OFFER_REMOVED, destinationName, null, messageID, sourceName, null);
+		}
+
+	/***
+	 * A method used to create the record of every offer to a Client being discarded when the Client disconnected.
+	 * @param username The user name of the Client.
+	 * @return The record.
+	 */
+	public static ReplicationRecord offersCleared(String username) {
+		return new ReplicationRecord(Type.OFFERS_CLEARED, username, null, null, null, null);
+		}
+
+	/***
+	 * A method used to copy the record so that it can be appended again, such as in a snapshot, without renumbering
+	 * a copy which may still be being written.
+	 * @return An unnumbered copy of the record.
+	 */
+	public ReplicationRecord copy() {
+		return new ReplicationRecord(this.type, this.username, this.password, this.messageID, this.sourceName, this.data);
+		}
+
+	/***
+	 * A method used to retrieve the kind of change.
+	 * @return The kind of change.
+	 */
+	public Type getType() {
+		return this.type;
+		}
+
+	/***
+	 * A method used to retrieve the number of the record in the primary's stream.
+	 * @return The sequence number of the record.
+	 */
+	public long getSequenceNumber() {
+		return this.sequenceNumber;
+		}
+
+	/***
+	 * A method used to number the record once the primary appends it.
+	 * @param sequenceNumber The sequence number of the record.
+	 * @param appendedAtMillis When the record was appended.
+	 */
+	public void setSequenceNumber(long sequenceNumber, long appendedAtMillis) {
+		this.sequenceNumber = sequenceNumber;
+		this.appendedAtMillis = appendedAtMillis;
+		}
+
+	/***
+	 * A method used to retrieve when the primary appended the record.
+	 * @return The time the record was appended in milliseconds, or 0 on the standby.
+	 */
+	public long getAppendedAtMillis() {
+		return this.appendedAtMillis;
+		}
+
+	/***
+	 * A method used to retrieve the Client the change belongs to.
+	 * @return The user name of the Client.
+	 */
+	public String getUsername() {
+		return this.username;
+		}
+
+	/***
+	 * A method used to retrieve the password of a new Client.
+	 * @return The password of the Client.
+	 */
+	public String getPassword() {
+		return this.password;
+		}
+
+	/***
+	 * A method used to retrieve the ID code of an offered Message.
+	 * @return The ID code of the offered Message.
+	 */
+	public MessageID getMessageID() {
+		return this.messageID;
+		}
+
+	/***
+	 * A method used to retrieve the sender of an offered Message.
+	 * @return The user name of the sender.
+	 */
+	public String getSourceName() {
+		return this.sourceName;
+		}
+
+	/***
+	 * A method used to retrieve the Data of a stored offer.
+	 * @return The Data of the offered Message.
+	 */
+	public Object getData() {
+		return this.data;
+		}
+
+	/***
+	 * A method used to check whether this record describes the given offer.
+	 * @param messageID The ID code of the offered Message.
+	 * @param sourceName The sender of the offered Message.
+	 * @return A boolean which is true if the record stored the offer.
+	 */
+	public boolean isOffer(MessageID messageID, String sourceName) {
+		return this.type == Type.OFFER_STORED && this.messageID == messageID && this.sourceName.equals(sourceName);
+		}
+
+	/***
+	 * A method used to add a reference to the Data of a stored offer while the record holds it.
+	 * @see Payload#retain()
+	 */
+	public void retain() {
+		if(this.data instanceof Payload)
+			((Payload)this.data).retain();
+		}
+
+	/***
+	 * A method used to release the record's reference to the Data of a stored offer.
+	 * @see Payload#release()
+	 */
+	public void release() {
+		if(this.data instanceof Payload)
+			((Payload)this.data).release();
+		}
+
+	/***
+	 * A method used to recreate the offered Message described by the record.
+	 * @return The offered Message.
+	 */
+	public Message toMessage() {
+		return new Message(this.messageID, this.sourceName, this.username, this.data);
+		}
+	}
@@ -0,0 +1,121 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/***
+ * The standby side of hot-standby replication. The standby connects to its primary, applies every ReplicationRecord
+ * the primary streams to it and acknowledges each batch once it has been applied.
+ * When the connection to the primary is lost and the primary cannot be reached again within the failover timeout,
+ * the standby stops following it so that its Server can take over the primary's port with the replicated state.
+ * The standby and the primary check that each other holds the replication secret before any state is sent. A primary
+ * which rejects the standby is still alive, so the standby keeps trying rather than taking over.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ReplicationPrimary
+ * @see ReplicationRecord
+ * @see PeerAuthenticator
+ */
+public class ReplicationStandby {
+
+	// static variables
+	private final static long RECONNECT_INTERVAL_MILLIS = 250;
+	private final static long FAILOVER_TIMEOUT_MILLIS = 2000;
+	private final static int CONNECT_TIMEOUT_MILLIS = 500;
+
+	// instance variables
+	private final String primaryHost;
+	private final int primaryPort;
+	private final PeerAuthenticator authenticator;
+	private final Consumer<ReplicationRecord> applier;
+	private long appliedSequenceNumber;
+
+	/***
+	 * The Constructor of the ReplicationStandby Class.
+	 * @param primaryAddress The host:port of the primary's replication port.
+	 * @param secret The secret shared with the primary.
+	 * @param applier Applies each replicated change to the standby Server's state, in order.
+	 */
+	public ReplicationStandby(String primaryAddress, String secret, Consumer<ReplicationRecord> applier) {
+		int separator = primaryAddress.lastIndexOf(':');
+		this.primaryHost = primaryAddress.substring(0, separator);
+		this.primaryPort = Integer.parseInt(primaryAddress.substring(separator + 1));
+		this.authenticator = new PeerAuthenticator(secret);
+		this.applier = applier;
+		this.appliedSequenceNumber = 0;
+		Metrics.registerGauge("replication.applied_sequence", () -> this.appliedSequenceNumber);
+		}
+
+	/***
+	 * A method used to follow the primary until it fails. Blocks until the primary could not be reached for the
+	 * failover timeout, after which the caller should take over.
+	 */
+	public void follow() {
+		long lastContact = System.currentTimeMillis();
+		while(System.currentTimeMillis() - lastContact < ReplicationStandby.FAILOVER_TIMEOUT_MILLIS) {
+			boolean connected = false;
+			try (Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(this.primaryHost, this.primaryPort), ReplicationStandby.CONNECT_TIMEOUT_MILLIS);
+				socket.setTcpNoDelay(true);
+				connected = true;
+				if(!this.authenticator.authenticate(socket, false)) {
+					System.out.println("******************************************\n"
+							+ "System Notice - The primary at " + this.primaryHost + ":" + this.primaryPort + " does not hold the replication secret."
+							+ "\n******************************************");
+					}
+				else {
+					System.out.println("******************************************\n"
+							+ "System Notice - Following the primary at " + this.primaryHost + ":" + this.primaryPort + "."
+							+ "\n******************************************");
+					this.receiveRecords(socket);
+					}
+				}
+			catch (IOException | ClassNotFoundException e) {
+				// the primary is unreachable or the connection was lost.
+				}
+			// the failover timeout starts when the connection is lost, however long the primary was idle before.
+			if(connected)
+				lastContact = System.currentTimeMillis();
+			try {
+				Thread.sleep(ReplicationStandby.RECONNECT_INTERVAL_MILLIS);
+				}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+				}
+			}
+		System.out.println("******************************************\n"
+				+ "System Notice - The primary has not responded for " + ReplicationStandby.FAILOVER_TIMEOUT_MILLIS
+				+ "ms. Taking over with the state replicated up to record " + this.appliedSequenceNumber + "."
+				+ "\n******************************************");
+		}
+
+	/***
+	 * A method used to apply and acknowledge the batches of records the primary writes until the connection is lost.
+	 * @param socket The connection to the primary.
+	 * @throws IOException If the connection is lost.
+	 * @throws ClassNotFoundException If a batch could not be read.
+	 */
+	@SuppressWarnings("unchecked")
+	private void receiveRecords(Socket socket) throws IOException, ClassNotFoundException {
+		ObjectOutputStream oOutputStream = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		oOutputStream.flush();
+		ObjectInputStream oInputStream = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+		while(true) {
+			ArrayList<ReplicationRecord> batch = (ArrayList<ReplicationRecord>)oInputStream.readUnshared();
+			for(ReplicationRecord record: batch) {
+				this.applier.accept(record);
+				this.appliedSequenceNumber = record.getSequenceNumber();
+				}
+			Metrics.add("replication.applied_records", batch.size());
+			// one acknowledgement covers the whole batch.
+			oOutputStream.writeLong(this.appliedSequenceNumber);
+			oOutputStream.flush();
+			}
+		}
+	}
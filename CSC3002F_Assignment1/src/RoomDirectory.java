@@ -0,0 +1,310 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/***
+ * The chat rooms of a Server, indexed both ways: each room knows its members and each member knows its rooms.
+ * Membership belongs to the user name and outlives the Client's connections, while each room also indexes the
+ * connections of its members who are online, one for each device a member is logged in on, which is kept up to date through the member's own list of rooms when
+ * they log in or out. Posting to a room therefore only visits its online members, never every connection of the Server.
+ * Each room keeps an append-only history of its latest posts, which a Client is sent when it joins.
+ * A room is removed along with its history once its last member leaves, which frees its name.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RoomPayload
+ * @param <C> The type of the connections of the Clients.
+ */
+public class RoomDirectory<C> {
+
+	// static variables
+	private final static int MAX_ROOM_NAME_LENGTH = 64;
+	private final static int MAX_ROOMS_PER_USER = 256;
+	private final static int HISTORY_LENGTH = 100;
+
+	/***
+	 * The outcomes of a request to create, join or leave a room, with the text the Client is told.
+	 */
+	public enum Outcome {
+		CREATED("You created the room "), JOINED("You joined the room "), LEFT("You left the room "),
+		ALREADY_EXISTS("There already is a room called "), NO_SUCH_ROOM("There is no room called "),
+		NOT_A_MEMBER("You are not a member of the room "), TOO_MANY_ROOMS("You are a member of too many rooms to join "),
+		INVALID_NAME("Room names must be 1 to " + MAX_ROOM_NAME_LENGTH + " characters, not ");
+
+		private final String text;
+
+		Outcome(String text) {
+			this.text = text;
+			}
+
+		/***
+		 * A method used to describe the outcome to the Client.
+		 * @param roomName The name of the room.
+		 * @return The description of the outcome.
+		 */
+		public String describe(String roomName) {
+			return this.text + roomName + ".";
+			}
+		}
+
+	// instance variables
+	private final ConcurrentHashMap<String, Room> rooms;
+	private final ConcurrentHashMap<String, Set<String>> roomsOfUser;
+
+	/***
+	 * The Constructor of the RoomDirectory Class.
+	 */
+	public RoomDirectory() {
+		this.rooms = new ConcurrentHashMap<String, Room>();
+		this.roomsOfUser = new ConcurrentHashMap<String, Set<String>>();
+		Metrics.registerGauge("room.count", () -> this.rooms.size());
+		}
+
+	/***
+	 * A method used to retrieve a room.
+	 * @param roomName The name of the room.
+	 * @return The room, or null if there is none by that name.
+	 */
+	public Room get(String roomName) {
+		return this.rooms.get(roomName);
+		}
+
+	/***
+	 * A method used to create a room, which its creator joins.
+	 * @param roomName The name of the room.
+	 * @param username The user name of the Client creating it.
+	 * @param connections The connections of the Client's sessions.
+	 * @return The outcome, CREATED if the room was created.
+	 */
+	public Outcome create(String roomName, String username, Collection<C> connections) {
+		if(roomName.isEmpty() || roomName.length() > RoomDirectory.MAX_ROOM_NAME_LENGTH)
+			return Outcome.INVALID_NAME;
+		// checked before the room is added so that a Client which may not join it never leaves an empty room behind.
+		Set<String> memberOf = this.roomsOfUser.get(username);
+		if(memberOf != null && memberOf.size() >= RoomDirectory.MAX_ROOMS_PER_USER)
+			return Outcome.TOO_MANY_ROOMS;
+		Room room = new Room(roomName);
+		if(this.rooms.putIfAbsent(roomName, room) != null)
+			return Outcome.ALREADY_EXISTS;
+		Outcome joined = this.join(roomName, username, connections);
+		// the Client joined another room at the same time and reached the limit after all.
+		if(joined != Outcome.JOINED)
+			this.removeIfEmpty(room);
+		return joined == Outcome.JOINED ? Outcome.CREATED : joined;
+		}
+
+	/***
+	 * A method used to add a Client to the members of a room.
+	 * @param roomName The name of the room.
+	 * @param username The user name of the Client.
+	 * @param connections The connections of the Client's sessions, which are online.
+	 * @return The outcome, JOINED if the Client is a member of the room.
+	 */
+	public Outcome join(String roomName, String username, Collection<C> connections) {
+		Room room = this.rooms.get(roomName);
+		if(room == null)
+			return Outcome.NO_SUCH_ROOM;
+		room.membershipLock.lock();
+		try {
+			// the last member left and removed the room after it was looked up.
+			if(room.removed)
+				return Outcome.NO_SUCH_ROOM;
+			Set<String> memberOf = this.roomsOfUser.computeIfAbsent(username, key -> ConcurrentHashMap.newKeySet());
+			if(!memberOf.contains(roomName) && memberOf.size() >= RoomDirectory.MAX_ROOMS_PER_USER)
+				return Outcome.TOO_MANY_ROOMS;
+			memberOf.add(roomName);
+			room.members.add(username);
+			for(C connection: connections)
+				room.onlineMembers.put(connection, username);
+			return Outcome.JOINED;
+			}
+		finally {
+			room.membershipLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to remove a Client from the members of a room, removing the room if it was the last member.
+	 * @param roomName The name of the room.
+	 * @param username The user name of the Client.
+	 * @param connections The connections of the Client's sessions.
+	 * @return The outcome, LEFT if the Client was a member of the room.
+	 */
+	public Outcome leave(String roomName, String username, Collection<C> connections) {
+		Room room = this.rooms.get(roomName);
+		if(room == null)
+			return Outcome.NO_SUCH_ROOM;
+		Set<String> memberOf = this.roomsOfUser.get(username);
+		if(memberOf == null || !memberOf.remove(roomName))
+			return Outcome.NOT_A_MEMBER;
+		room.members.remove(username);
+		for(C connection: connections)
+			room.onlineMembers.remove(connection);
+		this.removeIfEmpty(room);
+		return Outcome.LEFT;
+		}
+
+	/***
+	 * A method used to remove a room which has no members left, so that its name may be used again.
+	 * @param room The room.
+	 */
+	private void removeIfEmpty(Room room) {
+		room.membershipLock.lock();
+		try {
+			if(room.removed || !room.members.isEmpty())
+				return;
+			room.removed = true;
+			this.rooms.remove(room.name, room);
+			}
+		finally {
+			room.membershipLock.unlock();
+			}
+		}
+
+	/***
+	 * A method used to index the connection of a Client which logged in in each of its rooms, alongside the
+	 * connections of its other sessions.
+	 * @param username The user name of the Client.
+	 * @param connection The connection of the Client.
+	 */
+	public void connected(String username, C connection) {
+		for(Room room: this.getRoomsOf(username))
+			if(room.members.contains(username))
+				room.onlineMembers.put(connection, username);
+		}
+
+	/***
+	 * A method used to remove the connection of a Client which closed from each of its rooms.
+	 * @param username The user name of the Client.
+	 * @param connection The closed connection.
+	 */
+	public void disconnected(String username, C connection) {
+		for(Room room: this.getRoomsOf(username))
+			room.onlineMembers.remove(connection);
+		}
+
+	/***
+	 * A method used to find the rooms a Client is a member of.
+	 * @param username The user name of the Client.
+	 * @return The rooms of the Client.
+	 */
+	private ArrayList<Room> getRoomsOf(String username) {
+		ArrayList<Room> memberOf = new ArrayList<Room>();
+		Set<String> roomNames = this.roomsOfUser.get(username);
+		if(roomNames != null)
+			for(String roomName: roomNames) {
+				Room room = this.rooms.get(roomName);
+				if(room != null)
+					memberOf.add(room);
+				}
+		return memberOf;
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A chat room, its members and its history.
+	 */
+	public final class Room {
+
+		// instance variables
+		private final String name;
+		private final Set<String> members;
+		// the connections of the online members, each with the user name of its member.
+		private final ConcurrentHashMap<C, String> onlineMembers;
+		// held while members join and while the room is removed, so nobody joins a room which is being removed.
+		private final ReentrantLock membershipLock;
+		private boolean removed;
+		private final ReentrantReadWriteLock historyLock;
+		// the latest posts, oldest first, each the one Message every member was sent.
+		private final ArrayDeque<Message> history;
+		private long lastPostNumber;
+
+		/***
+		 * The Constructor of the Room Class.
+		 * @param name The name of the room.
+		 */
+		private Room(String name) {
+			this.name = name;
+			this.members = ConcurrentHashMap.newKeySet();
+			this.onlineMembers = new ConcurrentHashMap<C, String>();
+			this.membershipLock = new ReentrantLock();
+			this.removed = false;
+			this.historyLock = new ReentrantReadWriteLock();
+			this.history = new ArrayDeque<Message>();
+			this.lastPostNumber = 0;
+			}
+
+		/***
+		 * A method used to retrieve the name of the room.
+		 * @return The name of the room.
+		 */
+		public String getName() {
+			return this.name;
+			}
+
+		/***
+		 * A method used to check whether a Client is a member of the room.
+		 * @param username The user name of the Client.
+		 * @return A boolean which is true if the Client is a member.
+		 */
+		public boolean isMember(String username) {
+			return this.members.contains(username);
+			}
+
+		/***
+		 * A method used to retrieve the connections of the members of the room who are online.
+		 * @return The connections of every session of the online members.
+		 */
+		public Collection<C> getOnlineMembers() {
+			return this.onlineMembers.keySet();
+			}
+
+		/***
+		 * A method used to number a post and append it to the room's history, dropping the oldest post once the
+		 * history is full. The Message returned is addressed to the room so that the same Message can be sent to
+		 * every member.
+		 * @param author The user name of the Client posting.
+		 * @param text The Text of the post.
+		 * @return The ROOM_POST_RECEIPT delivering the post.
+		 */
+		public Message append(String author, String text) {
+			this.historyLock.writeLock().lock();
+			try {
+				Message post = new Message(MessageID.ROOM_POST_RECEIPT, author, this.name, new RoomPayload(text, ++this.lastPostNumber));
+				this.history.addLast(post);
+				if(this.history.size() > RoomDirectory.HISTORY_LENGTH)
+					this.history.pollFirst();
+				return post;
+				}
+			finally {
+				this.historyLock.writeLock().unlock();
+				}
+			}
+
+		/***
+		 * A method used to retrieve the room's latest posts.
+		 * @return The posts, oldest first.
+		 */
+		public ArrayList<Message> getHistory() {
+			this.historyLock.readLock().lock();
+			try {
+				return new ArrayList<Message>(this.history);
+				}
+			finally {
+				this.historyLock.readLock().unlock();
+				}
+			}
+
+		/***
+		 * A method used to retrieve the number of members of the room.
+		 * @return The number of members.
+		 */
+		public int getMemberCount() {
+			return this.members.size();
+			}
+		}
+	}
@@ -0,0 +1,53 @@
+
+/***
+ * A Payload carrying a post to a chat room, numbered in the order the room received it so that a Client can tell
+ * the posts it was sent from the room's history apart from those it already has and notice any it missed.
+ * One RoomPayload is shared by every Message delivering the post, including the one kept in the room's history.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RoomDirectory
+ */
+public class RoomPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private String text;
+	private long postNumber;
+
+	/***
+	 * The Constructor of the RoomPayload Class.
+	 * @param text The Text of the post.
+	 * @param postNumber The number of the post in its room, starting at 1.
+	 */
+	public RoomPayload(String text, long postNumber) {
+		this.text = text;
+		this.postNumber = postNumber;
+		}
+
+	/***
+	 * A method to retrieve the Text of the post.
+	 * @return The Text of the post.
+	 */
+	public String getText() {
+		return this.text;
+		}
+
+	/***
+	 * A method to retrieve the number of the post in its room.
+	 * @return The number of the post.
+	 */
+	public long getPostNumber() {
+		return this.postNumber;
+		}
+
+	@Override
+	public long getSize() {
+		return this.text.length() + 8;
+		}
+
+	@Override
+	public String toString() {
+		return this.text;
+		}
+	}
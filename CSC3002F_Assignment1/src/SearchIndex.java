@@ -0,0 +1,580 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * An inverted index over the text messages routed by a Server, so that a Client can search its history without the
+ * Server scanning it. Texts are handed to the index without blocking and indexed by its own thread, which gathers
+ * them for up to SEAL_MILLIS and then seals them into an immutable segment, so a text can be found within about a
+ * second of being sent. Each segment maps every word to a posting list of the texts holding it, stored as variable
+ * length deltas of their numbers within the segment. Segments are never changed once sealed: searches read the current
+ * list of segments without any lock, while the indexing thread merges the smallest neighbouring segments whenever there
+ * are more than MAX_SEGMENTS and drops the oldest once more than MAX_DOCUMENTS texts, or more than MAX_TEXT_BYTES of
+ * text, are held, so a few very long texts cannot fill the heap either.
+ * Who may find a text is indexed as well, as a term for each Client which took part in its conversation, so scoping
+ * a search to the Client is one more posting list to intersect rather than a filter over every match.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SearchResultPayload
+ */
+public class SearchIndex {
+
+	// static variables
+	private final static int QUEUE_CAPACITY = 65536;
+	private final static int SEGMENT_DOCUMENTS = 4096;
+	private final static long SEAL_MILLIS = 1000;
+	private final static int MAX_SEGMENTS = 12;
+	private final static int MAX_DOCUMENTS = 2000000;
+	private final static long MAX_TEXT_BYTES = 256L * 1024 * 1024;
+	private final static int MAX_HITS = 20;
+	private final static int MAX_QUERY_TERMS = 8;
+	private final static int MAX_TERM_LENGTH = 32;
+	// numbered texts seen recently, so that a text retransmitted before its receiver acknowledged it is indexed once.
+	private final static int RECENT_TEXTS = 65536;
+	// the scope terms hold characters a word never does, so they cannot be searched for.
+	private final static String SCOPE_PREFIX = "\u0000";
+	private final static String PUBLIC_SCOPE = "\u0001";
+
+	// instance variables
+	private final LinkedBlockingQueue<Document> pending;
+	private volatile List<Segment> segments;
+	// the texts waiting to be sealed into a segment and the texts indexed recently, only used by the indexing thread.
+	private final ArrayList<Document> unsealed;
+	private final LinkedHashMap<String, Boolean> recentTexts;
+
+	/***
+	 * The Constructor of the SearchIndex Class, which starts the indexing thread.
+	 */
+	@SuppressWarnings("serial")
+	public SearchIndex() {
+		this.pending = new LinkedBlockingQueue<Document>(SearchIndex.QUEUE_CAPACITY);
+		this.segments = Collections.emptyList();
+		this.unsealed = new ArrayList<Document>();
+		this.recentTexts = new LinkedHashMap<String, Boolean>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return this.size() > SearchIndex.RECENT_TEXTS;
+				}
+			};
+		Metrics.registerGauge("search.documents", () -> {
+			long documents = 0;
+			for(Segment segment: this.segments)
+				documents += segment.size();
+			return documents;
+			});
+		Metrics.registerGauge("search.text_bytes", () -> {
+			long textBytes = 0;
+			for(Segment segment: this.segments)
+				textBytes += segment.textBytes;
+			return textBytes;
+			});
+		Metrics.registerGauge("search.segments", () -> this.segments.size());
+		Thread indexer = new Thread(this::indexTexts, "Search Indexer");
+		indexer.setDaemon(true);
+		indexer.start();
+		}
+
+	/***
+	 * A method used to hand a text to the index. The text is dropped rather than waited for if the indexing thread
+	 * has fallen too far behind.
+	 * @param source The user name of the sender.
+	 * @param conversation Who the text was sent to, as shown in search results.
+	 * @param participants The user names of the Clients which may find the text, or null if every Client may.
+	 * @param text The text.
+	 * @param sequenceNumber The number of the text in its conversation, or 0 if it was not numbered.
+	 */
+	public void index(String source, String conversation, Collection<String> participants, String text, long sequenceNumber) {
+		String[] scopes;
+		if(participants == null)
+			scopes = new String[] {SearchIndex.PUBLIC_SCOPE};
+		else {
+			LinkedHashSet<String> names = new LinkedHashSet<String>(participants);
+			names.add(source);
+			scopes = new String[names.size()];
+			int i = 0;
+			for(String name: names)
+				scopes[i++] = SearchIndex.SCOPE_PREFIX + name;
+			}
+		Document document = new Document(new SearchResultPayload.Hit(source, conversation, text, System.currentTimeMillis()),
+				scopes, sequenceNumber);
+		if(!this.pending.offer(document))
+			Metrics.increment("search.dropped");
+		}
+
+	/***
+	 * A method used to find the texts a Client took part in which hold every word of a query. Texts are ranked by
+	 * how often they hold the rarer words of the query and then by how recent they are.
+	 * @param username The user name of the Client searching.
+	 * @param query The words to search for.
+	 * @return The best matching texts, best first.
+	 */
+	public ArrayList<SearchResultPayload.Hit> search(String username, String query) {
+		Metrics.increment("search.queries");
+		ArrayList<SearchResultPayload.Hit> hits = new ArrayList<SearchResultPayload.Hit>();
+		LinkedHashSet<String> words = new LinkedHashSet<String>(SearchIndex.tokenize(query));
+		if(words.isEmpty())
+			return hits;
+		String[] terms = words.stream().limit(SearchIndex.MAX_QUERY_TERMS).toArray(String[]::new);
+		List<Segment> snapshot = this.segments;
+		// words which are in many texts say little about which texts are wanted.
+		long documents = 0;
+		long[] documentFrequencies = new long[terms.length];
+		for(Segment segment: snapshot) {
+			documents += segment.size();
+			for(int i = 0; i < terms.length; i++)
+				documentFrequencies[i] += segment.getDocumentFrequency(terms[i]);
+			}
+		double[] weights = new double[terms.length];
+		for(int i = 0; i < terms.length; i++) {
+			if(documentFrequencies[i] == 0)
+				return hits;
+			weights[i] = Math.log(1 + (double)documents / documentFrequencies[i]);
+			}
+		String[] scopes = {SearchIndex.SCOPE_PREFIX + username, SearchIndex.PUBLIC_SCOPE};
+		PriorityQueue<ScoredHit> best = new PriorityQueue<ScoredHit>();
+		for(Segment segment: snapshot)
+			segment.search(terms, weights, scopes, best);
+		while(!best.isEmpty())
+			hits.add(best.poll().hit);
+		Collections.reverse(hits);
+		return hits;
+		}
+
+	/***
+	 * A method used to split a text into its words, in lower case. Words longer than MAX_TERM_LENGTH are cut short.
+	 * @param text The text.
+	 * @return The words of the text, in order and with repeats.
+	 */
+	private static ArrayList<String> tokenize(String text) {
+		ArrayList<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		for(int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : ' ';
+			if(Character.isLetterOrDigit(c)) {
+				if(word.length() < SearchIndex.MAX_TERM_LENGTH)
+					word.append(Character.toLowerCase(c));
+				}
+			else if(word.length() > 0) {
+				words.add(word.toString());
+				word.setLength(0);
+				}
+			}
+		return words;
+		}
+
+	/***
+	 * The method run by the indexing thread, which gathers the texts handed to the index and seals them into a segment
+	 * once SEGMENT_DOCUMENTS have been gathered or the oldest has waited SEAL_MILLIS.
+	 */
+	private void indexTexts() {
+		long sealBy = 0;
+		while(true) {
+			try {
+				long waitMillis = this.unsealed.isEmpty() ? SearchIndex.SEAL_MILLIS : Math.max(1, sealBy - System.currentTimeMillis());
+				Document document = this.pending.poll(waitMillis, TimeUnit.MILLISECONDS);
+				if(document != null && this.isFirstCopy(document)) {
+					if(this.unsealed.isEmpty())
+						sealBy = System.currentTimeMillis() + SearchIndex.SEAL_MILLIS;
+					this.unsealed.add(document);
+					}
+				if(!this.unsealed.isEmpty() && (this.unsealed.size() >= SearchIndex.SEGMENT_DOCUMENTS || System.currentTimeMillis() >= sealBy))
+					this.seal();
+				}
+			catch (InterruptedException e) {
+				return;
+				}
+			catch (RuntimeException e) {
+				System.out.println(e);
+				this.unsealed.clear();
+				}
+			}
+		}
+
+	/***
+	 * A method used to check that a numbered text is not a retransmission of one indexed recently.
+	 * @param document The text.
+	 * @return A boolean which is true if the text should be indexed.
+	 */
+	private boolean isFirstCopy(Document document) {
+		if(document.sequenceNumber == 0)
+			return true;
+		String key = document.hit.getSource() + "\n" + document.hit.getConversation() + "\n" + document.sequenceNumber
+				+ "\n" + document.hit.getText().hashCode();
+		if(this.recentTexts.put(key, Boolean.TRUE) == null)
+			return true;
+		Metrics.increment("search.duplicates");
+		return false;
+		}
+
+	/***
+	 * A method used to seal the gathered texts into a new segment, drop the oldest segments while too many texts are
+	 * held and merge the smallest neighbouring segments while there are too many, and then publish the new list of
+	 * segments to the searches.
+	 */
+	private void seal() {
+		ArrayList<Segment> updated = new ArrayList<Segment>(this.segments);
+		updated.add(Segment.build(this.unsealed));
+		Metrics.add("search.indexed", this.unsealed.size());
+		this.unsealed.clear();
+		long documents = 0;
+		long textBytes = 0;
+		for(Segment segment: updated) {
+			documents += segment.size();
+			textBytes += segment.textBytes;
+			}
+		while((documents > SearchIndex.MAX_DOCUMENTS || textBytes > SearchIndex.MAX_TEXT_BYTES) && updated.size() > 1) {
+			Segment dropped = updated.remove(0);
+			documents -= dropped.size();
+			textBytes -= dropped.textBytes;
+			}
+		while(updated.size() > SearchIndex.MAX_SEGMENTS) {
+			// a merged segment is kept well below the limits so that dropping it does not empty the index.
+			int smallest = -1;
+			for(int i = 0; i + 1 < updated.size(); i++) {
+				int merged = updated.get(i).size() + updated.get(i + 1).size();
+				long mergedBytes = updated.get(i).textBytes + updated.get(i + 1).textBytes;
+				if(merged <= SearchIndex.MAX_DOCUMENTS / 4 && mergedBytes <= SearchIndex.MAX_TEXT_BYTES / 4
+						&& (smallest < 0 || merged < updated.get(smallest).size() + updated.get(smallest + 1).size()))
+					smallest = i;
+				}
+			if(smallest < 0)
+				break;
+			updated.set(smallest, Segment.merge(updated.get(smallest), updated.get(smallest + 1)));
+			updated.remove(smallest + 1);
+			Metrics.increment("search.merges");
+			}
+		this.segments = Collections.unmodifiableList(updated);
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A text waiting to be indexed.
+	 */
+	private final static class Document {
+
+		// instance variables
+		private final SearchResultPayload.Hit hit;
+		// the terms of the Clients which may find the text.
+		private final String[] scopes;
+		private final long sequenceNumber;
+
+		/***
+		 * The Constructor of the Document Class.
+		 * @param hit The text and who sent it.
+		 * @param scopes The scope terms of the text.
+		 * @param sequenceNumber The number of the text in its conversation, or 0.
+		 */
+		private Document(SearchResultPayload.Hit hit, String[] scopes, long sequenceNumber) {
+			this.hit = hit;
+			this.scopes = scopes;
+			this.sequenceNumber = sequenceNumber;
+			}
+		}
+
+	/***
+	 * A text matching a search and its score, ordered worst first so that the best hits are kept in a bounded heap.
+	 */
+	private final static class ScoredHit implements Comparable<ScoredHit> {
+
+		// instance variables
+		private final SearchResultPayload.Hit hit;
+		private final double score;
+
+		/***
+		 * The Constructor of the ScoredHit Class.
+		 * @param hit The matching text.
+		 * @param score How well the text matches.
+		 */
+		private ScoredHit(SearchResultPayload.Hit hit, double score) {
+			this.hit = hit;
+			this.score = score;
+			}
+
+		@Override
+		public int compareTo(ScoredHit other) {
+			int byScore = Double.compare(this.score, other.score);
+			return byScore != 0 ? byScore : Long.compare(this.hit.getTimestamp(), other.hit.getTimestamp());
+			}
+		}
+
+	/***
+	 * The posting list of one term being written, holding for each text the gap from the previous text's number and the
+	 * number of times the text holds the term, both as variable length integers.
+	 */
+	private final static class PostingsWriter {
+
+		// instance variables
+		private byte[] bytes;
+		private int length;
+		private int lastDocument;
+		private int documentFrequency;
+
+		/***
+		 * The Constructor of the PostingsWriter Class.
+		 */
+		private PostingsWriter() {
+			this.bytes = new byte[8];
+			this.length = 0;
+			this.lastDocument = -1;
+			this.documentFrequency = 0;
+			}
+
+		/***
+		 * A method used to add a text to the posting list. Texts must be added in order of their numbers.
+		 * @param document The number of the text in its segment.
+		 * @param termFrequency The number of times the text holds the term.
+		 */
+		private void add(int document, int termFrequency) {
+			this.writeVarInt(document - this.lastDocument);
+			this.writeVarInt(termFrequency);
+			this.lastDocument = document;
+			this.documentFrequency++;
+			}
+
+		/***
+		 * A method used to write an integer seven bits at a time, lowest first, with the high bit set on all but the last byte.
+		 * @param value The integer, which must not be negative.
+		 */
+		private void writeVarInt(int value) {
+			if(this.length + 5 > this.bytes.length)
+				this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+			while(value >= 0x80) {
+				this.bytes[this.length++] = (byte)(value | 0x80);
+				value >>>= 7;
+				}
+			this.bytes[this.length++] = (byte)value;
+			}
+		}
+
+	/***
+	 * An immutable segment of the index: a run of texts, the sorted terms they hold and the posting list of each term,
+	 * all posting lists packed into one array.
+	 */
+	private final static class Segment {
+
+		// instance variables
+		private final SearchResultPayload.Hit[] documents;
+		private final String[] terms;
+		private final int[] documentFrequencies;
+		// the posting list of terms[i] runs from offsets[i] up to offsets[i + 1].
+		private final int[] offsets;
+		private final byte[] postings;
+		// roughly the memory taken by the texts and the names of their senders and conversations.
+		private final long textBytes;
+
+		/***
+		 * The Constructor of the Segment Class, which packs the posting lists written for its texts.
+		 * @param documents The texts, in order of their numbers.
+		 * @param writers The posting list of each term, in order of the terms.
+		 */
+		private Segment(SearchResultPayload.Hit[] documents, TreeMap<String, PostingsWriter> writers) {
+			this.documents = documents;
+			this.terms = new String[writers.size()];
+			this.documentFrequencies = new int[writers.size()];
+			this.offsets = new int[writers.size() + 1];
+			long textBytes = 0;
+			for(SearchResultPayload.Hit hit: documents)
+				textBytes += 2L * (hit.getText().length() + hit.getSource().length() + hit.getConversation().length());
+			this.textBytes = textBytes;
+			int length = 0;
+			for(PostingsWriter writer: writers.values())
+				length += writer.length;
+			this.postings = new byte[length];
+			int i = 0;
+			for(Map.Entry<String, PostingsWriter> entry: writers.entrySet()) {
+				PostingsWriter writer = entry.getValue();
+				this.terms[i] = entry.getKey();
+				this.documentFrequencies[i] = writer.documentFrequency;
+				System.arraycopy(writer.bytes, 0, this.postings, this.offsets[i], writer.length);
+				this.offsets[i + 1] = this.offsets[i] + writer.length;
+				i++;
+				}
+			}
+
+		/***
+		 * A method used to build a segment from texts waiting to be indexed.
+		 * @param unsealed The texts, in the order they were sent.
+		 * @return The segment.
+		 */
+		private static Segment build(List<Document> unsealed) {
+			SearchResultPayload.Hit[] documents = new SearchResultPayload.Hit[unsealed.size()];
+			TreeMap<String, PostingsWriter> writers = new TreeMap<String, PostingsWriter>();
+			for(int document = 0; document < documents.length; document++) {
+				Document text = unsealed.get(document);
+				documents[document] = text.hit;
+				HashMap<String, Integer> termFrequencies = new HashMap<String, Integer>();
+				for(String word: SearchIndex.tokenize(text.hit.getText()))
+					termFrequencies.merge(word, 1, Integer::sum);
+				for(String scope: text.scopes)
+					termFrequencies.put(scope, 1);
+				for(Map.Entry<String, Integer> entry: termFrequencies.entrySet())
+					writers.computeIfAbsent(entry.getKey(), key -> new PostingsWriter()).add(document, entry.getValue());
+				}
+			return new Segment(documents, writers);
+			}
+
+		/***
+		 * A method used to merge two neighbouring segments into one, the texts of the older first.
+		 * @param older The older segment.
+		 * @param newer The newer segment.
+		 * @return The merged segment.
+		 */
+		private static Segment merge(Segment older, Segment newer) {
+			SearchResultPayload.Hit[] documents = Arrays.copyOf(older.documents, older.size() + newer.size());
+			System.arraycopy(newer.documents, 0, documents, older.size(), newer.size());
+			TreeMap<String, PostingsWriter> writers = new TreeMap<String, PostingsWriter>();
+			older.copyPostings(writers, 0);
+			newer.copyPostings(writers, older.size());
+			return new Segment(documents, writers);
+			}
+
+		/***
+		 * A method used to add the posting lists of the segment to those of a segment being merged.
+		 * @param writers The posting lists being written.
+		 * @param firstDocument The number the segment's first text has in the merged segment.
+		 */
+		private void copyPostings(TreeMap<String, PostingsWriter> writers, int firstDocument) {
+			for(int i = 0; i < this.terms.length; i++) {
+				int[][] postingList = this.readPostings(i);
+				PostingsWriter writer = writers.computeIfAbsent(this.terms[i], key -> new PostingsWriter());
+				for(int j = 0; j < postingList[0].length; j++)
+					writer.add(firstDocument + postingList[0][j], postingList[1][j]);
+				}
+			}
+
+		/***
+		 * A method used to retrieve the number of texts in the segment.
+		 * @return The number of texts.
+		 */
+		private int size() {
+			return this.documents.length;
+			}
+
+		/***
+		 * A method used to retrieve the number of texts in the segment holding a term.
+		 * @param term The term.
+		 * @return The number of texts holding the term.
+		 */
+		private int getDocumentFrequency(String term) {
+			int i = Arrays.binarySearch(this.terms, term);
+			return i < 0 ? 0 : this.documentFrequencies[i];
+			}
+
+		/***
+		 * A method used to decode the posting list of a term.
+		 * @param term The index of the term.
+		 * @return The numbers of the texts holding the term, in order, and the number of times each holds it.
+		 */
+		private int[][] readPostings(int term) {
+			int[] documents = new int[this.documentFrequencies[term]];
+			int[] termFrequencies = new int[documents.length];
+			int position = this.offsets[term];
+			int document = -1;
+			// each entry is two integers written seven bits at a time, lowest first, see PostingsWriter.writeVarInt.
+			for(int i = 0; i < documents.length * 2; i++) {
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = this.postings[position++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+					}
+				while((b & 0x80) != 0);
+				if(i % 2 == 0)
+					documents[i / 2] = document += value;
+				else
+					termFrequencies[i / 2] = value;
+				}
+			return new int[][] {documents, termFrequencies};
+			}
+
+		/***
+		 * A method used to decode the texts holding any of several scope terms.
+		 * @param scopes The scope terms.
+		 * @return The numbers of the texts, in order.
+		 */
+		private int[] readScopes(String[] scopes) {
+			int[] allowed = new int[0];
+			for(String scope: scopes) {
+				int i = Arrays.binarySearch(this.terms, scope);
+				if(i < 0)
+					continue;
+				int[] documents = this.readPostings(i)[0];
+				int[] union = new int[allowed.length + documents.length];
+				int a = 0, d = 0, u = 0;
+				while(a < allowed.length || d < documents.length) {
+					if(d == documents.length || a < allowed.length && allowed[a] < documents[d])
+						union[u++] = allowed[a++];
+					else if(a == allowed.length || documents[d] < allowed[a])
+						union[u++] = documents[d++];
+					else {
+						union[u++] = allowed[a++];
+						d++;
+						}
+					}
+				allowed = Arrays.copyOf(union, u);
+				}
+			return allowed;
+			}
+
+		/***
+		 * A method used to find the texts in the segment which hold every term and which the Client may find, keeping
+		 * the best MAX_HITS of them and of those found in earlier segments. The posting lists are intersected by walking
+		 * the shortest and advancing through the others.
+		 * @param terms The terms of the query.
+		 * @param weights How much a text holding each term is worth.
+		 * @param scopes The scope terms of the Client searching.
+		 * @param best The best texts found so far, worst first.
+		 */
+		private void search(String[] terms, double[] weights, String[] scopes, PriorityQueue<ScoredHit> best) {
+			int[][][] postingLists = new int[terms.length + 1][][];
+			int shortest = 0;
+			for(int i = 0; i < terms.length; i++) {
+				int term = Arrays.binarySearch(this.terms, terms[i]);
+				if(term < 0)
+					return;
+				postingLists[i] = this.readPostings(term);
+				if(postingLists[i][0].length < postingLists[shortest][0].length)
+					shortest = i;
+				}
+			int[] allowed = this.readScopes(scopes);
+			postingLists[terms.length] = new int[][] {allowed, new int[allowed.length]};
+			int[] cursors = new int[postingLists.length];
+			for(int j = 0; j < postingLists[shortest][0].length; j++) {
+				int document = postingLists[shortest][0][j];
+				double score = 0;
+				boolean matches = true;
+				for(int i = 0; i < postingLists.length && matches; i++) {
+					int[] documents = postingLists[i][0];
+					while(cursors[i] < documents.length && documents[cursors[i]] < document)
+						cursors[i]++;
+					if(cursors[i] == documents.length)
+						return;
+					matches = documents[cursors[i]] == document;
+					// repeats of a word count for less and less.
+					if(matches && i < terms.length) {
+						int termFrequency = postingLists[i][1][cursors[i]];
+						score += weights[i] * termFrequency / (termFrequency + 1.0);
+						}
+					}
+				if(matches) {
+					best.add(new ScoredHit(this.documents[document], score));
+					if(best.size() > SearchIndex.MAX_HITS)
+						best.poll();
+					}
+				}
+			}
+		}
+	}
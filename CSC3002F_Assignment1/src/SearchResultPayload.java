@@ -0,0 +1,129 @@
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+/***
+ * The Payload of a SEARCH_RESPONSE, holding the text messages matching a search of the Client's history, best first.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SearchIndex
+ */
+public class SearchResultPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+
+	// instance variables
+	private String query;
+	private ArrayList<Hit> hits;
+
+	/***
+	 * The Constructor of the SearchResultPayload Class.
+	 * @param query The text searched for.
+	 * @param hits The matching text messages, best first.
+	 */
+	public SearchResultPayload(String query, ArrayList<Hit> hits) {
+		this.query = query;
+		this.hits = hits;
+		}
+
+	/***
+	 * A method to retrieve the text searched for.
+	 * @return The query.
+	 */
+	public String getQuery() {
+		return this.query;
+		}
+
+	/***
+	 * A method to retrieve the matching text messages.
+	 * @return The hits, best first.
+	 */
+	public ArrayList<Hit> getHits() {
+		return this.hits;
+		}
+
+	@Override
+	public long getSize() {
+		long size = this.query.length();
+		for(Hit hit: this.hits)
+			size += hit.text.length() + 32;
+		return size;
+		}
+
+	@Override
+	public String toString() {
+		StringBuilder results = new StringBuilder(this.hits.size() + " Text Messages matching \"" + this.query + "\":\n");
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		for(Hit hit: this.hits)
+			results.append("[").append(format.format(new Date(hit.timestamp))).append("] ").append(hit.source)
+				.append(" (To ").append(hit.conversation).append("): ").append(hit.text).append("\n");
+		return results.toString();
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A text message found by a search. Hits are kept by the SearchIndex as the documents it indexed, so one Hit is
+	 * shared by every search which finds it.
+	 */
+	public final static class Hit implements Serializable {
+
+		// static variables
+		private static final long serialVersionUID = 1L;
+
+		// instance variables
+		private final String source;
+		// the recipient of a direct text, the recipients of a multicast or everyone for a text sent to all.
+		private final String conversation;
+		private final String text;
+		private final long timestamp;
+
+		/***
+		 * The Constructor of the Hit Class.
+		 * @param source The user name of the sender.
+		 * @param conversation Who the text was sent to.
+		 * @param text The text.
+		 * @param timestamp When the text was sent, in milliseconds since the epoch.
+		 */
+		public Hit(String source, String conversation, String text, long timestamp) {
+			this.source = source;
+			this.conversation = conversation;
+			this.text = text;
+			this.timestamp = timestamp;
+			}
+
+		/***
+		 * A method to retrieve the user name of the sender.
+		 * @return The user name of the sender.
+		 */
+		public String getSource() {
+			return this.source;
+			}
+
+		/***
+		 * A method to retrieve who the text was sent to.
+		 * @return The conversation of the text.
+		 */
+		public String getConversation() {
+			return this.conversation;
+			}
+
+		/***
+		 * A method to retrieve the text.
+		 * @return The text.
+		 */
+		public String getText() {
+			return this.text;
+			}
+
+		/***
+		 * A method to retrieve when the text was sent.
+		 * @return The time in milliseconds since the epoch.
+		 */
+		public long getTimestamp() {
+			return this.timestamp;
+			}
+		}
+	}
@@ -5,18 +5,21 @@ import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.FileInputStream;
 // java imports
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import sun.audio.*;
-import java.io.*;
 
 /***
  * An implementation of a Chat Server.
@@ -26,22 +29,89 @@ import java.io.*;
  */
 public class Server implements Runnable {
 
-	private final static int INCOMING_CONNECTION_PORT = 1337;
+	// the port Clients connect to, 1337 unless set with -Dchat.port so several Servers can run on one host.
+	private final static int INCOMING_CONNECTION_PORT = Integer.getInteger("chat.port", 1337);
+	// further addresses Clients on this host or in this JVM may connect on alongside TCP, given with
+	// -Dchat.listen=unix:path,memory:name,... as parsed by Transport.forAddress.
+	private final static String LISTEN_ADDRESSES = System.getProperty("chat.listen", "");
+	// cluster mode is enabled by giving the port other Servers connect to with -Dchat.clusterPort, along with
+	// -Dchat.peers=host:port,... naming at least one other node, -Dchat.clusterSecret shared by every node and
+	// -Dchat.clusterHost if other hosts must reach this one, since the cluster port only listens on that address.
+	private final static int CLUSTER_PORT = Integer.getInteger("chat.clusterPort", 0);
+	// a primary streams its state to a standby connecting on -Dchat.replicationPort. A Server started with
+	// -Dchat.standbyOf=host:port follows that primary and only starts accepting Clients once the primary has failed.
+	// Both need the same -Dchat.replicationSecret, and the replication port only listens on the loopback address
+	// unless another is given with -Dchat.replicationHost.
+	private final static int REPLICATION_PORT = Integer.getInteger("chat.replicationPort", 0);
+	private final static String STANDBY_OF = System.getProperty("chat.standbyOf");
+	private final static String REPLICATION_SECRET = System.getProperty("chat.replicationSecret", "");
 	private final static String SERVER_NAME = "Server";
 	private final static String USER_LOGIN_DETAILS = "server_data/user_details.txt";
+	private final static String SESSION_KEY = "server_data/session_key.txt";
+	private final static long SHUTDOWN_DRAIN_MILLIS = 1000;
+	private final static String RATE_LIMITS = "server_data/rate_limits.properties";
+	private final static long DEFAULT_DISPATCH_TARGET_MILLIS = 50;
+	// measure the bytes allocated while dispatching each message when started with -Dchat.profileAllocations=true.
+	private final static boolean PROFILE_ALLOCATIONS = Boolean.getBoolean("chat.profileAllocations");
+	// the number of shards the online clients are partitioned into, one per core unless set with -Dchat.shards.
+	private final static int SHARD_COUNT = Integer.getInteger("chat.shards", Runtime.getRuntime().availableProcessors());
+	// topics whose first segment is one of these are only published by the Server itself.
+	private final static String[] RESERVED_TOPICS = {"presence", "system"};
+	// a signal is dropped rather than queued for a Client with more Messages than this waiting to be written.
+	private final static int MAX_QUEUED_BEFORE_SIGNAL = 16;
 
 	//instance variables
-	private ServerSocket serverSocket;
+	private ArrayList<Transport.Listener> listeners;
 	private ConcurrentHashMap<String, String> knownClientDetails;
 	private ArrayList<ClientInteractionHandler> currentConnections;
 	// Since the ArrayList is not inherently thread-safe requires a ReadWriteLock.
 	private ReentrantReadWriteLock currentConnectionsLock;
+	// the logged in connections partitioned by user name, each shard indexing its own slice so that routing a message
+	// never scans every connection and clients of different shards never contend.
+	private ServerShard<ClientInteractionHandler>[] shards;
+	private ThumbnailGenerator thumbnailGenerator;
+	private RateLimiter rateLimiter;
+	private AdmissionController admissionController;
+	// the Server's membership of a cluster of Servers, or null if it runs on its own.
+	private ClusterNode clusterNode;
+	// the stream of state changes to the standby, or null if the Server has none.
+	private ReplicationPrimary replication;
+	// offers replicated from a failed primary, by the Client they were made to, until that Client logs in again.
+	private ConcurrentHashMap<String, ArrayList<ReplicationRecord>> recoveredOffers;
+	// the sessions Clients resume after their connection drops.
+	private SessionRegistry sessions;
+	// the chat rooms, their members and the connections of their online members.
+	private RoomDirectory<ClientInteractionHandler> rooms;
+	// the topics each connection subscribed to.
+	private TopicTrie<ClientInteractionHandler> topics;
+	// the typing indicators and read receipts waiting to be relayed.
+	private SignalCoalescer signals;
+	// the text messages routed by this Server, indexed so that Clients can search their history.
+	private SearchIndex searchIndex;
+	// the device which offered each audio file waiting to be accepted and the device which accepted each audio stream,
+	// by the user names of its sender and receiver, since either Client may be logged in on several devices.
+	private ConcurrentHashMap<String, ClientInteractionHandler> audioSenders;
+	private ConcurrentHashMap<String, ClientInteractionHandler> audioReceivers;
+	// the Images offered most recently by the hash of their content, which Clients send by reference rather than again.
+	private ContentStore contentStore;
 	/***
 	 * Constructor of the Server Class.
 	 * @see ConcurrentHashMap
 	 * @see ArrayList
+	 * @see ServerShard
+	 * @see ThumbnailGenerator
+	 * @see RateLimiter
+	 * @see AdmissionController
+	 * @see ClusterNode
+	 * @see ReplicationPrimary
+	 * @see SessionRegistry
+	 * @see RoomDirectory
+	 * @see TopicTrie
+	 * @see SignalCoalescer
+	 * @see SearchIndex
+	 * @see ContentStore
 	 * @see Server#initialiseServer()
-	 * @see Server#listenForConnections()
+	 * @see Server#listenForConnections(Transport.Listener)
 	 */
 	public Server() {
 		this.knownClientDetails = new ConcurrentHashMap<String, String>();
@@ -54,19 +124,132 @@ public class Server implements Runnable {
 		this.currentConnections = new ArrayList<ClientInteractionHandler>();
 		// create a ReentratReadWriteLock for the ArrayList to make it thread-safe.
 		this.currentConnectionsLock = new ReentrantReadWriteLock();
+		this.shards = ServerShard.startShards(Server.SHARD_COUNT);
+		// generates previews of offered images on a background pool.
+		this.thumbnailGenerator = new ThumbnailGenerator();
+		// limits how quickly each client may send and sheds broadcasts first when the whole server falls behind.
+		Properties rateLimits = this.loadRateLimitsFromTextFile();
+		this.rateLimiter = new RateLimiter(rateLimits);
+		this.admissionController = new AdmissionController(Long.parseLong(rateLimits.getProperty("admission.target_millis",
+				Long.toString(Server.DEFAULT_DISPATCH_TARGET_MILLIS)).trim()));
+		Metrics.registerGauge("admission.dispatch_latency_micros", () -> this.admissionController.getAverageDispatchNanos() / 1000);
+		this.recoveredOffers = new ConcurrentHashMap<String, ArrayList<ReplicationRecord>>();
+		this.sessions = new SessionRegistry(Server.SESSION_KEY, this::discardSession);
+		this.rooms = new RoomDirectory<ClientInteractionHandler>();
+		this.topics = new TopicTrie<ClientInteractionHandler>();
+		this.signals = new SignalCoalescer(this::deliverSignal);
+		this.searchIndex = new SearchIndex();
+		this.audioSenders = new ConcurrentHashMap<String, ClientInteractionHandler>();
+		this.audioReceivers = new ConcurrentHashMap<String, ClientInteractionHandler>();
+		this.contentStore = new ContentStore();
+		// a standby only starts serving once it has taken over from its primary.
+		if(Server.STANDBY_OF == null)
+			this.startServing();
+		}
+
+	/***
+	 * A method used to start listening for Clients, join the cluster and accept a standby, as configured.
+	 * @see Server#initialiseServer()
+	 * @see Server#joinCluster()
+	 * @see Server#startReplication()
+	 */
+	private void startServing() {
 		this.initialiseServer();
+		if(Server.CLUSTER_PORT > 0)
+			this.joinCluster();
+		if(Server.REPLICATION_PORT > 0)
+			this.startReplication();
 		}
 
 	/***
-	 * A method used to start a ServerSocket to start listening for incoming client connections on a predetermined port.
-	 * Catches IOException if the ServerSocket cannot be instantiated.
-	 * @see ServerSocket
+	 * A method used to start streaming the Server's state to a standby.
+	 * Catches IOException if the replication port cannot be opened, in which case the Server runs without a standby,
+	 * as it does when no replication secret was given.
+	 * @see ReplicationPrimary
+	 */
+	private void startReplication() {
+		if(Server.REPLICATION_SECRET.isEmpty()) {
+			System.out.println("******************************************\n"
+					+ "System Notice - No replication secret was given with -Dchat.replicationSecret, the Server will run without a standby."
+					+ "\n******************************************");
+			return;
+			}
+		ReplicationPrimary primary = new ReplicationPrimary(System.getProperty("chat.replicationHost"), Server.REPLICATION_PORT,
+				Server.REPLICATION_SECRET, this.knownClientDetails, this.sessions.getKey());
+		try {
+			primary.start();
+			this.replication = primary;
+			System.out.println("******************************************\n"
+					+ "System Notice - Waiting for a standby on Port: " + Server.REPLICATION_PORT + "."
+					+ "\n******************************************");
+			} catch (IOException e) {
+				System.out.println(e);
+				}
+		}
+
+	/***
+	 * A method used to stream a change to the Server's state to the standby, if there is one.
+	 * @param record The change.
+	 * @see ReplicationPrimary#append(ReplicationRecord)
+	 */
+	private void replicate(ReplicationRecord record) {
+		if(this.replication != null)
+			this.replication.append(record);
+		}
+
+	/***
+	 * A method used by a standby to apply a change streamed from its primary.
+	 * @param record The change.
+	 * @see ReplicationStandby
+	 */
+	private void applyReplicationRecord(ReplicationRecord record) {
+		switch(record.getType()) {
+			case SNAPSHOT_START: {
+				this.recoveredOffers.clear();
+				break;
+				}
+			case SESSION_KEY: {
+				this.sessions.setKey((byte[])record.getData());
+				break;
+				}
+			case CREDENTIAL: {
+				if(this.knownClientDetails.putIfAbsent(record.getUsername(), record.getPassword()) == null)
+					this.saveUserDetailsToDatabase(record.getUsername(), record.getPassword());
+				break;
+				}
+			case OFFER_STORED: {
+				this.recoveredOffers.computeIfAbsent(record.getUsername(), key -> new ArrayList<ReplicationRecord>()).add(record);
+				break;
+				}
+			case OFFER_REMOVED: {
+				ArrayList<ReplicationRecord> offers = this.recoveredOffers.get(record.getUsername());
+				if(offers != null)
+					for(int i = 0; i < offers.size(); i++)
+						if(offers.get(i).isOffer(record.getMessageID(), record.getSourceName())) {
+							offers.remove(i);
+							break;
+							}
+				break;
+				}
+			case OFFERS_CLEARED: {
+				this.recoveredOffers.remove(record.getUsername());
+				break;
+				}
+			}
+		}
+
+	/***
+	 * A method used to start listening for incoming client connections on a predetermined port, and on any further
+	 * addresses given with -Dchat.listen.
+	 * Catches IOException if an address cannot be listened on, and IllegalArgumentException if it cannot be parsed.
+	 * @see Transport
 	 * @see IOException
 	 */
 	private void initialiseServer() {
+		this.listeners = new ArrayList<Transport.Listener>();
 		// start server socket to listen for incoming client connections
 		try {
-			this.serverSocket = new ServerSocket(Server.INCOMING_CONNECTION_PORT);
+			this.listeners.add(new TcpTransport(null, Server.INCOMING_CONNECTION_PORT).listen());
 			} catch (IOException e) {
 				System.out.println(e);
 				}
@@ -74,27 +257,214 @@ public class Server implements Runnable {
 		System.out.println("******************************************\n"
 				+ "System Notice - Server Started and waiting for Connections on Port: " + Server.INCOMING_CONNECTION_PORT +
 				".\n******************************************");
+		for(String address: Server.LISTEN_ADDRESSES.split(",")) {
+			if(address.trim().isEmpty())
+				continue;
+			try {
+				Transport transport = Transport.forAddress(address, Server.INCOMING_CONNECTION_PORT);
+				this.listeners.add(transport.listen());
+				System.out.println("******************************************\n"
+						+ "System Notice - Server also waiting for Connections on " + transport.getAddress() +
+						".\n******************************************");
+				}
+			catch (IOException | IllegalArgumentException e) {
+				System.out.println(e);
+				}
+			}
+		}
+
+	/***
+	 * A method used to join a cluster of Servers, which share which Clients are logged in to each of them and
+	 * route Messages to each other's Clients.
+	 * Catches IOException if the cluster port cannot be opened, in which case the Server runs on its own, as it does
+	 * when no cluster secret was given.
+	 * @see ClusterNode
+	 */
+	private void joinCluster() {
+		String secret = System.getProperty("chat.clusterSecret", "");
+		if(secret.isEmpty()) {
+			System.out.println("******************************************\n"
+					+ "System Notice - No cluster secret was given with -Dchat.clusterSecret, the Server will run on its own."
+					+ "\n******************************************");
+			return;
+			}
+		ClusterNode node = new ClusterNode(System.getProperty("chat.clusterHost", "localhost"), Server.CLUSTER_PORT, secret,
+				ClusterNode.parseAddresses(System.getProperty("chat.peers")), this::getLocalUsernames, this::deliverFromCluster);
+		try {
+			node.start();
+			this.clusterNode = node;
+			System.out.println("******************************************\n"
+					+ "System Notice - Server joined the cluster as node " + node.getAddress() + "."
+					+ "\n******************************************");
+			} catch (IOException e) {
+				System.out.println(e);
+				}
+		}
+
+	/***
+	 * A method used to get the user names of the Clients logged in to this Server.
+	 * @return The user names of the online Clients of every shard.
+	 * @see ServerShard
+	 */
+	private ArrayList<String> getLocalUsernames() {
+		ArrayList<String> usernames = new ArrayList<String>();
+		for(ServerShard<ClientInteractionHandler> shard: this.shards)
+			usernames.addAll(shard.getOnlineClients().keySet());
+		return usernames;
+		}
+
+	/***
+	 * A method used to deliver a Message routed from another node of the cluster to the Clients of this Server.
+	 * A Message without a destination is a broadcast and is delivered to every Client except its sender.
+	 * A Message for a Client is delivered to every device the Client is logged in on.
+	 * Blocks while the recipient's OutboundQueue is full, which pushes back on the other node's connection.
+	 * @param message The Message from the other node.
+	 * @see ClusterNode
+	 */
+	private void deliverFromCluster(Message message) {
+		if(message.getDestinationName().isEmpty()) {
+			for(ServerShard<ClientInteractionHandler> shard: this.shards)
+				for(ClientInteractionHandler client: shard.getOnlineConnections())
+					if(!client.getClientUsername().equals(message.getSourceName()))
+						client.sendMessageToClient(new Message(message.getMessageID(), message.getSourceName(),
+								client.getClientUsername(), message.getData()));
+			return;
+			}
+		List<ClientInteractionHandler> recipients = this.getOnlineSessions(message.getDestinationName());
+		boolean delivered = false;
+		for(ClientInteractionHandler recipient: recipients)
+			delivered |= recipient.sendMessageToClient(message);
+		if(recipients.isEmpty())
+			Metrics.increment("cluster.undeliverable_messages");
+		if(message.getSequenceNumber() != 0 && !Server.acknowledgesMessages(recipients))
+			this.settleDelivery(message, delivered);
+		}
+
+	/***
+	 * A method used to check whether a Client acknowledges the numbered Messages it is sent, which it does if any of
+	 * the devices it is logged in on does.
+	 * @param recipients The connections of the Client's sessions.
+	 * @return A boolean which is true if one of the connections acknowledges Messages.
+	 * @see DeliveryTracker
+	 */
+	private static boolean acknowledgesMessages(List<ClientInteractionHandler> recipients) {
+		for(ClientInteractionHandler recipient: recipients)
+			if(recipient.getOutboundQueue().isSequenceNumbersEnabled())
+				return true;
+		return false;
+		}
+
+	/***
+	 * A method used to tell the sender of a numbered Message that it was delivered or could not be, when its receiver
+	 * will not acknowledge it, because the receiver is offline or does not acknowledge Messages.
+	 * @param message The numbered Message.
+	 * @param delivered Whether the Message was delivered.
+	 * @see DeliveryAckPayload#settled(long, boolean)
+	 */
+	private void settleDelivery(Message message, boolean delivered) {
+		this.routeToClient(new Message(MessageID.MESSAGE_CONFIRMATION_RECEIPT, message.getDestinationName(),
+				message.getSourceName(), DeliveryAckPayload.settled(message.getSequenceNumber(), delivered)));
+		}
+
+	/***
+	 * A method used to send a Message to the Client it is addressed to, on every device it is logged in on, on this
+	 * node or another node of the cluster.
+	 * @param message The Message.
+	 * @return A boolean which is true if the Client was found.
+	 */
+	private boolean routeToClient(Message message) {
+		List<ClientInteractionHandler> recipients = this.getOnlineSessions(message.getDestinationName());
+		for(ClientInteractionHandler recipient: recipients)
+			recipient.sendMessageToClient(message);
+		if(!recipients.isEmpty())
+			return true;
+		String node = this.clusterNode != null ? this.clusterNode.locate(message.getDestinationName()) : null;
+		return node != null && this.clusterNode.forward(node, message);
+		}
+
+	/***
+	 * A method used to publish an event to the subscribers of a topic. The event is one Message addressed to the topic
+	 * which is offered to each subscriber's OutboundQueue, and dropped for a subscriber whose queue is full, so a slow
+	 * subscriber neither holds up the publisher nor the other subscribers.
+	 * @param topic The topic, which must be valid.
+	 * @param publisher The user name of the publisher.
+	 * @param data The Data of the event.
+	 * @see TopicTrie#match(String)
+	 */
+	private void publish(String topic, String publisher, Object data) {
+		Message event = new Message(MessageID.TOPIC_EVENT, publisher, topic, data);
+		int delivered = 0;
+		for(ClientInteractionHandler subscriber: this.topics.match(topic))
+			if(subscriber.getOutboundQueue().offer(event))
+				delivered++;
+			else
+				Metrics.increment("pubsub.dropped_events");
+		Metrics.increment("pubsub.published");
+		Metrics.add("pubsub.delivered_events", delivered);
+		}
+
+	/***
+	 * A method used to relay a coalesced typing indicator or read receipt to each device of the Client it is for.
+	 * The signal is dropped for a device which does not take signals or already has Messages waiting, and altogether
+	 * if the Client is not logged in to this Server.
+	 * @param signal The SIGNAL.
+	 * @return A boolean which is false if the signal was dropped for every device.
+	 * @see SignalCoalescer
+	 */
+	private boolean deliverSignal(Message signal) {
+		boolean delivered = false;
+		for(ClientInteractionHandler recipient: this.getOnlineSessions(signal.getDestinationName()))
+			if(recipient.isSignalsEnabled() && recipient.getOutboundQueue().getQueuedMessages() < Server.MAX_QUEUED_BEFORE_SIGNAL
+					&& recipient.getOutboundQueue().offer(signal))
+				delivered = true;
+		return delivered;
+		}
+
+	/***
+	 * A method used to find the connection an audio stream is sent to, which is the device of the receiver which
+	 * accepted it, or if that is unknown the device the receiver has been logged in on longest.
+	 * @param sourceName The user name of the Client streaming the audio.
+	 * @param destinationName The user name of the Client receiving it.
+	 * @return The connection, or null if the receiver is not logged in to this Server.
+	 */
+	private ClientInteractionHandler getAudioRecipient(String sourceName, String destinationName) {
+		ClientInteractionHandler recipient = this.audioReceivers.get(sourceName + "\n" + destinationName);
+		return recipient != null ? recipient : this.getOnlineClient(destinationName);
+		}
+
+	/***
+	 * A method used to check whether a topic may only be published by the Server.
+	 * @param topic The topic.
+	 * @return A boolean which is true if the topic is reserved.
+	 */
+	private static boolean isReservedTopic(String topic) {
+		for(String reserved: Server.RESERVED_TOPICS)
+			if(topic.equals(reserved) || topic.startsWith(reserved + "."))
+				return true;
+		return false;
 		}
 
 	/***
 	 * A method used to accept incoming client connections and to start ClientInteractionHandler threads to deal with Client requests in parallel.
 	 * Catches IOException if an error occurs.
-	 * @see Socket
+	 * @param listener The Listener of one of the Transports the Server accepts Clients on.
+	 * @see Transport.Listener
 	 * @see ClientInteractionHandler
 	 * @see IOException
 	 */
-	private void listenForConnections() {
-		Socket clientSocket = null;
+	private void listenForConnections(Transport.Listener listener) {
+		Connection clientConnection = null;
 		// while the server is on, listen for incoming connections
 		while(true) {
 			try {
 				// accept the incoming connections on the specific port
-				clientSocket = this.serverSocket.accept();
+				clientConnection = listener.accept();
 				} catch (IOException e) {
 					System.out.println(e);
+					continue;
 					}
 			// create a new thread to handle the client's connection in parallel.
-			ClientInteractionHandler currentClient = new ClientInteractionHandler(clientSocket);
+			ClientInteractionHandler currentClient = new ClientInteractionHandler(clientConnection);
 			try {
 				// locks the ArrayList in case other threads are reading from it.
 				this.currentConnectionsLock.writeLock().lock();
@@ -126,9 +496,23 @@ public class Server implements Runnable {
 				Message shutdownM = new Message(MessageID.CLOSE_CONNECTION, Server.SERVER_NAME,
 												client.getClientUsername(), "Shut Down");
 				client.sendMessageToClient(shutdownM);
+				client.closeOutboundQueue();
 
 			}
+			// give each connection's writer a moment to deliver the shut down message.
+			for(ClientInteractionHandler client: currentConnections)
+				client.awaitOutboundQueue(Server.SHUTDOWN_DRAIN_MILLIS);
 		}
+		this.thumbnailGenerator.shutdown();
+		// a Unix domain socket's file is removed once it is no longer listened on.
+		if(this.listeners != null)
+			for(Transport.Listener listener: this.listeners)
+				try {
+					listener.close();
+					}
+				catch (IOException e) {
+					System.out.println(e);
+					}
 		// inform the administrator that the Server has shut down.
 		System.out.println("******************************************\n"
 				+ "System Notice - Server has Shutdown & is no longer listening for connections."
@@ -154,11 +538,25 @@ public class Server implements Runnable {
 		Thread thread = new Thread(server);
 		thread.start();
 		// ask administrator to enter a server command
-		System.out.println("Please Enter a Server Command(Exit):");
+		System.out.println("Please Enter a Server Command(Exit, Metrics, Cluster, Alert <text>):");
 		Scanner input = new Scanner(System.in);
 		String command = input.nextLine();
-		while(!command.equals("Exit"))
+		while(!command.equals("Exit")) {
+			// print the server's performance counters
+			if(command.equals("Metrics"))
+				System.out.println("******************************************\n"
+						+ "System Notice - Server Metrics:\n" + Metrics.report()
+						+ "******************************************");
+			// print the nodes of the cluster
+			if(command.equals("Cluster"))
+				System.out.println("******************************************\n"
+						+ "System Notice - Cluster Nodes:\n" + (server.clusterNode == null ? "Not in a cluster\n" : server.clusterNode.toString())
+						+ "******************************************");
+			// publish an alert to the subscribers of system.alerts
+			if(command.startsWith("Alert "))
+				server.publish("system.alerts", Server.SERVER_NAME, new TextPayload(command.substring("Alert ".length())));
 			command = input.nextLine();
+			}
 
 		// closes input and shuts down the server.
 		input.close();
@@ -172,7 +570,7 @@ public class Server implements Runnable {
 	 * @return A boolean indicating whether the loading was successful.
 	 * @see ConcurrentHashMap
 	 */
-	public synchronized boolean loadKnownClientDetailsFromDatabase() {
+	public boolean loadKnownClientDetailsFromDatabase() {
 		// If you are doing the database, please implement this method (Look at ServerDatabase Class & libs folder)
 		loadKnownClientDetailsFromTextFile();
 		System.out.println("------------------------------------------\n"
@@ -190,12 +588,15 @@ public class Server implements Runnable {
 	 * @see FileReader
 	 * @see FileNotFoundException
 	 */
-	public synchronized boolean loadKnownClientDetailsFromTextFile() {
+	public boolean loadKnownClientDetailsFromTextFile() {
 		try {
 			@SuppressWarnings("resource")
 			Scanner infile = new Scanner(new FileReader(USER_LOGIN_DETAILS)).useDelimiter("\n");
 			while(infile.hasNext()) {
 				String line = infile.next();
+				// skip blank lines, such as the one left before the first appended user.
+				if(line.indexOf('#') < 0)
+					continue;
 				String username = line.substring(0, line.indexOf('#'));
 				String password = line.substring(line.indexOf('#') + 1);
 				this.knownClientDetails.put(username, password);
@@ -208,13 +609,44 @@ public class Server implements Runnable {
 
 		}
 
+	/***
+	 * A method used to load the rate limits and admission target from the text file.
+	 * System properties starting with "chat." override the file, e.g. -Dchat.direct.rate=0 disables the direct limit.
+	 * Only the keys of limits are taken from them, so that settings such as chat.port are not read as limits.
+	 * Catches an IOException if the file cannot be read, in which case the default limits are used.
+	 * @return The configured limits, which are empty if the file could not be read.
+	 * @see RateLimiter
+	 * @see Properties
+	 */
+	public Properties loadRateLimitsFromTextFile() {
+		Properties rateLimits = new Properties();
+		try (FileInputStream infile = new FileInputStream(RATE_LIMITS)) {
+			rateLimits.load(infile);
+			} catch (IOException e) {
+				System.out.println(e);
+				}
+		for(String name: System.getProperties().stringPropertyNames())
+			if(name.startsWith("chat.") && Server.isRateLimitKey(name.substring("chat.".length())))
+				rateLimits.setProperty(name.substring("chat.".length()), System.getProperty(name));
+		return rateLimits;
+		}
+
+	/***
+	 * A method used to check whether a key names a rate limit or the admission target.
+	 * @param key The key, without the "chat." prefix.
+	 * @return A boolean which is true for *.rate, *.burst, user.* and admission.* keys.
+	 */
+	private static boolean isRateLimitKey(String key) {
+		return key.endsWith(".rate") || key.endsWith(".burst") || key.startsWith("user.") || key.startsWith("admission.");
+		}
+
 	/***
 	 * A method used to save a new Client's login details to the database.
 	 * @param username The user name of the Client to be Added to the database.
 	 * @param password The password of the Client to be Added to the database.
 	 * @return A boolean indicating whether the new Client was added to the Database successfully.
 	 */
-	public synchronized boolean saveUserDetailsToDatabase(String username, String password) {
+	public boolean saveUserDetailsToDatabase(String username, String password) {
 		// If you are doing the database, please implement this method (Look at ServerDatabase Class & libs folder)
 		saveUserDetailsToTextFile(username, password);
 		System.out.println("------------------------------------------\n"
@@ -225,6 +657,7 @@ public class Server implements Runnable {
 
 	/***
 	 * A method used to save a new Client's login details to the text file.
+	 * Only the appending to the file is synchronized, so checking the details of Clients who are already known never waits for it.
 	 * Catches an IOException if unsuccessful.
 	 * @param username The user name of the Client to be Added to the text file.
 	 * @param password The password of the Client to be Added to the text file.
@@ -232,17 +665,16 @@ public class Server implements Runnable {
 	 * @see FileWriter
 	 * @see IOException
 	 */
-	public synchronized boolean saveUserDetailsToTextFile(String username, String password) {
-
-		try {
-			@SuppressWarnings("resource")
-			FileWriter outfile = new FileWriter(USER_LOGIN_DETAILS, true);
-			outfile.write("\n" + username + "#" + password);
-			outfile.flush();
-			} catch (IOException e) {
-				System.out.println(e);
-				return false;
-				}
+	public boolean saveUserDetailsToTextFile(String username, String password) {
+		synchronized(this.knownClientDetails) {
+			try (FileWriter outfile = new FileWriter(USER_LOGIN_DETAILS, true)) {
+				outfile.write("\n" + username + "#" + password);
+				outfile.flush();
+				} catch (IOException e) {
+					System.out.println(e);
+					return false;
+					}
+			}
 			return true;
 		}
 
@@ -254,19 +686,30 @@ public class Server implements Runnable {
  	 * @see ConcurrentHashMap
 	 */
 	public boolean checkUserCredentials(String username, String password) {
-		// If the User isn't in the database, then they must be added to it and the HashMap
-		if(!this.knownClientDetails.containsKey(username)) {
+		// If the User isn't in the HashMap, then they are added to it atomically so two new Clients with the same name cannot both register
+		String knownPassword = this.knownClientDetails.putIfAbsent(username, password);
+		if(knownPassword == null) {
 			this.saveUserDetailsToDatabase(username, password);
-			this.knownClientDetails.put(username, password);
+			this.replicate(ReplicationRecord.credential(username, password));
 			return true;
 			}
 		// Else check if the User Login Details Given is Correct
-		if(this.knownClientDetails.get(username).equals(password))
+		if(knownPassword.equals(password))
 				return true;
 		// If they are incorrect return false
 		return false;
 		}
 
+	/***
+	 * A method used to release what a discarded session holds. Offers parked with it are discarded on the standby too.
+	 * @param session The discarded session.
+	 * @see SessionRegistry
+	 */
+	private void discardSession(ClientSession session) {
+		if(session.release())
+			this.replicate(ReplicationRecord.offersCleared(session.getUsername()));
+		}
+
 	/***
 	 * A method used to check if the given Client is connected to the server.
 	 * @param username The user name of the given Client.
@@ -274,40 +717,89 @@ public class Server implements Runnable {
 	 * @see ClientInteractionHandler
 	 */
 	public boolean checkOnline(String username) {
-		boolean isOnline = false;
-		try {
-			// locks the ArrayList with a ReadLock
-			this.currentConnectionsLock.readLock().lock();
-			for(ClientInteractionHandler clientConnection: this.currentConnections)
-				if(clientConnection.getClientUsername().equals(username))
-					isOnline =  true;
-			} finally {
-				// Releases the lock since reading has occurred.
-				this.currentConnectionsLock.readLock().unlock();
-				}
-		return isOnline;
-
+		return this.getShard(username).getOnlineClients().containsKey(username);
 		}
 
 	/***
 	 * A method used to get the ClientInteractionHandler responsible for the Socket to the Client with the given user name.
+	 * A Client logged in on several devices has one for each, of which the one logged in longest is returned.
 	 * @param username A name which uniquely identifies a Client.
 	 * @return The ClientInteractionHandler responsible for the Socket to the Client with the given user name.
 	 * @see ClientInteractionHandler
 	 */
 	public ClientInteractionHandler getOnlineClient(String username) {
-		ClientInteractionHandler soughtConnection = null;
+		List<ClientInteractionHandler> sessions = this.getOnlineSessions(username);
+		return sessions.isEmpty() ? null : sessions.get(0);
+		}
+
+	/***
+	 * A method used to get the ClientInteractionHandlers of every device the Client with the given user name is logged in on.
+	 * @param username A name which uniquely identifies a Client.
+	 * @return The ClientInteractionHandlers of the Client's sessions, oldest first, which is empty if the Client is offline.
+	 * @see ServerShard#getSessions(String)
+	 */
+	public List<ClientInteractionHandler> getOnlineSessions(String username) {
+		return this.getShard(username).getSessions(username);
+		}
+
+	/***
+	 * A method used to get the shard which owns the given user name.
+	 * @param username A name which uniquely identifies a Client.
+	 * @return The ServerShard which indexes the Client if they are online.
+	 * @see ServerShard#shardOf(String, int)
+	 */
+	private ServerShard<ClientInteractionHandler> getShard(String username) {
+		return this.shards[ServerShard.shardOf(username, this.shards.length)];
+		}
+
+	/***
+	 * A method used to add the ClientInteractionHandler of a Client who has logged in to the index of online Clients.
+	 * A Client may be logged in on several devices at once, up to a limit, and is only announced as online when it
+	 * logs in on its first. A device which resumed its session replaces its earlier connection.
+	 * @param clientConnection The ClientInteractionHandler of the Client.
+	 * @param replaced The earlier connection of the same device, or null if there is none.
+	 * @return A boolean which is false if the Client is already logged in on too many devices.
+	 * @see ServerShard#addSession(String, Object, Object, int)
+	 * @see RoomDirectory#connected(String, Object)
+	 */
+	private boolean addOnlineClient(ClientInteractionHandler clientConnection, ClientInteractionHandler replaced) {
+		int sessionCount = clientConnection.getShard().addSession(clientConnection.getClientUsername(), clientConnection,
+				replaced, SessionRegistry.MAX_SESSIONS_PER_USER);
+		if(sessionCount == 0)
+			return false;
+		this.rooms.connected(clientConnection.getClientUsername(), clientConnection);
+		if(sessionCount == 1) {
+			if(this.clusterNode != null)
+				this.clusterNode.presenceChanged();
+			this.publish("presence.online", Server.SERVER_NAME, new TextPayload(clientConnection.getClientUsername()));
+			}
+		return true;
+		}
+
+	/***
+	 * A method used to remove the ClientInteractionHandler of a closed connection from the ArrayList of Current Connections.
+	 * @param clientConnection The ClientInteractionHandler of the closed connection.
+	 * @see ReentrantReadWriteLock
+	 */
+	private void removeConnection(ClientInteractionHandler clientConnection) {
 		try {
-			// locks the ArrayList with a ReadLock
-			this.currentConnectionsLock.readLock().lock();
-			for(ClientInteractionHandler clientConnection: this.currentConnections)
-				if(clientConnection.getClientUsername().equals(username))
-					soughtConnection = clientConnection;
+			// locks the ArrayList in case other threads are reading from it.
+			this.currentConnectionsLock.writeLock().lock();
+			this.currentConnections.remove(clientConnection);
 			} finally {
-				// Releases the lock since reading has occurred.
-				this.currentConnectionsLock.readLock().unlock();
+				this.currentConnectionsLock.writeLock().unlock();
 				}
-		return soughtConnection;
+		this.rooms.disconnected(clientConnection.getClientUsername(), clientConnection);
+		this.topics.unsubscribeAll(clientConnection);
+		this.audioSenders.values().removeIf(device -> device == clientConnection);
+		this.audioReceivers.values().removeIf(device -> device == clientConnection);
+		// the Client is only offline once the last device it is logged in on has closed.
+		if(clientConnection.getShard() != null
+				&& clientConnection.getShard().removeSession(clientConnection.getClientUsername(), clientConnection)) {
+			if(this.clusterNode != null)
+				this.clusterNode.presenceChanged();
+			this.publish("presence.offline", Server.SERVER_NAME, new TextPayload(clientConnection.getClientUsername()));
+			}
 		}
 
 	/***
@@ -317,24 +809,25 @@ public class Server implements Runnable {
 	 */
 	@Override
 	public void run() {
-		// makes the server listen for new connections on a seperate thread so it can still accept admin commands.
-		this.listenForConnections();
-		}
-
-		class PlayAudio
-		{
-			public PlayAudio(Object data)
-			{
-				try
-				{
-					Media_Player audioFile = (Media_Player)data;
-					audioFile.play_audio();
-				}catch(Exception e)
-				{
-					System.out.println("Could not play audio: \n" + e.getMessage());
+		// a standby follows its primary until the primary fails and then takes over.
+		if(Server.STANDBY_OF != null) {
+			if(Server.REPLICATION_SECRET.isEmpty()) {
+				System.out.println("******************************************\n"
+						+ "System Notice - No replication secret was given with -Dchat.replicationSecret, the standby cannot follow its primary."
+						+ "\n******************************************");
+				return;
 				}
+			new ReplicationStandby(Server.STANDBY_OF, Server.REPLICATION_SECRET, this::applyReplicationRecord).follow();
+			this.startServing();
 			}
-
+		// makes the server listen for new connections on a seperate thread so it can still accept admin commands,
+		// with a thread of its own for each further transport.
+		for(int i = 1; i < this.listeners.size(); i++) {
+			Transport.Listener listener = this.listeners.get(i);
+			new Thread(() -> this.listenForConnections(listener), "Listener").start();
+			}
+		if(!this.listeners.isEmpty())
+			this.listenForConnections(this.listeners.get(0));
 		}
 
 //***********************************************************************************
@@ -343,25 +836,67 @@ public class Server implements Runnable {
 private class ClientInteractionHandler implements Runnable{
 
 	private final static String IMAGE_CONFIRMATION_REQUEST_TEXT = " would like to send you an a file. Would you like to Download it? (Yes/No)";
+	private final static String AUDIO_CONFIRMATION_REQUEST_TEXT = " would like to send you an audio file. Would you like to Listen to it? (Yes/No)";
+	private final static String OUTSTANDING_MESSAGES_FULL_TEXT = " has too many files waiting to be accepted. Please try again later.";
+	private final static String RATE_LIMITED_TEXT = "You are sending messages too quickly.";
+	private final static String SERVER_BUSY_TEXT = "The Server is busy so the message was not sent.";
+	private final static long SERVER_BUSY_RETRY_MILLIS = 1000;
+	private final static String INVALID_TOPIC_TEXT = " is not a topic you can use.";
+	private final static String TOO_MANY_SESSIONS_TEXT = "You are already logged in on too many devices. Please log out on one of them first.";
+	private final static String SUBSCRIBED_TEXT = "You subscribed to ";
+	private final static String UNSUBSCRIBED_TEXT = "You unsubscribed from ";
+	private final static String NOT_SUBSCRIBED_TEXT = "You are not subscribed to ";
+	private final static String TOO_MANY_SUBSCRIPTIONS_TEXT = "You have too many subscriptions to subscribe to ";
+	private final static int MAX_MULTICAST_RECIPIENTS = 64;
+	// how a text sent to all is shown in the results of a search.
+	private final static String EVERYONE = "Everyone";
+	// bounds on the offers waiting for this client's confirmation so that a flood of offers cannot exhaust memory.
+	private final static int MAX_OUTSTANDING_MESSAGES = 32;
+	private final static long MAX_OUTSTANDING_BYTES = 64L * 1024 * 1024;
 
 	//instance variables
-	private Socket connectionToClient;
+	private Connection connectionToClient;
 	private String clientUsername;
 	private ObjectInputStream oInputStream;
 	private ObjectOutputStream oOutputStream;
 	private ReentrantReadWriteLock outstandingMessagesLock;
 	private ArrayList<Message> outstandingMessages;
+	private long outstandingMessagesBytes;
+	private PayloadCodec payloadCodec;
+	private FlowController flowController;
+	private OutboundQueue outboundQueue;
+	private FrameAssembler frameAssembler;
+	// frames of audio streams relayed to another client without being joined, keyed by their number on this connection.
+	private HashMap<Integer, ClientInteractionHandler> relayTargets;
+	private HashMap<Integer, Integer> relayFrameStreamIDs;
+	// the shard which owns the client's user name and the Outbox to the other shards, set once the client has logged in.
+	private ServerShard<ClientInteractionHandler> shard;
+	private ServerShard<ClientInteractionHandler>.Outbox outbox;
+	// the session the client resumes if this connection drops, or null if the client cannot resume.
+	private ClientSession session;
+	private String sessionToken;
+	private boolean resumed;
+	private boolean closedByClient;
+	private volatile boolean signalsEnabled;
+	// why the Client's correct login details were refused, or null if they were not.
+	private String refusalReason;
 
 	/***
 	 * Constructor for the ClientInteractionHandler Class
-	 * @param connectionToClient A Socket on which the Client is connected to the Server
-	 * @see Socket
+	 * @param connectionToClient A Connection on which the Client is connected to the Server, over any Transport
+	 * @see Connection
 	 */
-	public ClientInteractionHandler(Socket connectionToClient) {
+	public ClientInteractionHandler(Connection connectionToClient) {
 		this.connectionToClient = connectionToClient;
 		this.clientUsername = "";
 		this.outstandingMessagesLock = new ReentrantReadWriteLock();
 		this.outstandingMessages = new ArrayList<Message>();
+		this.outstandingMessagesBytes = 0;
+		this.payloadCodec = new PayloadCodec();
+		this.flowController = new FlowController();
+		this.frameAssembler = new FrameAssembler(this.payloadCodec);
+		this.relayTargets = new HashMap<Integer, ClientInteractionHandler>();
+		this.relayFrameStreamIDs = new HashMap<Integer, Integer>();
 		try {
 			this.oOutputStream = new ObjectOutputStream(new BufferedOutputStream(this.connectionToClient.getOutputStream()));
 			this.oOutputStream.flush();
@@ -370,6 +905,9 @@ private class ClientInteractionHandler implements Runnable{
 		catch (IOException e) {
 			System.out.println(e);
 			}
+		// messages to the client are written by their own thread so senders only wait when this client falls behind.
+		this.outboundQueue = new OutboundQueue(this.oOutputStream, this.payloadCodec, this.flowController);
+		this.outboundQueue.start("Outbound Queue " + this.connectionToClient.getRemoteAddress());
 	}
 
 	/***
@@ -389,7 +927,34 @@ private class ClientInteractionHandler implements Runnable{
 		}
 
 	/***
-	 * A method used to retrieve a message from the Client through a Socket.
+	 * A method used to check whether the Client agreed to take typing indicators and read receipts.
+	 * @return A boolean which is true if the Client can be sent SIGNALs.
+	 */
+	public boolean isSignalsEnabled() {
+		return this.signalsEnabled;
+		}
+
+	/***
+	 * A method used to join the shard which owns the Client's user name once the Client has logged in.
+	 * @see ServerShard#openOutbox()
+	 */
+	private void joinShard() {
+		this.shard = Server.this.getShard(this.clientUsername);
+		this.outbox = this.shard.openOutbox();
+		}
+
+	/***
+	 * A method used to get the shard which owns the Client's user name.
+	 * @return The ServerShard of the Client, or null if the Client has not logged in.
+	 */
+	public ServerShard<ClientInteractionHandler> getShard() {
+		return this.shard;
+		}
+
+	/***
+	 * A method used to retrieve a message from the Client through a Socket, decompressing its Data if it was compressed.
+	 * Bulk messages which arrive as MESSAGE_FRAMEs are joined back together before they are returned, and the credit
+	 * for each frame is returned as soon as it has been read. Frames of audio streams are relayed instead.
 	 * If it doesn't work then it catches an IOException and ClassNotFoundException.
 	 * @return The Message Object sent by the Client through a Socket.
 	 * @see ObjectInputStream
@@ -400,70 +965,334 @@ private class ClientInteractionHandler implements Runnable{
 	public Message getMessageFromClient() {
 		Message message = null;
 		try {
-			MessageID messageID = ((MessageID) this.oInputStream.readUnshared());
-			String sourceName = this.oInputStream.readUTF();
-			String destinationName = this.oInputStream.readUTF();
-			Object data = this.oInputStream.readUnshared();
-			message = new Message(messageID, sourceName, destinationName, data);
+			// frames of a bulk message are read until its last frame completes it.
+			while(message == null) {
+				MessageID messageID = ((MessageID) this.oInputStream.readUnshared());
+				String sourceName = this.oInputStream.readUTF();
+				String destinationName = this.oInputStream.readUTF();
+				long sequenceNumber = 0;
+				long lowestUnacknowledged = 0;
+				if(this.outboundQueue.isSequenceNumbersEnabled() && !OutboundQueue.isControlMessage(messageID)) {
+					sequenceNumber = this.oInputStream.readLong();
+					if(sequenceNumber != 0)
+						lowestUnacknowledged = this.oInputStream.readLong();
+					}
+				Object data = this.payloadCodec.decode(this.oInputStream.readUnshared());
+				message = new Message(messageID, sourceName, destinationName, data);
+				message.setSequenceNumber(sequenceNumber, lowestUnacknowledged);
+				if(messageID == MessageID.MESSAGE_FRAME) {
+					this.returnCredit(message);
+					message = this.relayFrame(message) ? null : this.frameAssembler.accept(message);
+					}
+				}
 
 			} catch (IOException | ClassNotFoundException e) {
 				System.out.println(e);
+				message = null;
 				}
 			return message;
 		}
 
 	/***
-	 * A method used to send a message to the Client through a Socket.
-	 * If it doesn't work then it catches an IOException.
+	 * A method used to relay a frame of an audio stream straight to the Client it is addressed to, without joining the
+	 * frames or deserializing and re-serializing the chunk they carry. Only streams whose first frame can be relayed
+	 * are relayed, the others are joined and dispatched as usual.
+	 * @param frameMessage The MESSAGE_FRAME read from the Client.
+	 * @return A boolean which is true if the frame was relayed.
+	 * @see FramePayload#forStream(int)
+	 */
+	private boolean relayFrame(Message frameMessage) {
+		FramePayload frame = (FramePayload)frameMessage.getData();
+		if(frame.getMessageID() != MessageID.AUDIO_STREAM_CHUNK)
+			return false;
+		ClientInteractionHandler recipient = this.relayTargets.get(frame.getFrameStreamID());
+		if(recipient == null) {
+			if(this.frameAssembler.isAssembling(frame.getFrameStreamID()))
+				return false;
+			recipient = getAudioRecipient(frameMessage.getSourceName(), frameMessage.getDestinationName());
+			if(recipient == null || !recipient.getOutboundQueue().isFramingEnabled())
+				return false;
+			this.relayTargets.put(frame.getFrameStreamID(), recipient);
+			this.relayFrameStreamIDs.put(frame.getFrameStreamID(), recipient.getOutboundQueue().allocateFrameStreamID());
+			}
+		int relayedFrameStreamID = this.relayFrameStreamIDs.get(frame.getFrameStreamID());
+		if(frame.isLastFrame()) {
+			this.relayTargets.remove(frame.getFrameStreamID());
+			this.relayFrameStreamIDs.remove(frame.getFrameStreamID());
+			}
+		Metrics.increment("relay.frames");
+		Metrics.add("relay.bytes", frame.getFrameLength());
+		this.transferMessageToConnection(new Message(MessageID.MESSAGE_FRAME, frameMessage.getSourceName(),
+				frameMessage.getDestinationName(), frame.forStream(relayedFrameStreamID)), recipient);
+		return true;
+		}
+
+	/***
+	 * A method used to retrieve the OutboundQueue of the connection to the Client.
+	 * @return The OutboundQueue of the connection to the Client.
+	 */
+	public OutboundQueue getOutboundQueue() {
+		return this.outboundQueue;
+		}
+
+	/***
+	 * A method used to send a message to the Client by adding it to the Client's OutboundQueue.
+	 * Blocks while the Client's OutboundQueue is full, which passes the Client's backpressure on to the calling Thread.
 	 * @param message The Message Object to be sent to the Client through a Socket.
-	 * @see ObjectOutputStream
-	 * @see IOException
+	 * @return A boolean which is false if the Message was dropped.
+	 * @see OutboundQueue#enqueue(Message)
 	 */
-	public void sendMessageToClient(Message message) {
-		try {
+	public boolean sendMessageToClient(Message message) {
+		if(this.outboundQueue.enqueue(message))
+			return true;
+		Metrics.increment("flow.dropped_messages");
+		return false;
+		}
 
-			this.oOutputStream.writeUnshared(message.getMessageID());
-			this.oOutputStream.writeUTF(message.getSourceName());
-			this.oOutputStream.writeUTF(message.getDestinationName());
-			this.oOutputStream.writeUnshared(message.getData());
-			this.oOutputStream.flush();
-			} catch (IOException e) {
-				System.out.println(e);
+	/***
+	 * A method used to send a message to the Client without waiting if its OutboundQueue is full, for Threads such as
+	 * the ThumbnailGenerator's pool which must not be held up by one slow Client.
+	 * @param message The Message Object to be sent to the Client.
+	 * @return A boolean which is false if the queue was full or closed and the Message was dropped.
+	 */
+	public boolean offerMessageToClient(Message message) {
+		if(this.outboundQueue.offer(message))
+			return true;
+		Metrics.increment("flow.dropped_messages");
+		return false;
+		}
+
+	/***
+	 * A method used to stop accepting messages for the Client once the connection is closing.
+	 */
+	public void closeOutboundQueue() {
+		this.outboundQueue.close();
+		}
+
+	/***
+	 * A method used to wait for the messages queued for the Client to be written once the OutboundQueue is closed.
+	 * @param millis The longest time to wait in milliseconds.
+	 */
+	public void awaitOutboundQueue(long millis) {
+		this.outboundQueue.awaitTermination(millis);
+		}
+
+	/***
+	 * A method used to return flow control credit to the Client once a message from it has been processed.
+	 * @param message The processed Message.
+	 * @see FlowController#consumed(long)
+	 */
+	private void returnCredit(Message message) {
+		if(OutboundQueue.isControlMessage(message.getMessageID()) || this.outboundQueue.isFramed(message.getMessageID()))
+			return;
+		CreditPayload credit = this.flowController.consumed(message.getSize());
+		if(credit != null)
+			this.sendMessageToClient(new Message(MessageID.FLOW_CONTROL_CREDIT, Server.SERVER_NAME, this.clientUsername, credit));
+		}
+
+	/***
+	 * A method used to check a request from the Client against the Client's rate limits and the Server's load
+	 * before it is dispatched. The Client is sent a THROTTLE_RESPONSE for a request which is refused.
+	 * @param message The request from the Client.
+	 * @return A boolean which is false if the request must not be dispatched.
+	 * @see RateLimiter
+	 * @see AdmissionController
+	 */
+	private boolean admitMessage(Message message) {
+		TrafficClass trafficClass = TrafficClass.of(message.getMessageID());
+		if(trafficClass == null)
+			return true;
+		long waitNanos = rateLimiter.tryAcquire(this.clientUsername, trafficClass);
+		// a signal is superseded by the next one, so the Client is not told when one is dropped.
+		if(trafficClass == TrafficClass.SIGNAL && (waitNanos > 0 || !admissionController.admit(trafficClass))) {
+			Metrics.increment("signal.shed");
+			return false;
+			}
+		if(waitNanos > 0) {
+			Metrics.increment("ratelimit.throttled." + trafficClass.name().toLowerCase());
+			this.sendThrottleResponse(message, waitNanos / 1000000, ClientInteractionHandler.RATE_LIMITED_TEXT);
+			return false;
+			}
+		if(!admissionController.admit(trafficClass)) {
+			Metrics.increment("admission.shed." + trafficClass.name().toLowerCase());
+			this.sendThrottleResponse(message, ClientInteractionHandler.SERVER_BUSY_RETRY_MILLIS, ClientInteractionHandler.SERVER_BUSY_TEXT);
+			return false;
+			}
+		return true;
+		}
+
+	/***
+	 * A method used to tell the Client that a request was refused. The response is dropped rather than waited for
+	 * if the Client's OutboundQueue is full, so a Client flooding the Server cannot block its own handler on the responses.
+	 * @param message The refused request.
+	 * @param retryAfterMillis The number of milliseconds the Client should wait before trying again.
+	 * @param reason A description of why the request was refused.
+	 * @see ThrottlePayload
+	 */
+	private void sendThrottleResponse(Message message, long retryAfterMillis, String reason) {
+		this.outboundQueue.offer(new Message(MessageID.THROTTLE_RESPONSE, Server.SERVER_NAME, this.clientUsername,
+				new ThrottlePayload(message.getMessageID(), retryAfterMillis, reason)));
+		}
+
+	/***
+	 * A method used to send a text to every recipient listed in the destination of a TEXT_MULTICAST_REQUEST.
+	 * The request becomes the one TEXT_MULTICAST_RECEIPT every recipient on this Server is sent on each of its devices,
+	 * still listing all the recipients, while recipients logged in to other nodes of the cluster are each forwarded a TEXT_TRANSFER_RECEIPT.
+	 * @param request The TEXT_MULTICAST_REQUEST.
+	 * @return What became of the text for each recipient.
+	 * @see MulticastReportPayload
+	 */
+	private MulticastReportPayload multicast(Message request) {
+		MulticastReportPayload report = new MulticastReportPayload();
+		ArrayList<String> recipients = new ArrayList<String>(MulticastReportPayload.parseRecipients(request.getDestinationName()));
+		List<String> overLimit = recipients.subList(Math.min(recipients.size(), ClientInteractionHandler.MAX_MULTICAST_RECIPIENTS), recipients.size());
+		ArrayList<String> refused = new ArrayList<String>(overLimit);
+		overLimit.clear();
+		// the recipients are told who else the text was sent to, listed as the Server read them.
+		request.setMessageID(MessageID.TEXT_MULTICAST_RECEIPT);
+		request.setDestinationName(MulticastReportPayload.joinRecipients(recipients));
+		for(String recipient: recipients) {
+			List<ClientInteractionHandler> connections = getOnlineSessions(recipient);
+			if(!connections.isEmpty()) {
+				report.setStatus(recipient, this.transferMessageToSessions(request, connections)
+						? MulticastReportPayload.Status.DELIVERED : MulticastReportPayload.Status.DROPPED);
+				continue;
 				}
+			String node = clusterNode != null ? clusterNode.locate(recipient) : null;
+			if(node != null && clusterNode.forward(node, new Message(MessageID.TEXT_TRANSFER_RECEIPT, request.getSourceName(),
+					recipient, request.getData())))
+				report.setStatus(recipient, MulticastReportPayload.Status.FORWARDED);
+			else
+				report.setStatus(recipient, knownClientDetails.containsKey(recipient)
+						? MulticastReportPayload.Status.OFFLINE : MulticastReportPayload.Status.UNKNOWN);
+			}
+		for(String recipient: refused)
+			report.setStatus(recipient, MulticastReportPayload.Status.OVER_LIMIT);
+		Metrics.increment("multicast.requests");
+		Metrics.add("multicast.recipients", recipients.size());
+		return report;
+		}
+
+	/***
+	 * A method used to hand a text message which was routed to the SearchIndex, so that the Clients which took part
+	 * in it can find it later.
+	 * @param text The text message, carrying a TextPayload.
+	 * @param recipients The user names of the Clients it reached, or null if it was sent to all.
+	 * @see SearchIndex#index(String, String, Collection, String, long)
+	 */
+	private void indexText(Message text, Collection<String> recipients) {
+		if(text.getData() instanceof TextPayload)
+			searchIndex.index(text.getSourceName(), recipients != null ? text.getDestinationName() : ClientInteractionHandler.EVERYONE,
+					recipients, ((TextPayload)text.getData()).getText(), text.getSequenceNumber());
 		}
 
-	public void addMessageToOutstandingMessages(Message message) {
+	/***
+	 * A method used to tell the Client the outcome of a request to create, join, leave or post to a room.
+	 * @param roomName The name of the room.
+	 * @param outcome The outcome of the request.
+	 * @see RoomDirectory.Outcome
+	 */
+	private void sendRoomResponse(String roomName, RoomDirectory.Outcome outcome) {
+		this.sendMessageToClient(new Message(MessageID.ROOM_RESPONSE, Server.SERVER_NAME, this.clientUsername,
+				new TextPayload(outcome.describe(roomName))));
+		}
+
+	/***
+	 * A method used to tell the Client the outcome of a request to subscribe, unsubscribe or publish to a topic.
+	 * @param text The description of the outcome.
+	 */
+	private void sendTopicResponse(String text) {
+		this.sendMessageToClient(new Message(MessageID.TOPIC_RESPONSE, Server.SERVER_NAME, this.clientUsername, new TextPayload(text)));
+		}
+
+	/***
+	 * A method used to store an offer which is waiting for the Client's confirmation.
+	 * @param message The Message to deliver once the Client accepts the offer.
+	 * @return A boolean which is false if the Client already has too many offers waiting and the offer was rejected.
+	 */
+	public boolean addMessageToOutstandingMessages(Message message) {
 		try {
 		this.outstandingMessagesLock.writeLock().lock();
+		if(this.outstandingMessages.size() >= MAX_OUTSTANDING_MESSAGES
+				|| this.outstandingMessagesBytes + message.getSize() > MAX_OUTSTANDING_BYTES) {
+			Metrics.increment("flow.rejected_offers");
+			return false;
+			}
 		this.outstandingMessages.add(message);
+		this.outstandingMessagesBytes += message.getSize();
+		replicate(ReplicationRecord.offerStored(message));
+		return true;
 		}
 		finally {
 		this.outstandingMessagesLock.writeLock().unlock();
 		}
 		}
 
-	private void deleteMessageFromOutstandingMessages(String sourceName, String destinationName) {
+	/***
+	 * A method used to take every offer still waiting for the Client's confirmation off this connection, so that they
+	 * can be kept with the Client's session or adopted by the connection which resumed it.
+	 * @return The offers, whose references now belong to the caller.
+	 */
+	private ArrayList<Message> handOverOutstandingMessages() {
+		try {
+			this.outstandingMessagesLock.writeLock().lock();
+			ArrayList<Message> offers = this.outstandingMessages;
+			this.outstandingMessages = new ArrayList<Message>();
+			this.outstandingMessagesBytes = 0;
+			return offers;
+			}
+		finally {
+			this.outstandingMessagesLock.writeLock().unlock();
+			}
+		}
+
+	/***
+	 * A method used to take over the offers which were waiting for the Client's confirmation on its earlier connection.
+	 * They were already replicated when they were first stored, and are not counted against the limits again.
+	 * @param offers The offers.
+	 */
+	private void adoptOutstandingMessages(ArrayList<Message> offers) {
+		try {
+			this.outstandingMessagesLock.writeLock().lock();
+			for(Message offer: offers) {
+				this.outstandingMessages.add(offer);
+				this.outstandingMessagesBytes += offer.getSize();
+				}
+			}
+		finally {
+			this.outstandingMessagesLock.writeLock().unlock();
+			}
+		}
+
+	/***
+	 * A method used to discard every offer still waiting for the Client's confirmation once the connection has closed.
+	 */
+	private void releaseOutstandingMessages() {
 		try {
 			this.outstandingMessagesLock.writeLock().lock();
 			for(Message m: this.outstandingMessages)
-				if(m.getSourceName().equals(sourceName) && m.getDestinationName().equals(destinationName)) {
-					this.outstandingMessages.remove(m);
-					break;
-					}
+				if(m.getPayload() != null)
+					m.getPayload().release();
+			if(!this.outstandingMessages.isEmpty())
+				replicate(ReplicationRecord.offersCleared(this.clientUsername));
+			this.outstandingMessages.clear();
+			this.outstandingMessagesBytes = 0;
 			}
 		finally {
 			this.outstandingMessagesLock.writeLock().unlock();
 			}
 		}
 
-	public Message getMessageFromOutstandingMessages(String sourceName, String destinationName) {
+	public Message getMessageFromOutstandingMessages(MessageID messageID, String sourceName, String destinationName) {
 		Message returnM = null;
 		try {
 			this.outstandingMessagesLock.writeLock().lock();
 			for(Message m : this.outstandingMessages)
-				if(m.getSourceName().equals(sourceName) && m.getDestinationName().equals(destinationName)) {
+				if(m.getMessageID() == messageID && m.getSourceName().equals(sourceName) && m.getDestinationName().equals(destinationName)) {
 					returnM = m;
 					this.outstandingMessages.remove(m);
+					this.outstandingMessagesBytes -= m.getSize();
+					replicate(ReplicationRecord.offerRemoved(messageID, sourceName, destinationName));
 					break;
 					}
 			}
@@ -474,39 +1303,366 @@ private class ClientInteractionHandler implements Runnable{
 
 		}
 
+	/***
+	 * A method used to take an answered offer out of the outstanding messages of whichever device of the Client it was
+	 * stored with, and to withdraw its confirmation request from the Client's other devices.
+	 * @param messageID The MessageID of the offer.
+	 * @param sourceName The user name of the Client which made the offer.
+	 * @param requestID The MessageID of the confirmation request the Client's devices were sent.
+	 * @return The offer, or null if it was already answered.
+	 * @see MessageID#CONFIRMATION_WITHDRAWN
+	 */
+	private Message takeOffer(MessageID messageID, String sourceName, MessageID requestID) {
+		Message offer = this.getMessageFromOutstandingMessages(messageID, sourceName, this.clientUsername);
+		List<ClientInteractionHandler> devices = getOnlineSessions(this.clientUsername);
+		for(int i = 0; offer == null && i < devices.size(); i++)
+			if(devices.get(i) != this)
+				offer = devices.get(i).getMessageFromOutstandingMessages(messageID, sourceName, this.clientUsername);
+		if(offer == null)
+			return null;
+		for(ClientInteractionHandler device: devices)
+			if(device != this)
+				this.transferMessageToConnection(new Message(MessageID.CONFIRMATION_WITHDRAWN, sourceName, this.clientUsername, requestID), device);
+		return offer;
+		}
+
 	/***
 	 * A method used to transfer a Message from one Client's connection to another Client's connection.
+	 * A Message to a Client of another shard is handed to the shards' Threads through this connection's Outbox,
+	 * so it may only be called by this connection's Thread.
 	 * @param message The Message to be transferred to the other connection.
 	 * @param clientConnection The connection of the Client to which the message must be delivered.
+	 * @return A boolean which is false if the Message was dropped.
+	 * @see ServerShard.Outbox#send(Message, OutboundQueue, ServerShard)
+	 */
+	private boolean transferMessageToConnection(Message message, ClientInteractionHandler clientConnection) {
+		if(this.outbox == null || clientConnection.getShard() == null)
+			return clientConnection.sendMessageToClient(message);
+		if(this.outbox.send(message, clientConnection.getOutboundQueue(), clientConnection.getShard()))
+			return true;
+		Metrics.increment("flow.dropped_messages");
+		return false;
+		}
+
+	/***
+	 * A method used to transfer a Message to every device a Client is logged in on. Every device is sent the same Message.
+	 * @param message The Message to be transferred.
+	 * @param clientConnections The connections of the Client's sessions.
+	 * @return A boolean which is false if the Message was dropped for every device.
+	 * @see ClientInteractionHandler#transferMessageToConnection(Message, ClientInteractionHandler)
+	 */
+	private boolean transferMessageToSessions(Message message, List<ClientInteractionHandler> clientConnections) {
+		boolean delivered = false;
+		for(ClientInteractionHandler clientConnection: clientConnections)
+			delivered |= this.transferMessageToConnection(message, clientConnection);
+		return delivered;
+		}
+
+	/***
+	 * A method used to store an offer with the Client it is made to, telling the sender if the Client has too many offers waiting.
+	 * @param message The Message to deliver once the Client accepts the offer.
+	 * @param clientConnection The connection of the Client the offer is made to.
+	 * @return A boolean which is false if the offer was rejected.
+	 */
+	private boolean storeMessageinConnectionOutStandingMessages(Message message, ClientInteractionHandler clientConnection) {
+		if(clientConnection.addMessageToOutstandingMessages(message))
+			return true;
+		this.sendMessageToClient(new Message(MessageID.TEXT_TRANSFER_RECEIPT, Server.SERVER_NAME, this.clientUsername,
+				new TextPayload(clientConnection.getClientUsername() + ClientInteractionHandler.OUTSTANDING_MESSAGES_FULL_TEXT)));
+		return false;
+		}
+
+	/***
+	 * A method used to offer an Image to other Clients. The full Image is stored as an outstanding message of each Client
+	 * and a confirmation request carrying a downscaled preview is sent to every device they are logged in on once the
+	 * preview has been generated.
+	 * The preview is generated once on the ThumbnailGenerator's pool so this handler's Thread is never spent decoding.
+	 * Until the Clients accept or decline it the Image is held serialized, and spilled to disk if it is large,
+	 * so that its frames can be written to each Client without serializing it again.
+	 * @see SpooledPayload
+	 * @param sourceName The user name of the Client offering the Image.
+	 * @param image The Image being offered.
+	 * @param clientConnections The connections the Image is stored with, one for each Client it is offered to.
+	 * @see ThumbnailGenerator#getPreview(ImagePayload)
+	 * @see ImageOfferPayload
+	 */
+	private void offerImageToConnections(String sourceName, ImagePayload image, ArrayList<ClientInteractionHandler> clientConnections) {
+		Payload heldImage = this.spoolPayload(image);
+		// clients who have too many offers waiting are not offered the image.
+		clientConnections.removeIf(client -> {
+			heldImage.retain();
+			if(this.storeMessageinConnectionOutStandingMessages(
+					new Message(MessageID.IMAGE_TRANSFER_RECEIPT, sourceName, client.getClientUsername(), heldImage), client))
+				return false;
+			heldImage.release();
+			return true;
+			});
+		heldImage.release();
+		if(clientConnections.isEmpty())
+			return;
+		// the previews are sent from the ThumbnailGenerator's pool, which may not use this connection's Outbox and must
+		// not wait on a slow client, so a client whose queue is full is not sent the offer.
+		thumbnailGenerator.getPreview(image).whenComplete((preview, error) -> {
+			for(ClientInteractionHandler client: clientConnections) {
+				Message output = new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST, sourceName,
+						client.getClientUsername(), new ImageOfferPayload(sourceName +
+								ClientInteractionHandler.IMAGE_CONFIRMATION_REQUEST_TEXT, preview, image.getSize()));
+				for(ClientInteractionHandler device: getOnlineSessions(client.getClientUsername()))
+					device.offerMessageToClient(output);
+				}
+			});
+		}
+
+
+	/***
+	 * A method used to find the Image an IMAGE_TRANSFER_REQUEST or IMAGE_SEND_TO_ALL_REQUEST offers. An Image which was
+	 * uploaded is kept in the ContentStore, while one sent by reference is taken from it and the Client is told
+	 * whether the Server held it, so that it uploads the Image itself if the Server did not.
+	 * @param request The request.
+	 * @return The Image, or null if the request named an Image the Server does not hold.
+	 * @see ContentStore
+	 */
+	private ImagePayload resolveImage(Message request) {
+		if(request.getData() instanceof ImagePayload) {
+			ImagePayload image = (ImagePayload)request.getData();
+			contentStore.put(image);
+			return image;
+			}
+		if(!(request.getData() instanceof ContentReferencePayload))
+			return null;
+		ContentReferencePayload reference = (ContentReferencePayload)request.getData();
+		ImagePayload image = contentStore.get(reference);
+		this.sendContentQueryResponse(request, reference, image != null);
+		return image;
+		}
+
+	/***
+	 * A method used to tell the Client whether the Server holds an Image it asked about or sent a reference to.
+	 * The response comes from the recipient of the request so that the Client can tell which of its Images it answers.
+	 * @param request The CONTENT_QUERY_REQUEST or the request which sent the reference.
+	 * @param reference The reference to the Image.
+	 * @param held Whether the Server holds the Image.
 	 */
-	private void transferMessageToConnection(Message message, ClientInteractionHandler clientConnection) {
-		clientConnection.sendMessageToClient(message);
+	private void sendContentQueryResponse(Message request, ContentReferencePayload reference, boolean held) {
+		this.sendMessageToClient(new Message(MessageID.CONTENT_QUERY_RESPONSE, request.getDestinationName(),
+				this.clientUsername, reference.answer(held)));
 		}
 
-	private void storeMessageinConnectionOutStandingMessages(Message message, ClientInteractionHandler clientConnection) {
-		clientConnection.addMessageToOutstandingMessages(message);
+	/***
+	 * A method used to offer the Client again the offers which were waiting for its confirmation when the primary
+	 * this Server took over from failed.
+	 * @see ReplicationStandby
+	 */
+	private void restoreRecoveredOffers() {
+		ArrayList<ReplicationRecord> offers = recoveredOffers.remove(this.clientUsername);
+		if(offers == null)
+			return;
+		for(ReplicationRecord offer: offers) {
+			String sourceName = offer.getSourceName();
+			if(offer.getMessageID() == MessageID.IMAGE_TRANSFER_RECEIPT && offer.getData() instanceof ImagePayload) {
+				ImagePayload image = (ImagePayload)offer.getData();
+				Payload heldImage = this.spoolPayload(image);
+				if(!this.addMessageToOutstandingMessages(new Message(MessageID.IMAGE_TRANSFER_RECEIPT, sourceName, this.clientUsername, heldImage))) {
+					heldImage.release();
+					continue;
+					}
+				// the preview is sent from the ThumbnailGenerator's pool, which must not wait on a slow client.
+				thumbnailGenerator.getPreview(image).whenComplete((preview, error) ->
+					this.offerMessageToClient(new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST, sourceName, this.clientUsername,
+							new ImageOfferPayload(sourceName + ClientInteractionHandler.IMAGE_CONFIRMATION_REQUEST_TEXT, preview, image.getSize()))));
+				}
+			else if(offer.getMessageID() == MessageID.AUDIO_TRANSFER_RECEIPT) {
+				if(this.addMessageToOutstandingMessages(offer.toMessage()))
+					this.sendMessageToClient(new Message(MessageID.AUDIO_TRANSFER_CONFIRMATION_REQUEST, sourceName, this.clientUsername,
+							new TextPayload(sourceName + ClientInteractionHandler.AUDIO_CONFIRMATION_REQUEST_TEXT)));
+				}
+			}
+		Metrics.add("replication.restored_offers", offers.size());
 		}
 
+	/***
+	 * A method used to hold a Payload serialized until it is delivered.
+	 * @param payload The Payload to hold.
+	 * @return The SpooledPayload holding it, or the Payload itself if it could not be spooled.
+	 * @see SpooledPayload#spool(Payload)
+	 */
+	private Payload spoolPayload(Payload payload) {
+		try {
+			return SpooledPayload.spool(payload);
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			return payload;
+			}
+		}
 
 	/***
 	 * A method used to send all online Client's user names to the Client.
+	 * Each shard's index is read without locking it, so the list may miss a Client logging in at the same time.
+	 * In a cluster the Clients of the other nodes are included.
 	 * @see ArrayList
-	 * @see ReentrantReadWriteLock
+	 * @see ServerShard
 	 */
 	private ArrayList<String> getAllOnlineClientDetails(String currentUsername) {
 		ArrayList<String> onlineClientUsernames = new ArrayList<String>();
+		for(ServerShard<ClientInteractionHandler> shard: shards)
+			for(String username: shard.getOnlineClients().keySet())
+				if(!username.equals(currentUsername))
+					onlineClientUsernames.add(username);
+		// Clients of the other nodes of the cluster, as last gossiped.
+		if(clusterNode != null)
+			for(String username: clusterNode.getRemoteUsernames())
+				if(!username.equals(currentUsername) && !checkOnline(username))
+					onlineClientUsernames.add(username);
+		return onlineClientUsernames;
+		}
 
-		try {
-		currentConnectionsLock.readLock().lock();
-		for(ClientInteractionHandler c: currentConnections)
-			if(!c.getClientUsername().equals(currentUsername))
-				onlineClientUsernames.add(c.getClientUsername());
+	/***
+	 * A method used to get the password from a REGISTRATION_REQUEST.
+	 * Older Clients send the password as a String rather than a RegistrationPayload.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @return The password of the Client.
+	 * @see RegistrationPayload
+	 */
+	private String getRegistrationPassword(Message registrationRequest) {
+		if(registrationRequest.getData() instanceof RegistrationPayload)
+			return ((RegistrationPayload)registrationRequest.getData()).getPassword();
+		return registrationRequest.getData().toString();
+		}
 
+	/***
+	 * A method used to check the login details in a REGISTRATION_REQUEST. A Client resuming a dropped session is
+	 * accepted on its session token alone, and only has its password checked if the token is no longer valid.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @return A boolean which is true if the Client was accepted.
+	 * @see SessionRegistry#isValidToken(String, String)
+	 */
+	private boolean authenticate(Message registrationRequest) {
+		if(registrationRequest.getData() instanceof RegistrationPayload) {
+			RegistrationPayload request = (RegistrationPayload)registrationRequest.getData();
+			this.resumed = request.hasCapability(RegistrationPayload.CAPABILITY_RESUME)
+					&& sessions.isValidToken(registrationRequest.getSourceName(), request.getSessionToken());
+			if(this.resumed)
+				return true;
+			}
+		return checkUserCredentials(registrationRequest.getSourceName(), this.getRegistrationPassword(registrationRequest));
 		}
-		finally {
-			currentConnectionsLock.readLock().unlock();
+
+	/***
+	 * A method used to check a REGISTRATION_REQUEST and that the Client is not already logged in on as many devices as
+	 * it may be. A Client refused for being logged in on too many devices is told why.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @return A boolean which is true if the Client was accepted.
+	 * @see SessionRegistry#MAX_SESSIONS_PER_USER
+	 */
+	private boolean login(Message registrationRequest) {
+		this.refusalReason = null;
+		if(!this.authenticate(registrationRequest))
+			return false;
+		if(this.hasRoomForSession(registrationRequest))
+			return true;
+		this.refusalReason = ClientInteractionHandler.TOO_MANY_SESSIONS_TEXT;
+		Metrics.increment("session.refused_logins");
+		return false;
 		}
-		return onlineClientUsernames;
+
+	/***
+	 * A method used to check whether a Client which logged in may have another session. A device which resumes its
+	 * session replaces its earlier connection rather than adding another, so it is never refused.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @return A boolean which is true if the Client may log in on this connection.
+	 */
+	private boolean hasRoomForSession(Message registrationRequest) {
+		List<ClientInteractionHandler> devices = getOnlineSessions(registrationRequest.getSourceName());
+		if(devices.size() < SessionRegistry.MAX_SESSIONS_PER_USER)
+			return true;
+		String deviceID = this.resumed ? sessions.getDeviceID(registrationRequest.getSourceName(),
+				((RegistrationPayload)registrationRequest.getData()).getSessionToken()) : null;
+		for(ClientInteractionHandler device: devices)
+			if(deviceID != null && device.session != null && device.session.getDeviceID().equals(deviceID))
+				return true;
+		return false;
+		}
+
+	/***
+	 * A method used to attach the session of the Client's device to this connection once it has logged in, if the
+	 * Client can resume. A device logging in with its password starts a new session alongside those of the Client's
+	 * other devices, while a resuming device takes its own session back.
+	 * The Messages written from now on are numbered, so this must happen before anything else is queued for the Client.
+	 * A resuming device gets back the offers waiting on its earlier connection, including one the Server has not
+	 * noticed is dead yet, which is closed.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @return The Messages the device missed while it was disconnected, oldest first.
+	 * @see ClientSession
+	 */
+	private ArrayList<Message> openSession(Message registrationRequest) {
+		if(!(registrationRequest.getData() instanceof RegistrationPayload)
+				|| !((RegistrationPayload)registrationRequest.getData()).hasCapability(RegistrationPayload.CAPABILITY_RESUME))
+			return new ArrayList<Message>();
+		RegistrationPayload request = (RegistrationPayload)registrationRequest.getData();
+		long lastSequenceNumber = request.getLastSequenceNumber();
+		this.session = this.resumed ? sessions.resume(this.clientUsername, sessions.getDeviceID(this.clientUsername, request.getSessionToken()),
+				lastSequenceNumber) : sessions.open(this.clientUsername);
+		this.outboundQueue.setSequencer(this.session.attach(this.outboundQueue));
+		this.sessionToken = sessions.issueToken(this.session);
+		if(!this.resumed)
+			return new ArrayList<Message>();
+		ArrayList<Message> missed = this.session.replayAfter(lastSequenceNumber);
+		this.adoptOutstandingMessages(this.session.takeParkedOffers());
+		ClientInteractionHandler previous = this.getPreviousConnection();
+		if(previous != null) {
+			this.adoptOutstandingMessages(previous.handOverOutstandingMessages());
+			previous.closeSocket();
+			}
+		return missed;
+		}
+
+	/***
+	 * A method used to find the earlier connection of the device which resumed its session on this connection, if the
+	 * Server has not noticed yet that it is dead.
+	 * @return The earlier connection, or null if there is none.
+	 */
+	private ClientInteractionHandler getPreviousConnection() {
+		if(this.session == null)
+			return null;
+		for(ClientInteractionHandler device: getOnlineSessions(this.clientUsername))
+			if(device != this && device.session == this.session)
+				return device;
+		return null;
+		}
+
+	/***
+	 * A method used to close the Socket to the Client, which makes this connection's Thread close the connection.
+	 * Catches an IOException if unsuccessful.
+	 */
+	private void closeSocket() {
+		try {
+			this.connectionToClient.close();
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		}
+
+	/***
+	 * A method used to create the Data of a REGISTRATION_RESPONSE. Clients which sent a RegistrationPayload are told
+	 * which of their capabilities the Server also supports, while older Clients are only sent a boolean.
+	 * Clients which can resume are also sent their session token, and Clients whose correct details were refused why.
+	 * @param registrationRequest The REGISTRATION_REQUEST sent by the Client.
+	 * @param isCorrect Whether the Client's login details were accepted.
+	 * @return The Data of the REGISTRATION_RESPONSE.
+	 * @see RegistrationPayload
+	 */
+	private Object createRegistrationResponse(Message registrationRequest, boolean isCorrect) {
+		if(registrationRequest.getData() instanceof RegistrationPayload) {
+			int capabilities = ((RegistrationPayload)registrationRequest.getData()).getCapabilities() & RegistrationPayload.SUPPORTED_CAPABILITIES;
+			if(isCorrect && this.session != null)
+				return RegistrationPayload.sessionResponse(capabilities, this.sessionToken, this.resumed);
+			if(!isCorrect && this.refusalReason != null)
+				return RegistrationPayload.refused(capabilities, this.refusalReason);
+			return RegistrationPayload.response(isCorrect, capabilities);
+			}
+		return isCorrect;
 		}
 
 	@Override
@@ -514,36 +1670,93 @@ private class ClientInteractionHandler implements Runnable{
 		// When the connection first starts the User's Login Details Must be Checked
 		Message input = this.getMessageFromClient();
 		Message output;
-		// If they are incorrect we keep looping until the correct details are supplied
-		boolean isCorrect = checkUserCredentials(input.getSourceName(), input.getData().toString());
+		if(input == null) {
+			this.closeConnection();
+			return;
+			}
+		// If they are incorrect, or the client is logged in on too many devices, we keep looping until it is accepted
+		boolean isCorrect = this.login(input);
 		while(!isCorrect) {
 			// send output to client to tell them the details they entered are incorrect
 			System.out.println("******************************************\n"
-					+ "System Notice - Warning: " + input.getSourceName() + " Entered incorrect Client Credentials."
+					+ "System Notice - Warning: " + input.getSourceName() + (this.refusalReason != null
+							? " is Logged In on too many devices." : " Entered incorrect Client Credentials.")
 							+ "\n******************************************");
-			output = new Message(MessageID.REGISTRATION_RESPONSE, Server.SERVER_NAME, input.getSourceName(), isCorrect);
+			output = new Message(MessageID.REGISTRATION_RESPONSE, Server.SERVER_NAME, input.getSourceName(),
+					this.createRegistrationResponse(input, isCorrect));
 			this.sendMessageToClient(output);
 			// get new input from client
 			input = this.getMessageFromClient();
-			isCorrect = checkUserCredentials(input.getSourceName(), input.getData().toString());
+			if(input == null) {
+				this.closeConnection();
+				return;
+				}
+			isCorrect = this.login(input);
 			}
 		// Set the user name of the client this ClientInteractionHandler is responsible for.
 		this.setClientUsername(input.getSourceName());
+		this.joinShard();
+		ArrayList<Message> missedMessages = this.openSession(input);
 		// tell the client that their user details were correct.
 		System.out.println("******************************************\n"
-				+ "System Notice - " + input.getSourceName() + " Logged In with correct Client Credentials."
+				+ "System Notice - " + input.getSourceName() + (this.resumed ? " Resumed their Session, " + missedMessages.size()
+						+ " Messages are written again." : " Logged In with correct Client Credentials.")
 						+ "\n******************************************");
-		output = new Message(MessageID.REGISTRATION_RESPONSE, Server.SERVER_NAME, input.getSourceName(), isCorrect);
+		output = new Message(MessageID.REGISTRATION_RESPONSE, Server.SERVER_NAME, input.getSourceName(),
+				this.createRegistrationResponse(input, isCorrect));
 		this.sendMessageToClient(output);
+		// compress large payloads and use flow control from now on if both sides agreed to it during the handshake.
+		if(output.getData() instanceof RegistrationPayload) {
+			RegistrationPayload agreed = (RegistrationPayload)output.getData();
+			this.payloadCodec.setCompressionEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_COMPRESSION));
+			this.flowController.setEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_FLOW_CONTROL));
+			this.outboundQueue.setFramingEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_MULTIPLEXING));
+			this.outboundQueue.setSequenceNumbersEnabled(agreed.hasCapability(RegistrationPayload.CAPABILITY_DELIVERY_ACKS));
+			this.signalsEnabled = agreed.hasCapability(RegistrationPayload.CAPABILITY_SIGNALS);
+			}
+		// the messages the client missed are queued before it is online, so they are written before any new ones.
+		for(Message missed: missedMessages)
+			this.sendMessageToClient(missed);
+		// another device of the client may have logged in since the limit was checked.
+		if(!addOnlineClient(this, this.getPreviousConnection())) {
+			System.out.println("******************************************\n"
+					+ "System Notice - Warning: " + this.clientUsername + " is Logged In on too many devices."
+					+ "\n******************************************");
+			Metrics.increment("session.refused_logins");
+			this.closeConnection();
+			return;
+			}
+		this.restoreRecoveredOffers();
 
 		while(!this.connectionToClient.isClosed()) {
 
 			input = this.getMessageFromClient();
-
+			// the connection was lost without the client closing it.
+			if(input == null) {
+				this.closeConnection();
+				return;
+				}
+			// requests over the client's rate limit or shed because the server is overloaded are not dispatched.
+			if(!this.admitMessage(input)) {
+				this.returnCredit(input);
+				continue;
+				}
+			long dispatchStart = System.nanoTime();
+			long allocatedBefore = Server.PROFILE_ALLOCATIONS ? Metrics.currentThreadAllocatedBytes() : 0;
+			TrafficClass trafficClass = TrafficClass.of(input.getMessageID());
+			// share the registry's copy of the sender's user name rather than keeping the copy read from the stream.
+			if(input.getSourceName().equals(this.clientUsername))
+				input.setSourceName(this.clientUsername);
 
 			// based on the Message ID different actions have to be performed.
 			switch(input.getMessageID()) {
 
+				// the client has processed messages and grants credit to send more
+				case FLOW_CONTROL_CREDIT: {
+					this.flowController.grant((CreditPayload)input.getData());
+					break;
+					}
+
 				case ONLINE_CLIENTS_REQUEST: {
 					output = new Message(MessageID.ONLINE_CLIENTS_RESPONSE, Server.SERVER_NAME, input.getSourceName(),
 							getAllOnlineClientDetails(this.getClientUsername()));
@@ -555,27 +1768,50 @@ private class ClientInteractionHandler implements Runnable{
 					}
 				// When a Text Message is sent to the Server
 				case TEXT_TRANSFER_REQUEST: {
-					if(checkOnline(input.getDestinationName())) {
-						// formulates output message
-						output = new Message(MessageID.TEXT_TRANSFER_RECEIPT, input.getSourceName(),
-											input.getDestinationName(), input.getData());
-						// Gives the message to the correct Socket to send to the Destination Client
-						this.transferMessageToConnection(output, getOnlineClient(input.getDestinationName()));
+					List<ClientInteractionHandler> recipients = getOnlineSessions(input.getDestinationName());
+					if(!recipients.isEmpty()) {
+						// the request becomes the receipt by rewriting its ID code in place rather than copying it
+						input.setMessageID(MessageID.TEXT_TRANSFER_RECEIPT);
+						input.setDestinationName(recipients.get(0).getClientUsername());
+						// a recipient which does not acknowledge messages is taken to have received it once it is handed over.
+						if(input.getSequenceNumber() != 0 && !Server.acknowledgesMessages(recipients))
+							settleDelivery(input, true);
+						// Gives the message to the Socket of every device the Destination Client is logged in on
+						if(this.transferMessageToSessions(input, recipients))
+							this.indexText(input, Arrays.asList(input.getDestinationName()));
+						}
+					else {
+						// the recipient may be logged in to another node of the cluster.
+						String node = clusterNode != null ? clusterNode.locate(input.getDestinationName()) : null;
+						input.setMessageID(MessageID.TEXT_TRANSFER_RECEIPT);
+						if(node != null && clusterNode.forward(node, input))
+							this.indexText(input, Arrays.asList(input.getDestinationName()));
+						else if(input.getSequenceNumber() != 0)
+							settleDelivery(input, false);
 						}
 					break;
 					}
+				// the recipient of numbered text messages acknowledges them, which is passed on to their sender.
+				case MESSAGE_CONFIRMATION_RESPONSE: {
+					input.setMessageID(MessageID.MESSAGE_CONFIRMATION_RECEIPT);
+					// every device of the sender is told, and each applies only the acknowledgements of its own messages.
+					List<ClientInteractionHandler> senders = getOnlineSessions(input.getDestinationName());
+					if(!senders.isEmpty())
+						this.transferMessageToSessions(input, senders);
+					else
+						routeToClient(input);
+					break;
+					}
 				// When an Image Message is sent to the Server
 				case IMAGE_TRANSFER_REQUEST: {
-					if(checkOnline(input.getDestinationName())) {
-						//make message to ask client if they would like to receive the Image.
-						Message imageMessage = new Message(MessageID.IMAGE_TRANSFER_RECEIPT, input.getSourceName(),
-								input.getDestinationName(), input.getData());
-						this.storeMessageinConnectionOutStandingMessages(imageMessage, getOnlineClient(input.getDestinationName()));
-
-						output = new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST, input.getSourceName(),
-											input.getDestinationName(), (input.getSourceName() +
-													ClientInteractionHandler.IMAGE_CONFIRMATION_REQUEST_TEXT));
-						this.transferMessageToConnection(output, getOnlineClient(input.getDestinationName()));
+					ClientInteractionHandler receiver = getOnlineClient(input.getDestinationName());
+					// an image sent by reference which the server no longer holds is uploaded again by the client.
+					ImagePayload image = this.resolveImage(input);
+					if(receiver != null && image != null) {
+						// store the image and ask the client on each of its devices, with a preview, if they would like to receive it.
+						ArrayList<ClientInteractionHandler> receivingClients = new ArrayList<ClientInteractionHandler>();
+						receivingClients.add(receiver);
+						this.offerImageToConnections(input.getSourceName(), image, receivingClients);
 						}
 					break;
 					
@@ -583,16 +1819,19 @@ private class ClientInteractionHandler implements Runnable{
 
 					case AUDIO_TRANSFER_REQUEST:
 					{
-						if(checkOnline(input.getDestinationName()))
+						List<ClientInteractionHandler> receivers = getOnlineSessions(input.getDestinationName());
+						if(!receivers.isEmpty())
 						{
 							//This message will be sent to the receiving client to ask if they would like to receive the adio file
 							Message audioMessage = new Message(MessageID.AUDIO_TRANSFER_RECEIPT, input.getSourceName(),
 								input.getDestinationName(), input.getData());
-							this.storeMessageinConnectionOutStandingMessages(audioMessage, getOnlineClient(input.getDestinationName()));
-							PlayAudio play_sound = new PlayAudio(audioMessage.getData());
+							if(!this.storeMessageinConnectionOutStandingMessages(audioMessage, receivers.get(0)))
+								break;
+							// the stream is started from this device once one of the receiver's devices accepts it.
+							audioSenders.put(input.getSourceName() + "\n" + input.getDestinationName(), this);
 							output = new Message(MessageID.AUDIO_TRANSFER_CONFIRMATION_REQUEST, input.getSourceName(),
-								input.getDestinationName(), (input.getSourceName() + ClientInteractionHandler.IMAGE_CONFIRMATION_REQUEST_TEXT));
-							this.transferMessageToConnection(output, getOnlineClient(input.getDestinationName()));
+								input.getDestinationName(), new TextPayload(input.getSourceName() + ClientInteractionHandler.AUDIO_CONFIRMATION_REQUEST_TEXT));
+							this.transferMessageToSessions(output, receivers);
 
 							//system.out.println("luvo");
 						}
@@ -600,56 +1839,189 @@ private class ClientInteractionHandler implements Runnable{
 					}
 
 				case IMAGE_TRANSFER_CONFIRMATION_RESPONSE: {
-					if((boolean)input.getData()) {
-
-						output = this.getMessageFromOutstandingMessages(input.getDestinationName(), input.getSourceName());
+					// the offer may have been stored with another device of the client, which is told it was answered.
+					output = this.takeOffer(MessageID.IMAGE_TRANSFER_RECEIPT, input.getDestinationName(),
+							MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST);
+					if(output == null)
+						break;
+					if((boolean)input.getData())
 						this.sendMessageToClient(output);
-						}
-					else {
-						this.deleteMessageFromOutstandingMessages(input.getDestinationName(), input.getSourceName());
-					}
+					// the offer was declined so nothing will deliver its payload.
+					else
+						OutboundQueue.release(output);
 					break;
 					}
 
-					case AUDIO_TRANSFER_CONFIRMATION_REQUEST:
+					case AUDIO_TRANSFER_CONFIRMATION_RESPONSE:
 					{
-						System.out.println("luvo");
+						output = this.takeOffer(MessageID.AUDIO_TRANSFER_RECEIPT, input.getDestinationName(),
+								MessageID.AUDIO_TRANSFER_CONFIRMATION_REQUEST);
+						if(output == null)
+							break;
+						String stream = input.getDestinationName() + "\n" + this.clientUsername;
+						ClientInteractionHandler sender = audioSenders.remove(stream);
 						if((boolean)input.getData())
 						{
-							System.out.println("luvo");
-							output = this.getMessageFromOutstandingMessages(input.getDestinationName(), input.getSourceName());
+							// send the stream description to this device and tell the device which offered it to start streaming
 							this.sendMessageToClient(output);
-							// /Users/admin1/Documents/Chat-Application/CSC3002F_Assignment1/audio/carlin_boring.wav
+							if(sender == null)
+								sender = getOnlineClient(input.getDestinationName());
+							if(sender != null) {
+								audioReceivers.put(stream, this);
+								this.transferMessageToConnection(new Message(MessageID.AUDIO_STREAM_START, this.getClientUsername(),
+										input.getDestinationName(), output.getData()), sender);
+								}
 						}else
 						{
-							this.deleteMessageFromOutstandingMessages(input.getDestinationName(), input.getSourceName());
+							OutboundQueue.release(output);
 						}
 						break;
 					}
 
+				// a chunk of an accepted audio stream is forwarded untouched, the server never decodes or plays it
+				case AUDIO_STREAM_CHUNK: {
+					ClientInteractionHandler recipient = getAudioRecipient(input.getSourceName(), input.getDestinationName());
+					if(recipient != null)
+						this.transferMessageToConnection(input, recipient);
+					break;
+					}
+
+				// a typing indicator or read receipt is coalesced with the others of its conversation before it is relayed
+				case SIGNAL: {
+					if(input.getData() instanceof SignalPayload)
+						signals.submit(input);
+					break;
+					}
+				// a text to several clients is checked against the index of online clients and sent to each of them
+				case TEXT_MULTICAST_REQUEST: {
+					MulticastReportPayload report = this.multicast(input);
+					ArrayList<String> reached = new ArrayList<String>();
+					for(Map.Entry<String, MulticastReportPayload.Status> entry: report.getStatuses().entrySet())
+						if(entry.getValue() == MulticastReportPayload.Status.DELIVERED || entry.getValue() == MulticastReportPayload.Status.FORWARDED)
+							reached.add(entry.getKey());
+					if(!reached.isEmpty())
+						this.indexText(input, reached);
+					this.sendMessageToClient(new Message(MessageID.MULTICAST_RESPONSE, Server.SERVER_NAME, this.clientUsername, report));
+					break;
+					}
+				// the client asks whether the server holds an image before uploading it
+				case CONTENT_QUERY_REQUEST: {
+					if(input.getData() instanceof ContentReferencePayload) {
+						ContentReferencePayload reference = (ContentReferencePayload)input.getData();
+						Metrics.increment("content.queries");
+						this.sendContentQueryResponse(input, reference, contentStore.contains(reference));
+						}
+					break;
+					}
+				// the client's history is searched for texts it sent or was sent
+				case SEARCH_REQUEST: {
+					// a query which is not text finds nothing, but the client is still answered.
+					if(!(input.getData() instanceof TextPayload)) {
+						this.sendMessageToClient(new Message(MessageID.SEARCH_RESPONSE, Server.SERVER_NAME, this.clientUsername,
+								new SearchResultPayload("", new ArrayList<SearchResultPayload.Hit>())));
+						break;
+						}
+					String query = ((TextPayload)input.getData()).getText();
+					this.sendMessageToClient(new Message(MessageID.SEARCH_RESPONSE, Server.SERVER_NAME, this.clientUsername,
+							new SearchResultPayload(query, searchIndex.search(this.clientUsername, query))));
+					break;
+					}
 				case TEXT_SEND_TO_ALL_REQUEST: {
-					for(ClientInteractionHandler client: currentConnections) {
-						if(!client.getClientUsername().equals(input.getSourceName())) {
-							output = new Message(MessageID.TEXT_SEND_TO_ALL_RECEIPT, input.getSourceName(),
-												client.getClientUsername(), input.getData());
-							this.transferMessageToConnection(output, client);
+					// every device of every other client is sent the text, but not the sender's own devices.
+					for(ServerShard<ClientInteractionHandler> shard: shards)
+						for(ClientInteractionHandler client: shard.getOnlineConnections()) {
+							if(!client.getClientUsername().equals(this.clientUsername)) {
+								output = new Message(MessageID.TEXT_SEND_TO_ALL_RECEIPT, input.getSourceName(),
+													client.getClientUsername(), input.getData());
+								this.transferMessageToConnection(output, client);
+								}
 							}
+					if(clusterNode != null)
+						clusterNode.broadcast(MessageID.TEXT_SEND_TO_ALL_RECEIPT, input.getSourceName(), input.getData());
+					// a text sent to all may be found by every client.
+					this.indexText(input, null);
+					break;
+					}
+				// the rooms are addressed by name, and the client is told whether the request succeeded.
+				case ROOM_CREATE_REQUEST: {
+					this.sendRoomResponse(input.getDestinationName(), rooms.create(input.getDestinationName(), this.clientUsername,
+							getOnlineSessions(this.clientUsername)));
+					break;
+					}
+				case ROOM_JOIN_REQUEST: {
+					RoomDirectory.Outcome outcome = rooms.join(input.getDestinationName(), this.clientUsername,
+							getOnlineSessions(this.clientUsername));
+					this.sendRoomResponse(input.getDestinationName(), outcome);
+					// a new member is sent the room's latest posts.
+					if(outcome == RoomDirectory.Outcome.JOINED)
+						for(Message post: rooms.get(input.getDestinationName()).getHistory())
+							this.sendMessageToClient(post);
+					break;
+					}
+				case ROOM_LEAVE_REQUEST: {
+					this.sendRoomResponse(input.getDestinationName(), rooms.leave(input.getDestinationName(), this.clientUsername,
+							getOnlineSessions(this.clientUsername)));
+					break;
+					}
+				case ROOM_POST_REQUEST: {
+					if(!(input.getData() instanceof TextPayload))
+						break;
+					RoomDirectory<ClientInteractionHandler>.Room room = rooms.get(input.getDestinationName());
+					if(room == null || !room.isMember(this.clientUsername)) {
+						this.sendRoomResponse(input.getDestinationName(), room == null ? RoomDirectory.Outcome.NO_SUCH_ROOM
+								: RoomDirectory.Outcome.NOT_A_MEMBER);
+						break;
 						}
+					// the post is one Message addressed to the room which every online member is sent.
+					Message post = room.append(this.clientUsername, input.getData().toString());
+					int recipients = 0;
+					for(ClientInteractionHandler member: room.getOnlineMembers())
+						if(member != this) {
+							this.transferMessageToConnection(post, member);
+							recipients++;
+							}
+					Metrics.increment("room.posts");
+					Metrics.add("room.fanout_messages", recipients);
+					break;
+					}
+				// the topics are addressed by name, and the client is told whether a subscription succeeded.
+				case TOPIC_SUBSCRIBE_REQUEST: {
+					String pattern = input.getDestinationName();
+					if(!TopicTrie.isValid(pattern, true))
+						this.sendTopicResponse(pattern + ClientInteractionHandler.INVALID_TOPIC_TEXT);
+					else if(!topics.subscribe(pattern, this))
+						this.sendTopicResponse(ClientInteractionHandler.TOO_MANY_SUBSCRIPTIONS_TEXT + pattern + ".");
+					else
+						this.sendTopicResponse(ClientInteractionHandler.SUBSCRIBED_TEXT + pattern + ".");
+					break;
+					}
+				case TOPIC_UNSUBSCRIBE_REQUEST: {
+					if(topics.unsubscribe(input.getDestinationName(), this))
+						this.sendTopicResponse(ClientInteractionHandler.UNSUBSCRIBED_TEXT + input.getDestinationName() + ".");
+					else
+						this.sendTopicResponse(ClientInteractionHandler.NOT_SUBSCRIBED_TEXT + input.getDestinationName() + ".");
+					break;
+					}
+				case TOPIC_PUBLISH_REQUEST: {
+					String topic = input.getDestinationName();
+					if(!TopicTrie.isValid(topic, false) || isReservedTopic(topic))
+						this.sendTopicResponse(topic + ClientInteractionHandler.INVALID_TOPIC_TEXT);
+					else
+						publish(topic, this.clientUsername, input.getData());
 					break;
 					}
 				case IMAGE_SEND_TO_ALL_REQUEST: {
-					for(ClientInteractionHandler client: currentConnections) {
-						if(!client.getClientUsername().equals(input.getSourceName())) {
-							Message imageMessage = new Message(MessageID.IMAGE_TRANSFER_RECEIPT, input.getSourceName(),
-									client.getClientUsername(), input.getData());
-							this.storeMessageinConnectionOutStandingMessages(imageMessage, client);
-
-							output = new Message(MessageID.IMAGE_TRANSFER_CONFIRMATION_REQUEST, input.getSourceName(),
-													client.getClientUsername(), (input.getSourceName() +
-													ClientInteractionHandler.IMAGE_CONFIRMATION_REQUEST_TEXT));
-							this.transferMessageToConnection(output, client);
-							}
-						}
+					ImagePayload image = this.resolveImage(input);
+					if(image == null)
+						break;
+					// the image is stored with one device of every other client and offered on all of them.
+					ArrayList<ClientInteractionHandler> receivingClients = new ArrayList<ClientInteractionHandler>();
+					for(ServerShard<ClientInteractionHandler> shard: shards)
+						for(Map.Entry<String, List<ClientInteractionHandler>> client: shard.getOnlineClients().entrySet())
+							if(!client.getKey().equals(this.clientUsername))
+								receivingClients.add(client.getValue().get(0));
+					// the preview is generated once and sent to every other client.
+					this.offerImageToConnections(input.getSourceName(), image, receivingClients);
 					break;
 					}
 				case CLOSE_CONNECTION : {
@@ -660,6 +2032,8 @@ private class ClientInteractionHandler implements Runnable{
 					System.out.println("******************************************\n"
 										+ "System Notice - " + this.clientUsername + " closed the connection"
 									+ "\n******************************************");
+					this.closedByClient = true;
+					this.closeConnection();
 					return;
 					}
 				// Other Message Code i.e. the Message is not Meant for the Server
@@ -670,10 +2044,46 @@ private class ClientInteractionHandler implements Runnable{
 					break;
 					}
 				}
+			if(trafficClass != null)
+				admissionController.recordDispatch(System.nanoTime() - dispatchStart);
+			// return flow control credit now that the message has been processed
+			this.returnCredit(input);
+			if(Server.PROFILE_ALLOCATIONS) {
+				Metrics.add("dispatch.allocated_bytes", Metrics.currentThreadAllocatedBytes() - allocatedBefore);
+				Metrics.increment("dispatch.profiled_messages");
+				}
 			}
 
 		}
 
+	/***
+	 * A method used to remove this connection from the Server once it has closed and to stop its OutboundQueue.
+	 * The OutboundQueue still writes any messages already queued, such as the CLOSE_CONNECTION reply, before the
+	 * Connection is closed.
+	 * The offers waiting for the Client are handed to another device it is still logged in on. Otherwise if the
+	 * connection dropped they are kept with its session for it to resume, while a Client which logged out ends its session.
+	 */
+	private void closeConnection() {
+		removeConnection(this);
+		if(this.outbox != null)
+			this.outbox.close();
+		// a connection which a resumed one replaced leaves the session to it.
+		boolean attached = this.session != null && this.session.detach(this.outboundQueue);
+		List<ClientInteractionHandler> otherDevices = getOnlineSessions(this.clientUsername);
+		if(!otherDevices.isEmpty())
+			otherDevices.get(0).adoptOutstandingMessages(this.handOverOutstandingMessages());
+		else if(attached && !this.closedByClient)
+			this.session.parkOffers(this.handOverOutstandingMessages());
+		else
+			this.releaseOutstandingMessages();
+		if(attached && this.closedByClient)
+			sessions.end(this.session);
+		this.outboundQueue.close();
+		this.flowController.close();
+		this.outboundQueue.awaitTermination(Server.SHUTDOWN_DRAIN_MILLIS);
+		this.closeSocket();
+		}
+
 
 
 
@@ -0,0 +1,410 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * One of the partitions of the Server. Every user name is hashed to one shard, which owns the index of that slice of
+ * the online Clients and a Thread which delivers the Messages its Clients send to Clients of other shards.
+ * Messages between two Clients of the same shard are queued for the recipient straight away. A Message for a Client
+ * of another shard is put in the sender's Outbox, moved by the sender's shard onto the ring leading to the
+ * recipient's shard and queued for the recipient by that shard's Thread, so every queue between Threads has exactly
+ * one producer and one consumer and no lock is shared between shards.
+ * A shard never blocks on a slow recipient. Messages for a recipient whose OutboundQueue is full are held back in
+ * order and retried, and once too many are held back the shard stops taking more, which leaves them in the rings and
+ * the Outboxes so the senders block instead.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SpscRing
+ * @see OutboundQueue
+ * @param <C> The type of the connections of the Clients in the index.
+ */
+public class ServerShard<C> implements Runnable {
+
+	// static variables
+	private final static int OUTBOX_CAPACITY = 256;
+	private final static int MAILBOX_CAPACITY = 4096;
+	private final static int MAX_HELD_BACK = 4096;
+	// how long a sender waits for room in its Outbox before the Message is dropped, matching the OutboundQueue.
+	private final static long OUTBOX_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+	private final static long OUTBOX_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private final static long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private final static long RETRY_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+	// an idle shard polls a little before parking so a steady stream of Messages does not pay for a wake up each,
+	// which only helps when the Threads feeding it run on other cores.
+	private final static int SPINS_BEFORE_PARK = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+	// instance variables
+	private final int index;
+	// the connections of each online Client, oldest first. A Client logged in on several devices has one per device,
+	// and each list is replaced rather than changed so it can be read without locking.
+	private final ConcurrentHashMap<String, List<C>> onlineClients;
+	// the ring from every shard to this one, indexed by the index of the sending shard.
+	private SpscRing<Delivery>[] mailboxes;
+	private ServerShard<?>[] shards;
+	// Outboxes opened since the shard's Thread last looked, and the Outboxes it drains, which only it uses.
+	private final ConcurrentLinkedQueue<Outbox> openedOutboxes;
+	private final ArrayList<Outbox> outboxes;
+	private final ArrayDeque<Delivery> heldBack;
+	// the recipients with a Message held back during the current pass, whose later Messages must wait behind it.
+	private final IdentityHashMap<OutboundQueue, Boolean> blocked;
+	private volatile boolean sleeping;
+	private Thread shardThread;
+
+	/***
+	 * The Constructor of the ServerShard Class.
+	 * @param index The index of the shard.
+	 */
+	public ServerShard(int index) {
+		this.index = index;
+		this.onlineClients = new ConcurrentHashMap<String, List<C>>();
+		this.openedOutboxes = new ConcurrentLinkedQueue<Outbox>();
+		this.outboxes = new ArrayList<Outbox>();
+		this.heldBack = new ArrayDeque<Delivery>();
+		this.blocked = new IdentityHashMap<OutboundQueue, Boolean>();
+		this.sleeping = false;
+		}
+
+	/***
+	 * A method used to create the shards of a Server and start their Threads.
+	 * @param <C> The type of the connections of the Clients.
+	 * @param shardCount The number of shards.
+	 * @return The started shards.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <C> ServerShard<C>[] startShards(int shardCount) {
+		ServerShard<C>[] shards = (ServerShard<C>[])new ServerShard<?>[Math.max(1, shardCount)];
+		for(int i = 0; i < shards.length; i++)
+			shards[i] = new ServerShard<C>(i);
+		for(ServerShard<C> shard: shards) {
+			shard.shards = shards;
+			shard.mailboxes = (SpscRing<Delivery>[])new SpscRing<?>[shards.length];
+			for(int i = 0; i < shards.length; i++)
+				shard.mailboxes[i] = new SpscRing<Delivery>(ServerShard.MAILBOX_CAPACITY);
+			}
+		for(ServerShard<C> shard: shards) {
+			shard.shardThread = new Thread(shard, "Server Shard " + shard.index);
+			shard.shardThread.setDaemon(true);
+			shard.shardThread.start();
+			}
+		return shards;
+		}
+
+	/***
+	 * A method used to find the index of the shard which owns a user name.
+	 * @param username The user name of a Client.
+	 * @param shardCount The number of shards.
+	 * @return The index of the shard.
+	 */
+	public static int shardOf(String username, int shardCount) {
+		return Math.floorMod(username.hashCode(), shardCount);
+		}
+
+	/***
+	 * A method used to retrieve the index of the shard.
+	 * @return The index of the shard.
+	 */
+	public int getIndex() {
+		return this.index;
+		}
+
+	/***
+	 * A method used to retrieve the index of this shard's online Clients by user name.
+	 * @return The index of this shard's online Clients, mapping each user name to the connections of its sessions.
+	 */
+	public ConcurrentHashMap<String, List<C>> getOnlineClients() {
+		return this.onlineClients;
+		}
+
+	/***
+	 * A method used to retrieve the connections of the sessions of an online Client.
+	 * @param username The user name of the Client.
+	 * @return The connections of the Client, oldest first, which is empty if the Client is offline.
+	 */
+	public List<C> getSessions(String username) {
+		List<C> sessions = this.onlineClients.get(username);
+		return sessions != null ? sessions : Collections.<C>emptyList();
+		}
+
+	/***
+	 * A method used to add the connection of a Client which logged in to the index, unless the Client already has
+	 * as many sessions as it may. A connection which the new one replaces, because the same device resumed its session
+	 * on it, is removed at the same time so that it does not count against the limit.
+	 * @param username The user name of the Client.
+	 * @param connection The new connection.
+	 * @param replaced The connection it replaces, or null if there is none.
+	 * @param maxSessions The most sessions the Client may have at once.
+	 * @return The number of sessions the Client now has, or 0 if the connection was refused.
+	 */
+	public int addSession(String username, C connection, C replaced, int maxSessions) {
+		int[] count = new int[1];
+		this.onlineClients.compute(username, (key, sessions) -> {
+			ArrayList<C> updated = new ArrayList<C>(sessions != null ? sessions.size() + 1 : 1);
+			if(sessions != null)
+				for(C session: sessions)
+					if(session != replaced)
+						updated.add(session);
+			if(updated.size() >= maxSessions)
+				return sessions;
+			updated.add(connection);
+			count[0] = updated.size();
+			return Collections.unmodifiableList(updated);
+			});
+		return count[0];
+		}
+
+	/***
+	 * A method used to remove the connection of a Client which closed from the index.
+	 * @param username The user name of the Client.
+	 * @param connection The closed connection.
+	 * @return A boolean which is true if it was the Client's last session, so the Client is now offline.
+	 */
+	public boolean removeSession(String username, C connection) {
+		boolean[] last = new boolean[1];
+		this.onlineClients.computeIfPresent(username, (key, sessions) -> {
+			if(!sessions.contains(connection))
+				return sessions;
+			if(sessions.size() == 1) {
+				last[0] = true;
+				return null;
+				}
+			ArrayList<C> updated = new ArrayList<C>(sessions);
+			updated.remove(connection);
+			return Collections.unmodifiableList(updated);
+			});
+		return last[0];
+		}
+
+	/***
+	 * A method used to retrieve the connections of this shard's online Clients.
+	 * @return The connections of every session of this shard's online Clients.
+	 */
+	public Collection<C> getOnlineConnections() {
+		ArrayList<C> connections = new ArrayList<C>(this.onlineClients.size());
+		for(List<C> sessions: this.onlineClients.values())
+			connections.addAll(sessions);
+		return connections;
+		}
+
+	/***
+	 * A method used to open the Outbox through which a Client of this shard sends Messages to Clients of other shards.
+	 * @return The Outbox, which only the Thread of the Client's connection may send through.
+	 */
+	public Outbox openOutbox() {
+		Outbox outbox = new Outbox();
+		this.openedOutboxes.add(outbox);
+		return outbox;
+		}
+
+	/***
+	 * A method used to check whether a ring or Outbox has anything for the shard's Thread to do.
+	 * @return A boolean which is true if some ring or Outbox is not empty.
+	 */
+	private boolean hasWork() {
+		if(!this.openedOutboxes.isEmpty())
+			return true;
+		for(Outbox outbox: this.outboxes)
+			if(!outbox.ring.isEmpty())
+				return true;
+		for(SpscRing<Delivery> mailbox: this.mailboxes)
+			if(!mailbox.isEmpty())
+				return true;
+		return false;
+		}
+
+	/***
+	 * A method used to wake the shard's Thread if it is waiting for work.
+	 */
+	private void wake() {
+		if(this.sleeping)
+			LockSupport.unpark(this.shardThread);
+		}
+
+	/***
+	 * A method used to move the Messages waiting in the Outboxes of this shard's Clients onto the rings leading to
+	 * the shards of their recipients. An Outbox whose ring is full stops at its oldest Message so its order is kept.
+	 * @return A boolean which is true if any Message was moved.
+	 */
+	private boolean drainOutboxes() {
+		Outbox opened;
+		while((opened = this.openedOutboxes.poll()) != null)
+			this.outboxes.add(opened);
+		boolean moved = false;
+		Iterator<Outbox> iterator = this.outboxes.iterator();
+		while(iterator.hasNext()) {
+			Outbox outbox = iterator.next();
+			Delivery delivery;
+			while((delivery = outbox.ring.peek()) != null) {
+				ServerShard<?> target = this.shards[delivery.shardIndex];
+				if(!target.mailboxes[this.index].offer(delivery))
+					break;
+				outbox.ring.poll();
+				target.wake();
+				moved = true;
+				}
+			if(outbox.closed && outbox.ring.isEmpty())
+				iterator.remove();
+			}
+		return moved;
+		}
+
+	/***
+	 * A method used to queue the Messages sent to this shard's Clients for them, first retrying the Messages held back.
+	 * @return A boolean which is true if any Message was queued or dropped.
+	 */
+	private boolean drainMailboxes() {
+		boolean delivered = false;
+		if(!this.blocked.isEmpty())
+			this.blocked.clear();
+		int heldBackCount = this.heldBack.size();
+		for(int i = 0; i < heldBackCount; i++) {
+			Delivery delivery = this.heldBack.pollFirst();
+			if(this.blocked.containsKey(delivery.recipient) || !this.deliver(delivery)) {
+				this.blocked.put(delivery.recipient, Boolean.TRUE);
+				this.heldBack.addLast(delivery);
+				}
+			else
+				delivered = true;
+			}
+		for(SpscRing<Delivery> mailbox: this.mailboxes) {
+			Delivery delivery;
+			while(this.heldBack.size() < ServerShard.MAX_HELD_BACK && (delivery = mailbox.poll()) != null) {
+				if(this.blocked.containsKey(delivery.recipient) || !this.deliver(delivery)) {
+					this.blocked.put(delivery.recipient, Boolean.TRUE);
+					this.heldBack.addLast(delivery);
+					}
+				else
+					delivered = true;
+				}
+			}
+		return delivered;
+		}
+
+	/***
+	 * A method used to queue a Message for its recipient without waiting.
+	 * @param delivery The Message and its recipient.
+	 * @return A boolean which is false if the recipient's OutboundQueue is full and the Message must be retried.
+	 */
+	private boolean deliver(Delivery delivery) {
+		if(delivery.recipient.tryOffer(delivery.message))
+			return true;
+		if(!delivery.recipient.isClosed())
+			return false;
+		// the recipient has gone so the Message is dropped.
+		OutboundQueue.release(delivery.message);
+		Metrics.increment("flow.dropped_messages");
+		return true;
+		}
+
+	/***
+	 * The method which is called when the shard is parsed into a Thread and start is called.
+	 * Moves Messages from the Outboxes to the rings and from the rings to the recipients until the Server exits.
+	 */
+	@Override
+	public void run() {
+		int idleSpins = 0;
+		while(true) {
+			boolean progressed = this.drainOutboxes();
+			progressed |= this.drainMailboxes();
+			if(progressed) {
+				idleSpins = 0;
+				continue;
+				}
+			if(idleSpins++ < ServerShard.SPINS_BEFORE_PARK) {
+				Thread.onSpinWait();
+				continue;
+				}
+			idleSpins = 0;
+			this.sleeping = true;
+			if(!this.hasWork())
+				LockSupport.parkNanos(this.heldBack.isEmpty() ? ServerShard.IDLE_PARK_NANOS : ServerShard.RETRY_PARK_NANOS);
+			this.sleeping = false;
+			}
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A Message on its way to a Client of another shard.
+	 */
+	private final static class Delivery {
+
+		private final Message message;
+		private final OutboundQueue recipient;
+		private final int shardIndex;
+
+		/***
+		 * The Constructor of the Delivery Class.
+		 * @param message The Message to deliver.
+		 * @param recipient The OutboundQueue of the recipient.
+		 * @param shardIndex The index of the recipient's shard.
+		 */
+		private Delivery(Message message, OutboundQueue recipient, int shardIndex) {
+			this.message = message;
+			this.recipient = recipient;
+			this.shardIndex = shardIndex;
+			}
+		}
+
+	/***
+	 * The queue through which the Thread of one Client's connection sends Messages to Clients of other shards.
+	 */
+	public final class Outbox {
+
+		private final SpscRing<Delivery> ring;
+		private volatile boolean closed;
+
+		/***
+		 * The Constructor of the Outbox Class.
+		 */
+		private Outbox() {
+			this.ring = new SpscRing<Delivery>(ServerShard.OUTBOX_CAPACITY);
+			this.closed = false;
+			}
+
+		/***
+		 * A method used to send a Message to a Client, waiting while the Outbox is full.
+		 * @param message The Message to send.
+		 * @param recipient The OutboundQueue of the recipient.
+		 * @param recipientShard The shard of the recipient.
+		 * @return A boolean which is false if the Outbox stayed full for too long and the Message was dropped.
+		 */
+		public boolean send(Message message, OutboundQueue recipient, ServerShard<?> recipientShard) {
+			// a Message to a Client of the same shard does not need to pass through the shard's Thread.
+			if(recipientShard == ServerShard.this)
+				return recipient.enqueue(message);
+			Delivery delivery = new Delivery(message, recipient, recipientShard.getIndex());
+			if(this.ring.offer(delivery)) {
+				ServerShard.this.wake();
+				return true;
+				}
+			Metrics.increment("shard.outbox_full");
+			long deadline = System.nanoTime() + ServerShard.OUTBOX_TIMEOUT_NANOS;
+			while(!this.ring.offer(delivery)) {
+				ServerShard.this.wake();
+				if(System.nanoTime() - deadline > 0) {
+					OutboundQueue.release(message);
+					Metrics.increment("flow.enqueue_timeouts");
+					return false;
+					}
+				LockSupport.parkNanos(ServerShard.OUTBOX_WAIT_NANOS);
+				}
+			ServerShard.this.wake();
+			return true;
+			}
+
+		/***
+		 * A method used to close the Outbox once its connection has closed. The Messages already in it are still delivered.
+		 */
+		public void close() {
+			this.closed = true;
+			}
+		}
+	}
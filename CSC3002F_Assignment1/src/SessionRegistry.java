@@ -0,0 +1,333 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/***
+ * The sessions of the Clients logged in to a Server, and the session tokens which let a Client whose connection
+ * dropped resume without its password being checked again.
+ * A Client may be logged in on several devices at once, each with its own session, so a token also names the device
+ * its session belongs to. A token is the time it expires at and the device signed together with the Client's user
+ * name, so checking one needs no lookup
+ * and tokens stay valid across a restart of the Server and on a standby which took over, since the key they are
+ * signed with is kept in a file and replicated. Only the replay buffer is lost when the Server restarts.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ClientSession
+ */
+public class SessionRegistry {
+
+	// static variables
+	private final static String MAC_ALGORITHM = "HmacSHA256";
+	private final static int KEY_BYTES = 32;
+	private final static int DEVICE_ID_BYTES = 9;
+	/*** The most sessions a Client may have connected at once, one for each of its devices. */
+	public final static int MAX_SESSIONS_PER_USER = 4;
+	// sessions kept for a Client including disconnected ones, beyond which the longest disconnected one is discarded.
+	private final static int MAX_KEPT_SESSIONS_PER_USER = 2 * SessionRegistry.MAX_SESSIONS_PER_USER;
+	private final static long TOKEN_LIFETIME_MILLIS = 24L * 60 * 60 * 1000;
+	// how long the session of a disconnected Client is kept for it to resume.
+	private final static long SESSION_IDLE_MILLIS = 5L * 60 * 1000;
+	private final static long SWEEP_INTERVAL_MILLIS = 30L * 1000;
+
+	// instance variables
+	private final String keyFile;
+	private volatile SecretKeySpec key;
+	// the sessions of each Client by the device they belong to.
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, ClientSession>> sessions;
+	private final SecureRandom random;
+	// called with each session which is discarded, so that the Messages it holds are released.
+	private final Consumer<ClientSession> expiryHandler;
+	private volatile long lastSweepMillis;
+
+	/***
+	 * The Constructor of the SessionRegistry Class. Loads the signing key from its file, or creates and saves one.
+	 * @param keyFile The file holding the signing key.
+	 * @param expiryHandler Called with each session which is discarded.
+	 */
+	public SessionRegistry(String keyFile, Consumer<ClientSession> expiryHandler) {
+		this.keyFile = keyFile;
+		this.sessions = new ConcurrentHashMap<String, ConcurrentHashMap<String, ClientSession>>();
+		this.random = new SecureRandom();
+		this.expiryHandler = expiryHandler;
+		this.lastSweepMillis = System.currentTimeMillis();
+		byte[] keyBytes = this.loadKey();
+		if(keyBytes == null) {
+			keyBytes = new byte[SessionRegistry.KEY_BYTES];
+			this.random.nextBytes(keyBytes);
+			this.saveKey(keyBytes);
+			}
+		this.key = new SecretKeySpec(keyBytes, SessionRegistry.MAC_ALGORITHM);
+		Metrics.registerGauge("session.count", () -> {
+			long count = 0;
+			for(ConcurrentHashMap<String, ClientSession> devices: this.sessions.values())
+				count += devices.size();
+			return count;
+			});
+		}
+
+	/***
+	 * A method used to load the signing key from its file.
+	 * A key which other users can read or change could have been used to forge tokens, so it is not loaded and a new
+	 * one replaces it.
+	 * Catches a FileNotFoundException if the file does not exist yet.
+	 * @return The key, or null if there is none.
+	 */
+	private byte[] loadKey() {
+		if(!SessionRegistry.isPrivate(new File(this.keyFile))) {
+			System.out.println("******************************************\n"
+					+ "System Notice - Ignored the session key in " + this.keyFile + " since other users can access it."
+					+ "\n******************************************");
+			return null;
+			}
+		try (Scanner infile = new Scanner(new FileReader(this.keyFile))) {
+			if(infile.hasNextLine())
+				return Base64.getDecoder().decode(infile.nextLine().trim());
+			}
+		catch (FileNotFoundException | IllegalArgumentException e) {
+			System.out.println(e);
+			}
+		return null;
+		}
+
+	/***
+	 * A method used to save the signing key to its file. The key is written to a new file which only the user may
+	 * read, and then moved over the old one.
+	 * Catches an IOException if unsuccessful, in which case tokens do not survive a restart.
+	 * @param keyBytes The key.
+	 * @see MessageStore#restrictToOwner(File)
+	 */
+	private void saveKey(byte[] keyBytes) {
+		File written = new File(this.keyFile + ".tmp");
+		try {
+			written.delete();
+			written.createNewFile();
+			MessageStore.restrictToOwner(written);
+			try (FileWriter outfile = new FileWriter(written)) {
+				outfile.write(Base64.getEncoder().encodeToString(keyBytes));
+				}
+			Files.move(written.toPath(), new File(this.keyFile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+		catch (IOException e) {
+			System.out.println(e);
+			}
+		}
+
+	/***
+	 * A method used to check that no user but the owner can read or change a file.
+	 * A file which does not exist, or whose permissions the file system does not describe, is taken to be private.
+	 * @param file The file.
+	 * @return A boolean which is false if another user can read or write the file.
+	 */
+	private static boolean isPrivate(File file) {
+		if(!file.exists())
+			return true;
+		try {
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+			return !permissions.contains(PosixFilePermission.GROUP_READ) && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+					&& !permissions.contains(PosixFilePermission.OTHERS_READ) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+			}
+		catch (UnsupportedOperationException | IOException e) {
+			return true;
+			}
+		}
+
+	/***
+	 * A method used to retrieve the signing key so that it can be replicated.
+	 * @return The bytes of the key.
+	 */
+	public byte[] getKey() {
+		return this.key.getEncoded();
+		}
+
+	/***
+	 * A method used by a standby to adopt the signing key of its primary so it accepts the primary's tokens.
+	 * @param keyBytes The bytes of the primary's key.
+	 */
+	public void setKey(byte[] keyBytes) {
+		this.key = new SecretKeySpec(keyBytes, SessionRegistry.MAC_ALGORITHM);
+		this.saveKey(keyBytes);
+		}
+
+	/***
+	 * A method used to sign a user name, expiry time and device.
+	 * @param username The user name of the Client.
+	 * @param expiresAtMillis When the token expires.
+	 * @param deviceID The device the session belongs to.
+	 * @return The signature encoded as text.
+	 */
+	private String sign(String username, long expiresAtMillis, String deviceID) {
+		try {
+			Mac mac = Mac.getInstance(SessionRegistry.MAC_ALGORITHM);
+			mac.init(this.key);
+			mac.update(username.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte)'\n');
+			mac.update(Long.toString(expiresAtMillis).getBytes(StandardCharsets.UTF_8));
+			mac.update((byte)'\n');
+			mac.update(deviceID.getBytes(StandardCharsets.UTF_8));
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal());
+			}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+			}
+		}
+
+	/***
+	 * A method used to issue a new session token to a Client for the session of one of its devices.
+	 * @param session The session.
+	 * @return The token.
+	 */
+	public String issueToken(ClientSession session) {
+		long expiresAtMillis = System.currentTimeMillis() + SessionRegistry.TOKEN_LIFETIME_MILLIS;
+		return expiresAtMillis + "." + session.getDeviceID() + "." + this.sign(session.getUsername(), expiresAtMillis, session.getDeviceID());
+		}
+
+	/***
+	 * A method used to check a session token presented by a resuming Client and find the device it was issued to.
+	 * Tokens issued before sessions belonged to devices name none and are no longer valid.
+	 * @param username The user name the Client gave.
+	 * @param token The token, which may be null.
+	 * @return The device the token was issued to, or null if it was not issued to the Client or has expired.
+	 */
+	public String getDeviceID(String username, String token) {
+		if(token == null)
+			return null;
+		String[] parts = token.split("\\.", -1);
+		if(parts.length != 3 || parts[1].isEmpty())
+			return null;
+		long expiresAtMillis;
+		try {
+			expiresAtMillis = Long.parseLong(parts[0]);
+			}
+		catch (NumberFormatException e) {
+			return null;
+			}
+		if(expiresAtMillis < System.currentTimeMillis())
+			return null;
+		// compared in constant time so the signature cannot be guessed byte by byte.
+		if(!MessageDigest.isEqual(this.sign(username, expiresAtMillis, parts[1]).getBytes(StandardCharsets.UTF_8),
+				parts[2].getBytes(StandardCharsets.UTF_8)))
+			return null;
+		return parts[1];
+		}
+
+	/***
+	 * A method used to check a session token presented by a resuming Client.
+	 * @param username The user name the Client gave.
+	 * @param token The token, which may be null.
+	 * @return A boolean which is true if the token was issued to the Client and has not expired.
+	 */
+	public boolean isValidToken(String username, String token) {
+		return this.getDeviceID(username, token) != null;
+		}
+
+	/***
+	 * A method used to start a session for a new device of a Client which logged in with its password. The sessions
+	 * of its other devices are kept, but once the Client has too many the one disconnected longest is discarded.
+	 * @param username The user name of the Client.
+	 * @return The new session.
+	 */
+	public ClientSession open(String username) {
+		this.sweep();
+		byte[] deviceBytes = new byte[SessionRegistry.DEVICE_ID_BYTES];
+		this.random.nextBytes(deviceBytes);
+		ClientSession session = new ClientSession(username, Base64.getUrlEncoder().withoutPadding().encodeToString(deviceBytes), 0);
+		ClientSession[] evicted = new ClientSession[1];
+		this.sessions.compute(username, (key, devices) -> {
+			if(devices == null)
+				devices = new ConcurrentHashMap<String, ClientSession>();
+			if(devices.size() >= SessionRegistry.MAX_KEPT_SESSIONS_PER_USER) {
+				for(ClientSession candidate: devices.values()) {
+					long detachedAtMillis = candidate.getDetachedAtMillis();
+					if(detachedAtMillis != 0 && (evicted[0] == null || detachedAtMillis < evicted[0].getDetachedAtMillis()))
+						evicted[0] = candidate;
+					}
+				if(evicted[0] != null)
+					devices.remove(evicted[0].getDeviceID());
+				}
+			devices.put(session.getDeviceID(), session);
+			return devices;
+			});
+		if(evicted[0] != null)
+			this.expiryHandler.accept(evicted[0]);
+		return session;
+		}
+
+	/***
+	 * A method used to find the session of the device a Client presented a valid token for. If the session is no
+	 * longer kept, for instance because the Server restarted, a new one numbering after the Client's last Message is started.
+	 * @param username The user name of the Client.
+	 * @param deviceID The device named by the token.
+	 * @param lastSequenceNumber The number of the last Message the Client received.
+	 * @return The session.
+	 */
+	public ClientSession resume(String username, String deviceID, long lastSequenceNumber) {
+		this.sweep();
+		ClientSession[] session = new ClientSession[1];
+		this.sessions.compute(username, (key, devices) -> {
+			if(devices == null)
+				devices = new ConcurrentHashMap<String, ClientSession>();
+			session[0] = devices.computeIfAbsent(deviceID, device -> new ClientSession(username, device, lastSequenceNumber));
+			return devices;
+			});
+		return session[0];
+		}
+
+	/***
+	 * A method used to discard the session of a device which logged out, so that it can no longer be resumed.
+	 * @param session The session.
+	 */
+	public void end(ClientSession session) {
+		if(this.remove(session))
+			this.expiryHandler.accept(session);
+		}
+
+	/***
+	 * A method used to remove a session from the registry, forgetting the Client once it has none left.
+	 * @param session The session.
+	 * @return A boolean which is true if the session was still kept.
+	 */
+	private boolean remove(ClientSession session) {
+		boolean[] removed = new boolean[1];
+		this.sessions.computeIfPresent(session.getUsername(), (key, devices) -> {
+			removed[0] = devices.remove(session.getDeviceID(), session);
+			return devices.isEmpty() ? null : devices;
+			});
+		return removed[0];
+		}
+
+	/***
+	 * A method used to discard the sessions of devices which stayed disconnected for too long. Runs at most once
+	 * every sweep interval so that a burst of logins does not scan every session each time.
+	 */
+	private void sweep() {
+		long now = System.currentTimeMillis();
+		if(now - this.lastSweepMillis < SessionRegistry.SWEEP_INTERVAL_MILLIS)
+			return;
+		this.lastSweepMillis = now;
+		ArrayList<ClientSession> expired = new ArrayList<ClientSession>();
+		for(ConcurrentHashMap<String, ClientSession> devices: this.sessions.values())
+			for(ClientSession session: devices.values())
+				if(session.isExpired(now, SessionRegistry.SESSION_IDLE_MILLIS))
+					expired.add(session);
+		for(ClientSession session: expired)
+			if(this.remove(session))
+				this.expiryHandler.accept(session);
+		}
+	}
@@ -0,0 +1,161 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/***
+ * Coalesces the typing indicators and read receipts of each conversation so that they cost at most one signal of each
+ * kind per conversation every WINDOW_MILLIS, however often they change. Within a window a newer typing state replaces
+ * an older one and a read receipt replaces any for an earlier Message, so only the latest state is sent. A typing
+ * state which was already sent is not sent again until TYPING_REFRESH_MILLIS have passed, so a Client which starts and
+ * stops typing within the window, or keeps saying that it is typing, costs nothing. Signals the deliverer cannot take
+ * at once are dropped rather than queued, since the next one supersedes them anyway.
+ * Used both by the Client for the signals it sends and by the Server for the signals it relays.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SignalPayload
+ */
+public class SignalCoalescer {
+
+	// static variables
+	private final static long WINDOW_MILLIS = 200;
+	private final static long TYPING_REFRESH_MILLIS = 5000;
+	// a conversation with nothing pending is forgotten once it has been quiet for this long.
+	private final static long IDLE_MILLIS = 10000;
+
+	// instance variables
+	private final ConcurrentHashMap<String, Conversation> conversations;
+	// sends a coalesced signal on, returning false if it had to be dropped.
+	private final Predicate<Message> deliverer;
+	private final ScheduledExecutorService flusher;
+
+	/***
+	 * The Constructor of the SignalCoalescer Class.
+	 * @param deliverer Sends a coalesced signal on, returning false if it was dropped. Must not block.
+	 */
+	public SignalCoalescer(Predicate<Message> deliverer) {
+		this.conversations = new ConcurrentHashMap<String, Conversation>();
+		this.deliverer = deliverer;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Signal Coalescer");
+			thread.setDaemon(true);
+			return thread;
+			});
+		this.flusher.scheduleWithFixedDelay(this::flush, SignalCoalescer.WINDOW_MILLIS, SignalCoalescer.WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+	/***
+	 * A method used to submit a signal, which is sent with the other signals of its conversation at the end of the window.
+	 * @param signal The SIGNAL Message, carrying a SignalPayload.
+	 */
+	public void submit(Message signal) {
+		SignalPayload payload = (SignalPayload)signal.getData();
+		Conversation conversation = this.conversations.computeIfAbsent(signal.getSourceName() + "\n" + signal.getDestinationName(),
+				key -> new Conversation(signal.getSourceName(), signal.getDestinationName()));
+		Metrics.increment("signal.submitted");
+		synchronized(conversation) {
+			conversation.lastSubmitMillis = System.currentTimeMillis();
+			if(payload.getKind() == SignalPayload.Kind.READ) {
+				if(conversation.pendingRead == null || payload.getReadUpTo() > conversation.pendingRead.getReadUpTo())
+					conversation.pendingRead = payload;
+				}
+			else
+				conversation.pendingTyping = payload;
+			}
+		}
+
+	/***
+	 * A method used to send the latest signals of every conversation which changed during the window and forget the
+	 * conversations which have been quiet for a while.
+	 */
+	private void flush() {
+		long now = System.currentTimeMillis();
+		Iterator<Conversation> iterator = this.conversations.values().iterator();
+		while(iterator.hasNext()) {
+			Conversation conversation = iterator.next();
+			SignalPayload typing;
+			SignalPayload read;
+			synchronized(conversation) {
+				typing = conversation.pendingTyping;
+				read = conversation.pendingRead;
+				conversation.pendingTyping = null;
+				conversation.pendingRead = null;
+				// a typing state the receiver already has is not sent again, except to refresh that the Client is still typing.
+				if(typing != null && typing.getKind() == conversation.sentTyping
+						&& (typing.getKind() == SignalPayload.Kind.STOPPED_TYPING || now - conversation.sentTypingMillis < SignalCoalescer.TYPING_REFRESH_MILLIS)) {
+					typing = null;
+					Metrics.increment("signal.suppressed");
+					}
+				if(typing == null && read == null && now - conversation.lastSubmitMillis > SignalCoalescer.IDLE_MILLIS)
+					iterator.remove();
+				}
+			if(typing != null && this.deliver(conversation, typing))
+				synchronized(conversation) {
+					conversation.sentTyping = typing.getKind();
+					conversation.sentTypingMillis = now;
+					}
+			if(read != null)
+				this.deliver(conversation, read);
+			}
+		}
+
+	/***
+	 * A method used to send one coalesced signal on.
+	 * Catches any RuntimeException thrown by the deliverer so that one failure does not stop the flushing.
+	 * @param conversation The conversation of the signal.
+	 * @param payload The signal.
+	 * @return A boolean which is true if the signal was sent on.
+	 */
+	private boolean deliver(Conversation conversation, SignalPayload payload) {
+		try {
+			if(this.deliverer.test(new Message(MessageID.SIGNAL, conversation.source, conversation.destination, payload))) {
+				Metrics.increment("signal.delivered");
+				return true;
+				}
+			Metrics.increment("signal.dropped");
+			}
+		catch (RuntimeException e) {
+			System.out.println(e);
+			}
+		return false;
+		}
+
+	/***
+	 * A method used to stop flushing once the signals are no longer needed.
+	 */
+	public void shutdown() {
+		this.flusher.shutdownNow();
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * The signals of one direction of a conversation waiting for the end of the window.
+	 */
+	private final static class Conversation {
+
+		// instance variables
+		private final String source;
+		private final String destination;
+		private SignalPayload pendingTyping;
+		private SignalPayload pendingRead;
+		private long lastSubmitMillis;
+		// the typing state last sent and when it was sent.
+		private SignalPayload.Kind sentTyping;
+		private long sentTypingMillis;
+
+		/***
+		 * The Constructor of the Conversation Class.
+		 * @param source The user name of the Client sending the signals.
+		 * @param destination The user name of the Client they are for.
+		 */
+		private Conversation(String source, String destination) {
+			this.source = source;
+			this.destination = destination;
+			// a Client which has not been said to be typing has stopped typing.
+			this.sentTyping = SignalPayload.Kind.STOPPED_TYPING;
+			}
+		}
+	}
@@ -0,0 +1,80 @@
+
+/***
+ * The Payload of a SIGNAL, a typing indicator or read receipt between two Clients. Signals are ephemeral: they are
+ * coalesced, dropped rather than queued when a connection is busy and never kept for replay, so a Client must treat
+ * one as a hint about the current state of the conversation rather than as an event it is sure to receive.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see SignalCoalescer
+ */
+public class SignalPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+
+	/***
+	 * The kinds of signal.
+	 */
+	public enum Kind {
+		TYPING, STOPPED_TYPING, READ
+		}
+
+	// instance variables
+	private Kind kind;
+	private long readUpTo;
+
+	/***
+	 * The Constructor of the SignalPayload Class.
+	 * @param kind The kind of signal.
+	 * @param readUpTo For a read receipt, the number of the latest Message read in the conversation, or 0 if the
+	 * Messages were not numbered.
+	 */
+	private SignalPayload(Kind kind, long readUpTo) {
+		this.kind = kind;
+		this.readUpTo = readUpTo;
+		}
+
+	/***
+	 * A method used to create a typing indicator.
+	 * @param typing Whether the Client started or stopped typing.
+	 * @return The Payload.
+	 */
+	public static SignalPayload typing(boolean typing) {
+		return new SignalPayload(typing ? Kind.TYPING : Kind.STOPPED_TYPING, 0);
+		}
+
+	/***
+	 * A method used to create a read receipt.
+	 * @param readUpTo The number of the latest Message read, or 0 if the Messages were not numbered.
+	 * @return The Payload.
+	 */
+	public static SignalPayload read(long readUpTo) {
+		return new SignalPayload(Kind.READ, readUpTo);
+		}
+
+	/***
+	 * A method to retrieve the kind of signal.
+	 * @return The kind of signal.
+	 */
+	public Kind getKind() {
+		return this.kind;
+		}
+
+	/***
+	 * A method to retrieve the number of the latest Message read.
+	 * @return The number of the Message, or 0.
+	 */
+	public long getReadUpTo() {
+		return this.readUpTo;
+		}
+
+	@Override
+	public long getSize() {
+		return 9;
+		}
+
+	@Override
+	public String toString() {
+		return this.kind == Kind.READ ? "Read(up to " + this.readUpTo + ")" : this.kind.toString();
+		}
+	}
@@ -0,0 +1,186 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * A Payload whose serialized form is held by the Server until it is delivered, kept in memory if small
+ * and spilled to a spool file otherwise, so that offers waiting for confirmation do not hold large Images in memory.
+ * The OutboundQueue reads the serialized bytes straight into frames without deserializing or re-serializing them.
+ * If it is written whole, for example to a Client which does not use framing, the original Data is written instead.
+ * A SpooledPayload is shared by every Message delivering it and counts references so that the spool file is deleted
+ * once the last of them has been written or dropped.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see FrameSplitter
+ */
+public class SpooledPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	private final static int SPILL_THRESHOLD = 256 * 1024;
+	// instance variables
+	private transient byte[] memoryData;
+	private transient File spoolFile;
+	private transient FileChannel spoolChannel;
+	private transient AtomicInteger references;
+	private long length;
+
+	/***
+	 * The Constructor of the SpooledPayload Class. The SpooledPayload starts with one reference held by its creator.
+	 * @param memoryData The serialized Data if it is held in memory, otherwise null.
+	 * @param spoolFile The spool file holding the serialized Data if it was spilled, otherwise null.
+	 * @param length The number of bytes of serialized Data.
+	 * @throws IOException If the spool file could not be opened.
+	 */
+	private SpooledPayload(byte[] memoryData, File spoolFile, long length) throws IOException {
+		this.memoryData = memoryData;
+		this.spoolFile = spoolFile;
+		if(spoolFile != null)
+			this.spoolChannel = FileChannel.open(spoolFile.toPath(), StandardOpenOption.READ);
+		this.references = new AtomicInteger(1);
+		this.length = length;
+		}
+
+	/***
+	 * A method used to serialize Data into a new SpooledPayload, spilling it to a spool file if it is large.
+	 * @param data The Data to hold until it is delivered.
+	 * @return The SpooledPayload, holding one reference for the caller.
+	 * @throws IOException If the Data could not be serialized or spilled.
+	 */
+	public static SpooledPayload spool(Payload data) throws IOException {
+		if(data.getSize() < SPILL_THRESHOLD) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream((int)data.getSize() + 256);
+			SpooledPayload.serialize(data, buffer);
+			return new SpooledPayload(buffer.toByteArray(), null, buffer.size());
+			}
+		File spoolFile = File.createTempFile("chat-spool-", ".bin");
+		spoolFile.deleteOnExit();
+		try {
+			SpooledPayload.serialize(data, new BufferedOutputStream(new FileOutputStream(spoolFile), BufferPool.BUFFER_SIZE));
+			Metrics.increment("spool.files");
+			Metrics.add("spool.bytes", spoolFile.length());
+			return new SpooledPayload(null, spoolFile, spoolFile.length());
+			}
+		catch (IOException e) {
+			spoolFile.delete();
+			throw e;
+			}
+		}
+
+	/***
+	 * A method used to serialize Data the same way a FrameSplitter does.
+	 * @param data The Data to serialize.
+	 * @param out The stream to serialize to, which is closed afterwards.
+	 * @throws IOException If the Data could not be serialized.
+	 */
+	private static void serialize(Payload data, OutputStream out) throws IOException {
+		try(ObjectOutputStream serializer = new ObjectOutputStream(out)) {
+			serializer.writeUnshared(data);
+			}
+		}
+
+	/***
+	 * A method used to add a reference for one more Message which will deliver the SpooledPayload.
+	 */
+	@Override
+	public void retain() {
+		this.references.incrementAndGet();
+		}
+
+	/***
+	 * A method used to drop a reference once a Message delivering the SpooledPayload was written or dropped.
+	 * The spool file is deleted once no references are left.
+	 */
+	@Override
+	public void release() {
+		if(this.references.decrementAndGet() != 0)
+			return;
+		this.memoryData = null;
+		if(this.spoolFile != null) {
+			try {
+				this.spoolChannel.close();
+				}
+			catch (IOException e) {
+				System.out.println(e);
+				}
+			this.spoolFile.delete();
+			}
+		}
+
+	/***
+	 * A method used to read part of the serialized Data. Several Threads may read the same SpooledPayload at once.
+	 * @param position The position in the serialized Data to read from.
+	 * @param buffer The array to read into.
+	 * @param offset The position in the array to read into.
+	 * @param length The number of bytes to read.
+	 * @return The number of bytes read, which is less than length only at the end of the serialized Data.
+	 * @throws IOException If the spool file could not be read.
+	 */
+	public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		int count = (int)Math.min(length, this.length - position);
+		if(this.memoryData != null) {
+			System.arraycopy(this.memoryData, (int)position, buffer, offset, count);
+			return count;
+			}
+		ByteBuffer target = ByteBuffer.wrap(buffer, offset, count);
+		while(target.hasRemaining())
+			if(this.spoolChannel.read(target, position + target.position() - offset) < 0)
+				throw new IOException("Spool file " + this.spoolFile + " is truncated");
+		return count;
+		}
+
+	/***
+	 * A method used to deserialize the original Data.
+	 * @return The original Data.
+	 * @throws IOException If the serialized Data could not be read or deserialized.
+	 */
+	public Object load() throws IOException {
+		InputStream in = this.memoryData != null ? new ByteArrayInputStream(this.memoryData)
+				: Channels.newInputStream(FileChannel.open(this.spoolFile.toPath(), StandardOpenOption.READ));
+		try(ObjectInputStream deserializer = new ObjectInputStream(in)) {
+			return deserializer.readUnshared();
+			}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+			}
+		}
+
+	/***
+	 * A method called by serialization so that the original Data is written whenever a SpooledPayload is written whole.
+	 * @return The original Data.
+	 * @throws ObjectStreamException If the original Data could not be loaded.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		try {
+			return this.load();
+			}
+		catch (IOException e) {
+			throw new InvalidObjectException(e.toString());
+			}
+		}
+
+	@Override
+	public long getSize() {
+		return this.length;
+		}
+
+	@Override
+	public boolean isCompressible() {
+		// the original Data decides for itself when it is written whole.
+		return false;
+		}
+	}
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * A bounded lock-free queue for exactly one producing Thread and one consuming Thread.
+ * The producer only ever writes the tail and the consumer only ever writes the head, so neither side needs a lock or
+ * a compare and set. Each side keeps a cached copy of the other side's counter and only reads the shared one when
+ * the cached copy says the ring is full or empty, which keeps the two Threads from sharing a cache line on every call.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see AtomicLong
+ * @param <E> The type of the elements in the ring.
+ */
+public class SpscRing<E> {
+
+	// instance variables
+	private final Object[] elements;
+	private final int mask;
+	// the number of the next element to take, only written by the consumer.
+	private final AtomicLong head;
+	// the number of the next element to fill, only written by the producer.
+	private final AtomicLong tail;
+	// the producer's last reading of the head.
+	private long cachedHead;
+	// the consumer's last reading of the tail.
+	private long cachedTail;
+
+	/***
+	 * The Constructor of the SpscRing Class.
+	 * @param capacity The number of elements the ring holds, rounded up to a power of two.
+	 */
+	public SpscRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.elements = new Object[size];
+		this.mask = size - 1;
+		this.head = new AtomicLong(0);
+		this.tail = new AtomicLong(0);
+		this.cachedHead = 0;
+		this.cachedTail = 0;
+		}
+
+	/***
+	 * A method used by the producer to add an element to the ring.
+	 * @param element The element to add, which must not be null.
+	 * @return A boolean which is false if the ring is full and the element was not added.
+	 */
+	public boolean offer(E element) {
+		long currentTail = this.tail.get();
+		if(currentTail - this.cachedHead >= this.elements.length) {
+			this.cachedHead = this.head.get();
+			if(currentTail - this.cachedHead >= this.elements.length)
+				return false;
+			}
+		this.elements[(int)currentTail & this.mask] = element;
+		// a volatile write so that a consumer which checks the ring after announcing that it is going to sleep sees it.
+		this.tail.set(currentTail + 1);
+		return true;
+		}
+
+	/***
+	 * A method used by the consumer to look at the oldest element without taking it.
+	 * @return The oldest element, or null if the ring is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		long currentHead = this.head.get();
+		if(currentHead >= this.cachedTail) {
+			this.cachedTail = this.tail.get();
+			if(currentHead >= this.cachedTail)
+				return null;
+			}
+		return (E)this.elements[(int)currentHead & this.mask];
+		}
+
+	/***
+	 * A method used by the consumer to take the oldest element.
+	 * @return The oldest element, or null if the ring is empty.
+	 */
+	public E poll() {
+		E element = this.peek();
+		if(element != null) {
+			long currentHead = this.head.get();
+			this.elements[(int)currentHead & this.mask] = null;
+			this.head.lazySet(currentHead + 1);
+			}
+		return element;
+		}
+
+	/***
+	 * A method used by either Thread to check whether the ring is empty.
+	 * @return A boolean which is true if the ring holds no elements.
+	 */
+	public boolean isEmpty() {
+		return this.head.get() >= this.tail.get();
+		}
+	}
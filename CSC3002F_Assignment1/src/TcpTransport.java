@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/***
+ * The Transport reaching the Server over TCP, which Clients on other hosts use.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see Socket
+ */
+public class TcpTransport implements Transport {
+
+	// instance variables
+	private String host;
+	private int port;
+
+	/***
+	 * The Constructor of the TcpTransport Class.
+	 * @param host The IP/DNS address of the Server, or null for every address of this host when listening.
+	 * @param port The port of the Server.
+	 */
+	public TcpTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+		}
+
+	@Override
+	public Connection connect(int timeoutMillis) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(this.host, this.port), timeoutMillis);
+			}
+		catch (IOException e) {
+			socket.close();
+			throw e;
+			}
+		return new SocketConnection(socket);
+		}
+
+	@Override
+	public Transport.Listener listen() throws IOException {
+		ServerSocket serverSocket = new ServerSocket(this.port);
+		return new Transport.Listener() {
+			@Override
+			public Connection accept() throws IOException {
+				return new SocketConnection(serverSocket.accept());
+				}
+
+			@Override
+			public void close() throws IOException {
+				serverSocket.close();
+				}
+			};
+		}
+
+	@Override
+	public String getAddress() {
+		return (this.host == null ? "*" : this.host) + ":" + this.port;
+		}
+
+	/***
+	 * A Connection over a TCP Socket.
+	 */
+	private static class SocketConnection implements Connection {
+		private final Socket socket;
+
+		private SocketConnection(Socket socket) {
+			this.socket = socket;
+			}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return this.socket.getInputStream();
+			}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return this.socket.getOutputStream();
+			}
+
+		@Override
+		public String getRemoteAddress() {
+			return String.valueOf(this.socket.getRemoteSocketAddress());
+			}
+
+		@Override
+		public boolean isClosed() {
+			return this.socket.isClosed();
+			}
+
+		@Override
+		public void close() throws IOException {
+			this.socket.close();
+			}
+		}
+	}
@@ -0,0 +1,39 @@
+
+/***
+ * A Payload carrying a Text Message.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ */
+public class TextPayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private String text;
+
+	/***
+	 * The Constructor of the TextPayload Class.
+	 * @param text The Text of the Message.
+	 */
+	public TextPayload(String text) {
+		this.text = text;
+		}
+
+	/***
+	 * A method to retrieve the Text of the Message.
+	 * @return The Text of the Message.
+	 */
+	public String getText() {
+		return this.text;
+		}
+
+	@Override
+	public long getSize() {
+		return this.text.length();
+		}
+
+	@Override
+	public String toString() {
+		return this.text;
+		}
+	}
@@ -0,0 +1,57 @@
+
+
+/***
+ * A Payload sent in a THROTTLE_RESPONSE Message which tells a Client that one of its requests was not processed
+ * because it was sent too quickly or the Server is overloaded, and how long to wait before trying again.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RateLimiter
+ * @see AdmissionController
+ */
+public class ThrottlePayload extends Payload {
+
+	// static variables
+	private static final long serialVersionUID = 1L;
+	// instance variables
+	private MessageID rejectedMessageID;
+	private long retryAfterMillis;
+	private String reason;
+
+	/***
+	 * The Constructor of the ThrottlePayload Class.
+	 * @param rejectedMessageID The ID code of the request which was not processed.
+	 * @param retryAfterMillis The number of milliseconds the Client should wait before trying again.
+	 * @param reason A description of why the request was not processed.
+	 */
+	public ThrottlePayload(MessageID rejectedMessageID, long retryAfterMillis, String reason) {
+		this.rejectedMessageID = rejectedMessageID;
+		this.retryAfterMillis = retryAfterMillis;
+		this.reason = reason;
+		}
+
+	/***
+	 * A method to retrieve the ID code of the request which was not processed.
+	 * @return The ID code of the request which was not processed.
+	 */
+	public MessageID getRejectedMessageID() {
+		return this.rejectedMessageID;
+		}
+
+	/***
+	 * A method to retrieve how long the Client should wait before trying again.
+	 * @return The number of milliseconds to wait.
+	 */
+	public long getRetryAfterMillis() {
+		return this.retryAfterMillis;
+		}
+
+	@Override
+	public long getSize() {
+		return this.reason.length();
+		}
+
+	@Override
+	public String toString() {
+		return this.reason + " Please try again in " + Math.max(1, (this.retryAfterMillis + 999) / 1000) + " second(s).";
+		}
+	}
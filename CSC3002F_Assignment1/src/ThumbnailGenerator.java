@@ -0,0 +1,136 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/***
+ * A class used by the Server to generate small downscaled previews of Images which are offered to Clients.
+ * Previews are generated on a bounded pool of background Threads so that decoding never runs on a ClientInteractionHandler,
+ * and are cached by the SHA-256 hash of the Image's content so that an Image offered to many Clients is only decoded once.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see ImageOfferPayload
+ */
+public class ThumbnailGenerator {
+
+	// static variables
+	private final static int PREVIEW_MAX_DIMENSION = 128;
+	private final static int POOL_THREADS = 2;
+	private final static int POOL_QUEUE_CAPACITY = 64;
+	private final static int CACHE_CAPACITY = 256;
+	private final static String PREVIEW_FORMAT = "jpg";
+	private final static String PREVIEW_MIME_TYPE = "image/jpeg";
+
+	// instance variables
+	private ThreadPoolExecutor previewPool;
+	// Since a LinkedHashMap is not inherently thread-safe it is wrapped in a synchronized Map.
+	private Map<String, CompletableFuture<ImagePayload>> previewCache;
+
+	/***
+	 * The Constructor of the ThumbnailGenerator Class.
+	 * @see ThreadPoolExecutor
+	 * @see LinkedHashMap
+	 */
+	public ThumbnailGenerator() {
+		this.previewPool = new ThreadPoolExecutor(POOL_THREADS, POOL_THREADS, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(POOL_QUEUE_CAPACITY), runnable -> {
+					Thread thread = new Thread(runnable, "Thumbnail Generator");
+					thread.setDaemon(true);
+					return thread;
+					});
+		// an access ordered LinkedHashMap which evicts its least recently used preview once full.
+		this.previewCache = Collections.synchronizedMap(new LinkedHashMap<String, CompletableFuture<ImagePayload>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<ImagePayload>> eldest) {
+				return this.size() > CACHE_CAPACITY;
+				}
+			});
+		}
+
+	/***
+	 * A method used to retrieve a downscaled preview of the given Image.
+	 * If the preview is not cached it is generated on the background pool. If the pool is saturated or the Image
+	 * cannot be decoded the returned future completes with null so that the offer can still be sent without a preview.
+	 * @param image The Image to generate a preview for.
+	 * @return A CompletableFuture which completes with the preview of the Image or null.
+	 * @see CompletableFuture
+	 */
+	public CompletableFuture<ImagePayload> getPreview(ImagePayload image) {
+		String contentHash = image.getContentHash();
+		CompletableFuture<ImagePayload> preview;
+		CompletableFuture<ImagePayload> generated = null;
+		synchronized(this.previewCache) {
+			preview = this.previewCache.get(contentHash);
+			if(preview == null) {
+				preview = generated = new CompletableFuture<ImagePayload>();
+				this.previewCache.put(contentHash, preview);
+				}
+			}
+		if(generated != null) {
+			final CompletableFuture<ImagePayload> result = generated;
+			try {
+				this.previewPool.execute(() -> result.complete(this.generatePreview(image)));
+				}
+			catch (RejectedExecutionException e) {
+				// the pool is saturated so the offer is sent without a preview and the entry is not cached.
+				this.previewCache.remove(contentHash);
+				result.complete(null);
+				}
+			}
+		return preview;
+		}
+
+	/***
+	 * A method used to decode and downscale an Image. Large Images are subsampled while they are read so that their
+	 * full resolution pixels are never held in memory.
+	 * @param image The Image to downscale.
+	 * @return The preview encoded as a JPEG or null if the Image could not be decoded.
+	 * @see ImagePayload#decodeSubsampled(int)
+	 */
+	private ImagePayload generatePreview(ImagePayload image) {
+		try {
+			BufferedImage source = image.decodeSubsampled(PREVIEW_MAX_DIMENSION);
+			if(source == null)
+				return null;
+			double scale = Math.min(1.0, (double)PREVIEW_MAX_DIMENSION / Math.max(source.getWidth(), source.getHeight()));
+			int width = Math.max(1, (int)Math.round(source.getWidth() * scale));
+			int height = Math.max(1, (int)Math.round(source.getHeight() * scale));
+			// JPEG has no alpha channel so the preview is drawn onto an RGB image.
+			BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = thumbnail.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.drawImage(source, 0, 0, width, height, null);
+				}
+			finally {
+				graphics.dispose();
+				}
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			ImageIO.write(thumbnail, PREVIEW_FORMAT, encoded);
+			return new ImagePayload(encoded.toByteArray(), PREVIEW_MIME_TYPE, "preview-" + image.getFileName());
+			}
+		catch (IOException | RuntimeException e) {
+			System.out.println(e);
+			return null;
+			}
+		}
+
+	/***
+	 * A method used to stop the background pool of the ThumbnailGenerator.
+	 */
+	public void shutdown() {
+		this.previewPool.shutdownNow();
+		}
+	}
@@ -0,0 +1,57 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * A lock-free token bucket which allows a burst of requests and then a steady rate of requests per second.
+ * Rather than a count of tokens and a refill time the bucket stores the single time at which it would be full again,
+ * so a request only has to compare and set one AtomicLong and never needs a lock or a refill Thread.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see AtomicLong
+ */
+public class TokenBucket {
+
+	// instance variables
+	private final long nanosPerToken;
+	private final long burstNanos;
+	// the time, in System.nanoTime, at which every token has been refilled.
+	private final AtomicLong fullAt;
+
+	/***
+	 * The Constructor of the TokenBucket Class. The bucket starts full.
+	 * @param ratePerSecond The number of tokens refilled per second.
+	 * @param burst The number of tokens the bucket holds when full.
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+		this.nanosPerToken = Math.max(1, (long)(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+		this.burstNanos = this.nanosPerToken * Math.max(1, burst);
+		this.fullAt = new AtomicLong(System.nanoTime());
+		}
+
+	/***
+	 * A method used to take one token from the bucket if one is available.
+	 * @return A boolean which is true if a token was taken.
+	 */
+	public boolean tryAcquire() {
+		return this.tryAcquireAt(System.nanoTime()) == 0;
+		}
+
+	/***
+	 * A method used to take one token from the bucket if one is available, reporting how long to wait if not.
+	 * @param now The current time in System.nanoTime.
+	 * @return 0 if a token was taken, otherwise the number of nanoseconds until a token will be available.
+	 */
+	public long tryAcquireAt(long now) {
+		while(true) {
+			long current = this.fullAt.get();
+			// a bucket that was full a while ago is simply full now.
+			long base = current - now < 0 ? now : current;
+			long next = base + this.nanosPerToken;
+			long wait = next - now - this.burstNanos;
+			if(wait > 0)
+				return wait;
+			if(this.fullAt.compareAndSet(current, next))
+				return 0;
+			}
+		}
+	}
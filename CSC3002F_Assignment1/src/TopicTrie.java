@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/***
+ * The subscriptions of a Server's publish and subscribe layer, held in a trie of topic segments.
+ * Topics are dot separated, such as presence.online or room.sales.eu. A subscription pattern may use * in place of
+ * exactly one segment and may end with # to match any number of further segments, including none, so room.sales.#
+ * matches room.sales and room.sales.eu.orders. Finding the subscribers of a topic walks at most the exact, * and #
+ * branches of each of its segments, so its cost depends on how deep the topic is and not on how many subscribers
+ * there are or how many patterns they subscribed to.
+ * Publishing only takes the read lock, so topics are matched in parallel while subscriptions change rarely.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @param <C> The type of the connections of the subscribers.
+ */
+public class TopicTrie<C> {
+
+	// static variables
+	public final static String SINGLE_WILDCARD = "*";
+	public final static String MULTI_WILDCARD = "#";
+	private final static int MAX_TOPIC_LENGTH = 256;
+	private final static int MAX_TOPIC_DEPTH = 16;
+	private final static int MAX_SUBSCRIPTIONS_PER_CONNECTION = 64;
+
+	// instance variables
+	private final Node root;
+	// the patterns each connection subscribed to, so they can all be removed when it closes.
+	private final HashMap<C, HashSet<String>> patternsOf;
+	private final ReentrantReadWriteLock trieLock;
+
+	/***
+	 * The Constructor of the TopicTrie Class.
+	 */
+	public TopicTrie() {
+		this.root = new Node();
+		this.patternsOf = new HashMap<C, HashSet<String>>();
+		this.trieLock = new ReentrantReadWriteLock();
+		}
+
+	/***
+	 * A method used to check that a topic or pattern is well formed: 1 to 16 non-empty segments, with wildcards only
+	 * as whole segments and # only as the last.
+	 * @param topic The topic or pattern.
+	 * @param allowWildcards Whether wildcards are allowed, which they are in patterns but not in published topics.
+	 * @return A boolean which is true if the topic is well formed.
+	 */
+	public static boolean isValid(String topic, boolean allowWildcards) {
+		if(topic.isEmpty() || topic.length() > TopicTrie.MAX_TOPIC_LENGTH)
+			return false;
+		String[] segments = topic.split("\\.", -1);
+		if(segments.length > TopicTrie.MAX_TOPIC_DEPTH)
+			return false;
+		for(int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if(segment.isEmpty())
+				return false;
+			boolean wildcard = segment.equals(TopicTrie.SINGLE_WILDCARD) || segment.equals(TopicTrie.MULTI_WILDCARD);
+			if(wildcard && (!allowWildcards || segment.equals(TopicTrie.MULTI_WILDCARD) && i != segments.length - 1))
+				return false;
+			if(!wildcard && (segment.contains(TopicTrie.SINGLE_WILDCARD) || segment.contains(TopicTrie.MULTI_WILDCARD)))
+				return false;
+			}
+		return true;
+		}
+
+	/***
+	 * A method used to subscribe a connection to every topic matching a pattern.
+	 * @param pattern The pattern, which must be valid.
+	 * @param subscriber The connection of the subscriber.
+	 * @return A boolean which is false if the connection already has too many subscriptions.
+	 */
+	public boolean subscribe(String pattern, C subscriber) {
+		this.trieLock.writeLock().lock();
+		try {
+			HashSet<String> patterns = this.patternsOf.computeIfAbsent(subscriber, key -> new HashSet<String>());
+			if(patterns.contains(pattern))
+				return true;
+			if(patterns.size() >= TopicTrie.MAX_SUBSCRIPTIONS_PER_CONNECTION)
+				return false;
+			patterns.add(pattern);
+			Node node = this.root;
+			for(String segment: pattern.split("\\."))
+				node = node.children.computeIfAbsent(segment, key -> new Node());
+			node.subscribers.add(subscriber);
+			return true;
+			}
+		finally {
+			this.trieLock.writeLock().unlock();
+			}
+		}
+
+	/***
+	 * A method used to remove one subscription of a connection, pruning the branches of the trie it leaves empty.
+	 * @param pattern The pattern the connection subscribed to.
+	 * @param subscriber The connection of the subscriber.
+	 * @return A boolean which is true if the connection was subscribed to the pattern.
+	 */
+	public boolean unsubscribe(String pattern, C subscriber) {
+		this.trieLock.writeLock().lock();
+		try {
+			HashSet<String> patterns = this.patternsOf.get(subscriber);
+			if(patterns == null || !patterns.remove(pattern))
+				return false;
+			if(patterns.isEmpty())
+				this.patternsOf.remove(subscriber);
+			this.remove(this.root, pattern.split("\\."), 0, subscriber);
+			return true;
+			}
+		finally {
+			this.trieLock.writeLock().unlock();
+			}
+		}
+
+	/***
+	 * A method used to remove every subscription of a connection which closed.
+	 * @param subscriber The connection of the subscriber.
+	 */
+	public void unsubscribeAll(C subscriber) {
+		this.trieLock.writeLock().lock();
+		try {
+			HashSet<String> patterns = this.patternsOf.remove(subscriber);
+			if(patterns != null)
+				for(String pattern: patterns)
+					this.remove(this.root, pattern.split("\\."), 0, subscriber);
+			}
+		finally {
+			this.trieLock.writeLock().unlock();
+			}
+		}
+
+	/***
+	 * A method used to remove a subscriber from the node of a pattern and prune the nodes left empty on the way back.
+	 * Must hold the write lock.
+	 * @param node The node for the segments matched so far.
+	 * @param segments The segments of the pattern.
+	 * @param depth The number of segments matched so far.
+	 * @param subscriber The connection of the subscriber.
+	 */
+	private void remove(Node node, String[] segments, int depth, C subscriber) {
+		if(depth == segments.length) {
+			node.subscribers.remove(subscriber);
+			return;
+			}
+		Node child = node.children.get(segments[depth]);
+		if(child == null)
+			return;
+		this.remove(child, segments, depth + 1, subscriber);
+		if(child.isEmpty())
+			node.children.remove(segments[depth]);
+		}
+
+	/***
+	 * A method used to find the subscribers of a topic. A connection subscribed through several matching patterns
+	 * is only returned once.
+	 * @param topic The topic, which must be valid and hold no wildcards.
+	 * @return The connections of the subscribers.
+	 */
+	public ArrayList<C> match(String topic) {
+		LinkedHashSet<C> matched = new LinkedHashSet<C>();
+		this.trieLock.readLock().lock();
+		try {
+			this.collect(this.root, topic.split("\\."), 0, matched);
+			}
+		finally {
+			this.trieLock.readLock().unlock();
+			}
+		return new ArrayList<C>(matched);
+		}
+
+	/***
+	 * A method used to collect the subscribers of the patterns under a node which match the rest of a topic.
+	 * Must hold the read lock.
+	 * @param node The node for the segments matched so far.
+	 * @param segments The segments of the topic.
+	 * @param depth The number of segments matched so far.
+	 * @param matched The subscribers found so far.
+	 */
+	private void collect(Node node, String[] segments, int depth, LinkedHashSet<C> matched) {
+		// a trailing # also matches when no segments are left.
+		Node multi = node.children.get(TopicTrie.MULTI_WILDCARD);
+		if(multi != null)
+			matched.addAll(multi.subscribers);
+		if(depth == segments.length) {
+			matched.addAll(node.subscribers);
+			return;
+			}
+		Node exact = node.children.get(segments[depth]);
+		if(exact != null)
+			this.collect(exact, segments, depth + 1, matched);
+		Node single = node.children.get(TopicTrie.SINGLE_WILDCARD);
+		if(single != null)
+			this.collect(single, segments, depth + 1, matched);
+		}
+
+	//***********************************************************************************
+
+	/***
+	 * A node of the trie, for the patterns sharing the segments on the path to it.
+	 */
+	private final class Node {
+
+		// instance variables
+		private final HashMap<String, Node> children;
+		// the connections subscribed to the pattern ending at this node.
+		private final HashSet<C> subscribers;
+
+		/***
+		 * The Constructor of the Node Class.
+		 */
+		private Node() {
+			this.children = new HashMap<String, Node>();
+			this.subscribers = new HashSet<C>();
+			}
+
+		/***
+		 * A method used to check whether the node can be pruned.
+		 * @return A boolean which is true if no pattern ends at or passes through the node.
+		 */
+		private boolean isEmpty() {
+			return this.children.isEmpty() && this.subscribers.isEmpty();
+			}
+		}
+	}
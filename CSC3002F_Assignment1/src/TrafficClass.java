@@ -0,0 +1,48 @@
+
+
+/***
+ * An enumeration of the classes of traffic a Client can send, used to rate limit and shed each class separately.
+ * Messages which belong to no class, such as credit grants and confirmation responses, are never limited.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see RateLimiter
+ * @see AdmissionController
+ */
+public enum TrafficClass {
+	DIRECT, BROADCAST, MEDIA, SIGNAL;
+
+	/***
+	 * A method used to find the class of traffic a Message sent by a Client belongs to.
+	 * Chunks of an accepted Audio stream are not limited since they are already paced by flow control
+	 * and dropping one would break the stream.
+	 * @param messageID The ID code of the Message.
+	 * @return The class of traffic of the Message or null if the Message is never limited.
+	 */
+	public static TrafficClass of(MessageID messageID) {
+		switch(messageID) {
+			case TEXT_TRANSFER_REQUEST:
+			case ONLINE_CLIENTS_REQUEST:
+			case ROOM_CREATE_REQUEST:
+			case ROOM_JOIN_REQUEST:
+			case ROOM_LEAVE_REQUEST:
+			case TOPIC_SUBSCRIBE_REQUEST:
+			case TOPIC_UNSUBSCRIBE_REQUEST:
+			case SEARCH_REQUEST:
+			case CONTENT_QUERY_REQUEST:
+				return DIRECT;
+			case TEXT_SEND_TO_ALL_REQUEST:
+			case IMAGE_SEND_TO_ALL_REQUEST:
+			case ROOM_POST_REQUEST:
+			case TOPIC_PUBLISH_REQUEST:
+			case TEXT_MULTICAST_REQUEST:
+				return BROADCAST;
+			case IMAGE_TRANSFER_REQUEST:
+			case AUDIO_TRANSFER_REQUEST:
+				return MEDIA;
+			case SIGNAL:
+				return SIGNAL;
+			default:
+				return null;
+			}
+		}
+}
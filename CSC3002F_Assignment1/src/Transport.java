@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/***
+ * A way for Clients to reach the Server. TCP reaches it across the network, a Unix domain socket reaches a Server on
+ * the same host without going through the TCP stack, and an in-memory pipe reaches a Server in the same JVM, which
+ * lets tests and benchmarks measure the Server apart from the network.
+ * Addresses are written as host[:port] for TCP, unix:path for a Unix domain socket and memory:name for a pipe.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see TcpTransport
+ * @see UnixSocketTransport
+ * @see MemoryTransport
+ */
+public interface Transport {
+
+	/***
+	 * A method used by a Client to connect to the Server at this Transport's address.
+	 * @param timeoutMillis How long to wait for the Server to accept, or 0 to wait as long as it takes.
+	 * @return The Connection to the Server.
+	 * @throws IOException If the Server could not be reached.
+	 */
+	Connection connect(int timeoutMillis) throws IOException;
+
+	/***
+	 * A method used by the Server to start accepting Connections at this Transport's address.
+	 * @return The Listener accepting the Connections.
+	 * @throws IOException If the address could not be listened on.
+	 */
+	Listener listen() throws IOException;
+
+	/***
+	 * A method used to retrieve the address of this Transport.
+	 * @return The address, as it would be parsed by forAddress.
+	 */
+	String getAddress();
+
+	/***
+	 * A method used to parse an address into the Transport it names.
+	 * @param address The address, host[:port], unix:path or memory:name.
+	 * @param defaultPort The port of a TCP address which does not name one.
+	 * @return The Transport.
+	 * @throws IllegalArgumentException If the address is empty or names an invalid port.
+	 */
+	static Transport forAddress(String address, int defaultPort) {
+		address = address.trim();
+		if(address.startsWith(UnixSocketTransport.SCHEME))
+			return new UnixSocketTransport(Paths.get(address.substring(UnixSocketTransport.SCHEME.length())));
+		if(address.startsWith(MemoryTransport.SCHEME))
+			return new MemoryTransport(address.substring(MemoryTransport.SCHEME.length()));
+		if(address.isEmpty())
+			throw new IllegalArgumentException("No address was given");
+		int port = defaultPort;
+		int separator = address.lastIndexOf(':');
+		// a bare IPv6 address has several colons and no port.
+		if(separator > 0 && address.indexOf(':') == separator) {
+			port = Integer.parseInt(address.substring(separator + 1));
+			address = address.substring(0, separator);
+			}
+		return new TcpTransport(address, port);
+		}
+
+	/***
+	 * The accepting end of a Transport, which the Server takes each new Connection from.
+	 */
+	interface Listener {
+
+		/***
+		 * A method used to wait for the next Client to connect.
+		 * @return The Connection to the Client.
+		 * @throws IOException If the Listener was closed or failed.
+		 */
+		Connection accept() throws IOException;
+
+		/***
+		 * A method used to stop accepting Connections.
+		 * @throws IOException If the Listener could not be closed.
+		 */
+		void close() throws IOException;
+		}
+	}
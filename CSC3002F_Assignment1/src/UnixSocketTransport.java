@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+/***
+ * The Transport reaching a Server on the same host through a Unix domain socket, which skips the TCP stack.
+ * A socket file left at the path is replaced when the Server starts listening and removed once it stops, but any
+ * other file at the path is never deleted: listening on it fails instead.
+ * The streams read and write the SocketChannel directly rather than through Channels.newInputStream, whose streams
+ * share one lock and so cannot be read and written by different Threads at the same time.
+ * @version 19/10/2026
+ * @since 19/10/2026
+ * @see UnixDomainSocketAddress
+ */
+public class UnixSocketTransport implements Transport {
+
+	// static variables
+	public final static String SCHEME = "unix:";
+	// the file type bits of a Unix file mode, and their value for a socket.
+	private final static int FILE_TYPE_MASK = 0170000;
+	private final static int SOCKET_FILE_TYPE = 0140000;
+
+	// instance variables
+	private Path path;
+
+	/***
+	 * The Constructor of the UnixSocketTransport Class.
+	 * @param path The path of the socket file.
+	 */
+	public UnixSocketTransport(Path path) {
+		this.path = path;
+		}
+
+	/***
+	 * {@inheritDoc} A Unix domain socket connects at once or not at all, so the timeout is not used.
+	 */
+	@Override
+	public Connection connect(int timeoutMillis) throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(UnixDomainSocketAddress.of(this.path));
+			}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+			}
+		return new ChannelConnection(channel, this.getAddress());
+		}
+
+	@Override
+	public Transport.Listener listen() throws IOException {
+		// a socket file left behind by a Server which did not stop cleanly would make binding fail, while one a running
+		// Server still accepts on is left to it.
+		if(UnixSocketTransport.isSocket(this.path)) {
+			Connection live;
+			try {
+				live = this.connect(0);
+				}
+			catch (ConnectException e) {
+				live = null;
+				}
+			if(live != null) {
+				live.close();
+				throw new IOException(this.getAddress() + " is already being listened on");
+				}
+			Files.delete(this.path);
+			}
+		ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			serverChannel.bind(UnixDomainSocketAddress.of(this.path));
+			}
+		catch (IOException e) {
+			serverChannel.close();
+			throw e;
+			}
+		return new Transport.Listener() {
+			@Override
+			public Connection accept() throws IOException {
+				return new ChannelConnection(serverChannel.accept(), getAddress());
+				}
+
+			@Override
+			public void close() throws IOException {
+				serverChannel.close();
+				if(UnixSocketTransport.isSocket(path))
+					Files.delete(path);
+				}
+			};
+		}
+
+	/***
+	 * A method used to check whether a path names a socket file, without following a symbolic link.
+	 * @param path The path.
+	 * @return A boolean which is true if the path is a socket, and false if it is anything else, is missing or its
+	 * type cannot be told.
+	 * @throws IOException If the file's type could not be read.
+	 */
+	private static boolean isSocket(Path path) throws IOException {
+		if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+			return false;
+		try {
+			int mode = (Integer)Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+			return (mode & UnixSocketTransport.FILE_TYPE_MASK) == UnixSocketTransport.SOCKET_FILE_TYPE;
+			}
+		catch (UnsupportedOperationException | IllegalArgumentException e) {
+			return false;
+			}
+		}
+
+	@Override
+	public String getAddress() {
+		return UnixSocketTransport.SCHEME + this.path;
+		}
+
+	/***
+	 * A Connection over a Unix domain SocketChannel.
+	 */
+	private static class ChannelConnection implements Connection {
+		private final SocketChannel channel;
+		private final String address;
+		private final InputStream in;
+		private final OutputStream out;
+
+		private ChannelConnection(SocketChannel channel, String address) {
+			this.channel = channel;
+			this.address = address;
+			this.in = new InputStream() {
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+					}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if(len == 0)
+						return 0;
+					return channel.read(ByteBuffer.wrap(b, off, len));
+					}
+
+				@Override
+				public void close() throws IOException {
+					channel.close();
+					}
+				};
+			this.out = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					this.write(new byte[] {(byte)b}, 0, 1);
+					}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+					while(buffer.hasRemaining())
+						channel.write(buffer);
+					}
+
+				@Override
+				public void close() throws IOException {
+					channel.close();
+					}
+				};
+			}
+
+		@Override
+		public InputStream getInputStream() {
+			return this.in;
+			}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return this.out;
+			}
+
+		@Override
+		public String getRemoteAddress() {
+			return this.address;
+			}
+
+		@Override
+		public boolean isClosed() {
+			return !this.channel.isOpen();
+			}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+			}
+		}
+	}